@@ -14,6 +14,7 @@ import java.net.URLConnection;
 import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -53,7 +54,8 @@ public final class KodeKitten
     static final String LOGGING_FORMAT = "[%1$tF %1$tT] [%4$-7s] %5$s %n";
 
     // Internal list of all registered commands.
-    private static final Command[] commands = new Command[]{new CmdHelp(), new CmdBalance(), new CmdDatabase()};
+    private static final Command[] commands = new Command[]{new CmdHelp(), new CmdBalance(), new CmdBaltop(),
+            new CmdRank(), new CmdDatabase()};
 
 
     /**
@@ -63,6 +65,12 @@ public final class KodeKitten
     {
         setupLogger();
 
+        // Configs are loaded first as opening the database depends on them.
+        MainConfig.getInstance().loadFromConfig();
+        MessageConfig.getInstance().loadFromConfig();
+        AccountManager.getInstance().loadSettings();
+        CommandExecutor.getInstance().loadSettings();
+
         // Exits the program if the connection couldn't be opened.
         if (!AccountManager.getInstance().openDatabaseConnection())
         {
@@ -70,6 +78,18 @@ public final class KodeKitten
             return;
         }
 
+        // Accounts are loaded from the configured account store, so it is opened before the journal.
+        AccountManager.getInstance().openAccountStore();
+
+        // Changes the last run did not flush are recovered before anything can change the accounts.
+        AccountManager.getInstance().openJournal();
+
+        // Balances of every stored account are indexed before commands can ask for the leaderboard.
+        AccountManager.getInstance().loadLeaderboard();
+
+        // Hot accounts of the last run are loaded while connecting so the first commands find them in memory.
+        CompletableFuture.runAsync(AccountManager.getInstance().getWarmer()::warmUp);
+
         // Retrieves the token from startup arguments otherwise finds it elsewhere.
         if (!Bot.MAIN.connect() || !Bot.MAIN.isConnected())
         {
@@ -83,8 +103,6 @@ public final class KodeKitten
         // Load all needed data.
         Snowflake.MAIN.loadFromConfig();
         Snowflake.MAIN.loadGuild(Bot.MAIN);
-        MainConfig.getInstance().loadFromConfig();
-        MessageConfig.getInstance().loadFromConfig();
         SchedulerManager.getInstance().startTimers();
         registerCommands();
         Bot.MAIN.getBot().addEventListener(new CommandHandler());
@@ -96,7 +114,15 @@ public final class KodeKitten
         logInfo("Exiting the program");
         SchedulerManager.getInstance().stopTimers();
         Bot.MAIN.disconnect();
+        CommandExecutor.getInstance().shutdown();
+        AccountManager.getInstance().shutdownIoExecutor();
+        AccountManager.getInstance().getFlusher().flushAll();
+        AccountManager.getInstance().getWarmer().saveHotAccounts();
+        // Stores that lose their accounts are exported while closing, which clears the journal they kept.
+        AccountManager.getInstance().closeAccountStore();
+        AccountManager.getInstance().closeJournal();
         AccountManager.getInstance().closeDatabaseConnection();
+        AccountManager.getInstance().getDatabaseExecutor().shutdown();
         System.exit(0);
     }
 
@@ -4,6 +4,7 @@ import com.sylink.Bot;
 import com.sylink.KodeKitten;
 import com.sylink.util.account.Account;
 import com.sylink.util.account.AccountManager;
+import com.sylink.util.account.Money;
 import com.sylink.util.Snowflake;
 import com.sylink.util.config.MessageConfig;
 import lombok.NonNull;
@@ -29,7 +30,7 @@ public final class CmdBalance
     {
         if (args.length == 0)
         {
-            return super.userOutput(event, "display_balance", account.getBalance());
+            return super.userOutput(event, "display_balance", Money.format(account.getBalanceUnits()));
         }
 
         return null;
@@ -54,7 +55,8 @@ public final class CmdBalance
             }
             else
             {
-                return super.consoleOutput("display_balance_other", account.getDiscordId(), account.getBalance());
+                return super.consoleOutput("display_balance_other", account.getDiscordId(),
+                        Money.format(account.getBalanceUnits()));
             }
         }
         catch (final NumberFormatException exception)
@@ -0,0 +1,136 @@
+package com.sylink.commands;
+
+import com.sylink.Bot;
+import com.sylink.KodeKitten;
+import com.sylink.util.account.Account;
+import com.sylink.util.account.AccountManager;
+import com.sylink.util.account.BalanceLeaderboard;
+import com.sylink.util.account.Money;
+import com.sylink.util.Snowflake;
+import com.sylink.util.config.MessageConfig;
+import lombok.NonNull;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.events.interaction.SlashCommandEvent;
+import net.dv8tion.jda.api.interactions.commands.OptionMapping;
+import net.dv8tion.jda.api.interactions.commands.OptionType;
+
+import java.util.List;
+
+/**
+ * Balance top command that displays a page of the accounts with the highest balances.
+ */
+public final class CmdBaltop
+        extends Command
+{
+
+    // The amount of accounts displayed per page.
+    private static final int PAGE_SIZE = 10;
+
+    public CmdBaltop()
+    {
+        super(CommandType.universal(), "Displays the accounts with the highest balances", "[page]", null, "baltop",
+                "leaderboard", "top");
+    }
+
+    @Override
+    public String onUserCommand(@NonNull final SlashCommandEvent event, @NonNull final Account account,
+                                @NonNull final String label, @NonNull final String[] args)
+    {
+        final OptionMapping option = event.getOption("page");
+        final long page = (option == null) ? 1L : option.getAsLong();
+
+        if (page < 1L || page > getLastPage())
+        {
+            return super.userOutput(event, "proper_page", getLastPage());
+        }
+
+        return super.userOutput(event, "display_baltop", false, new Object[]{page, formatPage(page, "baltop_entry")});
+    }
+
+    @Override
+    public String onConsoleCommand(@NonNull final String label, @NonNull final String[] args)
+    {
+        long page = 1L;
+
+        try
+        {
+            if (args.length > 0)
+            {
+                page = Long.parseLong(args[0]);
+            }
+        }
+        catch (final NumberFormatException exception)
+        {
+            page = 0L;
+        }
+
+        if (page < 1L || page > getLastPage())
+        {
+            return super.consoleOutput("proper_page", getLastPage());
+        }
+
+        return super.consoleOutput("display_baltop", page, formatPage(page, "baltop_entry_console"));
+    }
+
+    /**
+     * @return The last page of the leaderboard, which is page 1 while it holds no accounts.
+     */
+    private static long getLastPage()
+    {
+        return AccountManager.getInstance().getLeaderboard().size() / PAGE_SIZE + 1L;
+    }
+
+    /**
+     * Formats a page no later than the last page, so the first rank of the page cannot overflow.
+     *
+     * @return The entries of the page, each on its own line, or the empty page message.
+     */
+    private static String formatPage(final long page, @NonNull final String entryKey)
+    {
+        final BalanceLeaderboard leaderboard = AccountManager.getInstance().getLeaderboard();
+        final List<BalanceLeaderboard.Entry> entries = leaderboard.getPage((page - 1L) * PAGE_SIZE + 1L, PAGE_SIZE);
+
+        if (entries.isEmpty())
+        {
+            return "\n" + MessageConfig.getInstance().getCommand("empty_baltop_page");
+        }
+
+        final String entryFormat = MessageConfig.getInstance().getCommand(entryKey);
+        final StringBuilder builder = new StringBuilder();
+
+        for (final BalanceLeaderboard.Entry entry : entries)
+        {
+            builder.append('\n').append(String.format(entryFormat, entry.getRank(), entry.getDiscordId(),
+                    Money.format(entry.getBalanceUnits())));
+        }
+
+        return builder.toString();
+    }
+
+    @Override
+    public void registerGuildCommand()
+    {
+        final Guild guild = Snowflake.MAIN.getGuild();
+        final String name = super.getName();
+
+        if (guild != null)
+        {
+            guild.upsertCommand(name, super.getDescription()).addOption(OptionType.INTEGER, "page", "The page to show",
+                    false).queue();
+        }
+        else
+        {
+            KodeKitten.logSevere(String.format(MessageConfig.getInstance().getCommand("cant_register_command"), name));
+        }
+    }
+
+    @Override
+    public void registerCommand()
+    {
+        final String name = super.getName();
+
+        Bot.MAIN.getBot().upsertCommand(name, super.getDescription()).addOption(OptionType.INTEGER, "page",
+                "The page to show", false).queue();
+    }
+
+}
@@ -1,13 +1,27 @@
 package com.sylink.commands;
 
 import com.sylink.util.account.Account;
+import com.sylink.util.account.AccountCache;
+import com.sylink.util.account.AccountFlusher;
+import com.sylink.util.account.AccountJournal;
 import com.sylink.util.account.AccountManager;
+import com.sylink.util.account.AccountSnapshot;
+import com.sylink.util.account.AccountWarmer;
+import com.sylink.util.account.AccountStore;
+import com.sylink.util.account.Money;
+import com.sylink.util.account.DatabaseExecutor;
+import com.sylink.util.account.PersistedIdFilter;
+import com.sylink.util.account.ReadConnectionPool;
+import com.sylink.util.account.SchemaMigrator;
+import com.sylink.util.account.StatementCache;
 import com.sylink.util.Snowflake;
 import com.sylink.util.config.MessageConfig;
 import lombok.NonNull;
 import net.dv8tion.jda.api.entities.Member;
 import net.dv8tion.jda.api.entities.Role;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Locale;
 
@@ -31,12 +45,20 @@ public final class CmdDatabase
                   query [sqlQuery]: Executes the query to the SQL database.
                   update [id] [data] {[add:remove:clear]} [value]: Updates account data in memory.
                   check [id] [data]: Checks the value of a certain piece of account data.
+                  stats: Prints database statement cache and flusher statistics.
+                  export [file]: Writes every account to a binary snapshot file.
+                  import [file]: Reads every account of a binary snapshot file in to the database.
                 """, null, "database", "db", "sql");
     }
 
     @Override
     public String onConsoleCommand(@NonNull final String label, @NonNull final String[] args)
     {
+        if (args.length == 1 && args[0].equalsIgnoreCase("stats"))
+        {
+            return sendStatistics();
+        }
+
         if (args.length < 2)
         {
             return super.consoleOutput(super.getUsage(label));
@@ -51,6 +73,11 @@ public final class CmdDatabase
             return super.consoleOutput("executed_query");
         }
 
+        if (args[0].equalsIgnoreCase("export") || args[0].equalsIgnoreCase("import"))
+        {
+            return transferSnapshot(args[0].equalsIgnoreCase("export"), Path.of(args[1]));
+        }
+
         long discordId;
 
         try
@@ -166,7 +193,7 @@ public final class CmdDatabase
                     case "balance":
                     case "bal":
                         return super.consoleOutput("display_balance_other", account.getDiscordId(),
-                                account.getBalance());
+                                Money.format(account.getBalanceUnits()));
                     case "permissions":
                     case "permission":
                     case "perms":
@@ -236,20 +263,20 @@ public final class CmdDatabase
                 {
                     case "balance":
                     case "bal":
-                        double balance;
+                        final long balance;
 
                         try
                         {
-                            balance = Double.parseDouble(args[3]);
+                            balance = Money.parse(args[3]);
                         }
                         catch (final NumberFormatException exception)
                         {
                             return super.consoleOutput("value_double");
                         }
 
-                        account.setBalance(balance);
+                        account.setBalanceUnits(balance);
 
-                        return super.consoleOutput("set_balance_to", account.getBalance());
+                        return super.consoleOutput("set_balance_to", Money.format(account.getBalanceUnits()));
                     case "permissions":
                     case "permission":
                     case "perms":
@@ -372,6 +399,100 @@ public final class CmdDatabase
         }
     }
 
+    /**
+     * Exports every account to a snapshot file or imports every account of one.
+     */
+    private String transferSnapshot(final boolean export, @NonNull final Path file)
+    {
+        final AccountSnapshot snapshots = AccountManager.getInstance().getSnapshots();
+        final long startTime = System.currentTimeMillis();
+
+        try
+        {
+            if (export)
+            {
+                return super.consoleOutput("exported_snapshot", snapshots.exportTo(file), file,
+                        System.currentTimeMillis() - startTime);
+            }
+
+            return super.consoleOutput("imported_snapshot", snapshots.importFrom(file), file,
+                    System.currentTimeMillis() - startTime);
+        }
+        catch (final IOException exception)
+        {
+            return super.consoleOutput(export ? "cant_export_snapshot" : "cant_import_snapshot", file,
+                    exception.getMessage());
+        }
+    }
+
+    /**
+     * Prints to console the performance statistics of the account database.
+     */
+    private String sendStatistics()
+    {
+        final StatementCache statementCache = AccountManager.getInstance().getStatementCache();
+        final AccountFlusher flusher = AccountManager.getInstance().getFlusher();
+        final AccountCache accountCache = AccountManager.getInstance().getAccountCache();
+        final DatabaseExecutor databaseExecutor = AccountManager.getInstance().getDatabaseExecutor();
+        final ReadConnectionPool readPool = AccountManager.getInstance().getReadPool();
+        final SchemaMigrator schemaMigrator = AccountManager.getInstance().getSchemaMigrator();
+        final AccountWarmer warmer = AccountManager.getInstance().getWarmer();
+
+        super.consoleOutput("statement_cache_stats", statementCache.size(), statementCache.getHits(),
+                statementCache.getPrepares());
+        super.consoleOutput("load_stats", AccountManager.getInstance().getDatabaseLoads(),
+                AccountManager.getInstance().getCoalescedLoads());
+        super.consoleOutput("transfer_stats", AccountManager.getInstance().getAppliedTransfers(),
+                AccountManager.getInstance().getRejectedTransfers());
+        final PersistedIdFilter persistedIds = AccountManager.getInstance().getPersistedIds();
+
+        super.consoleOutput("filter_stats", persistedIds.getSize(), persistedIds.getMemoryUsage() / 1024,
+                persistedIds.getHashFunctions(), persistedIds.getExpectedFalsePositiveRate(),
+                persistedIds.getSkippedLookups(), persistedIds.getFalsePositives());
+        super.consoleOutput("cache_stats", accountCache.size(), accountCache.getMaximumSize(),
+                accountCache.getHits(), accountCache.getMisses(), accountCache.getHitRate(),
+                accountCache.getEvictions());
+        super.consoleOutput("executor_stats", databaseExecutor.getQueueDepth(),
+                databaseExecutor.getSubmittedRequests(), databaseExecutor.getMergedRequests(),
+                databaseExecutor.getTransactions(), databaseExecutor.getFailedRequests(),
+                databaseExecutor.getAverageLatency(), databaseExecutor.getMaxLatency());
+        super.consoleOutput("read_pool_stats", readPool.getActiveConnections(), readPool.getOpenConnections(),
+                readPool.getReads(), readPool.getWaits(), readPool.getAverageWaitTime(), readPool.getUtilisation());
+        super.consoleOutput("schema_stats", schemaMigrator.getSchemaVersion());
+
+        for (final SchemaMigrator.Progress progress : schemaMigrator.getDataMigrationProgress())
+        {
+            super.consoleOutput("data_migration_stats", progress.getName(),
+                    progress.isFinished() ? "finished" : "running", progress.getChunks(), progress.getDurationMillis());
+        }
+
+        super.consoleOutput("warm_up_stats", warmer.getPreloadedAccounts(), warmer.getHotAccounts(),
+                warmer.getDuration(), warmer.getQueries());
+
+        final CommandExecutor commandExecutor = CommandExecutor.getInstance();
+
+        super.consoleOutput("command_stats", commandExecutor.getMode().name().toLowerCase(Locale.ROOT),
+                commandExecutor.getRunningCommands(), commandExecutor.getWaitingCommands(),
+                commandExecutor.getPeakRunningCommands(), commandExecutor.getMaximumConcurrency(),
+                commandExecutor.getCompletedCommands(), commandExecutor.getBusyCommands(),
+                commandExecutor.getAverageRunTime());
+
+        final AccountJournal journal = AccountManager.getInstance().getJournal();
+
+        super.consoleOutput("journal_stats", journal.isOpen() ? "open" : "closed", journal.getAppendedRecords(),
+                journal.getWrittenBytes() / 1024, journal.getSyncs(), journal.getDeletedSegments());
+
+        final AccountStore store = AccountManager.getInstance().getStore();
+
+        super.consoleOutput("account_store_stats", store.getName(), store.isOpen() ? "open" : "closed",
+                store.isPersistent() ? "persistent" : "exported",
+                AccountManager.getInstance().getMappedStore().getRebuilds());
+
+        return super.consoleOutput("flusher_stats", flusher.getQueueDepth(), flusher.getFlushedAccounts(),
+                flusher.getFlushedBatches(), flusher.getLastBatchSize(), flusher.getFailedBatches(),
+                flusher.getThroughput());
+    }
+
     /**
      * Prints to console the available keys to update in an account.
      */
@@ -379,7 +500,7 @@ public final class CmdDatabase
     {
         return super.consoleOutput("""
                 Available keys to update:
-                  balance [double]
+                  balance [amount]
                   permission [add:remove:clear] [permission]
                   role [add:remove:clear] [permission]
                 """);
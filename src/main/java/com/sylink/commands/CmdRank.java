@@ -0,0 +1,66 @@
+package com.sylink.commands;
+
+import com.sylink.util.account.Account;
+import com.sylink.util.account.AccountManager;
+import com.sylink.util.account.BalanceLeaderboard;
+import com.sylink.util.account.Money;
+import lombok.NonNull;
+import net.dv8tion.jda.api.events.interaction.SlashCommandEvent;
+
+/**
+ * Rank command that displays the place of an account on the balance leaderboard.
+ */
+public final class CmdRank
+        extends Command
+{
+
+    public CmdRank()
+    {
+        super(CommandType.universal(), "Displays your place on the balance leaderboard", "[id]", null, "rank");
+    }
+
+    @Override
+    public String onUserCommand(@NonNull final SlashCommandEvent event, @NonNull final Account account,
+                                @NonNull final String label, @NonNull final String[] args)
+    {
+        final BalanceLeaderboard leaderboard = AccountManager.getInstance().getLeaderboard();
+        final BalanceLeaderboard.Entry entry = leaderboard.getEntry(account.getDiscordId());
+
+        if (entry == null)
+        {
+            return super.userOutput(event, "not_ranked");
+        }
+
+        return super.userOutput(event, "display_rank", entry.getRank(), leaderboard.size(),
+                Money.format(entry.getBalanceUnits()));
+    }
+
+    @Override
+    public String onConsoleCommand(@NonNull final String label, @NonNull final String[] args)
+    {
+        if (args.length == 0)
+        {
+            return super.consoleOutput(getUsage(label));
+        }
+
+        try
+        {
+            final long discordId = Long.parseLong(args[0]);
+            final BalanceLeaderboard leaderboard = AccountManager.getInstance().getLeaderboard();
+            final BalanceLeaderboard.Entry entry = leaderboard.getEntry(discordId);
+
+            if (entry == null)
+            {
+                return super.consoleOutput("account_not_ranked");
+            }
+
+            return super.consoleOutput("display_rank_other", discordId, entry.getRank(), leaderboard.size(),
+                    Money.format(entry.getBalanceUnits()));
+        }
+        catch (final NumberFormatException exception)
+        {
+            return super.consoleOutput("proper_account_id");
+        }
+    }
+
+}
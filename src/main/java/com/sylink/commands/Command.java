@@ -4,6 +4,7 @@ import com.sylink.Bot;
 import com.sylink.KodeKitten;
 import com.sylink.util.account.Account;
 import com.sylink.util.account.AccountManager;
+import com.sylink.util.account.PermissionRegistry;
 import com.sylink.util.Snowflake;
 import com.sylink.util.config.MessageConfig;
 import lombok.AccessLevel;
@@ -14,6 +15,7 @@ import net.dv8tion.jda.api.events.interaction.SlashCommandEvent;
 
 import javax.annotation.Nullable;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Abstract parent class for all commands that manages all commands.
@@ -32,8 +34,73 @@ public abstract class Command
     public static String runCommands(@NonNull final SlashCommandEvent event, @NonNull final String label,
                                      @NonNull final String[] args)
     {
-        final Account account = AccountManager.getInstance().getAccount(event.getUser().getIdLong());
+        return runCommands(event, AccountManager.getInstance().getAccount(event.getUser().getIdLong()), label, args);
+    }
+
+    /**
+     * Interprets a slash command without blocking the calling thread. The user's account is loaded by the account
+     * I/O executor, then the command is run by the command executor, so slow database access or REST requests never
+     * hold up the Discord event thread. If the command cannot start before Discord expires the interaction, counted
+     * from when it was received, the user is told the bot is busy instead.
+     *
+     * @return The future completed with the output response of the command, or null if it was not run.
+     */
+    public static CompletableFuture<String> runCommandsAsync(@NonNull final SlashCommandEvent event,
+                                                             @NonNull final String label,
+                                                             @NonNull final String[] args)
+    {
+        final long receivedTime = System.nanoTime();
+
+        return AccountManager.getInstance().getAccountAsync(event.getUser().getIdLong())
+                .thenCompose((account) -> runCommandsAsync(event, account, label, args, receivedTime))
+                .exceptionally((throwable) ->
+                {
+                    KodeKitten.logSevere(String.format(MessageConfig.getInstance().getInternal("command_failed"),
+                            label, event.getUser().getIdLong()));
+                    throwable.printStackTrace();
+                    return null;
+                });
+    }
 
+    /**
+     * Runs a slash command for a loaded account on the command executor.
+     *
+     * @return The future completed with the output response of the command, or null if it was not run.
+     */
+    private static CompletableFuture<String> runCommandsAsync(@NonNull final SlashCommandEvent event,
+                                                              @Nullable final Account account,
+                                                              @NonNull final String label,
+                                                              @NonNull final String[] args, final long receivedTime)
+    {
+        final CompletableFuture<String> future = new CompletableFuture<>();
+
+        CommandExecutor.getInstance().execute(() ->
+        {
+            try
+            {
+                future.complete(runCommands(event, account, label, args));
+            }
+            catch (final Throwable throwable)
+            {
+                future.completeExceptionally(throwable);
+            }
+        }, () ->
+        {
+            event.reply(MessageConfig.getInstance().getCommand("commands_busy")).setEphemeral(true).queue();
+            future.complete(null);
+        }, receivedTime);
+
+        return future;
+    }
+
+    /**
+     * Runs a slash command for a loaded account.
+     *
+     * @return The output response of the command.
+     */
+    private static String runCommands(@NonNull final SlashCommandEvent event, @Nullable final Account account,
+                                      @NonNull final String label, @NonNull final String[] args)
+    {
         if (account == null)
         {
             event.reply(MessageConfig.getInstance().getCommand("cant_load_account")).queue();
@@ -42,7 +109,7 @@ public abstract class Command
 
         for (final Command command : commands)
         {
-            if (!command.containsLabel(label) || !command.containsCommandType(CommandType.USER) || (command.getPermission() != null && !account.hasPermission(command.getPermission())))
+            if (!command.containsLabel(label) || !command.containsCommandType(CommandType.USER) || (command.getPermissionId() != PermissionRegistry.NO_PERMISSION && !account.hasPermission(command.getPermissionId())))
             {
                 continue;
             }
@@ -129,6 +196,9 @@ public abstract class Command
     // The permission required to access the command.
     @Getter(AccessLevel.PUBLIC)
     private final String permission;
+    // The id of the permission in the permission registry, resolved once so checks are a single bit test.
+    @Getter(AccessLevel.PUBLIC)
+    private final int permissionId;
 
     public Command(@NonNull final List<CommandType> commandTypes, @NonNull final String description,
                    @Nullable final String usage, @Nullable final String permission, @NonNull final String... labels)
@@ -137,6 +207,8 @@ public abstract class Command
         this.description = description;
         this.usage = (usage == null) ? "" : usage;
         this.permission = permission;
+        this.permissionId = (permission == null) ? PermissionRegistry.NO_PERMISSION
+                : PermissionRegistry.getInstance().intern(permission);
         this.labels = Arrays.asList(labels);
     }
 
@@ -149,6 +221,8 @@ public abstract class Command
         this.description = description;
         this.usage = (usage == null) ? "" : usage;
         this.permission = permission;
+        this.permissionId = (permission == null) ? PermissionRegistry.NO_PERMISSION
+                : PermissionRegistry.getInstance().intern(permission);
         this.labels = Arrays.asList(labels);
     }
 
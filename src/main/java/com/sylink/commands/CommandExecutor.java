@@ -0,0 +1,516 @@
+package com.sylink.commands;
+
+import com.sylink.KodeKitten;
+import com.sylink.util.config.MainConfig;
+import com.sylink.util.config.MessageConfig;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+
+import javax.annotation.Nullable;
+import java.lang.reflect.Method;
+import java.util.Locale;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Singleton executor that runs slash commands off the Discord event thread, so a command waiting on a REST request
+ * or the database does not delay the commands of other users.
+ * Commands run on their own virtual thread when the JVM has them, otherwise on a bounded pool of platform threads.
+ */
+public final class CommandExecutor
+        implements Executor
+{
+
+    /**
+     * Ways commands can be run.
+     */
+    public enum Mode
+    {
+        // Commands run on the thread that received them.
+        INLINE,
+        // Each command runs on its own virtual thread, falling back to PLATFORM when they are not available.
+        VIRTUAL,
+        // Commands run on a fixed pool of platform threads.
+        PLATFORM;
+
+        /**
+         * @return The mode with the given name, ignoring case.
+         *
+         * @throws IllegalArgumentException If there is no mode with the name.
+         */
+        public static Mode fromName(@NonNull final String name)
+        {
+            return valueOf(name.toUpperCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * A command given a busy task, answered by exactly one of them: the command if it gets a permit before its
+     * deadline, otherwise the busy task.
+     */
+    private final class TimedCommand
+    {
+
+        private final Runnable busy;
+        // The System.nanoTime() by which the command has to get a permit, counted from when it was submitted.
+        private final long deadline;
+        // Set by whichever of the command and the busy task answers.
+        private final AtomicBoolean answered = new AtomicBoolean();
+        // Runs the busy task at the deadline, or null if it is not scheduled.
+        private volatile ScheduledFuture<?> timeout = null;
+
+        private TimedCommand(@NonNull final Runnable busy, final long deadline)
+        {
+            this.busy = busy;
+            this.deadline = deadline;
+        }
+
+        /**
+         * @return The amount of nanoseconds left until the deadline, 0 once it passed.
+         */
+        private long getRemainingNanos()
+        {
+            return Math.max(0L, deadline - System.nanoTime());
+        }
+
+        /**
+         * Turns the command away at its deadline, even if it is still queued behind commands holding every thread.
+         */
+        private void scheduleTimeout()
+        {
+            timeout = BUSY_TIMER.schedule(this::turnAway, getRemainingNanos(), TimeUnit.NANOSECONDS);
+
+            if (answered.get())
+            {
+                timeout.cancel(false);
+            }
+        }
+
+        /**
+         * @return True if the command answers, so the busy task never runs.
+         */
+        private boolean start()
+        {
+            if (!answered.compareAndSet(false, true))
+            {
+                return false;
+            }
+
+            final ScheduledFuture<?> scheduledTimeout = timeout;
+
+            if (scheduledTimeout != null)
+            {
+                scheduledTimeout.cancel(false);
+            }
+
+            return true;
+        }
+
+        /**
+         * Runs the busy task unless the command already answered.
+         */
+        private void turnAway()
+        {
+            if (answered.compareAndSet(false, true))
+            {
+                waitingCommands.decrementAndGet();
+                busyCommands.incrementAndGet();
+                busy.run();
+            }
+        }
+
+    }
+
+    // Turns away the commands still waiting at their busy deadline. The busy tasks only queue a reply.
+    private static final ScheduledThreadPoolExecutor BUSY_TIMER = createBusyTimer();
+
+    private static CommandExecutor instance = null;
+
+    public static CommandExecutor getInstance()
+    {
+        if (instance == null)
+        {
+            instance = new CommandExecutor();
+        }
+
+        return instance;
+    }
+
+    // The mode commands are run in, VIRTUAL only if the JVM has virtual threads.
+    @Getter(AccessLevel.PUBLIC)
+    private volatile Mode mode = Mode.INLINE;
+    // The maximum amount of commands running at once, other commands wait for one to finish. Never above the amount
+    // of platform threads in the PLATFORM mode, so a command given a permit always has a thread to run on.
+    @Getter(AccessLevel.PUBLIC)
+    private volatile int maximumConcurrency = 64;
+    // The amount of milliseconds a command waits, queued or for a permit, before its user is told the bot is busy, kept
+    // under the 3 seconds Discord gives an interaction to be answered.
+    @Getter(AccessLevel.PUBLIC)
+    @Setter(AccessLevel.PUBLIC)
+    private volatile long busyTimeoutMillis = 2000L;
+    // The amount of threads in the pool of the PLATFORM mode.
+    @Getter(AccessLevel.PUBLIC)
+    private volatile int platformThreads = 16;
+    // The threads commands are run on, or null when running inline.
+    private volatile ExecutorService executorService = null;
+    // Permits limiting the amount of commands running at once.
+    private volatile Semaphore permits = new Semaphore(maximumConcurrency);
+
+    // The amount of commands currently running.
+    private final AtomicInteger runningCommands = new AtomicInteger();
+    // The amount of commands waiting to run.
+    private final AtomicInteger waitingCommands = new AtomicInteger();
+    // The largest amount of commands that ran at once.
+    private final AtomicInteger peakRunningCommands = new AtomicInteger();
+    // The amount of commands turned away because no permit freed up in time.
+    private final AtomicLong busyCommands = new AtomicLong();
+    // The amount of commands that finished running.
+    private final AtomicLong completedCommands = new AtomicLong();
+    // The total amount of nanoseconds commands spent running.
+    private final AtomicLong totalRunTime = new AtomicLong();
+
+    /**
+     * Loads the execution mode and limits from the main config.
+     */
+    public void loadSettings()
+    {
+        final MainConfig config = MainConfig.getInstance();
+        final String modeName = String.valueOf(config.get("commands.execution_mode", Mode.VIRTUAL.name()));
+        Mode configuredMode;
+
+        try
+        {
+            configuredMode = Mode.fromName(modeName);
+        }
+        catch (final IllegalArgumentException exception)
+        {
+            KodeKitten.logWarning(String.format(MessageConfig.getInstance().getInternal("invalid_execution_mode"),
+                    modeName));
+            configuredMode = Mode.VIRTUAL;
+        }
+
+        busyTimeoutMillis = Math.max(1L, config.getInt("commands.busy_timeout_ms", 2000));
+        configure(configuredMode, config.getInt("commands.maximum_concurrency", 64),
+                config.getInt("commands.platform_threads", 16));
+    }
+
+    /**
+     * Changes how commands are run. Commands already submitted finish on the threads they were given.
+     */
+    public synchronized void configure(@NonNull final Mode mode, final int maximumConcurrency,
+                                       final int platformThreads)
+    {
+        final ExecutorService oldService = executorService;
+        Mode newMode = mode;
+        ExecutorService newService = null;
+
+        this.maximumConcurrency = Math.max(1, maximumConcurrency);
+        this.platformThreads = Math.max(1, platformThreads);
+
+        if (newMode == Mode.VIRTUAL)
+        {
+            newService = createVirtualThreadExecutor();
+
+            if (newService == null)
+            {
+                KodeKitten.logInfo(MessageConfig.getInstance().getInternal("virtual_threads_unavailable"));
+                newMode = Mode.PLATFORM;
+            }
+        }
+
+        if (newMode == Mode.PLATFORM)
+        {
+            newService = createPlatformThreadExecutor(this.platformThreads);
+            // More permits than threads would only let commands wait for a thread instead of a permit.
+            this.maximumConcurrency = Math.min(this.maximumConcurrency, this.platformThreads);
+        }
+
+        permits = new Semaphore(this.maximumConcurrency);
+        executorService = newService;
+        this.mode = newMode;
+
+        if (oldService != null)
+        {
+            oldService.shutdown();
+        }
+    }
+
+    /**
+     * @return An executor starting a virtual thread for each task, or null if the JVM has no virtual threads.
+     */
+    private static ExecutorService createVirtualThreadExecutor()
+    {
+        // Looked up at runtime as the bot is built for Java 17, which does not have virtual threads.
+        try
+        {
+            final Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+
+            return (ExecutorService) factory.invoke(null);
+        }
+        catch (final ReflectiveOperationException | UnsupportedOperationException exception)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * @return A fixed pool of daemon platform threads.
+     */
+    private static ExecutorService createPlatformThreadExecutor(final int threads)
+    {
+        final AtomicInteger threadCount = new AtomicInteger();
+
+        return Executors.newFixedThreadPool(threads, (runnable) ->
+        {
+            final Thread thread = new Thread(runnable, "command-" + threadCount.incrementAndGet());
+
+            thread.setDaemon(true);
+
+            return thread;
+        });
+    }
+
+    /**
+     * @return A single daemon thread running the busy timeouts.
+     */
+    private static ScheduledThreadPoolExecutor createBusyTimer()
+    {
+        final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, (runnable) ->
+        {
+            final Thread thread = new Thread(runnable, "command-busy-timer");
+
+            thread.setDaemon(true);
+
+            return thread;
+        });
+
+        timer.setRemoveOnCancelPolicy(true);
+
+        return timer;
+    }
+
+    /**
+     * Runs a task in the current mode, waiting as long as it takes for a free permit if the concurrency limit is
+     * reached. Inline tasks are never held back, as waiting would block the thread that received them.
+     *
+     * @throws RejectedExecutionException If the executor shut down while submitting the task.
+     */
+    @Override
+    public void execute(@NonNull final Runnable command)
+    {
+        execute(command, null);
+    }
+
+    /**
+     * Runs a command in the current mode, waiting up to the busy timeout for a thread and a free permit. The timeout
+     * counts from the submission, so time spent queued for a thread counts towards it. A command that does not start
+     * in time, or is submitted while the executor shuts down, is not run and the busy task runs instead, so the user
+     * is answered before Discord expires the interaction.
+     *
+     * @param busy Task telling the user the command was not run, or null to wait for a permit without a limit.
+     */
+    public void execute(@NonNull final Runnable command, @Nullable final Runnable busy)
+    {
+        execute(command, busy, System.nanoTime());
+    }
+
+    /**
+     * Runs a command like {@link #execute(Runnable, Runnable)}, counting the busy timeout from the given
+     * {@link System#nanoTime()} instead of the submission, such as when the command was received before its account
+     * was loaded.
+     */
+    public void execute(@NonNull final Runnable command, @Nullable final Runnable busy, final long startTime)
+    {
+        final ExecutorService service = executorService;
+
+        waitingCommands.incrementAndGet();
+
+        if (service == null)
+        {
+            run(command, null, null);
+            return;
+        }
+
+        final Semaphore commandPermits = permits;
+        final TimedCommand timedCommand = (busy == null)
+                ? null
+                : new TimedCommand(busy, startTime + TimeUnit.MILLISECONDS.toNanos(busyTimeoutMillis));
+
+        // The user is answered straight away once the time to answer ran out before the command was submitted.
+        if (timedCommand != null && timedCommand.getRemainingNanos() == 0L)
+        {
+            timedCommand.turnAway();
+            return;
+        }
+
+        try
+        {
+            service.execute(() -> run(command, commandPermits, timedCommand));
+        }
+        catch (final RejectedExecutionException exception)
+        {
+            // The command never runs on the thread that received it, which is what the executor exists to avoid.
+            if (timedCommand == null)
+            {
+                waitingCommands.decrementAndGet();
+                throw exception;
+            }
+
+            timedCommand.turnAway();
+            return;
+        }
+
+        if (timedCommand != null)
+        {
+            timedCommand.scheduleTimeout();
+        }
+    }
+
+    /**
+     * Runs a command and records its metrics, holding a permit while it runs if permits are given.
+     * Without a timed command the permit is waited for without a limit, otherwise only until the deadline of the
+     * command, after which its busy task runs instead. A timed command reaching a thread past its deadline is not run.
+     */
+    private void run(@NonNull final Runnable command, @Nullable final Semaphore commandPermits,
+                     @Nullable final TimedCommand timedCommand)
+    {
+        if (commandPermits != null)
+        {
+            if (timedCommand == null)
+            {
+                commandPermits.acquireUninterruptibly();
+            }
+            else if (timedCommand.getRemainingNanos() == 0L
+                    || !tryAcquire(commandPermits, timedCommand.getRemainingNanos()))
+            {
+                timedCommand.turnAway();
+                return;
+            }
+            else if (!timedCommand.start())
+            {
+                // The busy task already answered at the deadline.
+                commandPermits.release();
+                return;
+            }
+        }
+
+        waitingCommands.decrementAndGet();
+        peakRunningCommands.accumulateAndGet(runningCommands.incrementAndGet(), Math::max);
+
+        final long startTime = System.nanoTime();
+
+        try
+        {
+            command.run();
+        }
+        finally
+        {
+            totalRunTime.addAndGet(System.nanoTime() - startTime);
+            completedCommands.incrementAndGet();
+            runningCommands.decrementAndGet();
+
+            if (commandPermits != null)
+            {
+                commandPermits.release();
+            }
+        }
+    }
+
+    /**
+     * @return True if a permit was acquired within the given amount of nanoseconds.
+     */
+    private static boolean tryAcquire(@NonNull final Semaphore commandPermits, final long timeoutNanos)
+    {
+        try
+        {
+            return commandPermits.tryAcquire(timeoutNanos, TimeUnit.NANOSECONDS);
+        }
+        catch (final InterruptedException exception)
+        {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Stops accepting commands and waits up to 30 seconds for the running commands to finish.
+     */
+    public synchronized void shutdown()
+    {
+        final ExecutorService service = executorService;
+
+        executorService = null;
+        mode = Mode.INLINE;
+
+        if (service == null)
+        {
+            return;
+        }
+
+        service.shutdown();
+
+        try
+        {
+            service.awaitTermination(30L, TimeUnit.SECONDS);
+        }
+        catch (final InterruptedException exception)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return The amount of commands currently running.
+     */
+    public int getRunningCommands()
+    {
+        return runningCommands.get();
+    }
+
+    /**
+     * @return The amount of commands waiting for a thread or for the concurrency limit.
+     */
+    public int getWaitingCommands()
+    {
+        return waitingCommands.get();
+    }
+
+    /**
+     * @return The largest amount of commands that ran at once.
+     */
+    public int getPeakRunningCommands()
+    {
+        return peakRunningCommands.get();
+    }
+
+    /**
+     * @return The amount of commands turned away because the concurrency limit stayed reached.
+     */
+    public long getBusyCommands()
+    {
+        return busyCommands.get();
+    }
+
+    /**
+     * @return The amount of commands that finished running.
+     */
+    public long getCompletedCommands()
+    {
+        return completedCommands.get();
+    }
+
+    /**
+     * @return The average amount of milliseconds commands spent running.
+     */
+    public double getAverageRunTime()
+    {
+        final long completed = completedCommands.get();
+
+        return (completed == 0) ? 0.0 : totalRunTime.get() / 1_000_000.0 / completed;
+    }
+
+}
@@ -26,7 +26,8 @@ public final class CommandHandler
         final String label = splitCommand[0];
         final String[] args = Arrays.copyOfRange(splitCommand, 1, splitCommand.length);
 
-        Command.runCommands(event, label, args);
+        // Commands run off the event thread so a slow database never delays other gateway events.
+        Command.runCommandsAsync(event, label, args);
     }
 
 }
\ No newline at end of file
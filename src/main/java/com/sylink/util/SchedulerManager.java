@@ -35,8 +35,15 @@ public final class SchedulerManager
      */
     public void startTimers()
     {
-        addTimer(minuteTimer, 1, 1, TimeUnit.MINUTES);
-        addTimer(hourTimer, 1, 1, TimeUnit.HOURS);
+        addTimer(flushTimer, 1, 1, TimeUnit.SECONDS);
+        addTimer(migrationTimer, 1, 1, TimeUnit.SECONDS);
+        final long expiryInterval = Math.max(1L, MainConfig.getInstance().getLong("cache.expiry_interval_seconds", 5L));
+
+        addTimer(expiryTimer, expiryInterval, expiryInterval, TimeUnit.SECONDS);
+
+        final long exportInterval = Math.max(1L, MainConfig.getInstance().getLong("storage.export_interval_minutes", 60L));
+
+        addTimer(exportTimer, exportInterval, exportInterval, TimeUnit.MINUTES);
         addTimer(changeStatus, 0, 10, TimeUnit.MINUTES);
     }
 
@@ -66,21 +73,37 @@ public final class SchedulerManager
     }
 
     /**
-     * Runnable method that runs every minute.
+     * Runnable method that writes changed accounts to the database every second.
      */
-    private final Runnable minuteTimer = () ->
+    private final Runnable flushTimer = () ->
     {
-        AccountManager.getInstance().cleanupConnectionInactivity();
+        AccountManager.getInstance().getFlusher().tick();
     };
 
     /**
-     * Runnable method that runs every hour.
+     * Runnable method that runs a chunk of the unfinished database data migrations every second.
      */
-    private final Runnable hourTimer = () ->
+    private final Runnable migrationTimer = () ->
+    {
+        AccountManager.getInstance().runDataMigrationChunk();
+    };
+
+    /**
+     * Runnable method that removes expired accounts from memory every few seconds.
+     */
+    private final Runnable expiryTimer = () ->
     {
         AccountManager.getInstance().cleanupAccountInactivity();
     };
 
+    /**
+     * Runnable method that exports the account store to the database, if accounts are not stored in the database.
+     */
+    private final Runnable exportTimer = () ->
+    {
+        AccountManager.getInstance().exportAccountStore();
+    };
+
     /**
      * Runnable method that randomly changes the status message of the bot.
      */
@@ -13,34 +13,60 @@ import net.dv8tion.jda.api.exceptions.ErrorResponseException;
 
 import javax.annotation.Nullable;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.UnaryOperator;
 
 /**
  * Class that contains all data about a user account.
+ * Permissions, roles and the balance live in an immutable {@link AccountState} that every change swaps atomically,
+ * so concurrent changes are never lost and saves always read a consistent snapshot.
  */
 public class Account
 {
 
+    // The amount of seconds without activity after which an account is inactive.
+    private static final int INACTIVE_SECONDS = 600;
+    // The amount of seconds without activity after which an account is dead.
+    private static final int DEAD_SECONDS = 3600;
+    // Expiry bucket of an account that is not filed in an expiry index.
+    static final long NOT_FILED = Long.MIN_VALUE;
+
     @Getter(AccessLevel.PUBLIC)
     private final long discordId;
     // Whether the Account has been loaded from the database.
     @Getter(AccessLevel.PUBLIC)
     private boolean loaded = false;
-    // Last activity time to track how long an account has been inactive in memory.
-    @Getter(AccessLevel.PUBLIC)
-    @Setter(AccessLevel.PROTECTED)
-    private long lastActivityTime = System.currentTimeMillis();
-
-    // List of permission strings for this account.
+    // Whether the Account is known to have a row in the database.
     @Getter(AccessLevel.PUBLIC)
-    private final Set<String> permissions = new HashSet<>();
-    // List of role ids for this account.
-    @Getter(AccessLevel.PUBLIC)
-    private final Set<Long> roles = new HashSet<>();
+    @Setter(AccessLevel.PACKAGE)
+    private volatile boolean persisted = false;
+    // Last activity time to track how long an account has been inactive in memory.
     @Getter(AccessLevel.PUBLIC)
-    private double balance = 0.0;
+    private volatile long lastActivityTime = System.currentTimeMillis();
+    // The amount of times the account was accessed while held in memory, used to rank the hot accounts.
+    private final AtomicLong accesses = new AtomicLong();
+    // The expiry index bucket the account is filed in, guarded by the expiry index.
+    @Getter(AccessLevel.PACKAGE)
+    @Setter(AccessLevel.PACKAGE)
+    private long expiryBucket = NOT_FILED;
+
+    // Permissions, roles and balance of the account, only changed by compare and set of a new snapshot.
+    private final AtomicReference<AccountState> state = new AtomicReference<>(AccountState.EMPTY);
+    // Held while a transfer changes the account or a save takes its snapshot, always taken in discord id order.
+    private final ReentrantLock lock = new ReentrantLock();
+    // Permissions stored in the permissions table, or null if unknown and every row has to be written again.
+    @Getter(AccessLevel.PACKAGE)
+    private volatile Set<String> savedPermissions = null;
+    // Role ids stored in the roles table, or null if unknown and every row has to be written again.
+    @Getter(AccessLevel.PACKAGE)
+    private volatile Set<Long> savedRoles = null;
 
     // Whether account information has been changed and needs to be synced to the database.
-    private boolean needsToSync = false;
+    private volatile boolean needsToSync = false;
+    // The account manager holding this account in memory, notified when the account changes.
+    private volatile AccountManager accountManager = null;
 
     protected Account(final long discordId)
     {
@@ -56,11 +82,34 @@ public class Account
     }
 
     /**
-     * Sets the last activity time to the current time.
+     * Sets the last activity time to the current time and counts the access.
+     * The account is not moved in the expiry index, it is filed again lazily once its old deadline is checked.
      */
     protected final void bumpLastActivityTime()
     {
         lastActivityTime = System.currentTimeMillis();
+        accesses.incrementAndGet();
+    }
+
+    /**
+     * @return The amount of times the account was accessed while held in memory.
+     */
+    final long getAccesses()
+    {
+        return accesses.get();
+    }
+
+    /**
+     * Sets the last activity time, filing the account again in case it is now due earlier.
+     */
+    protected final void setLastActivityTime(final long lastActivityTime)
+    {
+        this.lastActivityTime = lastActivityTime;
+
+        if (accountManager != null)
+        {
+            accountManager.scheduleExpiry(this);
+        }
     }
 
     /**
@@ -68,9 +117,17 @@ public class Account
      */
     public final boolean isInactive()
     {
-        int seconds = (int) ((System.currentTimeMillis() - lastActivityTime) / 1000);
+        return isInactive(System.currentTimeMillis());
+    }
 
-        return seconds > 600;
+    /**
+     * Returns true if the last activity time of the account was over 10 minutes before the given time.
+     */
+    public final boolean isInactive(final long currentTime)
+    {
+        int seconds = (int) ((currentTime - lastActivityTime) / 1000);
+
+        return seconds > INACTIVE_SECONDS;
     }
 
     /**
@@ -78,9 +135,33 @@ public class Account
      */
     public final boolean isDead()
     {
-        int seconds = (int) ((System.currentTimeMillis() - lastActivityTime) / 1000);
+        return isDead(System.currentTimeMillis());
+    }
 
-        return seconds > 3600;
+    /**
+     * Returns true if the last activity time of the account was over 1 hour before the given time.
+     */
+    public final boolean isDead(final long currentTime)
+    {
+        int seconds = (int) ((currentTime - lastActivityTime) / 1000);
+
+        return seconds > DEAD_SECONDS;
+    }
+
+    /**
+     * @return The first time at which the account is inactive unless it is accessed again.
+     */
+    final long getInactiveDeadline()
+    {
+        return lastActivityTime + (INACTIVE_SECONDS + 1) * 1000L;
+    }
+
+    /**
+     * @return The first time at which the account is dead unless it is accessed again.
+     */
+    final long getDeadDeadline()
+    {
+        return lastActivityTime + (DEAD_SECONDS + 1) * 1000L;
     }
 
     /**
@@ -93,10 +174,54 @@ public class Account
 
     /**
      * Flags that the account needs to sync to database.
+     * Flagged accounts held by an account manager are queued to be flushed.
      */
     protected final void setNeedsToSync(final boolean needsToSync)
     {
         this.needsToSync = needsToSync;
+
+        if (needsToSync && accountManager != null)
+        {
+            accountManager.markDirty(this);
+        }
+    }
+
+    /**
+     * Locks the accounts in discord id order, so threads locking overlapping accounts can never deadlock.
+     *
+     * @return The locked accounts, to be given to {@link #unlockAll(List)}.
+     */
+    static List<Account> lockInOrder(@NonNull final Collection<Account> accounts)
+    {
+        final List<Account> lockedAccounts = new ArrayList<>(accounts);
+
+        lockedAccounts.sort(Comparator.comparingLong(Account::getDiscordId));
+
+        for (final Account account : lockedAccounts)
+        {
+            account.lock.lock();
+        }
+
+        return lockedAccounts;
+    }
+
+    /**
+     * Unlocks the accounts locked by {@link #lockInOrder(Collection)}.
+     */
+    static void unlockAll(@NonNull final List<Account> lockedAccounts)
+    {
+        for (int i = lockedAccounts.size() - 1; i >= 0; i--)
+        {
+            lockedAccounts.get(i).lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the account manager holding this account in memory.
+     */
+    final void setAccountManager(@Nullable final AccountManager accountManager)
+    {
+        this.accountManager = accountManager;
     }
 
     /**
@@ -144,39 +269,117 @@ public class Account
         return (member == null) ? null : member.getUser();
     }
 
+    /**
+     * @return The current snapshot of the permissions, roles and balance of the account.
+     */
+    public final AccountState getState()
+    {
+        return state.get();
+    }
+
+    /**
+     * Atomically replaces the state with the result of the change, retrying it if another thread changed the state
+     * first. The change may run more than once, so it must not have side effects.
+     * Changes of accounts held by an account manager are recorded in its journal and balance leaderboard.
+     *
+     * @return The new state.
+     */
+    public final AccountState update(@NonNull final UnaryOperator<AccountState> change)
+    {
+        final AccountManager manager = accountManager;
+        final AccountJournal journal = (manager != null && manager.getJournal().isOpen()) ? manager.getJournal() : null;
+        AccountState oldState;
+        AccountState newState;
+        long sequence;
+
+        do
+        {
+            oldState = state.get();
+            // Taken after reading the old state, so a later state of the account always has a higher number.
+            sequence = (journal == null) ? 0L : journal.nextSequence();
+            newState = change.apply(oldState);
+        }
+        while (oldState != newState && !state.compareAndSet(oldState, newState));
+
+        // Flagged after the swap, so a save that cleared the flag before it is followed by another save.
+        if (oldState != newState)
+        {
+            setNeedsToSync(true);
+
+            // Appended after queueing the account, so a checkpoint never drops a change that is not queued.
+            if (journal != null)
+            {
+                journal.append(sequence, discordId, newState);
+            }
+
+            if (manager != null && oldState.getBalanceUnits() != newState.getBalanceUnits())
+            {
+                manager.getLeaderboard().refresh(this);
+            }
+        }
+
+        return newState;
+    }
+
+    /**
+     * Replaces the state with one read from the account store, without flagging the account to sync.
+     */
+    final void loadState(@NonNull final AccountState loadedState)
+    {
+        state.set(loadedState);
+    }
+
+    /**
+     * Replaces the state with one recovered from the journal, flagging the account to be saved.
+     */
+    final void restoreState(@NonNull final AccountState restoredState)
+    {
+        state.set(restoredState);
+        setNeedsToSync(true);
+
+        if (accountManager != null)
+        {
+            accountManager.getLeaderboard().refresh(this);
+        }
+    }
+
+    /**
+     * @return The unmodifiable permissions of the account.
+     */
+    public final Set<String> getPermissions()
+    {
+        return state.get().getPermissions();
+    }
+
     /**
      * @return True if the account has at least 1 permission.
      */
     public final boolean hasPermissions()
     {
-        return !permissions.isEmpty();
+        return !getPermissions().isEmpty();
     }
 
     public final boolean hasPermission(@NonNull final String permission)
     {
-        return permissions.contains(permission.toLowerCase(Locale.ROOT));
+        return hasPermission(PermissionRegistry.getInstance().find(permission));
     }
 
-    public final void addPermission(@NonNull final String permission)
+    /**
+     * @return True if the account has the permission id of the permission registry, checked without allocating.
+     */
+    public final boolean hasPermission(final int permissionId)
     {
-        if (permission.isBlank() || hasPermission(permission))
-        {
-            return;
-        }
+        return state.get().hasPermission(permissionId);
+    }
 
-        this.permissions.add(permission.toLowerCase(Locale.ROOT));
-        this.needsToSync = true;
+    public final void addPermission(@NonNull final String permission)
+    {
+        update((accountState) -> accountState.withPermission(permission));
     }
 
     public final void removePermission(@NonNull final String permission)
     {
-        if (permission.isBlank() || !hasPermission(permission))
-        {
-            return;
-        }
-
-        permissions.remove(permission.toLowerCase(Locale.ROOT));
-        this.needsToSync = true;
+        update((accountState) -> accountState.withoutPermission(permission));
     }
 
     /**
@@ -184,13 +387,7 @@ public class Account
      */
     public final void clearPermissions()
     {
-        if (permissions.isEmpty())
-        {
-            return;
-        }
-
-        permissions.clear();
-        this.needsToSync = true;
+        update((accountState) -> accountState.withPermissions(Set.of()));
     }
 
     /**
@@ -198,12 +395,25 @@ public class Account
      */
     void loadPermissions(@NonNull final String permissionData)
     {
-        permissions.clear();
+        loadPermissions(Set.of(), permissionData);
+    }
+
+    /**
+     * Loads permissions from the rows of the permissions table and the SQL column string of an unmigrated row.
+     */
+    void loadPermissions(@NonNull final Set<String> storedPermissions, @NonNull final String permissionData)
+    {
+        final Set<String> loadedPermissions = new HashSet<>(storedPermissions);
 
         if (!permissionData.isBlank())
         {
-            permissions.addAll(Arrays.asList(permissionData.split(",")));
+            loadedPermissions.addAll(Arrays.asList(permissionData.split(",")));
         }
+
+        // Loaded data matches the database, so the account is not flagged to sync.
+        state.updateAndGet((accountState) -> accountState.withPermissions(loadedPermissions));
+        // Column data is not in the table yet, so the rows have to be written again on the next save.
+        savedPermissions = permissionData.isBlank() ? new HashSet<>(storedPermissions) : null;
     }
 
     /**
@@ -211,24 +421,15 @@ public class Account
      */
     final String getPermissionData()
     {
-        if (permissions.isEmpty())
-        {
-            return "''";
-        }
-
-        final StringBuilder stringBuilder = new StringBuilder("'");
-
-        permissions.forEach((permission) ->
-        {
-            if (stringBuilder.length() != 1)
-            {
-                stringBuilder.append(",");
-            }
-
-            stringBuilder.append(permission.toLowerCase(Locale.ROOT));
-        });
+        return String.join(",", getPermissions());
+    }
 
-        return stringBuilder.append("'").toString();
+    /**
+     * @return The unmodifiable role ids of the account, read by index without boxing.
+     */
+    public final RoleSet getRoles()
+    {
+        return state.get().getRoles();
     }
 
     /**
@@ -236,12 +437,12 @@ public class Account
      */
     public final boolean hasRoles()
     {
-        return !roles.isEmpty();
+        return !getRoles().isEmpty();
     }
 
     public final boolean hasRole(final long roleId)
     {
-        return roles.contains(roleId);
+        return getRoles().contains(roleId);
     }
 
     public final boolean hasRole(@NonNull final Role role)
@@ -251,13 +452,7 @@ public class Account
 
     public final void addRole(final long roleId)
     {
-        if (hasRole(roleId))
-        {
-            return;
-        }
-
-        this.roles.add(roleId);
-        this.needsToSync = true;
+        update((accountState) -> accountState.withRole(roleId));
     }
 
     public final void addRole(@NonNull final Role role)
@@ -267,13 +462,7 @@ public class Account
 
     public final void removeRole(final long roleId)
     {
-        if (!hasRole(roleId))
-        {
-            return;
-        }
-
-        this.roles.remove(roleId);
-        this.needsToSync = true;
+        update((accountState) -> accountState.withoutRole(roleId));
     }
 
     public final void removeRole(@NonNull final Role role)
@@ -286,13 +475,7 @@ public class Account
      */
     public final void clearRoles()
     {
-        if (roles.isEmpty())
-        {
-            return;
-        }
-
-        roles.clear();
-        this.needsToSync = true;
+        update((accountState) -> accountState.withRoles(Set.of()));
     }
 
     /**
@@ -312,19 +495,14 @@ public class Account
             return false;
         }
 
-        final Set<Long> newRoles = new HashSet<>();
-
-        for (final Role role : member.getRoles())
-        {
-            newRoles.add(role.getIdLong());
-        }
+        final List<Role> memberRoles = member.getRoles();
 
-        if (!newRoles.equals(roles))
+        // Roles rarely change between syncs, so the roles are only copied once they differ.
+        if (!getRoles().matches(memberRoles, Role::getIdLong))
         {
-            roles.clear();
-            roles.addAll(newRoles);
+            final RoleSet newRoles = RoleSet.of(memberRoles, Role::getIdLong);
 
-            this.needsToSync = true;
+            update((accountState) -> accountState.withRoles(newRoles));
         }
 
         return true;
@@ -357,9 +535,11 @@ public class Account
 
         final Set<Role> newRoles = new HashSet<>();
 
-        for (final long roleId : roles)
+        final RoleSet roles = getRoles();
+
+        for (int i = 0; i < roles.size(); i++)
         {
-            final Role role = guild.getRoleById(roleId);
+            final Role role = guild.getRoleById(roles.getRoleId(i));
 
             if (role == null)
             {
@@ -387,15 +567,45 @@ public class Account
      */
     void loadRoles(@NonNull final String roleData)
     {
-        roles.clear();
+        loadRoles(Set.of(), roleData);
+    }
+
+    /**
+     * Loads roles from the rows of the roles table and the SQL column string of an unmigrated row.
+     */
+    void loadRoles(@NonNull final Set<Long> storedRoles, @NonNull final String roleData)
+    {
+        final Set<Long> loadedRoles = new HashSet<>(storedRoles);
 
         if (!roleData.isBlank())
         {
             for (final String role : roleData.split(","))
             {
-                roles.add(Long.parseLong(role));
+                loadedRoles.add(Long.parseLong(role));
             }
         }
+
+        // Loaded data matches the database, so the account is not flagged to sync.
+        state.updateAndGet((accountState) -> accountState.withRoles(loadedRoles));
+        // Column data is not in the table yet, so the rows have to be written again on the next save.
+        savedRoles = roleData.isBlank() ? new HashSet<>(storedRoles) : null;
+    }
+
+    /**
+     * Loads the balance in minor units read from the database, without flagging the account to sync.
+     */
+    void loadBalanceUnits(final long units)
+    {
+        state.updateAndGet((accountState) -> accountState.withBalanceUnits(units));
+    }
+
+    /**
+     * Records the permissions and roles just written to the database, so the next save only writes the changes.
+     */
+    final void setSavedState(@Nullable final Set<String> savedPermissions, @Nullable final Set<Long> savedRoles)
+    {
+        this.savedPermissions = savedPermissions;
+        this.savedRoles = savedRoles;
     }
 
     /**
@@ -403,62 +613,107 @@ public class Account
      */
     final String getRoleData()
     {
-        if (roles.isEmpty())
+        final StringJoiner stringJoiner = new StringJoiner(",");
+
+        final RoleSet roles = getRoles();
+
+        for (int i = 0; i < roles.size(); i++)
         {
-            return "''";
+            stringJoiner.add(String.valueOf(roles.getRoleId(i)));
         }
 
-        final StringBuilder stringBuilder = new StringBuilder("'");
+        return stringJoiner.toString();
+    }
 
-        roles.forEach((roleId) ->
-        {
-            if (stringBuilder.length() != 1)
-            {
-                stringBuilder.append(",");
-            }
+    /**
+     * @return The balance in minor units.
+     */
+    public final long getBalanceUnits()
+    {
+        return state.get().getBalanceUnits();
+    }
 
-            stringBuilder.append(roleId);
-        });
+    /**
+     * @return The balance in dollars, for display and callers that work in dollars.
+     */
+    public final double getBalance()
+    {
+        return Money.toDollars(getBalanceUnits());
+    }
 
-        return stringBuilder.append("'").toString();
+    /**
+     * Sets the balance in minor units, floored at 0.
+     */
+    public final void setBalanceUnits(final long units)
+    {
+        update((accountState) -> accountState.withBalanceUnits(units));
     }
 
     public final void setBalance(final double balance)
     {
-        if (this.balance == balance)
-        {
-            return;
-        }
+        setBalanceUnits(Money.toUnits(balance));
+    }
 
-        // Balance cannot be less than 0.
-        this.balance = Math.max(0, balance);
-        this.needsToSync = true;
+    /**
+     * Adds minor units to the balance, removing them if negative, without letting the balance fall under 0.
+     *
+     * @return The new balance in minor units.
+     *
+     * @throws ArithmeticException If the balance would overflow, leaving it unchanged.
+     */
+    public final long addBalanceUnits(final long units)
+    {
+        return update((accountState) ->
+                accountState.withBalanceUnits(Math.addExact(accountState.getBalanceUnits(), units))).getBalanceUnits();
     }
 
     public final void addBalance(final double balance)
     {
-        final double oldBalance = this.balance;
-
-        // Balance cannot be less than 0.
-        this.balance = Math.max(0, this.balance + balance);
+        addBalanceUnits(Money.toUnits(balance));
+    }
 
-        if (oldBalance != this.balance)
-        {
-            this.needsToSync = true;
-        }
+    /**
+     * Removes minor units from the balance, flooring it at 0 if it does not hold enough.
+     *
+     * @return The new balance in minor units.
+     *
+     * @throws ArithmeticException If the balance would overflow, leaving it unchanged.
+     */
+    public final long removeBalanceUnits(final long units)
+    {
+        return update((accountState) ->
+                accountState.withBalanceUnits(Math.subtractExact(accountState.getBalanceUnits(), units)))
+                .getBalanceUnits();
     }
 
     public final void removeBalance(final double balance)
     {
-        final double oldBalance = this.balance;
-
-        // Balance cannot be less than 0.
-        this.balance = Math.max(0, this.balance - balance);
+        removeBalanceUnits(Money.toUnits(balance));
+    }
 
-        if (oldBalance != this.balance)
+    /**
+     * Removes minor units from the balance only if it holds all of them.
+     *
+     * @return True if the units were removed, false if the balance was too low and left unchanged.
+     */
+    public final boolean tryRemoveBalanceUnits(final long units)
+    {
+        if (units < 0L)
         {
-            this.needsToSync = true;
+            throw new IllegalArgumentException("Units to remove cannot be negative: " + units);
         }
+
+        // Set by the last run of the change, which is the one that was applied.
+        final boolean[] removed = new boolean[1];
+
+        update((accountState) ->
+        {
+            removed[0] = accountState.getBalanceUnits() >= units;
+
+            return removed[0] ? accountState.withBalanceUnits(accountState.getBalanceUnits() - units) : accountState;
+        });
+
+        return removed[0];
     }
 
     /**
@@ -466,13 +721,7 @@ public class Account
      */
     public final void resetBalance()
     {
-        if (this.balance == 0.0)
-        {
-            return;
-        }
-
-        this.balance = 0.0;
-        this.needsToSync = true;
+        setBalanceUnits(0L);
     }
 
     @Override
@@ -0,0 +1,448 @@
+package com.sylink.util.account;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Class that holds accounts in memory, optionally capped to a maximum amount of accounts.
+ * Capped caches evict with a W-TinyLFU policy: new accounts enter a small LRU window, and an account leaving the
+ * window only replaces the least recently used account of the main space if it has been accessed more often.
+ */
+public final class AccountCache
+{
+
+    // Percentage of the maximum size given to the admission window.
+    private static final double WINDOW_PERCENTAGE = 0.01;
+    // Percentage of the main space given to the protected segment.
+    private static final double PROTECTED_PERCENTAGE = 0.8;
+
+    // Map that stores the Discord Id associated with its account.
+    private final Map<Long, Account> accounts = new ConcurrentHashMap<>();
+    // Lock guarding the eviction policy.
+    private final ReentrantLock policyLock = new ReentrantLock();
+    // LRU ordered accounts that were recently added to the cache.
+    private final LinkedHashMap<Long, Account> window = new LinkedHashMap<>();
+    // LRU ordered accounts in the main space that have been accessed once since leaving the window.
+    private final LinkedHashMap<Long, Account> probation = new LinkedHashMap<>();
+    // LRU ordered accounts in the main space that have been accessed more than once.
+    private final LinkedHashMap<Long, Account> protectedSegment = new LinkedHashMap<>();
+    // Sketch estimating how often each account was accessed.
+    private FrequencySketch sketch = null;
+
+    // The maximum amount of accounts held in memory, or 0 if there is no maximum.
+    @Getter(AccessLevel.PUBLIC)
+    private volatile int maximumSize = 0;
+    // The maximum amount of accounts in the admission window.
+    private int windowMaximum = 0;
+    // The maximum amount of accounts in the protected segment.
+    private int protectedMaximum = 0;
+
+    // The amount of lookups that found an account.
+    private final AtomicLong hits = new AtomicLong();
+    // The amount of lookups that did not find an account.
+    private final AtomicLong misses = new AtomicLong();
+    // The amount of accounts evicted to stay under the maximum size.
+    private final AtomicLong evictions = new AtomicLong();
+
+    public AccountCache(final int maximumSize)
+    {
+        resize(maximumSize);
+    }
+
+    /**
+     * @return True if the cache has a maximum size.
+     */
+    public boolean isBounded()
+    {
+        return maximumSize > 0;
+    }
+
+    /**
+     * Changes the maximum amount of accounts held in the cache.
+     *
+     * @param maximumSize The new maximum size, or 0 for no maximum.
+     *
+     * @return The accounts evicted to fit the new maximum size.
+     */
+    List<Account> resize(final int maximumSize)
+    {
+        policyLock.lock();
+
+        try
+        {
+            this.maximumSize = Math.max(0, maximumSize);
+            window.clear();
+            probation.clear();
+            protectedSegment.clear();
+
+            if (!isBounded())
+            {
+                sketch = null;
+                return List.of();
+            }
+
+            windowMaximum = Math.max(1, (int) (this.maximumSize * WINDOW_PERCENTAGE));
+            protectedMaximum = (int) ((this.maximumSize - windowMaximum) * PROTECTED_PERCENTAGE);
+            sketch = new FrequencySketch(this.maximumSize);
+
+            // The previous access order is unknown, so every held account starts on probation.
+            for (final Account account : accounts.values())
+            {
+                probation.put(account.getDiscordId(), account);
+            }
+
+            return evictOverflow(List.of());
+        }
+        finally
+        {
+            policyLock.unlock();
+        }
+    }
+
+    /**
+     * @return The account with the given discord id or null if it is not held in the cache.
+     */
+    Account get(final long discordId)
+    {
+        final Account account = accounts.get(discordId);
+
+        if (account == null)
+        {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+
+        // Reordering is skipped under contention, losing a little precision instead of blocking readers.
+        if (isBounded() && policyLock.tryLock())
+        {
+            try
+            {
+                onAccess(discordId, account);
+            }
+            finally
+            {
+                policyLock.unlock();
+            }
+        }
+
+        return account;
+    }
+
+    /**
+     * @return The account with the given discord id without counting it as an access, or null if it is not held.
+     */
+    Account peek(final long discordId)
+    {
+        return accounts.get(discordId);
+    }
+
+    /**
+     * @return True if an account with the given discord id is held in the cache.
+     */
+    boolean containsKey(final long discordId)
+    {
+        return accounts.containsKey(discordId);
+    }
+
+    /**
+     * @return A live view of every account held in the cache.
+     */
+    Collection<Account> values()
+    {
+        return accounts.values();
+    }
+
+    /**
+     * @return The amount of accounts held in the cache.
+     */
+    public int size()
+    {
+        return accounts.size();
+    }
+
+    /**
+     * Adds an account to the cache, replacing any account with the same discord id.
+     *
+     * @return The accounts evicted to stay under the maximum size.
+     */
+    List<Account> put(@NonNull final Account account)
+    {
+        final long discordId = account.getDiscordId();
+
+        if (!isBounded())
+        {
+            accounts.put(discordId, account);
+            return List.of();
+        }
+
+        // The map is only changed while holding the lock so it never disagrees with the policy.
+        policyLock.lock();
+
+        try
+        {
+            if (accounts.put(discordId, account) != null)
+            {
+                removeFromPolicy(discordId);
+            }
+
+            sketch.increment(discordId);
+            window.put(discordId, account);
+
+            return evictOverflow(moveWindowOverflow());
+        }
+        finally
+        {
+            policyLock.unlock();
+        }
+    }
+
+    /**
+     * Removes the account with the given discord id from the cache.
+     */
+    void remove(final long discordId)
+    {
+        if (!isBounded())
+        {
+            accounts.remove(discordId);
+            return;
+        }
+
+        policyLock.lock();
+
+        try
+        {
+            if (accounts.remove(discordId) != null)
+            {
+                removeFromPolicy(discordId);
+            }
+        }
+        finally
+        {
+            policyLock.unlock();
+        }
+    }
+
+    /**
+     * Removes the account from the cache only if it is the account held for its discord id.
+     *
+     * @return True if the account was removed.
+     */
+    boolean remove(final long discordId, @NonNull final Account account)
+    {
+        if (!isBounded())
+        {
+            return accounts.remove(discordId, account);
+        }
+
+        policyLock.lock();
+
+        try
+        {
+            if (!accounts.remove(discordId, account))
+            {
+                return false;
+            }
+
+            removeFromPolicy(discordId);
+            return true;
+        }
+        finally
+        {
+            policyLock.unlock();
+        }
+    }
+
+    /**
+     * Records an access of a held account and moves it to the most recently used position of its segment.
+     * Accounts accessed while on probation are promoted to the protected segment.
+     */
+    private void onAccess(final long discordId, @NonNull final Account account)
+    {
+        sketch.increment(discordId);
+
+        if (window.remove(discordId) != null)
+        {
+            window.put(discordId, account);
+        }
+        else if (probation.remove(discordId) != null || protectedSegment.remove(discordId) != null)
+        {
+            protectedSegment.put(discordId, account);
+
+            // Protected accounts over capacity fall back to probation instead of being evicted.
+            while (protectedSegment.size() > protectedMaximum)
+            {
+                final Map.Entry<Long, Account> eldest = pollFirst(protectedSegment);
+
+                probation.put(eldest.getKey(), eldest.getValue());
+            }
+        }
+    }
+
+    /**
+     * Moves the least recently used accounts out of the admission window and on to probation.
+     *
+     * @return The accounts that left the window and are candidates for admission to the main space.
+     */
+    private List<Account> moveWindowOverflow()
+    {
+        if (window.size() <= windowMaximum)
+        {
+            return List.of();
+        }
+
+        final List<Account> candidates = new ArrayList<>(1);
+
+        while (window.size() > windowMaximum)
+        {
+            final Map.Entry<Long, Account> eldest = pollFirst(window);
+
+            probation.put(eldest.getKey(), eldest.getValue());
+            candidates.add(eldest.getValue());
+        }
+
+        return candidates;
+    }
+
+    /**
+     * Evicts accounts until the cache is under its maximum size.
+     * Each candidate that just left the window competes against the least recently used probation account, and
+     * whichever of the two has been accessed less often is evicted.
+     *
+     * @return The evicted accounts.
+     */
+    private List<Account> evictOverflow(@NonNull final List<Account> candidates)
+    {
+        if (policySize() <= maximumSize)
+        {
+            return List.of();
+        }
+
+        final List<Account> evicted = new ArrayList<>(1);
+        final Iterator<Account> candidateIterator = candidates.iterator();
+
+        while (policySize() > maximumSize)
+        {
+            final Account candidate = candidateIterator.hasNext() ? candidateIterator.next() : null;
+            final Account victim = eldestEvictable();
+
+            if (candidate == null || candidate == victim || !probation.containsKey(candidate.getDiscordId()))
+            {
+                evict(victim, evicted);
+            }
+            else if (sketch.frequency(candidate.getDiscordId()) > sketch.frequency(victim.getDiscordId()))
+            {
+                evict(victim, evicted);
+            }
+            else
+            {
+                evict(candidate, evicted);
+            }
+        }
+
+        return evicted;
+    }
+
+    /**
+     * @return The least recently used account of the first non empty segment, preferring probation.
+     */
+    private Account eldestEvictable()
+    {
+        for (final LinkedHashMap<Long, Account> segment : List.of(probation, protectedSegment, window))
+        {
+            if (!segment.isEmpty())
+            {
+                return segment.values().iterator().next();
+            }
+        }
+
+        throw new IllegalStateException("No account left to evict");
+    }
+
+    /**
+     * Removes an account from the cache as an eviction.
+     */
+    private void evict(@NonNull final Account account, @NonNull final List<Account> evicted)
+    {
+        final long discordId = account.getDiscordId();
+
+        removeFromPolicy(discordId);
+        accounts.remove(discordId, account);
+        evictions.incrementAndGet();
+        evicted.add(account);
+    }
+
+    /**
+     * @return The amount of accounts tracked by the eviction policy.
+     */
+    private int policySize()
+    {
+        return window.size() + probation.size() + protectedSegment.size();
+    }
+
+    /**
+     * Removes a discord id from every eviction policy segment.
+     */
+    private void removeFromPolicy(final long discordId)
+    {
+        if (window.remove(discordId) == null && probation.remove(discordId) == null)
+        {
+            protectedSegment.remove(discordId);
+        }
+    }
+
+    /**
+     * Removes and returns the least recently used entry of a segment.
+     */
+    private static Map.Entry<Long, Account> pollFirst(@NonNull final LinkedHashMap<Long, Account> segment)
+    {
+        final Iterator<Map.Entry<Long, Account>> iterator = segment.entrySet().iterator();
+        final Map.Entry<Long, Account> eldest = iterator.next();
+
+        iterator.remove();
+
+        return Map.entry(eldest.getKey(), eldest.getValue());
+    }
+
+    /**
+     * @return The amount of lookups that found an account.
+     */
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    /**
+     * @return The amount of lookups that did not find an account.
+     */
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    /**
+     * @return The amount of accounts evicted to stay under the maximum size.
+     */
+    public long getEvictions()
+    {
+        return evictions.get();
+    }
+
+    /**
+     * @return The percentage of lookups that found an account.
+     */
+    public double getHitRate()
+    {
+        final long lookups = hits.get() + misses.get();
+
+        return (lookups == 0) ? 0.0 : 100.0 * hits.get() / lookups;
+    }
+
+}
@@ -0,0 +1,268 @@
+package com.sylink.util.account;
+
+import com.sylink.KodeKitten;
+import com.sylink.util.config.MessageConfig;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class that collects changed accounts and writes them to the database in batched transactions.
+ */
+public final class AccountFlusher
+{
+
+    // The account manager that writes flushed accounts to the database.
+    private final AccountManager accountManager;
+    // Map that stores each changed account waiting to be flushed by its discord id.
+    private final Map<Long, Account> dirtyAccounts = new ConcurrentHashMap<>();
+    // Queue of discord ids in the order their accounts were changed.
+    private final Queue<Long> flushOrder = new ConcurrentLinkedQueue<>();
+
+    // The maximum amount of accounts written to the database in one transaction.
+    @Getter(AccessLevel.PUBLIC)
+    @Setter(AccessLevel.PUBLIC)
+    private int batchSize = 250;
+    // The maximum amount of milliseconds a changed account waits before it is flushed.
+    @Getter(AccessLevel.PUBLIC)
+    @Setter(AccessLevel.PUBLIC)
+    private long flushInterval = 5000L;
+    // The last time all waiting accounts were flushed.
+    @Getter(AccessLevel.PUBLIC)
+    private volatile long lastFlushTime = System.currentTimeMillis();
+    // The time the flusher started collecting statistics.
+    private final long startTime = System.currentTimeMillis();
+
+    // The total amount of accounts written to the database.
+    private final AtomicLong flushedAccounts = new AtomicLong();
+    // The total amount of batches written to the database.
+    private final AtomicLong flushedBatches = new AtomicLong();
+    // The total amount of batches that failed to be written to the database.
+    private final AtomicLong failedBatches = new AtomicLong();
+    // The amount of accounts written in the most recent batch.
+    @Getter(AccessLevel.PUBLIC)
+    private volatile int lastBatchSize = 0;
+
+    AccountFlusher(@NonNull final AccountManager accountManager)
+    {
+        this.accountManager = accountManager;
+    }
+
+    /**
+     * Queues a changed account to be flushed to the database.
+     * Queueing an account that is already waiting does nothing.
+     */
+    void enqueue(@NonNull final Account account)
+    {
+        if (dirtyAccounts.put(account.getDiscordId(), account) == null)
+        {
+            flushOrder.add(account.getDiscordId());
+        }
+    }
+
+    /**
+     * Stops a waiting account from being flushed, used when the account is deleted.
+     */
+    void discard(final long discordId)
+    {
+        dirtyAccounts.remove(discordId);
+    }
+
+    /**
+     * @return The account waiting to be flushed with the given discord id, or null if it is not waiting.
+     */
+    Account getPending(final long discordId)
+    {
+        return dirtyAccounts.get(discordId);
+    }
+
+    /**
+     * @return The accounts waiting to be flushed.
+     */
+    Collection<Account> getPendingAccounts()
+    {
+        return dirtyAccounts.values();
+    }
+
+    /**
+     * @return The amount of accounts waiting to be flushed.
+     */
+    public int getQueueDepth()
+    {
+        return dirtyAccounts.size();
+    }
+
+    /**
+     * Flushes waiting accounts if a full batch is waiting or the flush interval has passed.
+     * Ran continuously by the scheduler.
+     */
+    public void tick()
+    {
+        if (System.currentTimeMillis() - lastFlushTime >= flushInterval)
+        {
+            flushAll();
+            return;
+        }
+
+        while (getQueueDepth() >= batchSize)
+        {
+            if (flushBatch() == 0)
+            {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Flushes every waiting account to the database.
+     *
+     * @return True if every waiting account was flushed.
+     */
+    public boolean flushAll()
+    {
+        lastFlushTime = System.currentTimeMillis();
+
+        // Every change in the journal segments closed here is already queued, so they are not needed once flushed.
+        final AccountJournal journal = accountManager.getJournal();
+        final long checkpoint = journal.checkpoint();
+        final boolean flushed = flushQueued();
+
+        // Stores that lose their accounts keep the journal until they are exported to the database.
+        if (flushed && checkpoint >= 0L && accountManager.getStore().isPersistent())
+        {
+            try
+            {
+                // Accounts saved to the mapped account store are only in the page cache until it is forced.
+                accountManager.getMappedStore().force();
+                journal.deleteSegmentsUpTo(checkpoint);
+            }
+            catch (final IOException exception)
+            {
+                KodeKitten.logSevere(MessageConfig.getInstance().getInternal("cant_force_mapped_store"));
+                exception.printStackTrace();
+            }
+        }
+
+        return flushed;
+    }
+
+    /**
+     * Flushes the accounts waiting when called.
+     *
+     * @return True if every account that was waiting was flushed.
+     */
+    private boolean flushQueued()
+    {
+        // Accounts changed while flushing are left for the next flush so this cannot run forever.
+        int remaining = getQueueDepth();
+
+        while (remaining > 0)
+        {
+            final int flushed = flushBatch();
+
+            if (flushed == 0)
+            {
+                return getQueueDepth() == 0;
+            }
+
+            remaining -= flushed;
+        }
+
+        return true;
+    }
+
+    /**
+     * Writes up to a single batch of waiting accounts to the database in one transaction.
+     * Accounts that fail to save are queued again.
+     *
+     * @return The amount of accounts taken from the queue.
+     */
+    synchronized int flushBatch()
+    {
+        final List<Account> batch = new ArrayList<>(Math.min(batchSize, getQueueDepth()));
+
+        while (batch.size() < batchSize)
+        {
+            final Long discordId = flushOrder.poll();
+
+            if (discordId == null)
+            {
+                break;
+            }
+
+            final Account account = dirtyAccounts.remove(discordId);
+
+            // The account was discarded or already saved elsewhere.
+            if (account == null || (account.isPersisted() && !account.needsToSync()))
+            {
+                continue;
+            }
+
+            batch.add(account);
+        }
+
+        if (batch.isEmpty())
+        {
+            return 0;
+        }
+
+        if (!accountManager.saveToDatabase(batch))
+        {
+            failedBatches.incrementAndGet();
+            batch.forEach(this::enqueue);
+            return 0;
+        }
+
+        flushedAccounts.addAndGet(batch.size());
+        flushedBatches.incrementAndGet();
+        lastBatchSize = batch.size();
+
+        return batch.size();
+    }
+
+    /**
+     * @return The total amount of accounts written to the database.
+     */
+    public long getFlushedAccounts()
+    {
+        return flushedAccounts.get();
+    }
+
+    /**
+     * @return The total amount of batches written to the database.
+     */
+    public long getFlushedBatches()
+    {
+        return flushedBatches.get();
+    }
+
+    /**
+     * @return The total amount of batches that failed to be written to the database.
+     */
+    public long getFailedBatches()
+    {
+        return failedBatches.get();
+    }
+
+    /**
+     * @return The average amount of accounts flushed per second since the flusher was created.
+     */
+    public double getThroughput()
+    {
+        final long seconds = Math.max(1L, (System.currentTimeMillis() - startTime) / 1000);
+
+        return (double) flushedAccounts.get() / seconds;
+    }
+
+}
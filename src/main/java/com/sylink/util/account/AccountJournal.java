@@ -0,0 +1,741 @@
+package com.sylink.util.account;
+
+import com.sylink.KodeKitten;
+import com.sylink.util.config.MessageConfig;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Append only journal of account changes, so changes made since the last flush survive the process being killed.
+ * Every change appends the new state of the account with a sequence number to an in memory buffer, which is written
+ * and synced to the current segment file by a background thread every sync interval. Flushing every waiting account
+ * is a checkpoint, after which the segments written before the flush are deleted.
+ */
+public final class AccountJournal
+{
+
+    /**
+     * The latest change of an account recovered from the journal.
+     */
+    static final class Entry
+    {
+
+        // The sequence number of the change.
+        @Getter(AccessLevel.PACKAGE)
+        private final long sequence;
+        @Getter(AccessLevel.PACKAGE)
+        private final long discordId;
+        // The state of the account after the change, or null if the account was deleted.
+        @Getter(AccessLevel.PACKAGE)
+        private final AccountState state;
+
+        Entry(final long sequence, final long discordId, @Nullable final AccountState state)
+        {
+            this.sequence = sequence;
+            this.discordId = discordId;
+            this.state = state;
+        }
+
+    }
+
+    // Type of a record holding the state of an account after a change.
+    private static final byte STATE_RECORD = 1;
+    // Type of a record of a deleted account.
+    private static final byte DELETE_RECORD = 2;
+    // The file name prefix of segment files, followed by the segment number.
+    private static final String SEGMENT_PREFIX = "journal-";
+    // The file name suffix of segment files.
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    // The amount of milliseconds between syncs of the journal to disk. 0 syncs every change before it returns.
+    @Getter(AccessLevel.PUBLIC)
+    @Setter(AccessLevel.PUBLIC)
+    private volatile long syncInterval = 100L;
+    // The directory holding the segment files, or null if the journal was never opened.
+    @Getter(AccessLevel.PUBLIC)
+    private volatile Path directory = null;
+    // Whether changes are being appended to the journal.
+    private volatile boolean open = false;
+    // The next sequence number given to a change.
+    private final AtomicLong nextSequence = new AtomicLong(1L);
+
+    // Held while encoding a record in to the pending buffer.
+    private final ReentrantLock appendLock = new ReentrantLock();
+    // Buffer a single record is encoded in before it is checksummed, guarded by the append lock.
+    private final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(256);
+    private final DataOutputStream recordOutput = new DataOutputStream(recordBytes);
+    // Records appended since the last sync, guarded by the append lock.
+    private final ByteArrayOutputStream pendingBytes = new ByteArrayOutputStream(64 * 1024);
+    private final DataOutputStream pendingOutput = new DataOutputStream(pendingBytes);
+    // Checksum of a single record, guarded by the append lock.
+    private final CRC32 checksum = new CRC32();
+
+    // Held while writing to or replacing the segment file.
+    private final Object fileLock = new Object();
+    // The segment file records are written to, guarded by the file lock.
+    private FileChannel channel = null;
+    // The number of the segment file records are written to, guarded by the file lock.
+    private long segment = 0L;
+    // Whether records were written to the current segment, guarded by the file lock.
+    private boolean segmentWritten = false;
+    // The size of the current segment after its last successful sync, guarded by the file lock.
+    private long syncedSize = 0L;
+    // Whether a failed sync left the current segment unusable, so a new one is opened before writing again.
+    private boolean segmentFailed = false;
+    // Thread syncing the journal every sync interval, or null if every change is synced when appended.
+    private Thread syncThread = null;
+
+    // The amount of records appended.
+    private final AtomicLong appendedRecords = new AtomicLong();
+    // The amount of bytes written to segment files.
+    private final AtomicLong writtenBytes = new AtomicLong();
+    // The amount of times the journal was synced to disk.
+    private final AtomicLong syncs = new AtomicLong();
+    // The amount of segment files deleted after a checkpoint.
+    private final AtomicLong deletedSegments = new AtomicLong();
+
+    /**
+     * Reads every segment in the directory without appending to the journal yet.
+     * Records after a torn or corrupt record at the end of a segment are ignored, as they were never synced.
+     *
+     * @return The latest change of each account, by discord id.
+     */
+    Map<Long, Entry> open(@NonNull final Path directory) throws IOException
+    {
+        final Map<Long, Entry> entries = new HashMap<>();
+        long maximumSequence = 0L;
+
+        Files.createDirectories(directory);
+
+        for (final long segmentNumber : listSegments(directory))
+        {
+            for (final Entry entry : readSegment(segmentFile(directory, segmentNumber)))
+            {
+                entries.merge(entry.getDiscordId(), entry,
+                        (oldEntry, newEntry) -> (newEntry.getSequence() > oldEntry.getSequence()) ? newEntry : oldEntry);
+                maximumSequence = Math.max(maximumSequence, entry.getSequence());
+            }
+
+            segment = Math.max(segment, segmentNumber);
+        }
+
+        this.directory = directory;
+        nextSequence.set(maximumSequence + 1L);
+
+        return entries;
+    }
+
+    /**
+     * Starts appending changes to a new segment.
+     *
+     * @param recovered True if the changes read by {@link #open(Path)} are saved, so their segments can be deleted.
+     */
+    void start(final boolean recovered) throws IOException
+    {
+        synchronized (fileLock)
+        {
+            if (recovered)
+            {
+                deleteSegmentsUpTo(segment);
+            }
+
+            openSegment(segment + 1L);
+        }
+
+        open = true;
+
+        if (syncInterval > 0L)
+        {
+            syncThread = new Thread(this::runSyncThread, "account-journal");
+            syncThread.setDaemon(true);
+            syncThread.start();
+        }
+    }
+
+    /**
+     * @return True if changes are being appended to the journal.
+     */
+    public boolean isOpen()
+    {
+        return open;
+    }
+
+    /**
+     * @return A new sequence number, taken before a change is applied so changes of an account are numbered in the
+     * order they were applied.
+     */
+    long nextSequence()
+    {
+        return nextSequence.getAndIncrement();
+    }
+
+    /**
+     * Appends the state of an account after a change.
+     */
+    void append(final long sequence, final long discordId, @NonNull final AccountState state)
+    {
+        if (!open)
+        {
+            return;
+        }
+
+        appendLock.lock();
+
+        try
+        {
+            recordOutput.writeByte(STATE_RECORD);
+            recordOutput.writeLong(sequence);
+            recordOutput.writeLong(discordId);
+            recordOutput.writeLong(state.getBalanceUnits());
+            recordOutput.writeInt(state.getPermissions().size());
+
+            for (final String permission : state.getPermissions())
+            {
+                recordOutput.writeUTF(permission);
+            }
+
+            recordOutput.writeInt(state.getRoles().size());
+
+            for (int i = 0; i < state.getRoles().size(); i++)
+            {
+                recordOutput.writeLong(state.getRoles().getRoleId(i));
+            }
+
+            commitRecord();
+        }
+        catch (final IOException exception)
+        {
+            // Only thrown by the streams for malformed strings, as they write to memory.
+            recordBytes.reset();
+            throw new UncheckedIOException(exception);
+        }
+        finally
+        {
+            appendLock.unlock();
+        }
+
+        syncIfUnbuffered();
+    }
+
+    /**
+     * Appends the deletion of an account.
+     */
+    void appendDelete(final long discordId)
+    {
+        if (!open)
+        {
+            return;
+        }
+
+        appendLock.lock();
+
+        try
+        {
+            recordOutput.writeByte(DELETE_RECORD);
+            recordOutput.writeLong(nextSequence());
+            recordOutput.writeLong(discordId);
+            commitRecord();
+        }
+        catch (final IOException exception)
+        {
+            recordBytes.reset();
+            throw new UncheckedIOException(exception);
+        }
+        finally
+        {
+            appendLock.unlock();
+        }
+
+        syncIfUnbuffered();
+    }
+
+    /**
+     * Moves the encoded record to the pending buffer behind its length and checksum. Has to hold the append lock.
+     */
+    private void commitRecord() throws IOException
+    {
+        checksum.reset();
+        checksum.update(recordBytes.toByteArray());
+        pendingOutput.writeInt(recordBytes.size());
+        pendingOutput.writeInt((int) checksum.getValue());
+        recordBytes.writeTo(pendingOutput);
+        recordBytes.reset();
+        appendedRecords.incrementAndGet();
+    }
+
+    /**
+     * Keeps the records appended by the current thread from being synced separately until
+     * {@link #unlockAppends()}, so a crash never recovers only part of a change spanning several accounts.
+     */
+    void lockAppends()
+    {
+        appendLock.lock();
+    }
+
+    /**
+     * Releases the lock taken by {@link #lockAppends()}.
+     */
+    void unlockAppends()
+    {
+        appendLock.unlock();
+        syncIfUnbuffered();
+    }
+
+    /**
+     * Syncs the appended records right away if the journal has no sync interval.
+     */
+    private void syncIfUnbuffered()
+    {
+        // Syncing while holding the append lock could deadlock with a checkpoint.
+        if (syncInterval <= 0L && !appendLock.isHeldByCurrentThread())
+        {
+            sync();
+        }
+    }
+
+    /**
+     * @return The records appended since the last sync, removed from the pending buffer.
+     */
+    private byte[] drainPending()
+    {
+        appendLock.lock();
+
+        try
+        {
+            final byte[] bytes = pendingBytes.toByteArray();
+
+            pendingBytes.reset();
+
+            return bytes;
+        }
+        finally
+        {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Puts records that could not be written back in front of the records appended since, so the next sync writes
+     * them again in order.
+     */
+    private void restorePending(@NonNull final byte[] bytes)
+    {
+        appendLock.lock();
+
+        try
+        {
+            final byte[] appendedBytes = pendingBytes.toByteArray();
+
+            pendingBytes.reset();
+            pendingBytes.write(bytes, 0, bytes.length);
+            pendingBytes.write(appendedBytes, 0, appendedBytes.length);
+        }
+        finally
+        {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Writes the appended records to the current segment and syncs it to disk.
+     * Records that fail to be written are kept to be written by the next sync, in a new segment, as a torn record
+     * would hide every record after it in the segment from a replay.
+     *
+     * @return True if the records were written.
+     */
+    public boolean sync()
+    {
+        synchronized (fileLock)
+        {
+            final byte[] bytes = drainPending();
+
+            if (bytes.length == 0 || channel == null)
+            {
+                return channel != null;
+            }
+
+            try
+            {
+                if (segmentFailed)
+                {
+                    openSegment(segment + 1L);
+                }
+
+                final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+
+                while (buffer.hasRemaining())
+                {
+                    channel.write(buffer);
+                }
+
+                channel.force(false);
+                syncedSize += bytes.length;
+                segmentWritten = true;
+                writtenBytes.addAndGet(bytes.length);
+                syncs.incrementAndGet();
+                return true;
+            }
+            catch (final IOException exception)
+            {
+                KodeKitten.logSevere(MessageConfig.getInstance().getInternal("cant_write_journal"));
+                exception.printStackTrace();
+                restorePending(bytes);
+                discardUnsyncedBytes();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Cuts the current segment back to its last successful sync and flags it to be replaced before the next write.
+     * Has to hold the file lock.
+     */
+    private void discardUnsyncedBytes()
+    {
+        segmentFailed = true;
+
+        try
+        {
+            if (channel.isOpen())
+            {
+                channel.truncate(syncedSize);
+            }
+        }
+        catch (final IOException exception)
+        {
+            // The torn bytes are left at the end of a segment that is never written again, where replays stop.
+            exception.printStackTrace();
+        }
+    }
+
+    /**
+     * Closes the current segment and starts a new one. Every change in the closed segments was queued to be flushed
+     * before this returns, so the segments can be deleted once the queued accounts are flushed.
+     *
+     * @return The number of the closed segment, or -1 if no changes were appended since the last checkpoint.
+     */
+    long checkpoint()
+    {
+        if (!open)
+        {
+            return -1L;
+        }
+
+        synchronized (fileLock)
+        {
+            if (!sync() || !segmentWritten)
+            {
+                return -1L;
+            }
+
+            final long closedSegment = segment;
+
+            try
+            {
+                openSegment(segment + 1L);
+            }
+            catch (final IOException exception)
+            {
+                KodeKitten.logSevere(MessageConfig.getInstance().getInternal("cant_write_journal"));
+                exception.printStackTrace();
+                return -1L;
+            }
+
+            return closedSegment;
+        }
+    }
+
+    /**
+     * Deletes every closed segment up to and including the given segment number.
+     */
+    void deleteSegmentsUpTo(final long lastSegment)
+    {
+        if (directory == null)
+        {
+            return;
+        }
+
+        try
+        {
+            for (final long segmentNumber : listSegments(directory))
+            {
+                if (segmentNumber <= lastSegment && segmentNumber != currentSegment())
+                {
+                    Files.deleteIfExists(segmentFile(directory, segmentNumber));
+                    deletedSegments.incrementAndGet();
+                }
+            }
+        }
+        catch (final IOException exception)
+        {
+            KodeKitten.logWarning(MessageConfig.getInstance().getInternal("cant_delete_journal"));
+            exception.printStackTrace();
+        }
+    }
+
+    /**
+     * @return The number of the segment records are written to.
+     */
+    private long currentSegment()
+    {
+        synchronized (fileLock)
+        {
+            return (channel == null) ? -1L : segment;
+        }
+    }
+
+    /**
+     * Closes the current segment, if any, and opens the segment with the given number. Has to hold the file lock.
+     */
+    private void openSegment(final long segmentNumber) throws IOException
+    {
+        if (channel != null)
+        {
+            channel.close();
+        }
+
+        channel = FileChannel.open(segmentFile(directory, segmentNumber), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        segment = segmentNumber;
+        segmentWritten = false;
+        segmentFailed = false;
+        syncedSize = channel.size();
+    }
+
+    /**
+     * Syncs the journal every sync interval until it is closed.
+     */
+    private void runSyncThread()
+    {
+        while (open)
+        {
+            // Parked instead of sleeping, as interrupting a thread writing to a file channel closes the channel.
+            LockSupport.parkNanos(syncInterval * 1_000_000L);
+            sync();
+        }
+    }
+
+    /**
+     * Stops appending changes and writes the appended records. Segments are kept until they are checkpointed.
+     */
+    public void close()
+    {
+        if (!open)
+        {
+            return;
+        }
+
+        open = false;
+
+        if (syncThread != null)
+        {
+            LockSupport.unpark(syncThread);
+
+            try
+            {
+                syncThread.join();
+            }
+            catch (final InterruptedException exception)
+            {
+                Thread.currentThread().interrupt();
+            }
+
+            syncThread = null;
+        }
+
+        synchronized (fileLock)
+        {
+            sync();
+
+            try
+            {
+                channel.close();
+            }
+            catch (final IOException exception)
+            {
+                exception.printStackTrace();
+            }
+
+            channel = null;
+
+            // An empty segment holds nothing to recover.
+            if (!segmentWritten)
+            {
+                try
+                {
+                    Files.deleteIfExists(segmentFile(directory, segment));
+                }
+                catch (final IOException exception)
+                {
+                    exception.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The numbers of the segment files in the directory, in ascending order.
+     */
+    private static List<Long> listSegments(@NonNull final Path directory) throws IOException
+    {
+        final List<Long> segmentNumbers = new ArrayList<>();
+
+        try (final DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX))
+        {
+            for (final Path file : files)
+            {
+                final String name = file.getFileName().toString();
+
+                try
+                {
+                    segmentNumbers.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length())));
+                }
+                catch (final NumberFormatException ignored)
+                {
+                    // Not a segment written by the journal.
+                }
+            }
+        }
+
+        Collections.sort(segmentNumbers);
+
+        return segmentNumbers;
+    }
+
+    private static Path segmentFile(@NonNull final Path directory, final long segmentNumber)
+    {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, segmentNumber, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * @return The records of a segment, stopping at the first torn or corrupt record.
+     */
+    private static List<Entry> readSegment(@NonNull final Path file) throws IOException
+    {
+        final List<Entry> entries = new ArrayList<>();
+        final CRC32 recordChecksum = new CRC32();
+
+        try (final DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file))))
+        {
+            while (true)
+            {
+                final byte[] record;
+                final int expectedChecksum;
+
+                try
+                {
+                    final int length = input.readInt();
+
+                    expectedChecksum = input.readInt();
+
+                    if (length <= 0 || length > 16 * 1024 * 1024)
+                    {
+                        break;
+                    }
+
+                    record = new byte[length];
+                    input.readFully(record);
+                }
+                catch (final EOFException exception)
+                {
+                    break;
+                }
+
+                recordChecksum.reset();
+                recordChecksum.update(record);
+
+                if ((int) recordChecksum.getValue() != expectedChecksum)
+                {
+                    break;
+                }
+
+                entries.add(decodeRecord(new DataInputStream(new ByteArrayInputStream(record))));
+            }
+        }
+
+        return entries;
+    }
+
+    /**
+     * @return The change encoded in a record.
+     */
+    private static Entry decodeRecord(@NonNull final DataInputStream record) throws IOException
+    {
+        final byte type = record.readByte();
+        final long sequence = record.readLong();
+        final long discordId = record.readLong();
+
+        if (type == DELETE_RECORD)
+        {
+            return new Entry(sequence, discordId, null);
+        }
+
+        final long balanceUnits = record.readLong();
+        final Set<String> permissions = new HashSet<>();
+        final Set<Long> roles = new HashSet<>();
+
+        for (int i = record.readInt(); i > 0; i--)
+        {
+            permissions.add(record.readUTF());
+        }
+
+        for (int i = record.readInt(); i > 0; i--)
+        {
+            roles.add(record.readLong());
+        }
+
+        return new Entry(sequence, discordId,
+                AccountState.EMPTY.withPermissions(permissions).withRoles(roles).withBalanceUnits(balanceUnits));
+    }
+
+    /**
+     * @return The amount of records appended.
+     */
+    public long getAppendedRecords()
+    {
+        return appendedRecords.get();
+    }
+
+    /**
+     * @return The amount of bytes written to segment files.
+     */
+    public long getWrittenBytes()
+    {
+        return writtenBytes.get();
+    }
+
+    /**
+     * @return The amount of times the journal was synced to disk.
+     */
+    public long getSyncs()
+    {
+        return syncs.get();
+    }
+
+    /**
+     * @return The amount of segment files deleted after a checkpoint.
+     */
+    public long getDeletedSegments()
+    {
+        return deletedSegments.get();
+    }
+
+}
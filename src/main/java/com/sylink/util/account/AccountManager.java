@@ -1,6 +1,7 @@
 package com.sylink.util.account;
 
 import com.sylink.KodeKitten;
+import com.sylink.util.config.MainConfig;
 import com.sylink.util.config.MessageConfig;
 import lombok.AccessLevel;
 import lombok.Getter;
@@ -8,9 +9,29 @@ import lombok.NonNull;
 import lombok.Setter;
 
 import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 /**
  * Singleton class that handles the management of Accounts stored and processed in memory.
@@ -20,45 +41,6 @@ public final class AccountManager
 
     // JDBC URL to the accounts database.
     private final static String DATABASE_URL = "jdbc:sqlite:database.db";
-    // The statement used to create a new table if one does not exist.
-    private final static String SQL_TABLE = """
-            CREATE TABLE IF NOT EXISTS accounts
-            (
-                id BIGINT NOT NULL UNIQUE,
-                permissions TEXT NOT NULL DEFAULT '',
-                roles TEXT NOT NULL DEFAULT '',
-                balance DOUBLE NOT NULL DEFAULT 0.0
-            );
-            """;
-    // The SQL query used to test whether an account exists in the database.
-    private static final String SQL_EXISTS_QUERY = "SELECT id FROM accounts WHERE id=%d";
-    // The SQL query used to insert new account data in to the database.
-    private static final String SQL_INSERT_QUERY = """
-            INSERT INTO accounts
-            (id,permissions,roles,balance)
-            VALUES(%s,%s,%s,%g)
-            """;
-    // The SQL query used to update existing column data for an account.
-    private static final String SQL_UPDATE_QUERY = """
-            UPDATE accounts
-            SET permissions = %s,
-                roles = %s,
-                balance = %g
-            WHERE id = %d
-            """;
-    // The SQL query used to load account data from the database.
-    private static final String SQL_LOAD_QUERY = """
-            SELECT
-                permissions,
-                roles,
-                balance
-            FROM
-                accounts
-            WHERE
-                id=%d;
-            """;
-    // The SQL query used to delete an account from the database.
-    private final static String SQL_DELETE = "DELETE FROM accounts WHERE id = %d";
 
     private static AccountManager accountManager = null;
 
@@ -72,253 +54,1447 @@ public final class AccountManager
         return accountManager;
     }
 
-    // Connection to the accounts database.
-    private Connection connection = null;
-    // Connection activity time to track how long a connection has been inactive.
+    // Connection to the accounts database, only used by the database executor thread.
+    private volatile Connection connection = null;
+    // Runs every database request on a single thread that owns the connection.
     @Getter(AccessLevel.PUBLIC)
-    @Setter(AccessLevel.PROTECTED)
-    private long connectionLastActivity = System.currentTimeMillis();
-    // Map the stores the Discord Id associated with its account.
-    private final Map<Long, Account> accounts = new ConcurrentHashMap<>();
+    private final DatabaseExecutor databaseExecutor = new DatabaseExecutor("account-database", () -> connection);
+    // Read only connections that run reads without waiting for the database executor.
+    @Getter(AccessLevel.PUBLIC)
+    private final ReadConnectionPool readPool = new ReadConnectionPool();
+    // Moves permissions and roles of old databases from the account columns in to their own tables.
+    @Getter(AccessLevel.PUBLIC)
+    private final LegacyDataMigration legacyDataMigration = new LegacyDataMigration();
+    // Moves balances of old databases from the floating point column in to whole cents.
+    @Getter(AccessLevel.PUBLIC)
+    private final BalanceUnitsMigration balanceUnitsMigration = new BalanceUnitsMigration();
+    // Applies the schema versions and runs the data migrations of the accounts database.
+    @Getter(AccessLevel.PUBLIC)
+    private final SchemaMigrator schemaMigrator = new SchemaMigrator(List.of(legacyDataMigration,
+            balanceUnitsMigration));
+    // The storage profile applied to every new database connection.
+    @Getter(AccessLevel.PUBLIC)
+    @Setter(AccessLevel.PUBLIC)
+    private StorageProfile storageProfile = StorageProfile.DURABLE;
+    // Cache that stores the Discord Id associated with its account.
+    private final AccountCache accounts = new AccountCache(0);
+    // Map that stores the Discord Id of each account being loaded associated with the result of its load.
+    private final Map<Long, CompletableFuture<Account>> inFlightLoads = new ConcurrentHashMap<>();
+    // The amount of accounts loaded from the database.
+    private final AtomicLong databaseLoads = new AtomicLong();
+    // The amount of account lookups that waited for a load already in flight.
+    private final AtomicLong coalescedLoads = new AtomicLong();
+    // The amount of transfers that moved balance.
+    private final AtomicLong appliedTransfers = new AtomicLong();
+    // The amount of transfers that were rejected.
+    private final AtomicLong rejectedTransfers = new AtomicLong();
+    // Index of accounts in memory by the time they next need to be checked for inactivity.
+    private final ExpiryIndex expiryIndex = new ExpiryIndex();
+    // Cache of prepared statements for the open connection.
+    @Getter(AccessLevel.PUBLIC)
+    private final StatementCache statementCache = new StatementCache();
+    // Filter of every discord id in the database, used to skip queries for unknown ids.
+    @Getter(AccessLevel.PUBLIC)
+    private final PersistedIdFilter persistedIds = new PersistedIdFilter();
+    // Writes changed accounts to the database in the background.
+    @Getter(AccessLevel.PUBLIC)
+    private final AccountFlusher flusher = new AccountFlusher(this);
+    // Runs the blocking work of the asynchronous account methods off the caller's thread.
+    @Getter(AccessLevel.PUBLIC)
+    private final ThreadPoolExecutor ioExecutor = createIoExecutor(4);
+    // Saves the hot accounts at shutdown and preloads them at start up.
+    @Getter(AccessLevel.PUBLIC)
+    private final AccountWarmer warmer = new AccountWarmer(this);
+    // Records every account change so changes not yet flushed are recovered after a crash.
+    @Getter(AccessLevel.PUBLIC)
+    private final AccountJournal journal = new AccountJournal();
+    // The directory of the journal, or null if changes are not journaled.
+    @Getter(AccessLevel.PUBLIC)
+    @Setter(AccessLevel.PUBLIC)
+    private Path journalDirectory = Path.of("journal");
+    // Stores accounts in the tables of the database.
+    @Getter(AccessLevel.PUBLIC)
+    private final SQLiteAccountStore sqliteStore = new SQLiteAccountStore(this);
+    // Keeps every account in memory mapped files, with the database only written to by periodic exports.
+    @Getter(AccessLevel.PUBLIC)
+    private final MappedAccountStore mappedStore = new MappedAccountStore();
+    // The store accounts are loaded from and saved to.
+    @Getter(AccessLevel.PUBLIC)
+    private volatile AccountStore store = sqliteStore;
+    // The name of the store opened by openAccountStore: sqlite, mapped or memory.
+    @Getter(AccessLevel.PUBLIC)
+    @Setter(AccessLevel.PUBLIC)
+    private String storeBackend = SQLiteAccountStore.NAME;
+    // The directory of the mapped account store.
+    @Getter(AccessLevel.PUBLIC)
+    @Setter(AccessLevel.PUBLIC)
+    private Path mappedStoreDirectory = Path.of("accounts");
+    // The amount of accounts written to the database per transaction when exporting the account store.
+    @Getter(AccessLevel.PUBLIC)
+    @Setter(AccessLevel.PUBLIC)
+    private int exportBatchSize = 1000;
+    // Exports and imports binary snapshots of every account.
+    @Getter(AccessLevel.PUBLIC)
+    private final AccountSnapshot snapshots = new AccountSnapshot(this);
+    // Every stored account ordered by balance, updated by every balance change of an account held in memory.
+    @Getter(AccessLevel.PUBLIC)
+    private final BalanceLeaderboard leaderboard = new BalanceLeaderboard();
+
+    /**
+     * Loads account management settings from the main config.
+     */
+    public void loadSettings()
+    {
+        final MainConfig config = MainConfig.getInstance();
+
+        flusher.setBatchSize(Math.max(1, config.getInt("database.flush_batch_size", 250)));
+        flusher.setFlushInterval(Math.max(1L, config.getLong("database.flush_interval_seconds", 5L)) * 1000L);
+        readPool.setSize(Math.max(0, config.getInt("database.read_connections", 4)));
+        setIoThreads(config.getInt("database.io_threads", 4));
+        legacyDataMigration.setBatchSize(Math.max(1, config.getInt("database.migration_batch_size", 500)));
+        balanceUnitsMigration.setBatchSize(legacyDataMigration.getBatchSize());
+        handleEvictions(accounts.resize(config.getInt("cache.maximum_size", 0)));
+        warmer.setMaximumAccounts(Math.max(0, config.getInt("cache.warm_up_accounts", 1000)));
+        warmer.setBatchSize(Math.max(1, config.getInt("cache.warm_up_batch_size", 500)));
+        persistedIds.setExpectedAccounts(Math.max(1, config.getInt("filter.expected_accounts", 100_000)));
+        persistedIds.setFalsePositiveRate(config.getDouble("filter.false_positive_rate", 0.01));
+        journal.setSyncInterval(Math.max(0L, config.getLong("journal.sync_interval_millis", 100L)));
+
+        final String journalPath = String.valueOf(config.get("journal.directory", "journal"));
+
+        journalDirectory = journalPath.isBlank() ? null : Path.of(journalPath);
+
+        storeBackend = String.valueOf(config.get("storage.backend", SQLiteAccountStore.NAME)).toLowerCase(Locale.ROOT);
+        mappedStoreDirectory = Path.of(String.valueOf(config.get("storage.mapped_directory", "accounts")));
+        exportBatchSize = Math.max(1, config.getInt("storage.export_batch_size", 1000));
+
+        final String profileName = String.valueOf(config.get("storage.profile", StorageProfile.BALANCED.getName()));
+
+        try
+        {
+            storageProfile = StorageProfile.fromConfig(profileName, config.getSection("storage.profiles." + profileName));
+        }
+        catch (final IllegalArgumentException exception)
+        {
+            KodeKitten.logWarning(String.format(MessageConfig.getInstance().getInternal("invalid_storage_profile"),
+                    profileName, exception.getMessage()));
+            storageProfile = StorageProfile.BALANCED;
+        }
+    }
+
+    /**
+     * @return A bounded pool of daemon threads for blocking account work, whose threads stop once idle.
+     */
+    private static ThreadPoolExecutor createIoExecutor(final int threads)
+    {
+        final AtomicInteger threadCount = new AtomicInteger();
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), (runnable) ->
+        {
+            final Thread thread = new Thread(runnable, "account-io-" + threadCount.incrementAndGet());
+
+            thread.setDaemon(true);
+
+            return thread;
+        });
+
+        executor.allowCoreThreadTimeOut(true);
+
+        return executor;
+    }
+
+    /**
+     * Changes the maximum amount of threads running asynchronous account work at once.
+     */
+    public void setIoThreads(final int threads)
+    {
+        final int size = Math.max(1, threads);
+
+        // The maximum size can never be below the core size, so the order depends on the direction of the change.
+        if (size > ioExecutor.getMaximumPoolSize())
+        {
+            ioExecutor.setMaximumPoolSize(size);
+            ioExecutor.setCorePoolSize(size);
+        }
+        else
+        {
+            ioExecutor.setCorePoolSize(size);
+            ioExecutor.setMaximumPoolSize(size);
+        }
+    }
+
+    /**
+     * Stops the I/O executor after the asynchronous work already submitted, waiting up to 30 seconds for it to finish.
+     */
+    public void shutdownIoExecutor()
+    {
+        ioExecutor.shutdown();
+
+        try
+        {
+            ioExecutor.awaitTermination(30L, TimeUnit.SECONDS);
+        }
+        catch (final InterruptedException exception)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Opens the account store selected by the store backend, after which accounts are loaded from and saved to it.
+     * Stores other than the database are filled with every account of the database when they start empty. Has to be
+     * opened after the database connection and before the journal, so changes recovered by the journal are saved to
+     * the store.
+     *
+     * @return True if accounts are stored in the selected store, false if they are stored in the database instead.
+     */
+    public boolean openAccountStore()
+    {
+        if (store != sqliteStore || SQLiteAccountStore.NAME.equals(storeBackend))
+        {
+            return store.getName().equals(storeBackend);
+        }
+
+        final AccountStore openedStore;
+
+        switch (storeBackend)
+        {
+            case MappedAccountStore.NAME -> openedStore = mappedStore;
+            case MemoryAccountStore.NAME -> openedStore = new MemoryAccountStore();
+            default ->
+            {
+                KodeKitten.logWarning(String.format(MessageConfig.getInstance().getInternal("unknown_account_store"),
+                        storeBackend));
+                return false;
+            }
+        }
+
+        try
+        {
+            final long startTime = System.currentTimeMillis();
+
+            if (openedStore == mappedStore)
+            {
+                mappedStore.open(mappedStoreDirectory);
+            }
+
+            if (openedStore.size() == 0L && sqliteStore.isOpen())
+            {
+                final long copied = copyAccounts(sqliteStore, openedStore);
+
+                KodeKitten.logInfo(String.format(MessageConfig.getInstance().getInternal("filled_account_store"),
+                        copied, storeBackend, System.currentTimeMillis() - startTime));
+            }
+
+            store = openedStore;
+            return true;
+        }
+        catch (final IOException exception)
+        {
+            KodeKitten.logSevere(String.format(MessageConfig.getInstance().getInternal("cant_open_account_store"),
+                    storeBackend));
+            exception.printStackTrace();
+            closeStore(openedStore);
+            return false;
+        }
+    }
+
+    /**
+     * Writes every account of the account store to the database, a batch of accounts per transaction, so the database
+     * holds a recent copy of stores that are not the database. Accounts deleted from the store are deleted from the
+     * database when they are deleted from the store.
+     *
+     * @return The amount of accounts exported, or -1 if accounts are stored in the database or the export failed.
+     */
+    public long exportAccountStore()
+    {
+        final AccountStore exportedStore = store;
+
+        if (exportedStore == sqliteStore || !exportedStore.isOpen() || !sqliteStore.isOpen())
+        {
+            return -1L;
+        }
+
+        final long startTime = System.currentTimeMillis();
+        // Changes in a store that loses its accounts are only safe once exported, so the journal is cleared here.
+        final long checkpoint = exportedStore.isPersistent() ? -1L : journal.checkpoint();
+        final boolean flushed = !exportedStore.isPersistent() && flusher.flushAll();
+        final long exported;
+
+        try
+        {
+            exported = copyAccounts(exportedStore, sqliteStore);
+        }
+        catch (final IOException exception)
+        {
+            KodeKitten.logSevere(String.format(MessageConfig.getInstance().getInternal("cant_export_account_store"),
+                    exportedStore.getName()));
+            exception.printStackTrace();
+            return -1L;
+        }
+
+        // Without new changes every closed segment was already flushed.
+        if (flushed)
+        {
+            journal.deleteSegmentsUpTo((checkpoint >= 0L) ? checkpoint : Long.MAX_VALUE);
+        }
+
+        KodeKitten.logInfo(String.format(MessageConfig.getInstance().getInternal("exported_account_store"), exported,
+                exportedStore.getName(), System.currentTimeMillis() - startTime));
+        return exported;
+    }
+
+    /**
+     * Copies every account of a store in to another, a batch of accounts per write. The accounts written are not the
+     * ones held in memory, so every row of each account is replaced.
+     *
+     * @return The amount of accounts copied.
+     */
+    private long copyAccounts(@NonNull final AccountStore source, @NonNull final AccountStore target)
+            throws IOException
+    {
+        final List<Account> batch = new ArrayList<>(exportBatchSize);
+        final List<AccountState> states = new ArrayList<>(exportBatchSize);
+
+        try
+        {
+            final long copied = source.scan((discordId, state) ->
+            {
+                batch.add(new Account(discordId));
+                states.add(state);
+
+                if (batch.size() == exportBatchSize)
+                {
+                    writeBatch(target, batch, states);
+                }
+            });
+
+            writeBatch(target, batch, states);
+            return copied;
+        }
+        catch (final UncheckedIOException exception)
+        {
+            throw exception.getCause();
+        }
+    }
+
+    /**
+     * Writes a batch of accounts copied from another store and empties the batch.
+     */
+    private static void writeBatch(@NonNull final AccountStore target, @NonNull final List<Account> batch,
+                                   @NonNull final List<AccountState> states)
+    {
+        if (batch.isEmpty())
+        {
+            return;
+        }
+
+        try
+        {
+            target.upsertAll(List.copyOf(batch), () -> List.copyOf(states));
+        }
+        catch (final IOException exception)
+        {
+            throw new UncheckedIOException(exception);
+        }
+
+        batch.clear();
+        states.clear();
+    }
+
+    /**
+     * Closes the account store, first exporting stores that lose their accounts when closed. Accounts are then
+     * stored in the database.
+     */
+    public void closeAccountStore()
+    {
+        final AccountStore closedStore = store;
+
+        if (closedStore == sqliteStore)
+        {
+            return;
+        }
+
+        if (!closedStore.isPersistent())
+        {
+            exportAccountStore();
+        }
+
+        store = sqliteStore;
+        closeStore(closedStore);
+    }
+
+    /**
+     * Closes a store, logging a failure to close it.
+     */
+    private static void closeStore(@NonNull final AccountStore closedStore)
+    {
+        try
+        {
+            closedStore.close();
+        }
+        catch (final IOException exception)
+        {
+            KodeKitten.logSevere(String.format(MessageConfig.getInstance().getInternal("cant_close_account_store"),
+                    closedStore.getName()));
+            exception.printStackTrace();
+        }
+    }
+
+    /**
+     * Replays the changes left in the journal by the last run and starts journaling changes.
+     * Has to be opened after the database connection and before accounts are changed.
+     *
+     * @return True if changes are being journaled.
+     */
+    public boolean openJournal()
+    {
+        if (journalDirectory == null || journal.isOpen())
+        {
+            return journal.isOpen();
+        }
+
+        try
+        {
+            final long startTime = System.currentTimeMillis();
+            final Map<Long, AccountJournal.Entry> entries = journal.open(journalDirectory);
+            // Changes replayed in to a store that loses its accounts are only kept once exported to the database.
+            final boolean replayed = replayJournal(entries.values())
+                    && (store.isPersistent() || entries.isEmpty() || exportAccountStore() >= 0L);
+
+            journal.start(replayed);
+
+            if (!entries.isEmpty())
+            {
+                KodeKitten.logInfo(String.format(MessageConfig.getInstance().getInternal("replayed_journal"),
+                        entries.size(), System.currentTimeMillis() - startTime));
+            }
+
+            return true;
+        }
+        catch (final IOException exception)
+        {
+            KodeKitten.logSevere(MessageConfig.getInstance().getInternal("cant_open_journal"));
+            exception.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Applies the latest journaled change of each account and saves the changed accounts.
+     *
+     * @return True if every change was saved to the database, so the journal can be cleared.
+     */
+    private boolean replayJournal(@NonNull final Collection<AccountJournal.Entry> entries)
+    {
+        final List<Account> restoredAccounts = new ArrayList<>();
+
+        for (final AccountJournal.Entry entry : entries)
+        {
+            if (entry.getState() == null)
+            {
+                delete(entry.getDiscordId());
+                continue;
+            }
+
+            final Account account = getAccount(entry.getDiscordId(), true);
+
+            if (account == null)
+            {
+                return false;
+            }
+
+            account.restoreState(entry.getState());
+            restoredAccounts.add(account);
+        }
+
+        return restoredAccounts.isEmpty() || saveToDatabase(restoredAccounts);
+    }
+
+    /**
+     * Fills the balance leaderboard with a single scan of the account store. Accounts indexed by a change while the
+     * scan runs keep their newer balance.
+     *
+     * @return The amount of accounts indexed, or -1 if the store could not be scanned.
+     */
+    public long loadLeaderboard()
+    {
+        try
+        {
+            final long startTime = System.currentTimeMillis();
+
+            store.scan((discordId, state) -> leaderboard.putIfAbsent(discordId, state.getBalanceUnits()));
+
+            KodeKitten.logInfo(String.format(MessageConfig.getInstance().getInternal("loaded_leaderboard"),
+                    leaderboard.size(), System.currentTimeMillis() - startTime));
+
+            return leaderboard.size();
+        }
+        catch (final IOException exception)
+        {
+            KodeKitten.logSevere(MessageConfig.getInstance().getInternal("cant_load_leaderboard"));
+            exception.printStackTrace();
+            return -1L;
+        }
+    }
+
+    /**
+     * Stops journaling changes. Should be closed after the last flush, which clears the journal.
+     */
+    public void closeJournal()
+    {
+        journal.close();
+    }
+
+    /**
+     * @return The cache of accounts held in memory.
+     */
+    public AccountCache getAccountCache()
+    {
+        return accounts;
+    }
+
+    /**
+     * Returns the account from its discord id.
+     * If it does not exist in the internal database, it loads it from the database file.
+     * Concurrent calls for the same discord id share a single load and return the same account.
+     *
+     * @param createNewIfNotFound Creates a new account if it doesn't exist in the database.
+     */
+    public Account getAccount(final long discordId, boolean createNewIfNotFound)
+    {
+        while (true)
+        {
+            // Try and retrieve the account from local memory.
+            final Account cachedAccount = accounts.get(discordId);
+
+            if (cachedAccount != null)
+            {
+                // The account has been accessed, so we bump it's last activity time.
+                cachedAccount.bumpLastActivityTime();
+                return cachedAccount;
+            }
+
+            final CompletableFuture<Account> load = new CompletableFuture<>();
+            final CompletableFuture<Account> inFlightLoad = inFlightLoads.putIfAbsent(discordId, load);
+
+            if (inFlightLoad == null)
+            {
+                return loadAccount(discordId, createNewIfNotFound, load);
+            }
+
+            // Another thread is already loading this account, so we wait for its result instead.
+            coalescedLoads.incrementAndGet();
+
+            final Account account = inFlightLoad.join();
+
+            if (account != null)
+            {
+                account.bumpLastActivityTime();
+                return account;
+            }
+
+            // The other load did not create a missing account, so a creating call has to try again.
+            if (!createNewIfNotFound)
+            {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Loads an account in to memory as the only in flight load for its discord id, completing the load with the
+     * account or null if none was loaded.
+     */
+    private Account loadAccount(final long discordId, final boolean createNewIfNotFound,
+                                @NonNull final CompletableFuture<Account> load)
+    {
+        Account account = null;
+
+        try
+        {
+            // A load that finished between our cache miss and claiming the load has already cached the account.
+            account = accounts.peek(discordId);
+
+            if (account == null)
+            {
+                account = readAccount(discordId, createNewIfNotFound);
+            }
+
+            return account;
+        }
+        finally
+        {
+            load.complete(account);
+            inFlightLoads.remove(discordId, load);
+        }
+    }
+
+    /**
+     * Reads an account that is not in memory from the flusher or the database and caches it.
+     *
+     * @return The account, or null if it was not found and should not be created or failed to load.
+     */
+    private Account readAccount(final long discordId, final boolean createNewIfNotFound)
+    {
+        // An account removed from memory may still be waiting to be flushed and is newer than the database.
+        final Account pendingAccount = flusher.getPending(discordId);
+
+        if (pendingAccount != null)
+        {
+            pendingAccount.bumpLastActivityTime();
+            cacheAccount(pendingAccount);
+            return pendingAccount;
+        }
+
+        final Account account = new Account(discordId);
+        final boolean existsInDatabase;
+
+        // Try and retrieve the account from the store, checking that it exists and reading it in one request.
+        try
+        {
+            existsInDatabase = store.load(account);
+        }
+        catch (final IOException exception)
+        {
+            KodeKitten.logWarning(String.format(MessageConfig.getInstance().getInternal("unable_to_load_account"),
+                    discordId));
+            exception.printStackTrace();
+            return null;
+        }
+
+        if (!existsInDatabase && !createNewIfNotFound)
+        {
+            return null;
+        }
+
+        if (existsInDatabase)
+        {
+            databaseLoads.incrementAndGet();
+            account.bumpLastActivityTime();
+            account.setLoaded();
+            account.setNeedsToSync(false);
+        }
+
+        account.setAccountManager(this);
+        cacheAccount(account);
+
+        return account;
+    }
+
+    /**
+     * Caches an account read by the warm up, unless an account with its discord id is already held, being loaded or
+     * waiting to be flushed.
+     *
+     * @return True if the account was cached.
+     */
+    boolean cacheWarmedAccount(@NonNull final Account account)
+    {
+        final long discordId = account.getDiscordId();
+        final CompletableFuture<Account> load = new CompletableFuture<>();
+
+        if (inFlightLoads.putIfAbsent(discordId, load) != null)
+        {
+            return false;
+        }
+
+        Account result = accounts.peek(discordId);
+
+        try
+        {
+            if (result != null || flusher.getPending(discordId) != null)
+            {
+                // Accounts waiting to be flushed are newer than the database, so they are cached instead.
+                result = (result == null) ? readAccount(discordId, false) : result;
+                return false;
+            }
+
+            account.setLoaded();
+            account.setNeedsToSync(false);
+            account.setAccountManager(this);
+            cacheAccount(account);
+            result = account;
+            return true;
+        }
+        finally
+        {
+            load.complete(result);
+            inFlightLoads.remove(discordId, load);
+        }
+    }
+
+    /**
+     * @return The amount of accounts loaded from the database.
+     */
+    public long getDatabaseLoads()
+    {
+        return databaseLoads.get();
+    }
+
+    /**
+     * @return The amount of account lookups that waited for a load already in flight instead of loading again.
+     */
+    public long getCoalescedLoads()
+    {
+        return coalescedLoads.get();
+    }
+
+    /**
+     * Adds an account to memory and files it in the expiry index.
+     */
+    private void cacheAccount(@NonNull final Account account)
+    {
+        final List<Account> evictedAccounts = accounts.put(account);
+
+        expiryIndex.schedule(account, account.getInactiveDeadline());
+        handleEvictions(evictedAccounts);
+    }
+
+    /**
+     * Files an account held in memory again at its current inactivity deadline.
+     */
+    void scheduleExpiry(@NonNull final Account account)
+    {
+        if (accounts.peek(account.getDiscordId()) == account)
+        {
+            expiryIndex.schedule(account, account.getInactiveDeadline());
+        }
+    }
+
+    /**
+     * Queues accounts evicted from the cache that have unsaved data to be written by the flusher.
+     * Until they are flushed, evicted accounts are still returned by getAccount.
+     */
+    private void handleEvictions(@NonNull final List<Account> evictedAccounts)
+    {
+        for (final Account account : evictedAccounts)
+        {
+            expiryIndex.remove(account);
+
+            if (!account.isPersisted() || account.needsToSync())
+            {
+                flusher.enqueue(account);
+            }
+        }
+    }
+
+    /**
+     * @return The account attached to the Discord Id, creating a new account by default if it is not found.
+     */
+    public Account getAccount(final long discordId)
+    {
+        return getAccount(discordId, true);
+    }
+
+    /**
+     * Returns the account from its discord id without blocking the calling thread.
+     * Accounts held in memory complete straight away, otherwise the account is loaded on the I/O executor.
+     *
+     * @param createNewIfNotFound Creates a new account if it doesn't exist in the database.
+     */
+    public CompletableFuture<Account> getAccountAsync(final long discordId, final boolean createNewIfNotFound)
+    {
+        final Account cachedAccount = accounts.get(discordId);
+
+        if (cachedAccount != null)
+        {
+            cachedAccount.bumpLastActivityTime();
+            return CompletableFuture.completedFuture(cachedAccount);
+        }
+
+        return CompletableFuture.supplyAsync(() -> getAccount(discordId, createNewIfNotFound), ioExecutor);
+    }
+
+    /**
+     * @return The account attached to the Discord Id without blocking the calling thread, creating a new account by
+     * default if it is not found.
+     */
+    public CompletableFuture<Account> getAccountAsync(final long discordId)
+    {
+        return getAccountAsync(discordId, true);
+    }
+
+    /**
+     * Returns the accounts of several discord ids without blocking the calling thread, loading them in parallel.
+     *
+     * @return The accounts by discord id in the given order, missing accounts that were not found or created.
+     */
+    public CompletableFuture<Map<Long, Account>> getAccountsAsync(@NonNull final Collection<Long> discordIds,
+                                                                  final boolean createNewIfNotFound)
+    {
+        return collect(discordIds, (discordId) -> getAccountAsync(discordId, createNewIfNotFound));
+    }
+
+    /**
+     * Saves an account to the database on the I/O executor.
+     *
+     * @return The future completed with true if the account was saved.
+     */
+    public CompletableFuture<Boolean> saveAsync(@NonNull final Account account)
+    {
+        return CompletableFuture.supplyAsync(() -> saveToDatabase(account), ioExecutor);
+    }
+
+    /**
+     * Saves several accounts to the database in a single transaction on the I/O executor.
+     *
+     * @return The future completed with true if every account was saved.
+     */
+    public CompletableFuture<Boolean> saveAsync(@NonNull final Collection<Account> accounts)
+    {
+        final List<Account> accountsToSave = new ArrayList<>(accounts);
+
+        return CompletableFuture.supplyAsync(() -> saveToDatabase(accountsToSave), ioExecutor);
+    }
+
+    /**
+     * Deletes an account from the database and memory on the I/O executor.
+     */
+    public CompletableFuture<Void> deleteAsync(final long discordId)
+    {
+        return CompletableFuture.runAsync(() -> delete(discordId), ioExecutor);
+    }
+
+    /**
+     * Deletes several accounts from the database and memory on the I/O executor.
+     */
+    public CompletableFuture<Void> deleteAsync(@NonNull final Collection<Long> discordIds)
+    {
+        final List<Long> idsToDelete = new ArrayList<>(discordIds);
+
+        return CompletableFuture.runAsync(() -> idsToDelete.forEach(this::delete), ioExecutor);
+    }
+
+    /**
+     * Checks whether an account exists in memory or the database without blocking the calling thread.
+     */
+    public CompletableFuture<Boolean> existsAsync(final long discordId)
+    {
+        if (existsInMemory(discordId))
+        {
+            return CompletableFuture.completedFuture(true);
+        }
+
+        return CompletableFuture.supplyAsync(() -> exists(discordId), ioExecutor);
+    }
+
+    /**
+     * Checks whether several accounts exist in memory or the database in parallel.
+     *
+     * @return Whether each discord id exists, in the given order.
+     */
+    public CompletableFuture<Map<Long, Boolean>> existsAsync(@NonNull final Collection<Long> discordIds)
+    {
+        return collect(discordIds, this::existsAsync);
+    }
+
+    /**
+     * Runs an asynchronous lookup for each discord id and collects the results that are not null.
+     */
+    private static <T> CompletableFuture<Map<Long, T>> collect(@NonNull final Collection<Long> discordIds,
+                                                               @NonNull final Function<Long, CompletableFuture<T>> lookup)
+    {
+        final Map<Long, CompletableFuture<T>> lookups = new LinkedHashMap<>();
+
+        for (final Long discordId : discordIds)
+        {
+            lookups.computeIfAbsent(discordId, lookup);
+        }
+
+        return CompletableFuture.allOf(lookups.values().toArray(new CompletableFuture[0])).thenApply((ignored) ->
+        {
+            final Map<Long, T> results = new LinkedHashMap<>();
+
+            lookups.forEach((discordId, result) ->
+            {
+                if (result.join() != null)
+                {
+                    results.put(discordId, result.join());
+                }
+            });
+
+            return results;
+        });
+    }
+
+    /**
+     * @return The opened connection to the database, or null if the connection is closed.
+     */
+    public Connection getConnection()
+    {
+        return connection;
+    }
+
+    /**
+     * Opens the database and brings its schema up to date, running the given statement before the schema versions.
+     *
+     * @return Whether a successful connection with the accounts database was created.
+     */
+    public boolean openDatabaseConnection(@NonNull final String databaseUrl, @Nullable final String sqlTableStatement)
+    {
+        try
+        {
+            Class.forName("org.sqlite.JDBC");
+
+            await(databaseExecutor.submit(DatabaseExecutor.RequestType.QUERY, () ->
+            {
+                connection = DriverManager.getConnection(databaseUrl);
+                applyStorageProfile(connection);
+                statementCache.rebuild(connection);
+
+                if (sqlTableStatement != null)
+                {
+                    try (final Statement statement = connection.createStatement())
+                    {
+                        statement.executeUpdate(sqlTableStatement);
+                    }
+                }
+
+                schemaMigrator.migrate(connection);
+                persistedIds.rebuild(connection);
+                return null;
+            }));
+            openReadPool(databaseUrl);
+            return true;
+        }
+        catch (final SQLException sqlException)
+        {
+            KodeKitten.logSevere(MessageConfig.getInstance().getInternal("cant_access_database"));
+            sqlException.printStackTrace();
+            return false;
+        }
+        catch (final ClassNotFoundException classNotFoundException)
+        {
+            KodeKitten.logSevere(MessageConfig.getInstance().getInternal("cant_access_jdbc"));
+            classNotFoundException.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Opens the read connection pool, leaving reads on the writer connection if the pool cannot be used.
+     */
+    private void openReadPool(@NonNull final String databaseUrl)
+    {
+        try
+        {
+            if (!readPool.open(databaseUrl, storageProfile) && readPool.getSize() > 0)
+            {
+                KodeKitten.logWarning(String.format(MessageConfig.getInstance().getInternal("read_pool_requires_wal"),
+                        storageProfile.getName()));
+            }
+        }
+        catch (final SQLException sqlException)
+        {
+            KodeKitten.logWarning(MessageConfig.getInstance().getInternal("cant_open_read_pool"));
+            sqlException.printStackTrace();
+        }
+    }
+
+    /**
+     * Runs a read on the read connection pool, or on the database executor if the pool is not open.
+     * Reads without a discord id are never merged with other requests.
+     *
+     * @return The result of the read.
+     *
+     * @throws SQLException If the read failed.
+     */
+    <T> T read(@NonNull final DatabaseExecutor.RequestType type, @Nullable final Long discordId,
+                       @Nullable final Object target, @NonNull final ReadConnectionPool.Read<T> read) throws SQLException
+    {
+        if (readPool.isOpen())
+        {
+            return readPool.read(read);
+        }
+
+        return await(databaseExecutor.submit(type, discordId, target, () -> read.run(connection, statementCache)));
+    }
+
+    /**
+     * Applies the storage profile to a new connection and warns about every PRAGMA that did not take effect.
+     * A connection that cannot be tuned is still used with the driver defaults.
+     */
+    private void applyStorageProfile(@NonNull final Connection connection)
+    {
+        final MessageConfig messageConfig = MessageConfig.getInstance();
+
+        try
+        {
+            storageProfile.apply(connection);
+
+            for (final Map.Entry<String, String> mismatch : storageProfile.validate(connection).entrySet())
+            {
+                KodeKitten.logWarning(String.format(messageConfig.getInternal("storage_pragma_mismatch"),
+                        storageProfile.getName(), mismatch.getKey(), mismatch.getValue(),
+                        storageProfile.getPragmas().get(mismatch.getKey())));
+            }
+        }
+        catch (final SQLException sqlException)
+        {
+            KodeKitten.logWarning(String.format(messageConfig.getInternal("cant_apply_storage_profile"),
+                    storageProfile.getName()));
+            sqlException.printStackTrace();
+        }
+    }
+
+    /**
+     * @return Whether a successful connection with the accounts database was created.
+     * Creates the tables from the schema versions.
+     */
+    public boolean openDatabaseConnection(@NonNull final String databaseUrl)
+    {
+        return openDatabaseConnection(databaseUrl, null);
+    }
+
+    /**
+     * @return Whether a successful connection with the accounts database was created.
+     * Uses the default DATABASE_URL and creates the tables from the schema versions.
+     */
+    public boolean openDatabaseConnection()
+    {
+        return openDatabaseConnection(DATABASE_URL, null);
+    }
+
+    /**
+     * Executes given queries to the SQL Database.
+     */
+    public void executeQuery(@NonNull final String... sqlQueries)
+    {
+        if (getConnection() == null)
+        {
+            return;
+        }
+
+        try
+        {
+            // Queries that only read are run on the read connection pool so they do not hold up writes.
+            if (readPool.isOpen() && Arrays.stream(sqlQueries).allMatch(AccountManager::isReadQuery))
+            {
+                readPool.read((readConnection, statements) ->
+                {
+                    try (final Statement statement = readConnection.createStatement())
+                    {
+                        for (final String sqlQuery : sqlQueries)
+                        {
+                            statement.execute(sqlQuery);
+                        }
+                    }
+
+                    return null;
+                });
+                return;
+            }
+
+            await(databaseExecutor.submit(DatabaseExecutor.RequestType.QUERY, () ->
+            {
+                try (final Statement statement = connection.createStatement())
+                {
+                    for (final String sqlQuery : sqlQueries)
+                    {
+                        statement.execute(sqlQuery);
+                    }
+                }
+                finally
+                {
+                    // Raw queries may add or remove any rows, so the filter has to be read from the table again.
+                    persistedIds.rebuild(connection);
+                }
+
+                return null;
+            }));
+        }
+        catch (final SQLException exception)
+        {
+            exception.printStackTrace();
+        }
+    }
+
+    /**
+     * @return True if the SQL query only reads from the database.
+     */
+    private static boolean isReadQuery(@NonNull final String sqlQuery)
+    {
+        final String query = sqlQuery.stripLeading().toUpperCase(Locale.ROOT);
+
+        return query.startsWith("SELECT") || query.startsWith("EXPLAIN");
+    }
+
+    /**
+     * Waits for a database request to finish.
+     *
+     * @return The result of the request.
+     *
+     * @throws SQLException If the request failed with a database error.
+     */
+    static <T> T await(@NonNull final CompletableFuture<T> request) throws SQLException
+    {
+        try
+        {
+            return request.join();
+        }
+        catch (final CompletionException exception)
+        {
+            if (exception.getCause() instanceof SQLException sqlException)
+            {
+                throw sqlException;
+            }
+
+            throw exception;
+        }
+    }
+
+    /**
+     * @return True if the given discord id exists in the account store.
+     */
+    public boolean existsInDatabase(final long discordId)
+    {
+        try
+        {
+            return store.exists(discordId);
+        }
+        catch (final IOException exception)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * @return True if the given account exists as a row in the database.
+     */
+    public boolean existsInDatabase(@NonNull final Account account)
+    {
+        return existsInDatabase(account.getDiscordId());
+    }
+
+    /**
+     * @return True if the given discord id exists in local memory.
+     */
+    public boolean existsInMemory(final long discordId)
+    {
+        return accounts.containsKey(discordId);
+    }
+
+    /**
+     * @return True if the account exists in memory OR in the SQL Database.
+     */
+    public boolean exists(final long discordId)
+    {
+        return existsInMemory(discordId) || existsInDatabase(discordId);
+    }
+
+    /**
+     * Saves a given account to the account store.
+     *
+     * @return True if the account was successfully saved to the store.
+     */
+    public boolean saveToDatabase(@NonNull final Account account)
+    {
+        if (!store.isOpen())
+        {
+            KodeKitten.logWarning(String.format(MessageConfig.getInstance().getInternal("cant_save_account"), account.getDiscordId()));
+            return false;
+        }
+
+        if (account.isPersisted() && !account.needsToSync())
+        {
+            return false;
+        }
+
+        try
+        {
+            // The snapshot is taken by the store while it holds up other writes, so an older snapshot never wins.
+            store.upsertAll(List.of(account), () -> takeSnapshots(List.of(account)));
+            account.setPersisted(true);
+            return true;
+        }
+        catch (final IOException exception)
+        {
+            account.setNeedsToSync(true);
+            KodeKitten.logSevere(String.format(MessageConfig.getInstance().getInternal("cant_save_account_for_id"), account.getDiscordId()));
+            exception.printStackTrace();
+            return false;
+        }
+    }
 
     /**
-     * Returns the account from its discord id.
-     * If it does not exist in the internal database, it loads it from the database file.
+     * Saves the given accounts to the account store in a single transaction.
      *
-     * @param createNewIfNotFound Creates a new account if it doesn't exist in the database.
+     * @return True if every account was saved to the store.
      */
-    public Account getAccount(final long discordId, boolean createNewIfNotFound)
+    boolean saveToDatabase(@NonNull final Collection<Account> accounts)
     {
-        // Try and retrieve the account from local memory.
-        if (existsInMemory(discordId))
+        if (!store.isOpen())
         {
-            final Account account = accounts.get(discordId);
-
-            // The account has been accessed, so we bump it's last activity time.
-            account.bumpLastActivityTime();
-            return account;
+            return false;
         }
 
-        // Try and retrieve the account from the database.
-        final boolean existsInDatabase = existsInDatabase(discordId);
+        final List<Account> savedAccounts = List.copyOf(accounts);
 
-        if (!existsInDatabase && !createNewIfNotFound)
+        try
         {
-            return null;
+            store.upsertAll(savedAccounts, () -> takeSnapshots(savedAccounts));
         }
+        catch (final IOException exception)
+        {
+            for (final Account account : savedAccounts)
+            {
+                account.setNeedsToSync(true);
+            }
 
-        final Account account = new Account(discordId);
+            KodeKitten.logSevere(String.format(MessageConfig.getInstance().getInternal("cant_save_accounts"),
+                    accounts.size()));
+            exception.printStackTrace();
+            return false;
+        }
 
-        if (existsInDatabase && !loadFromDatabase(account))
+        for (final Account account : savedAccounts)
         {
-            KodeKitten.logWarning(String.format(MessageConfig.getInstance().getInternal("unable_to_load_account"),
-                    discordId));
-            return null;
+            account.setPersisted(true);
         }
 
-        accounts.put(discordId, account);
-
-        return account;
-    }
-
-    /**
-     * @return The account attached to the Discord Id, creating a new account by default if it is not found.
-     */
-    public Account getAccount(final long discordId)
-    {
-        return getAccount(discordId, true);
+        return true;
     }
 
     /**
-     * @return The opened connection to the database.
-     * If the connection is not open then it opens a connection.
+     * Runs the next chunk of the unfinished data migrations in a transaction with other writes.
+     *
+     * @return True if a chunk was run.
      */
-    public Connection getConnection()
+    public boolean runDataMigrationChunk()
     {
-        if (connection == null)
+        if (!schemaMigrator.hasPendingDataMigrations() || getConnection() == null)
         {
-            return null;
+            return false;
         }
 
-        // Connection has been accessed, so we reset connection activity time.
-        connectionLastActivity = System.currentTimeMillis();
-
-        return connection;
-    }
-
-    /**
-     * @return Whether a successful connection with the accounts database was created.
-     */
-    public boolean openDatabaseConnection(@NonNull final String databaseUrl, @Nullable final String sqlTableStatement)
-    {
         try
         {
-            Class.forName("org.sqlite.JDBC");
-
-            connection = DriverManager.getConnection(databaseUrl);
-            connectionLastActivity = System.currentTimeMillis();
-
-            if (sqlTableStatement != null)
+            if (!await(databaseExecutor.submit(DatabaseExecutor.RequestType.SAVE,
+                    () -> schemaMigrator.runChunk(statementCache))))
             {
-                try (final Statement statement = connection.createStatement())
-                {
-                    statement.executeUpdate(sqlTableStatement);
-                }
+                return false;
             }
+
+            schemaMigrator.completeChunk();
             return true;
         }
         catch (final SQLException sqlException)
         {
-            KodeKitten.logSevere(MessageConfig.getInstance().getInternal("cant_access_database"));
+            KodeKitten.logWarning(MessageConfig.getInstance().getInternal("cant_run_data_migration"));
             sqlException.printStackTrace();
             return false;
         }
-        catch (final ClassNotFoundException classNotFoundException)
-        {
-            KodeKitten.logSevere(MessageConfig.getInstance().getInternal("cant_access_jdbc"));
-            classNotFoundException.printStackTrace();
-            return false;
-        }
     }
 
     /**
-     * @return Whether a successful connection with the accounts database was created.
-     * Uses the default SQL_TABLE statement.
+     * @return The sorted discord ids of the saved accounts with the given permission.
      */
-    public boolean openDatabaseConnection(@NonNull final String databaseUrl)
+    public List<Long> findAccountsWithPermission(@NonNull final String permission)
     {
-        return openDatabaseConnection(databaseUrl, SQL_TABLE);
+        final String permissionName = permission.toLowerCase(Locale.ROOT);
+
+        try
+        {
+            return (store == sqliteStore)
+                    ? sqliteStore.findWithPermission(permissionName)
+                    : findInStore((state) -> state.getPermissions().contains(permissionName));
+        }
+        catch (final IOException exception)
+        {
+            exception.printStackTrace();
+            return new ArrayList<>();
+        }
     }
 
     /**
-     * @return Whether a successful connection with the accounts database was created.
-     * Uses the default DATABASE_URL and SQL_TABLE statements.
+     * @return The sorted discord ids of the saved accounts with the given role.
      */
-    public boolean openDatabaseConnection()
+    public List<Long> findAccountsWithRole(final long roleId)
     {
-        return openDatabaseConnection(DATABASE_URL, SQL_TABLE);
+        try
+        {
+            return (store == sqliteStore)
+                    ? sqliteStore.findWithRole(roleId)
+                    : findInStore((state) -> state.getRoles().contains(roleId));
+        }
+        catch (final IOException exception)
+        {
+            exception.printStackTrace();
+            return new ArrayList<>();
+        }
     }
 
     /**
-     * Executes given queries to the SQL Database.
+     * @return The sorted discord ids of the accounts in the account store that match the filter, found by scanning
+     * every account for stores without indexes.
      */
-    public void executeQuery(@NonNull final String... sqlQueries)
+    private List<Long> findInStore(@NonNull final Predicate<AccountState> filter) throws IOException
     {
-        final Connection connection = getConnection();
-
-        if (connection == null)
-        {
-            return;
-        }
+        final Set<Long> discordIds = new TreeSet<>();
 
-        try (final Statement statement = connection.createStatement())
+        store.scan((discordId, state) ->
         {
-            for (final String sqlQuery : sqlQueries)
+            if (filter.test(state))
             {
-                statement.execute(sqlQuery);
+                discordIds.add(discordId);
             }
-        }
-        catch (final SQLException exception)
-        {
-            exception.printStackTrace();
-        }
+        });
+
+        return new ArrayList<>(discordIds);
     }
 
     /**
-     * @return True if the given discord id exists in the SQL Database.
+     * Takes a snapshot of each account while holding the locks of all of them, so a transfer between two of the
+     * accounts is either in both snapshots or in neither.
+     * The sync flags are cleared before taking the snapshots so changes made while saving are saved again.
+     *
+     * @return The snapshots in the order of the accounts.
      */
-    public boolean existsInDatabase(final long discordId)
+    private static List<AccountState> takeSnapshots(@NonNull final Collection<Account> accounts)
     {
-        final Connection connection = getConnection();
-
-        if (connection == null)
-        {
-            KodeKitten.logWarning(String.format(MessageConfig.getInstance().getInternal("inactive_connection"), discordId));
-            return false;
-        }
+        final List<AccountState> states = new ArrayList<>(accounts.size());
+        final List<Account> lockedAccounts = Account.lockInOrder(accounts);
 
-        try (final Statement statement = connection.createStatement(); final ResultSet resultSet =
-                statement.executeQuery(String.format(SQL_EXISTS_QUERY, discordId)))
+        try
         {
-            return resultSet.next();
+            for (final Account account : accounts)
+            {
+                account.setNeedsToSync(false);
+                states.add(account.getState());
+            }
         }
-        catch (final SQLException sqlException)
+        finally
         {
-            return false;
+            Account.unlockAll(lockedAccounts);
         }
+
+        return states;
     }
 
     /**
-     * @return True if the given account exists as a row in the database.
+     * Queues a changed account to be written to the database by the flusher.
      */
-    public boolean existsInDatabase(@NonNull final Account account)
+    void markDirty(@NonNull final Account account)
     {
-        return existsInDatabase(account.getDiscordId());
+        flusher.enqueue(account);
     }
 
     /**
-     * @return True if the given discord id exists in local memory.
+     * Moves minor units from one account to another and saves both accounts in one transaction.
+     * The receiving account is created if it does not exist.
+     *
+     * @return The outcome of the transfer.
      */
-    public boolean existsInMemory(final long discordId)
+    public Transfer.Result transfer(final long fromId, final long toId, final long units)
     {
-        return accounts.containsKey(discordId);
+        return transfer(List.of(new Transfer(fromId, toId, units))).get(0);
     }
 
     /**
-     * @return True if the account exists in memory OR in the SQL Database.
+     * Applies the transfers in order and saves every changed account in one transaction.
+     * Transfers that cannot be applied are skipped without affecting the others.
+     *
+     * @return The outcome of each transfer, in the given order.
      */
-    public boolean exists(final long discordId)
+    public List<Transfer.Result> transfer(@NonNull final List<Transfer> transfers)
     {
-        return existsInMemory(discordId) || existsInDatabase(discordId);
+        final List<Transfer.Result> results = new ArrayList<>(transfers.size());
+        final Map<Long, Account> changedAccounts = new LinkedHashMap<>();
+
+        for (final Transfer transfer : transfers)
+        {
+            results.add(applyTransfer(transfer, changedAccounts));
+        }
+
+        if (!changedAccounts.isEmpty() && !saveToDatabase(changedAccounts.values()))
+        {
+            // The accounts are queued to be flushed again, so the transfers are only missing from the database.
+            results.replaceAll((result) -> (result == Transfer.Result.COMPLETED) ? Transfer.Result.NOT_SAVED : result);
+        }
+
+        for (final Transfer.Result result : results)
+        {
+            (result.isApplied() ? appliedTransfers : rejectedTransfers).incrementAndGet();
+        }
+
+        return results;
     }
 
     /**
-     * Saves a given account to the SQL database.
+     * Moves the balance of a transfer in memory while holding the locks of both accounts.
      *
-     * @return True if the account was successfully saved to the database.
+     * @param changedAccounts The accounts changed by transfers so far, the accounts of this transfer are added if
+     *                        it is applied.
      */
-    public boolean saveToDatabase(@NonNull final Account account)
+    private Transfer.Result applyTransfer(@NonNull final Transfer transfer,
+                                          @NonNull final Map<Long, Account> changedAccounts)
     {
-        final Connection connection = getConnection();
+        if (transfer.getUnits() <= 0L)
+        {
+            return Transfer.Result.INVALID_AMOUNT;
+        }
 
-        if (connection == null)
+        if (transfer.getFromId() == transfer.getToId())
         {
-            KodeKitten.logWarning(String.format(MessageConfig.getInstance().getInternal("cant_save_account"), account.getDiscordId()));
-            return false;
+            return Transfer.Result.SAME_ACCOUNT;
         }
 
-        final boolean existsInDatabase = existsInDatabase(account.getDiscordId());
+        final Account from = getAccount(transfer.getFromId(), false);
+        final Account to = (from == null) ? null : getAccount(transfer.getToId(), true);
 
-        if (existsInDatabase && !account.needsToSync())
+        if (from == null || to == null)
         {
-            return false;
+            return Transfer.Result.UNKNOWN_ACCOUNT;
         }
 
-        try (final Statement statement = connection.createStatement())
+        final List<Account> lockedAccounts = Account.lockInOrder(List.of(from, to));
+
+        // Both changes reach the journal in the same sync, so a crash never recovers half of the transfer.
+        journal.lockAppends();
+
+        try
         {
-            // Insert into database as a new column.
-            if (!existsInDatabase)
+            if (!from.tryRemoveBalanceUnits(transfer.getUnits()))
             {
-                statement.executeUpdate(String.format(SQL_INSERT_QUERY, account.getDiscordId(),
-                        account.getPermissionData(), account.getRoleData(), account.getBalance()));
+                return Transfer.Result.INSUFFICIENT_FUNDS;
             }
-            // Update the existing column with new data.
-            else
+
+            try
             {
-                statement.executeUpdate(String.format(SQL_UPDATE_QUERY, account.getPermissionData(),
-                        account.getRoleData(), account.getBalance(), account.getDiscordId()));
+                to.addBalanceUnits(transfer.getUnits());
+            }
+            catch (final ArithmeticException exception)
+            {
+                from.addBalanceUnits(transfer.getUnits());
+                return Transfer.Result.BALANCE_OVERFLOW;
             }
-
-            // Data no longer needs to be updated.
-            account.setNeedsToSync(false);
-            return true;
         }
-        catch (final SQLException sqlException)
+        finally
         {
-            KodeKitten.logSevere(String.format(MessageConfig.getInstance().getInternal("cant_save_account_for_id"), account.getDiscordId()));
-            sqlException.printStackTrace();
-            return false;
+            journal.unlockAppends();
+            Account.unlockAll(lockedAccounts);
         }
+
+        changedAccounts.put(from.getDiscordId(), from);
+        changedAccounts.put(to.getDiscordId(), to);
+
+        return Transfer.Result.COMPLETED;
+    }
+
+    /**
+     * @return The amount of transfers that moved balance.
+     */
+    public long getAppliedTransfers()
+    {
+        return appliedTransfers.get();
+    }
+
+    /**
+     * @return The amount of transfers that were rejected.
+     */
+    public long getRejectedTransfers()
+    {
+        return rejectedTransfers.get();
     }
 
     /**
@@ -341,9 +1517,12 @@ public final class AccountManager
      */
     public void flushFromMemory(@NonNull final Account account, final boolean keepIfUnableToSave)
     {
-        if (saveToDatabase(account) || !keepIfUnableToSave)
+        // An unchanged account that is already in the database has nothing left to save.
+        final boolean saved = (account.isPersisted() && !account.needsToSync()) || saveToDatabase(account);
+
+        if (saved || !keepIfUnableToSave)
         {
-            accounts.remove(account.getDiscordId());
+            deleteFromMemory(account.getDiscordId());
         }
     }
 
@@ -356,39 +1535,31 @@ public final class AccountManager
     }
 
     /**
-     * Loads an account's data from the database.
+     * Loads an account's data from the account store.
      *
      * @return True if the account was loaded.
      */
     public boolean loadFromDatabase(@NonNull final Account account)
     {
-        final Connection connection = getConnection();
-
-        if (connection == null)
+        if (!store.isOpen())
         {
             return false;
         }
 
-        try (final Statement statement = connection.createStatement(); final ResultSet resultSet =
-                statement.executeQuery(String.format(SQL_LOAD_QUERY, account.getDiscordId())))
+        try
         {
-            if (resultSet.next())
-            {
-                account.loadPermissions(resultSet.getString("permissions"));
-                account.loadRoles(resultSet.getString("roles"));
-                account.setBalance(resultSet.getDouble("balance"));
-            }
-
-            account.bumpLastActivityTime();
-            account.setLoaded();
-            account.setNeedsToSync(false);
-            return true;
+            store.load(account);
         }
-        catch (final SQLException sqlException)
+        catch (final IOException exception)
         {
-            sqlException.printStackTrace();
+            exception.printStackTrace();
             return false;
         }
+
+        account.bumpLastActivityTime();
+        account.setLoaded();
+        account.setNeedsToSync(false);
+        return true;
     }
 
     /**
@@ -396,7 +1567,12 @@ public final class AccountManager
      */
     public void deleteFromMemory(final long discordId)
     {
-        accounts.remove(discordId);
+        final Account account = accounts.peek(discordId);
+
+        if (account != null && accounts.remove(discordId, account))
+        {
+            expiryIndex.remove(account);
+        }
     }
 
     /**
@@ -408,13 +1584,34 @@ public final class AccountManager
     }
 
     /**
-     * Deletes the given account id from the database.
+     * Deletes the given account id from the account store.
      */
     public void deleteFromDatabase(final long discordId)
     {
-        if (existsInDatabase(discordId))
+        // A deleted account must not be written back by a pending flush or a replay of the journal.
+        flusher.discard(discordId);
+        journal.appendDelete(discordId);
+        leaderboard.remove(discordId);
+
+        final Account account = accounts.peek(discordId);
+
+        if (account != null)
+        {
+            account.setPersisted(false);
+            account.setSavedState(null, null);
+        }
+
+        try
+        {
+            // Exports only write the accounts in the store, so the rows are deleted from the database right away.
+            if (store.delete(discordId) && store != sqliteStore)
+            {
+                sqliteStore.delete(discordId);
+            }
+        }
+        catch (final IOException exception)
         {
-            executeQuery(String.format(SQL_DELETE, discordId));
+            exception.printStackTrace();
         }
     }
 
@@ -453,82 +1650,105 @@ public final class AccountManager
             return;
         }
 
+        readPool.close();
+
         try
         {
-            connection.close();
+            await(databaseExecutor.submit(DatabaseExecutor.RequestType.QUERY, () ->
+            {
+                if (connection == null)
+                {
+                    return null;
+                }
+
+                try
+                {
+                    // Statements have to be closed before the connection they belong to.
+                    statementCache.clear();
+                    persistedIds.clear();
+                    connection.close();
+                }
+                finally
+                {
+                    this.connection = null;
+                }
+
+                return null;
+            }));
         }
         catch (final SQLException sqlException)
         {
             KodeKitten.logSevere(MessageConfig.getInstance().getInternal("cant_close_connection"));
             sqlException.printStackTrace();
         }
-        finally
-        {
-            this.connection = null;
-        }
-    }
-
-    /**
-     * Closes the account database connection if it has been inactive for over 5 minutes.
-     */
-    public boolean cleanupConnectionInactivity()
-    {
-        if (connection == null)
-        {
-            return false;
-        }
-
-        int seconds = (int) ((System.currentTimeMillis() - connectionLastActivity) / 1000);
-
-        // Been over 5 minutes.
-        if (seconds > 300)
-        {
-            closeDatabaseConnection();
-            return true;
-        }
-        else
-        {
-            return false;
-        }
     }
 
     /**
      * Removes accounts flagged as inactive from internal memory.
-     * Saves all account data before removing them.
+     * Saves all changed account data in a single transaction before removing them.
+     * Only accounts whose deadline in the expiry index has passed are checked.
      */
     public boolean cleanupAccountInactivity()
     {
+        final long currentTime = System.currentTimeMillis();
         final Connection connection = getConnection();
+        final List<Account> accountsToSave = new ArrayList<>();
         boolean accountsFlushed = false;
 
-        for (var entry : accounts.entrySet())
+        for (final Account account : expiryIndex.pollExpired(currentTime))
         {
-            final Account account = entry.getValue();
+            // The account was replaced or left memory after it was filed.
+            if (accounts.peek(account.getDiscordId()) != account)
+            {
+                continue;
+            }
 
-            if (!account.isInactive())
+            // The account was accessed since it was filed, so it is filed again at its new deadline.
+            if (!account.isInactive(currentTime))
             {
+                expiryIndex.schedule(account, account.getInactiveDeadline());
                 continue;
             }
 
-            // If there is no active connection we only remove the account from memory if it is dead.
-            if (connection == null)
+            // If there is an active connection we attempt to save changed accounts before removing them from memory.
+            if (connection != null && (!account.isPersisted() || account.needsToSync()))
             {
-                if (account.isDead())
-                {
-                    accounts.remove(entry.getKey());
-                    accountsFlushed = true;
-                }
+                accountsToSave.add(account);
             }
-            // If there is an active connection we attempt to save the account to the database before removing it
-            // from memory.
-            else if (saveToDatabase(account) || account.isDead())
+            // Otherwise we only remove the account from memory if it is dead.
+            else if (account.isDead(currentTime))
             {
-                accounts.remove(entry.getKey());
+                accounts.remove(account.getDiscordId(), account);
                 accountsFlushed = true;
             }
+            else
+            {
+                expiryIndex.schedule(account, account.getDeadDeadline());
+            }
+        }
+
+        if (accountsToSave.isEmpty())
+        {
+            return accountsFlushed;
+        }
+
+        final boolean saved = saveToDatabase(accountsToSave);
+
+        for (final Account account : accountsToSave)
+        {
+            // Dead accounts that failed to save are still queued in the flusher, so they are safe to remove.
+            if (saved || account.isDead(currentTime))
+            {
+                accounts.remove(account.getDiscordId(), account);
+                accountsFlushed = true;
+            }
+            else
+            {
+                expiryIndex.schedule(account, account.getDeadDeadline());
+            }
         }
 
         return accountsFlushed;
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,538 @@
+package com.sylink.util.account;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.zip.CRC32;
+
+/**
+ * Exports every account to a compact binary snapshot file and imports snapshot files back.
+ * A snapshot is a header, blocks of accounts that each carry their own checksum so they can be checked and decoded in
+ * parallel, and a footer with the amount of accounts and blocks. Numbers are stored as variable length integers and
+ * discord ids as the difference to the previous id of the block.
+ */
+public final class AccountSnapshot
+{
+
+    /**
+     * The accounts of a decoded block.
+     */
+    private static final class Block
+    {
+
+        private final long[] discordIds;
+        private final AccountState[] states;
+
+        private Block(final int accounts)
+        {
+            this.discordIds = new long[accounts];
+            this.states = new AccountState[accounts];
+        }
+
+    }
+
+    // Magic number at the start of a snapshot file, "KKSN".
+    private static final int MAGIC = 0x4B4B534E;
+    // Magic number at the start of the footer, "KKSE".
+    private static final int FOOTER_MAGIC = 0x4B4B5345;
+    // The version of the snapshot format.
+    private static final int VERSION = 1;
+    // The size in bytes of the header, its magic number and version.
+    private static final int HEADER_SIZE = 8;
+    // The size in bytes of the footer, its magic number, account count and block count.
+    private static final int FOOTER_SIZE = 16;
+    // The size in bytes of the header of a block, its account count, byte length and checksum.
+    private static final int BLOCK_HEADER_SIZE = 12;
+
+    // The account manager whose accounts are exported and imported.
+    private final AccountManager accountManager;
+
+    // The maximum amount of accounts in a block, each block is imported in its own transaction.
+    @Getter(AccessLevel.PUBLIC)
+    @Setter(AccessLevel.PUBLIC)
+    private int blockSize = 4096;
+
+    AccountSnapshot(@NonNull final AccountManager accountManager)
+    {
+        this.accountManager = accountManager;
+    }
+
+    /**
+     * Writes every account in the account store and in memory to a snapshot file, replacing the file once it is
+     * complete. Accounts in memory are written instead of their stored state, as they may hold changes that are not
+     * saved yet. The database is read in a single read transaction on the read connection pool, so writers are not
+     * paused. Without the pool the export runs on the writer connection and holds up writes until it finishes.
+     *
+     * @return The amount of accounts exported.
+     */
+    public long exportTo(@NonNull final Path file) throws IOException
+    {
+        final Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+        final long accounts;
+
+        try (final SnapshotWriter writer = new SnapshotWriter(temporaryFile, blockSize))
+        {
+            accounts = exportAccounts(writer);
+            writer.finish();
+        }
+        catch (final UncheckedIOException exception)
+        {
+            Files.deleteIfExists(temporaryFile);
+            throw exception.getCause();
+        }
+        catch (final IOException exception)
+        {
+            Files.deleteIfExists(temporaryFile);
+            throw exception;
+        }
+
+        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        return accounts;
+    }
+
+    /**
+     * Writes every account of the account store to the snapshot, replacing them with the accounts in memory.
+     *
+     * @return The amount of accounts written.
+     */
+    private long exportAccounts(@NonNull final SnapshotWriter writer) throws IOException
+    {
+        final Map<Long, AccountState> memoryStates = new HashMap<>();
+        // Accounts in memory already written, in case a store visits an account again.
+        final Map<Long, AccountState> writtenStates = new HashMap<>();
+        // Taken once the store is being read, so accounts in memory are at least as new as the stored accounts.
+        final long stored = accountManager.getStore().scan(() -> memoryStates.putAll(captureMemoryStates()),
+                (discordId, state) ->
+                {
+                    AccountState memoryState = memoryStates.remove(discordId);
+
+                    if (memoryState != null)
+                    {
+                        writtenStates.put(discordId, memoryState);
+                    }
+                    else
+                    {
+                        memoryState = writtenStates.get(discordId);
+                    }
+
+                    writer.write(discordId, (memoryState != null) ? memoryState : state);
+                });
+
+        return stored + writeMemoryOnly(memoryStates, writer);
+    }
+
+    /**
+     * Writes the accounts that are only in memory, in order of their discord id.
+     *
+     * @return The amount of accounts written.
+     */
+    private static long writeMemoryOnly(@NonNull final Map<Long, AccountState> memoryStates,
+                                        @NonNull final SnapshotWriter writer)
+    {
+        for (final Map.Entry<Long, AccountState> entry : new TreeMap<>(memoryStates).entrySet())
+        {
+            writer.write(entry.getKey(), entry.getValue());
+        }
+
+        return memoryStates.size();
+    }
+
+    /**
+     * @return The state of every account held in memory or waiting to be flushed, by discord id.
+     */
+    private Map<Long, AccountState> captureMemoryStates()
+    {
+        final Map<Long, AccountState> states = new HashMap<>();
+
+        for (final Account account : accountManager.getFlusher().getPendingAccounts())
+        {
+            states.put(account.getDiscordId(), account.getState());
+        }
+
+        // Held accounts are the ones changes are made to, so they replace an older account waiting to be flushed.
+        for (final Account account : accountManager.getAccountCache().values())
+        {
+            states.put(account.getDiscordId(), account.getState());
+        }
+
+        return states;
+    }
+
+    /**
+     * Imports every account of a snapshot file, replacing accounts with the same discord id and keeping the others.
+     * The file is memory mapped and its blocks are checked and decoded in parallel while earlier blocks are written,
+     * each block in its own transaction. Accounts held in memory take the imported state.
+     *
+     * @return The amount of accounts imported.
+     *
+     * @throws IOException If the file is not a complete snapshot. Blocks before a corrupt block are already imported.
+     */
+    public long importFrom(@NonNull final Path file) throws IOException
+    {
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            if (channel.size() > Integer.MAX_VALUE)
+            {
+                throw new IOException("Snapshots over 2 GB are not supported: " + file);
+            }
+
+            final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+            final List<Integer> blockOffsets = readBlockOffsets(mapped);
+            // Enough blocks are decoded ahead to keep the writer busy without holding the whole snapshot in memory.
+            final int decodeAhead = Math.max(2, Runtime.getRuntime().availableProcessors() * 2);
+            final List<CompletableFuture<Block>> decodedBlocks = new ArrayList<>();
+            long imported = 0L;
+
+            for (int i = 0; i < blockOffsets.size(); i++)
+            {
+                while (decodedBlocks.size() < blockOffsets.size() && decodedBlocks.size() <= i + decodeAhead)
+                {
+                    final int offset = blockOffsets.get(decodedBlocks.size());
+
+                    decodedBlocks.add(CompletableFuture.supplyAsync(() -> decodeBlock(mapped, offset)));
+                }
+
+                final Block block;
+
+                try
+                {
+                    block = decodedBlocks.get(i).join();
+                    decodedBlocks.set(i, null);
+                }
+                catch (final CompletionException exception)
+                {
+                    if (exception.getCause() instanceof UncheckedIOException uncheckedIOException)
+                    {
+                        throw uncheckedIOException.getCause();
+                    }
+
+                    throw exception;
+                }
+
+                imported += importBlock(block);
+            }
+
+            return imported;
+        }
+    }
+
+    /**
+     * Checks the header and footer of a mapped snapshot.
+     *
+     * @return The offset of each block.
+     */
+    private static List<Integer> readBlockOffsets(@NonNull final ByteBuffer snapshot) throws IOException
+    {
+        final int size = snapshot.limit();
+
+        if (size < HEADER_SIZE + FOOTER_SIZE || snapshot.getInt(0) != MAGIC)
+        {
+            throw new IOException("Not an account snapshot");
+        }
+
+        if (snapshot.getInt(4) != VERSION)
+        {
+            throw new IOException("Unsupported account snapshot version " + snapshot.getInt(4));
+        }
+
+        final int footer = size - FOOTER_SIZE;
+
+        if (snapshot.getInt(footer) != FOOTER_MAGIC)
+        {
+            throw new IOException("Account snapshot is incomplete");
+        }
+
+        final List<Integer> blockOffsets = new ArrayList<>();
+        long accounts = 0L;
+        int offset = HEADER_SIZE;
+
+        while (offset < footer)
+        {
+            final int length = (offset + BLOCK_HEADER_SIZE <= footer) ? snapshot.getInt(offset + 4) : -1;
+
+            if (length < 0 || length > footer - offset - BLOCK_HEADER_SIZE)
+            {
+                throw new IOException("Account snapshot block at byte " + offset + " is corrupt");
+            }
+
+            blockOffsets.add(offset);
+            accounts += snapshot.getInt(offset);
+            offset += BLOCK_HEADER_SIZE + length;
+        }
+
+        if (accounts != snapshot.getLong(footer + 4) || blockOffsets.size() != snapshot.getInt(footer + 12))
+        {
+            throw new IOException("Account snapshot does not hold the accounts listed in its footer");
+        }
+
+        return blockOffsets;
+    }
+
+    /**
+     * Checks and decodes the accounts of a block.
+     *
+     * @throws UncheckedIOException If the checksum of the block does not match.
+     */
+    private static Block decodeBlock(@NonNull final ByteBuffer snapshot, final int offset)
+    {
+        final int accounts = snapshot.getInt(offset);
+        final int length = snapshot.getInt(offset + 4);
+        final ByteBuffer data = snapshot.duplicate()
+                .position(offset + BLOCK_HEADER_SIZE)
+                .limit(offset + BLOCK_HEADER_SIZE + length)
+                .slice();
+        final CRC32 checksum = new CRC32();
+
+        checksum.update(data.duplicate());
+
+        if ((int) checksum.getValue() != snapshot.getInt(offset + 8))
+        {
+            throw new UncheckedIOException(new IOException("Account snapshot block at byte " + offset
+                    + " does not match its checksum"));
+        }
+
+        final Block block = new Block(accounts);
+        long discordId = 0L;
+
+        for (int i = 0; i < accounts; i++)
+        {
+            discordId += zigZagDecode(readVarLong(data));
+
+            final long balanceUnits = readVarLong(data);
+            final Set<String> permissions = new HashSet<>();
+            final Set<Long> roles = new HashSet<>();
+
+            for (long permission = readVarLong(data); permission > 0; permission--)
+            {
+                final byte[] bytes = new byte[(int) readVarLong(data)];
+
+                data.get(bytes);
+                permissions.add(new String(bytes, StandardCharsets.UTF_8));
+            }
+
+            for (long role = readVarLong(data); role > 0; role--)
+            {
+                roles.add(readVarLong(data));
+            }
+
+            block.discordIds[i] = discordId;
+            block.states[i] = AccountState.EMPTY.withPermissions(permissions).withRoles(roles)
+                    .withBalanceUnits(balanceUnits);
+        }
+
+        return block;
+    }
+
+    /**
+     * Writes the accounts of a block to the account store in one transaction and updates the ones held in memory.
+     *
+     * @return The amount of accounts imported.
+     */
+    private int importBlock(@NonNull final Block block) throws IOException
+    {
+        final List<Account> importedAccounts = new ArrayList<>(block.discordIds.length);
+
+        // The accounts written are not the ones held in memory, so every row of each account is replaced.
+        for (final long discordId : block.discordIds)
+        {
+            importedAccounts.add(new Account(discordId));
+        }
+
+        accountManager.getStore().upsertAll(importedAccounts, () -> Arrays.asList(block.states));
+
+        for (int i = 0; i < block.discordIds.length; i++)
+        {
+            final long discordId = block.discordIds[i];
+            final Account account = accountManager.getAccountCache().peek(discordId);
+            final Account pendingAccount = (account != null) ? account : accountManager.getFlusher().getPending(discordId);
+
+            if (pendingAccount != null)
+            {
+                // Every row of the account was replaced, so its next save writes all of them again.
+                pendingAccount.setPersisted(true);
+                pendingAccount.setSavedState(null, null);
+                pendingAccount.restoreState(block.states[i]);
+            }
+            else
+            {
+                accountManager.getLeaderboard().put(discordId, block.states[i].getBalanceUnits());
+            }
+        }
+
+        return block.discordIds.length;
+    }
+
+    private static long zigZagEncode(final long value)
+    {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long zigZagDecode(final long value)
+    {
+        return (value >>> 1) ^ -(value & 1L);
+    }
+
+    /**
+     * Writes a variable length integer, 7 bits per byte with the high bit set on every byte but the last.
+     */
+    private static void writeVarLong(@NonNull final OutputStream output, long value) throws IOException
+    {
+        while ((value & ~0x7FL) != 0L)
+        {
+            output.write((int) ((value & 0x7FL) | 0x80L));
+            value >>>= 7;
+        }
+
+        output.write((int) value);
+    }
+
+    /**
+     * @return The variable length integer read from the buffer.
+     */
+    private static long readVarLong(@NonNull final ByteBuffer buffer)
+    {
+        long value = 0L;
+
+        for (int shift = 0; shift < 64; shift += 7)
+        {
+            final byte current = buffer.get();
+
+            value |= (long) (current & 0x7F) << shift;
+
+            if ((current & 0x80) == 0)
+            {
+                return value;
+            }
+        }
+
+        throw new UncheckedIOException(new IOException("Malformed variable length integer in account snapshot"));
+    }
+
+    /**
+     * Writes accounts to a snapshot file in blocks.
+     */
+    private static final class SnapshotWriter
+            implements Closeable
+    {
+
+        private final DataOutputStream output;
+        private final int blockSize;
+        // The encoded accounts of the block being written.
+        private final ByteArrayOutputStream block = new ByteArrayOutputStream(64 * 1024);
+        private final CRC32 checksum = new CRC32();
+        private int blockAccounts = 0;
+        private long previousId = 0L;
+        private long accounts = 0L;
+        private int blocks = 0;
+
+        private SnapshotWriter(@NonNull final Path file, final int blockSize) throws IOException
+        {
+            this.output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024));
+            this.blockSize = Math.max(1, blockSize);
+
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+        }
+
+        /**
+         * Adds an account to the snapshot.
+         *
+         * @throws UncheckedIOException If the snapshot could not be written, as it is called from a database read.
+         */
+        private void write(final long discordId, @NonNull final AccountState state)
+        {
+            try
+            {
+                writeVarLong(block, zigZagEncode(discordId - previousId));
+                writeVarLong(block, state.getBalanceUnits());
+                writeVarLong(block, state.getPermissions().size());
+
+                for (final String permission : state.getPermissions())
+                {
+                    final byte[] bytes = permission.getBytes(StandardCharsets.UTF_8);
+
+                    writeVarLong(block, bytes.length);
+                    block.write(bytes);
+                }
+
+                writeVarLong(block, state.getRoles().size());
+
+                for (int i = 0; i < state.getRoles().size(); i++)
+                {
+                    writeVarLong(block, state.getRoles().getRoleId(i));
+                }
+
+                previousId = discordId;
+                accounts++;
+
+                if (++blockAccounts == blockSize)
+                {
+                    writeBlock();
+                }
+            }
+            catch (final IOException exception)
+            {
+                throw new UncheckedIOException(exception);
+            }
+        }
+
+        /**
+         * Writes the waiting accounts as a block behind its header.
+         */
+        private void writeBlock() throws IOException
+        {
+            if (blockAccounts == 0)
+            {
+                return;
+            }
+
+            final byte[] bytes = block.toByteArray();
+
+            checksum.reset();
+            checksum.update(bytes);
+            output.writeInt(blockAccounts);
+            output.writeInt(bytes.length);
+            output.writeInt((int) checksum.getValue());
+            output.write(bytes);
+            block.reset();
+            blockAccounts = 0;
+            previousId = 0L;
+            blocks++;
+        }
+
+        /**
+         * Writes the last block and the footer.
+         */
+        private void finish() throws IOException
+        {
+            writeBlock();
+            output.writeInt(FOOTER_MAGIC);
+            output.writeLong(accounts);
+            output.writeInt(blocks);
+            output.flush();
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            output.close();
+        }
+
+    }
+
+}
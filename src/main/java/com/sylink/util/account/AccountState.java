@@ -0,0 +1,128 @@
+package com.sylink.util.account;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.Set;
+
+/**
+ * Immutable snapshot of the data of an account that is saved to the database.
+ * Accounts swap in a new snapshot for every change, so a save reads its permissions, roles and balance from a single
+ * consistent snapshot without locking the account.
+ */
+public final class AccountState
+{
+
+    // The state of a new account.
+    static final AccountState EMPTY = new AccountState(PermissionSet.EMPTY, RoleSet.EMPTY, 0L);
+
+    // The lower case permissions of the account, as bits of their ids in the permission registry.
+    private final PermissionSet permissions;
+    // The role ids of the account, sorted in a primitive array.
+    @Getter(AccessLevel.PUBLIC)
+    private final RoleSet roles;
+    // The balance of the account in minor units.
+    @Getter(AccessLevel.PUBLIC)
+    private final long balanceUnits;
+
+    private AccountState(@NonNull final PermissionSet permissions, @NonNull final RoleSet roles,
+                         final long balanceUnits)
+    {
+        this.permissions = permissions;
+        this.roles = roles;
+        this.balanceUnits = balanceUnits;
+    }
+
+    /**
+     * @return The unmodifiable lower case permissions of the account.
+     */
+    public Set<String> getPermissions()
+    {
+        return permissions;
+    }
+
+    /**
+     * @return True if the state has the permission id of the permission registry.
+     */
+    public boolean hasPermission(final int permissionId)
+    {
+        return permissions.has(permissionId);
+    }
+
+    /**
+     * @return The state with the given permissions, or this state if they are the same.
+     */
+    public AccountState withPermissions(@NonNull final Set<String> permissions)
+    {
+        final PermissionSet newPermissions = PermissionSet.of(permissions);
+
+        return newPermissions.equals(this.permissions) ? this : new AccountState(newPermissions, roles, balanceUnits);
+    }
+
+    /**
+     * @return The state with the permission added, or this state if it already has it.
+     */
+    public AccountState withPermission(@NonNull final String permission)
+    {
+        if (permission.isBlank())
+        {
+            return this;
+        }
+
+        final PermissionSet newPermissions = permissions.with(PermissionRegistry.getInstance().intern(permission));
+
+        return (newPermissions == permissions) ? this : new AccountState(newPermissions, roles, balanceUnits);
+    }
+
+    /**
+     * @return The state with the permission removed, or this state if it does not have it.
+     */
+    public AccountState withoutPermission(@NonNull final String permission)
+    {
+        final PermissionSet newPermissions = permissions.without(PermissionRegistry.getInstance().find(permission));
+
+        return (newPermissions == permissions) ? this : new AccountState(newPermissions, roles, balanceUnits);
+    }
+
+    /**
+     * @return The state with the given role ids, or this state if they are the same.
+     */
+    public AccountState withRoles(@NonNull final Set<Long> roles)
+    {
+        final RoleSet newRoles = RoleSet.of(roles);
+
+        return newRoles.equals(this.roles) ? this : new AccountState(permissions, newRoles, balanceUnits);
+    }
+
+    /**
+     * @return The state with the role id added, or this state if it already has it.
+     */
+    public AccountState withRole(final long roleId)
+    {
+        final RoleSet newRoles = roles.with(roleId);
+
+        return (newRoles == roles) ? this : new AccountState(permissions, newRoles, balanceUnits);
+    }
+
+    /**
+     * @return The state with the role id removed, or this state if it does not have it.
+     */
+    public AccountState withoutRole(final long roleId)
+    {
+        final RoleSet newRoles = roles.without(roleId);
+
+        return (newRoles == roles) ? this : new AccountState(permissions, newRoles, balanceUnits);
+    }
+
+    /**
+     * @return The state with the balance in minor units floored at 0, or this state if it is the same.
+     */
+    public AccountState withBalanceUnits(final long balanceUnits)
+    {
+        final long newBalance = Math.max(0L, balanceUnits);
+
+        return (newBalance == this.balanceUnits) ? this : new AccountState(permissions, roles, newBalance);
+    }
+
+}
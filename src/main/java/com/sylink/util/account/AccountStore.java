@@ -0,0 +1,127 @@
+package com.sylink.util.account;
+
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Storage engine that accounts are loaded from and saved to, selected by the storage.backend setting.
+ * Implementations are safe to use from any thread.
+ */
+public interface AccountStore
+{
+
+    /**
+     * Visits the accounts of a store.
+     */
+    @FunctionalInterface
+    interface Visitor
+    {
+        void visit(long discordId, AccountState state);
+    }
+
+    /**
+     * @return The name of the store, as used by the storage.backend setting.
+     */
+    String getName();
+
+    /**
+     * @return True if the store can be read from and written to.
+     */
+    boolean isOpen();
+
+    /**
+     * @return False if the store loses its accounts when closed, so they have to be exported to the database.
+     */
+    default boolean isPersistent()
+    {
+        return true;
+    }
+
+    /**
+     * @return The amount of stored accounts.
+     */
+    long size() throws IOException;
+
+    /**
+     * Reads the stored state of an account in to the account and marks it as persisted.
+     *
+     * @return True if the account is stored.
+     */
+    boolean load(@NonNull Account account) throws IOException;
+
+    /**
+     * Reads the stored accounts of many discord ids at once.
+     *
+     * @return A new persisted account for each stored discord id, with its stored state. Discord ids that are not
+     * stored are left out.
+     */
+    List<Account> loadAll(@NonNull Collection<Long> discordIds) throws IOException;
+
+    /**
+     * @return The amount of database queries run by loadAll, 0 for stores that do not query a database.
+     */
+    default long getLoadAllQueries()
+    {
+        return 0L;
+    }
+
+    /**
+     * Writes the states of accounts, replacing what is stored for them, in one transaction if the store has them.
+     * Stores may record on each account what they wrote, so the next write only writes what changed.
+     *
+     * @param states Supplies the states in the order of the accounts. It is called once, when no other write to the
+     *               store can run, so a write never replaces a newer state written by a later call.
+     */
+    void upsertAll(@NonNull List<Account> accounts, @NonNull Supplier<List<AccountState>> states) throws IOException;
+
+    /**
+     * Writes the state of an account, replacing what is stored for it.
+     */
+    default void upsert(@NonNull final Account account, @NonNull final AccountState state) throws IOException
+    {
+        upsertAll(List.of(account), () -> List.of(state));
+    }
+
+    /**
+     * Deletes an account.
+     *
+     * @return True if the account was stored.
+     */
+    boolean delete(long discordId) throws IOException;
+
+    /**
+     * @return True if the account is stored.
+     */
+    boolean exists(long discordId) throws IOException;
+
+    /**
+     * Visits every stored account. Accounts written during the scan may be visited with either state, and stores that
+     * reorganise themselves during a scan may visit an account more than once.
+     *
+     * @param started Run once before the first account is visited, when writes made after it are no longer seen by
+     *                stores that read from a consistent snapshot.
+     *
+     * @return The amount of accounts visited.
+     */
+    long scan(@NonNull Runnable started, @NonNull Visitor visitor) throws IOException;
+
+    /**
+     * Visits every stored account.
+     *
+     * @return The amount of accounts visited.
+     */
+    default long scan(@NonNull final Visitor visitor) throws IOException
+    {
+        return scan(() -> {}, visitor);
+    }
+
+    /**
+     * Closes the store, after which it can no longer be read from or written to.
+     */
+    void close() throws IOException;
+
+}
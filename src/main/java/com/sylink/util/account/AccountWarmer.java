@@ -0,0 +1,212 @@
+package com.sylink.util.account;
+
+import com.sylink.KodeKitten;
+import com.sylink.util.config.MessageConfig;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+
+import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * Class that saves the most accessed accounts at shutdown and loads them back in to memory at start up, so the first
+ * commands after a restart do not all wait on the database.
+ * Hot accounts are read from the account store in batches instead of one account at a time.
+ */
+public final class AccountWarmer
+{
+
+    // The SQL statements used to replace the saved hot accounts.
+    private static final String SQL_CLEAR_HOT_ACCOUNTS = "DELETE FROM hot_accounts";
+    private static final String SQL_INSERT_HOT_ACCOUNT = "INSERT INTO hot_accounts (id, accesses) VALUES (?, ?)";
+    // The SQL query used to read the saved hot accounts, most accessed first.
+    private static final String SQL_HOT_ACCOUNTS_QUERY = "SELECT id FROM hot_accounts ORDER BY accesses DESC LIMIT ?";
+
+    // The account manager the hot accounts are saved from and loaded in to.
+    private final AccountManager accountManager;
+
+    // The maximum amount of hot accounts saved and preloaded, 0 disables the warm up.
+    @Getter(AccessLevel.PUBLIC)
+    @Setter(AccessLevel.PUBLIC)
+    private int maximumAccounts = 1000;
+    // The maximum amount of accounts read by a single batch of queries.
+    @Getter(AccessLevel.PUBLIC)
+    @Setter(AccessLevel.PUBLIC)
+    private int batchSize = 500;
+
+    // The amount of hot accounts found by the last warm up.
+    @Getter(AccessLevel.PUBLIC)
+    private volatile int hotAccounts = 0;
+    // The amount of accounts the last warm up added to memory.
+    @Getter(AccessLevel.PUBLIC)
+    private volatile int preloadedAccounts = 0;
+    // The amount of queries run by the last warm up.
+    @Getter(AccessLevel.PUBLIC)
+    private volatile int queries = 0;
+    // The amount of milliseconds the last warm up took.
+    @Getter(AccessLevel.PUBLIC)
+    private volatile long duration = 0L;
+
+    AccountWarmer(@NonNull final AccountManager accountManager)
+    {
+        this.accountManager = accountManager;
+    }
+
+    /**
+     * Saves the most accessed accounts held in memory as the hot accounts of the next start up, replacing the saved
+     * hot accounts. Accounts that were never accessed while in memory are left out.
+     *
+     * @return True if the hot accounts were saved.
+     */
+    public boolean saveHotAccounts()
+    {
+        if (maximumAccounts <= 0 || accountManager.getConnection() == null)
+        {
+            return false;
+        }
+
+        final List<Account> rankedAccounts = new ArrayList<>();
+
+        for (final Account account : accountManager.getAccountCache().values())
+        {
+            if (account.getAccesses() > 0)
+            {
+                rankedAccounts.add(account);
+            }
+        }
+
+        rankedAccounts.sort(Comparator.comparingLong(Account::getAccesses).reversed());
+
+        final List<Account> savedAccounts = rankedAccounts.subList(0, Math.min(maximumAccounts, rankedAccounts.size()));
+        final StatementCache statements = accountManager.getStatementCache();
+
+        try
+        {
+            AccountManager.await(accountManager.getDatabaseExecutor().submit(DatabaseExecutor.RequestType.SAVE, () ->
+            {
+                statements.prepare(SQL_CLEAR_HOT_ACCOUNTS).executeUpdate();
+
+                final PreparedStatement statement = statements.prepare(SQL_INSERT_HOT_ACCOUNT);
+
+                try
+                {
+                    for (final Account account : savedAccounts)
+                    {
+                        statement.setLong(1, account.getDiscordId());
+                        statement.setLong(2, account.getAccesses());
+                        statement.addBatch();
+                    }
+
+                    return statement.executeBatch();
+                }
+                finally
+                {
+                    statement.clearBatch();
+                }
+            }));
+
+            return true;
+        }
+        catch (final SQLException sqlException)
+        {
+            KodeKitten.logWarning(MessageConfig.getInstance().getInternal("cant_save_hot_accounts"));
+            sqlException.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Loads the saved hot accounts in to memory, skipping accounts that are already held or being loaded.
+     * The cache is never filled past its maximum size.
+     *
+     * @return The amount of accounts added to memory.
+     */
+    public int warmUp()
+    {
+        final long startTime = System.nanoTime();
+        final AccountCache accountCache = accountManager.getAccountCache();
+        final int limit = accountCache.isBounded()
+                ? Math.min(maximumAccounts, accountCache.getMaximumSize())
+                : maximumAccounts;
+
+        if (limit <= 0 || accountManager.getConnection() == null)
+        {
+            return 0;
+        }
+
+        int found = 0;
+        int preloaded = 0;
+        int queryCount = 0;
+
+        try
+        {
+            final List<Long> hotIds = accountManager.read(DatabaseExecutor.RequestType.QUERY, null, null,
+                    (connection, statements) -> readHotIds(statements, limit));
+
+            found = hotIds.size();
+            queryCount++;
+
+            final AccountStore store = accountManager.getStore();
+            final long storeQueries = store.getLoadAllQueries();
+            final int size = Math.max(1, batchSize);
+
+            for (int start = 0; start < hotIds.size(); start += size)
+            {
+                final List<Long> batch = hotIds.subList(start, Math.min(start + size, hotIds.size()));
+
+                for (final Account account : store.loadAll(batch))
+                {
+                    if (accountManager.cacheWarmedAccount(account))
+                    {
+                        preloaded++;
+                    }
+                }
+            }
+
+            queryCount += (int) (store.getLoadAllQueries() - storeQueries);
+        }
+        catch (final SQLException | IOException exception)
+        {
+            KodeKitten.logWarning(MessageConfig.getInstance().getInternal("cant_warm_up_accounts"));
+            exception.printStackTrace();
+        }
+
+        hotAccounts = found;
+        preloadedAccounts = preloaded;
+        queries = queryCount;
+        duration = (System.nanoTime() - startTime) / 1_000_000L;
+
+        KodeKitten.logInfo(String.format(MessageConfig.getInstance().getInternal("warmed_up_accounts"),
+                preloadedAccounts, hotAccounts, duration, queries));
+
+        return preloaded;
+    }
+
+    /**
+     * @return The discord ids of the saved hot accounts, most accessed first.
+     */
+    private static List<Long> readHotIds(@NonNull final StatementCache statements, final int limit)
+            throws SQLException
+    {
+        final PreparedStatement statement = statements.prepare(SQL_HOT_ACCOUNTS_QUERY);
+        final List<Long> hotIds = new ArrayList<>();
+
+        statement.setInt(1, limit);
+
+        try (final ResultSet resultSet = statement.executeQuery())
+        {
+            while (resultSet.next())
+            {
+                hotIds.add(resultSet.getLong(1));
+            }
+        }
+
+        return hotIds;
+    }
+
+}
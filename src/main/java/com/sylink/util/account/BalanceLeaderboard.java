@@ -0,0 +1,534 @@
+package com.sylink.util.account;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Index of every account ordered by balance, highest first, with ties ordered by discord id.
+ * The accounts are kept in a treap whose nodes count the nodes below them, so the rank of an account and the account
+ * at a rank are both found in logarithmic time, whether or not the account is held in memory.
+ * Balance changes only record the changed account in a concurrent map, and are applied to the treap in batches, so
+ * changing balances never waits on the index.
+ */
+public final class BalanceLeaderboard
+{
+
+    /**
+     * An account and its balance at a place of the leaderboard.
+     */
+    public static final class Entry
+    {
+
+        // The place of the account, 1 being the highest balance.
+        @Getter(AccessLevel.PUBLIC)
+        private final long rank;
+        @Getter(AccessLevel.PUBLIC)
+        private final long discordId;
+        @Getter(AccessLevel.PUBLIC)
+        private final long balanceUnits;
+
+        Entry(final long rank, final long discordId, final long balanceUnits)
+        {
+            this.rank = rank;
+            this.discordId = discordId;
+            this.balanceUnits = balanceUnits;
+        }
+
+    }
+
+    /**
+     * Node of the treap, ordered by its key and heap ordered by its priority.
+     */
+    private static final class Node
+    {
+
+        private final long discordId;
+        private final long balanceUnits;
+        private final int priority;
+        private Node left = null;
+        private Node right = null;
+        // The amount of nodes in the subtree of this node, itself included.
+        private int size = 1;
+
+        private Node(final long discordId, final long balanceUnits, final int priority)
+        {
+            this.discordId = discordId;
+            this.balanceUnits = balanceUnits;
+            this.priority = priority;
+        }
+
+    }
+
+    // The amount of changed accounts waiting to be indexed after which the changing thread indexes them, if it can
+    // take the index without waiting.
+    private static final int APPLY_THRESHOLD = 1024;
+
+    // Accounts whose balance changed since they were last indexed, by discord id.
+    private final Map<Long, Account> changedAccounts = new ConcurrentHashMap<>();
+    // Held while reading or changing the treap.
+    private final ReentrantLock lock = new ReentrantLock();
+    // The balance of every indexed account by discord id, used to find the node of an account, guarded by the lock.
+    private final Map<Long, Long> balances = new HashMap<>();
+    // The root of the treap, or null if no account is indexed, guarded by the lock.
+    private Node root = null;
+    // State of the generator of node priorities, guarded by the lock.
+    private int seed = 0x2545F491;
+
+    /**
+     * @return The amount of indexed accounts.
+     */
+    public int size()
+    {
+        lock.lock();
+
+        try
+        {
+            applyChanges();
+            return balances.size();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Indexes the account with the given balance, moving it if it is already indexed.
+     */
+    public void put(final long discordId, final long balanceUnits)
+    {
+        lock.lock();
+
+        try
+        {
+            applyChanges();
+            index(discordId, balanceUnits);
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Indexes the account with the given balance unless it is already indexed, so a value read before the account
+     * changed never replaces the balance it changed to.
+     *
+     * @return True if the account was indexed.
+     */
+    public boolean putIfAbsent(final long discordId, final long balanceUnits)
+    {
+        lock.lock();
+
+        try
+        {
+            applyChanges();
+
+            if (balances.containsKey(discordId))
+            {
+                return false;
+            }
+
+            index(discordId, balanceUnits);
+            return true;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records that the balance of the account changed, without taking the index. The latest balance is indexed by
+     * the next query, or by the changing thread once enough changes are waiting and nobody holds the index.
+     * The balance is read when it is indexed, after the account is taken out of the changed accounts, so the last
+     * change of concurrent changes is always indexed.
+     */
+    public void refresh(@NonNull final Account account)
+    {
+        changedAccounts.put(account.getDiscordId(), account);
+
+        if (changedAccounts.size() >= APPLY_THRESHOLD && lock.tryLock())
+        {
+            try
+            {
+                applyChanges();
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Removes the account from the index.
+     *
+     * @return True if the account was indexed.
+     */
+    public boolean remove(final long discordId)
+    {
+        lock.lock();
+
+        try
+        {
+            // Dropped first, so a change recorded before the removal does not index the account again.
+            changedAccounts.remove(discordId);
+            applyChanges();
+
+            final Long balanceUnits = balances.remove(discordId);
+
+            if (balanceUnits == null)
+            {
+                return false;
+            }
+
+            root = remove(root, balanceUnits, discordId);
+            return true;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes every account from the index.
+     */
+    public void clear()
+    {
+        lock.lock();
+
+        try
+        {
+            changedAccounts.clear();
+            balances.clear();
+            root = null;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The place of the account, 1 being the highest balance, or 0 if the account is not indexed.
+     */
+    public long getRank(final long discordId)
+    {
+        lock.lock();
+
+        try
+        {
+            applyChanges();
+            return findRank(discordId);
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The entry of the account, or null if the account is not indexed.
+     */
+    public Entry getEntry(final long discordId)
+    {
+        lock.lock();
+
+        try
+        {
+            applyChanges();
+
+            final long rank = findRank(discordId);
+
+            return (rank == 0L) ? null : new Entry(rank, discordId, balances.get(discordId));
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The entries of the accounts with the highest balances, highest first.
+     */
+    public List<Entry> getTop(final int count)
+    {
+        return getPage(1L, count);
+    }
+
+    /**
+     * @return Up to the given amount of entries starting at the given rank, highest balance first.
+     */
+    public List<Entry> getPage(final long firstRank, final int count)
+    {
+        if (firstRank < 1L)
+        {
+            throw new IllegalArgumentException("Ranks start at 1: " + firstRank);
+        }
+
+        lock.lock();
+
+        try
+        {
+            applyChanges();
+
+            final long lastRank = Math.min(balances.size(), firstRank - 1L + Math.max(count, 0));
+            final List<Entry> entries = new ArrayList<>((int) Math.max(lastRank - firstRank + 1L, 0L));
+
+            for (long rank = firstRank; rank <= lastRank; rank++)
+            {
+                final Node node = select(rank);
+
+                entries.add(new Entry(rank, node.discordId, node.balanceUnits));
+            }
+
+            return entries;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Indexes the latest balance of every changed account. Has to hold the lock.
+     */
+    private void applyChanges()
+    {
+        for (final Long discordId : changedAccounts.keySet())
+        {
+            final Account account = changedAccounts.remove(discordId);
+
+            if (account != null)
+            {
+                index(discordId, account.getBalanceUnits());
+            }
+        }
+    }
+
+    /**
+     * Indexes the account with the given balance, moving it if it is already indexed. Has to hold the lock.
+     */
+    private void index(final long discordId, final long balanceUnits)
+    {
+        final Long oldBalanceUnits = balances.put(discordId, balanceUnits);
+
+        if (oldBalanceUnits != null)
+        {
+            if (oldBalanceUnits == balanceUnits)
+            {
+                return;
+            }
+
+            root = remove(root, oldBalanceUnits, discordId);
+        }
+
+        root = insert(root, new Node(discordId, balanceUnits, nextPriority()));
+    }
+
+    /**
+     * @return The place of the account, or 0 if the account is not indexed. Has to hold the lock.
+     */
+    private long findRank(final long discordId)
+    {
+        final Long balanceUnits = balances.get(discordId);
+
+        if (balanceUnits == null)
+        {
+            return 0L;
+        }
+
+        long rank = 0L;
+        Node node = root;
+
+        while (node != null)
+        {
+            final int comparison = compare(balanceUnits, discordId, node);
+
+            if (comparison < 0)
+            {
+                node = node.left;
+            }
+            else
+            {
+                rank += size(node.left) + 1;
+
+                if (comparison == 0)
+                {
+                    return rank;
+                }
+
+                node = node.right;
+            }
+        }
+
+        throw new IllegalStateException("Account " + discordId + " is missing from the leaderboard");
+    }
+
+    /**
+     * @return The node at the given place, 1 being the highest balance.
+     */
+    private Node select(final long rank)
+    {
+        long remaining = rank;
+        Node node = root;
+
+        while (true)
+        {
+            final int leftSize = size(node.left);
+
+            if (remaining <= leftSize)
+            {
+                node = node.left;
+            }
+            else if (remaining == leftSize + 1)
+            {
+                return node;
+            }
+            else
+            {
+                remaining -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    /**
+     * @return The subtree with the node inserted, rotated so its priorities stay heap ordered.
+     */
+    private static Node insert(final Node node, final Node insertedNode)
+    {
+        if (node == null)
+        {
+            return insertedNode;
+        }
+
+        node.size++;
+
+        if (compare(insertedNode.balanceUnits, insertedNode.discordId, node) < 0)
+        {
+            node.left = insert(node.left, insertedNode);
+
+            return (node.left.priority > node.priority) ? rotateRight(node) : node;
+        }
+
+        node.right = insert(node.right, insertedNode);
+
+        return (node.right.priority > node.priority) ? rotateLeft(node) : node;
+    }
+
+    /**
+     * @return The subtree without the node of the given key, which has to be in the subtree.
+     */
+    private static Node remove(final Node node, final long balanceUnits, final long discordId)
+    {
+        final int comparison = compare(balanceUnits, discordId, node);
+
+        if (comparison == 0)
+        {
+            return merge(node.left, node.right);
+        }
+
+        node.size--;
+
+        if (comparison < 0)
+        {
+            node.left = remove(node.left, balanceUnits, discordId);
+        }
+        else
+        {
+            node.right = remove(node.right, balanceUnits, discordId);
+        }
+
+        return node;
+    }
+
+    /**
+     * @return The subtree holding the nodes of both subtrees, every key of the left one ordered before the right one.
+     */
+    private static Node merge(final Node left, final Node right)
+    {
+        if (left == null)
+        {
+            return right;
+        }
+
+        if (right == null)
+        {
+            return left;
+        }
+
+        if (left.priority > right.priority)
+        {
+            left.size += right.size;
+            left.right = merge(left.right, right);
+            return left;
+        }
+
+        right.size += left.size;
+        right.left = merge(left, right.left);
+        return right;
+    }
+
+    private static Node rotateRight(final Node node)
+    {
+        final Node pivot = node.left;
+
+        node.left = pivot.right;
+        pivot.right = node;
+        pivot.size = node.size;
+        node.size = size(node.left) + size(node.right) + 1;
+        return pivot;
+    }
+
+    private static Node rotateLeft(final Node node)
+    {
+        final Node pivot = node.right;
+
+        node.right = pivot.left;
+        pivot.left = node;
+        pivot.size = node.size;
+        node.size = size(node.left) + size(node.right) + 1;
+        return pivot;
+    }
+
+    private static int size(final Node node)
+    {
+        return (node == null) ? 0 : node.size;
+    }
+
+    /**
+     * Orders higher balances first and equal balances by discord id.
+     */
+    private static int compare(final long balanceUnits, final long discordId, @NonNull final Node node)
+    {
+        if (balanceUnits != node.balanceUnits)
+        {
+            return (balanceUnits > node.balanceUnits) ? -1 : 1;
+        }
+
+        return Long.compare(discordId, node.discordId);
+    }
+
+    /**
+     * @return The next priority of a xorshift generator, random enough to keep the treap balanced.
+     */
+    private int nextPriority()
+    {
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        return seed;
+    }
+
+}
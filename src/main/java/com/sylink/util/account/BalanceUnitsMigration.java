@@ -0,0 +1,97 @@
+package com.sylink.util.account;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Data migration that moves balances of old databases from the floating point balance column in to the whole cents of
+ * the balance_units column. Accounts are migrated in batches in id order, so old databases are converted while the bot
+ * stays online. Migrated and newly written rows have a balance of 0, so a single pass over the table converts it and
+ * reads take the balance column only while it is not 0.
+ */
+public final class BalanceUnitsMigration implements SchemaMigrator.DataMigration
+{
+
+    // The name the progress of the migration is stored under.
+    public static final String NAME = "balance_units";
+
+    // The SQL expression of a balance column in whole cents, with negative balances counted as 0.
+    private static final String SQL_LEGACY_BALANCE_UNITS = "CAST(ROUND(MAX(balance, 0) * 100) AS INTEGER)";
+    // The SQL expression of the balance of an account in whole cents, whether or not it has been migrated.
+    static final String SQL_BALANCE_UNITS = "CASE WHEN balance != 0 THEN " + SQL_LEGACY_BALANCE_UNITS
+            + " ELSE balance_units END AS balance_units";
+    // The SQL query used to read the next batch of accounts that still have a balance column.
+    private static final String SQL_BATCH_QUERY = """
+            SELECT
+                id
+            FROM
+                accounts
+            WHERE
+                id > ? AND balance != 0
+            ORDER BY
+                id
+            LIMIT ?;
+            """;
+    // The SQL query used to move the balance column of an account in to its balance units.
+    private static final String SQL_MOVE_BALANCE = "UPDATE accounts SET balance_units = " + SQL_LEGACY_BALANCE_UNITS
+            + ", balance = 0 WHERE id = ?";
+
+    // The maximum amount of accounts migrated in a single transaction.
+    @Getter(AccessLevel.PUBLIC)
+    @Setter(AccessLevel.PUBLIC)
+    private int batchSize = 500;
+
+    @Override
+    public String getName()
+    {
+        return NAME;
+    }
+
+    /**
+     * Migrates the next batch of accounts after the cursor.
+     *
+     * @return The largest discord id migrated, or FINISHED if it was the last batch.
+     *
+     * @throws SQLException If the batch could not be migrated.
+     */
+    @Override
+    public long runChunk(@NonNull final StatementCache statements, final long cursor) throws SQLException
+    {
+        final PreparedStatement batchQuery = statements.prepare(SQL_BATCH_QUERY);
+        final PreparedStatement moveBalance = statements.prepare(SQL_MOVE_BALANCE);
+        int migrated = 0;
+        long lastId = cursor;
+
+        batchQuery.setLong(1, cursor);
+        batchQuery.setInt(2, batchSize);
+
+        try (final ResultSet resultSet = batchQuery.executeQuery())
+        {
+            while (resultSet.next())
+            {
+                lastId = resultSet.getLong("id");
+                moveBalance.setLong(1, lastId);
+                moveBalance.addBatch();
+                migrated++;
+            }
+        }
+
+        try
+        {
+            moveBalance.executeBatch();
+        }
+        finally
+        {
+            moveBalance.clearBatch();
+        }
+
+        return (migrated < batchSize) ? SchemaMigrator.FINISHED : lastId;
+    }
+
+}
@@ -0,0 +1,574 @@
+package com.sylink.util.account;
+
+import lombok.NonNull;
+
+import javax.annotation.Nullable;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.*;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Class that runs every database request on a single thread that owns the database connection.
+ * Identical requests waiting in the queue are merged into one, and consecutive writes are grouped into a single
+ * transaction where each write is rolled back on its own if it fails.
+ */
+public final class DatabaseExecutor
+{
+
+    /**
+     * Types of requests run by the executor.
+     */
+    public enum RequestType
+    {
+        LOAD,
+        SAVE,
+        DELETE,
+        EXISTS,
+        // Statements that may change anything, such as console queries or opening the connection.
+        QUERY;
+
+        /**
+         * @return True if requests of this type are grouped into a transaction with other writes.
+         */
+        boolean isTransactional()
+        {
+            return this == SAVE || this == DELETE;
+        }
+    }
+
+    /**
+     * Database work run by a request.
+     */
+    @FunctionalInterface
+    public interface Operation<T>
+    {
+        T run() throws SQLException;
+    }
+
+    // The maximum amount of requests run as one group.
+    private static final int MAX_BATCH_SIZE = 256;
+
+    // The name of the thread that runs the requests.
+    private final String threadName;
+    // Supplies the connection of the running requests, used to group writes into transactions.
+    private final Supplier<Connection> connectionSupplier;
+    // Queue of requests waiting to be run.
+    private final BlockingDeque<Request<?>> queue = new LinkedBlockingDeque<>();
+    // Map that stores each discord id associated with the latest waiting request for it that can be merged with.
+    private final Map<Long, Request<?>> latestRequests = new HashMap<>();
+    // The thread running the requests, or null if it has not been started.
+    private volatile Thread thread = null;
+
+    // The amount of submitted requests.
+    private final AtomicLong submittedRequests = new AtomicLong();
+    // The amount of requests merged in to an identical waiting request.
+    private final AtomicLong mergedRequests = new AtomicLong();
+    // The amount of requests that failed.
+    private final AtomicLong failedRequests = new AtomicLong();
+    // The amount of committed transactions.
+    private final AtomicLong transactions = new AtomicLong();
+    // The amount of completed requests.
+    private final AtomicLong completedRequests = new AtomicLong();
+    // The total amount of nanoseconds between submitting and completing requests.
+    private final AtomicLong totalLatency = new AtomicLong();
+    // The largest amount of nanoseconds between submitting and completing a request.
+    private final AtomicLong maxLatency = new AtomicLong();
+
+    DatabaseExecutor(@NonNull final String threadName, @NonNull final Supplier<Connection> connectionSupplier)
+    {
+        this.threadName = threadName;
+        this.connectionSupplier = connectionSupplier;
+    }
+
+    /**
+     * Submits a request that is never merged with other requests.
+     * As it may touch any account, no request submitted before it is merged with a request submitted after it.
+     */
+    <T> CompletableFuture<T> submit(@NonNull final RequestType type, @NonNull final Operation<T> operation)
+    {
+        return submit(type, null, null, operation);
+    }
+
+    /**
+     * Submits a request for a single discord id.
+     * It is merged with an identical waiting request if that is the latest request submitted for the discord id.
+     *
+     * @param target The object the request works on, requests are only identical if they share it.
+     */
+    <T> CompletableFuture<T> submit(@NonNull final RequestType type, @Nullable final Long discordId,
+                                    @Nullable final Object target, @NonNull final Operation<T> operation)
+    {
+        submittedRequests.incrementAndGet();
+
+        // Requests made by a running request are run straight away, as waiting for them would never finish.
+        if (Thread.currentThread() == thread)
+        {
+            return runInline(operation);
+        }
+
+        synchronized (this)
+        {
+            ensureStarted();
+
+            if (discordId == null)
+            {
+                latestRequests.clear();
+            }
+            else
+            {
+                final Request<?> latest = latestRequests.get(discordId);
+
+                if (latest != null && latest.type == type && latest.target == target)
+                {
+                    mergedRequests.incrementAndGet();
+
+                    @SuppressWarnings("unchecked")
+                    final CompletableFuture<T> future = (CompletableFuture<T>) latest.future;
+
+                    return future;
+                }
+            }
+
+            final Request<T> request = new Request<>(type, discordId, target, operation);
+
+            if (discordId != null)
+            {
+                latestRequests.put(discordId, request);
+            }
+
+            queue.add(request);
+
+            return request.future;
+        }
+    }
+
+    /**
+     * Runs an operation on the calling thread.
+     */
+    private <T> CompletableFuture<T> runInline(@NonNull final Operation<T> operation)
+    {
+        try
+        {
+            return CompletableFuture.completedFuture(operation.run());
+        }
+        catch (final Exception exception)
+        {
+            failedRequests.incrementAndGet();
+            return CompletableFuture.failedFuture(exception);
+        }
+    }
+
+    /**
+     * Starts the thread running the requests if it is not running.
+     */
+    private void ensureStarted()
+    {
+        if (thread != null)
+        {
+            return;
+        }
+
+        final Thread newThread = new Thread(this::runLoop, threadName);
+
+        newThread.setDaemon(true);
+        thread = newThread;
+        newThread.start();
+    }
+
+    /**
+     * Stops the thread after every request submitted before shutting down has been run.
+     * Requests submitted afterwards start a new thread.
+     */
+    public void shutdown()
+    {
+        final Thread runningThread;
+
+        synchronized (this)
+        {
+            runningThread = thread;
+
+            if (runningThread == null)
+            {
+                return;
+            }
+
+            queue.add(Request.POISON);
+        }
+
+        try
+        {
+            runningThread.join(TimeUnit.SECONDS.toMillis(30));
+        }
+        catch (final InterruptedException exception)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this)
+        {
+            if (thread == runningThread && !runningThread.isAlive())
+            {
+                thread = null;
+
+                // Requests submitted while shutting down still need a thread to run them.
+                if (!queue.isEmpty())
+                {
+                    ensureStarted();
+                }
+            }
+        }
+    }
+
+    /**
+     * Takes requests from the queue and runs them in groups until the executor is shut down.
+     */
+    private void runLoop()
+    {
+        final List<Request<?>> batch = new ArrayList<>(MAX_BATCH_SIZE);
+
+        while (true)
+        {
+            try
+            {
+                batch.add(queue.take());
+            }
+            catch (final InterruptedException exception)
+            {
+                continue;
+            }
+
+            queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+
+            synchronized (this)
+            {
+                // Requests that started can no longer be merged with.
+                for (final Request<?> request : batch)
+                {
+                    if (request.discordId != null)
+                    {
+                        latestRequests.remove(request.discordId, request);
+                    }
+                }
+            }
+
+            final int poisonIndex = batch.indexOf(Request.POISON);
+
+            if (poisonIndex >= 0)
+            {
+                // Requests submitted while shutting down are put back in order for the next thread.
+                final List<Request<?>> remaining = batch.subList(poisonIndex + 1, batch.size());
+
+                for (int i = remaining.size() - 1; i >= 0; i--)
+                {
+                    queue.addFirst(remaining.get(i));
+                }
+
+                runBatch(batch.subList(0, poisonIndex));
+                return;
+            }
+
+            runBatch(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Runs a group of requests in order, grouping consecutive writes into one transaction.
+     * Requests are completed once their transaction is committed.
+     */
+    private void runBatch(@NonNull final List<Request<?>> batch)
+    {
+        final List<Request<?>> uncommitted = new ArrayList<>();
+        Connection transaction = null;
+
+        for (final Request<?> request : batch)
+        {
+            // Queries may change the connection or the transaction, so they run on their own.
+            if (request.type == RequestType.QUERY && transaction != null)
+            {
+                commit(transaction, uncommitted);
+                transaction = null;
+            }
+
+            if (request.type.isTransactional() && transaction == null)
+            {
+                transaction = begin();
+            }
+
+            if (transaction == null)
+            {
+                request.run();
+                complete(request);
+            }
+            else
+            {
+                runInTransaction(transaction, request);
+                uncommitted.add(request);
+            }
+        }
+
+        if (transaction != null)
+        {
+            commit(transaction, uncommitted);
+        }
+    }
+
+    /**
+     * @return The connection with a started transaction, or null if there is no connection to start one on.
+     */
+    private Connection begin()
+    {
+        final Connection connection = connectionSupplier.get();
+
+        if (connection == null)
+        {
+            return null;
+        }
+
+        try
+        {
+            connection.setAutoCommit(false);
+            return connection;
+        }
+        catch (final SQLException sqlException)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Runs a request inside the transaction, rolling back only its own changes if it fails.
+     */
+    private void runInTransaction(@NonNull final Connection connection, @NonNull final Request<?> request)
+    {
+        final Savepoint savepoint;
+
+        try
+        {
+            savepoint = connection.setSavepoint();
+        }
+        catch (final SQLException sqlException)
+        {
+            request.fail(sqlException);
+            return;
+        }
+
+        request.run();
+
+        try
+        {
+            if (request.failure == null)
+            {
+                connection.releaseSavepoint(savepoint);
+            }
+            else
+            {
+                connection.rollback(savepoint);
+            }
+        }
+        catch (final SQLException sqlException)
+        {
+            request.fail(sqlException);
+        }
+    }
+
+    /**
+     * Commits the transaction and completes its requests, failing all of them if the commit fails.
+     */
+    private void commit(@NonNull final Connection connection, @NonNull final List<Request<?>> uncommitted)
+    {
+        try
+        {
+            connection.commit();
+            transactions.incrementAndGet();
+        }
+        catch (final SQLException sqlException)
+        {
+            try
+            {
+                connection.rollback();
+            }
+            catch (final SQLException ignored)
+            {
+                // The commit failure is reported to every request instead.
+            }
+
+            for (final Request<?> request : uncommitted)
+            {
+                request.fail(sqlException);
+            }
+        }
+        finally
+        {
+            try
+            {
+                connection.setAutoCommit(true);
+            }
+            catch (final SQLException ignored)
+            {
+                // The connection is unusable and will fail the next request.
+            }
+        }
+
+        for (final Request<?> request : uncommitted)
+        {
+            complete(request);
+        }
+
+        uncommitted.clear();
+    }
+
+    /**
+     * Completes the future of a request that has run and records its latency.
+     */
+    private void complete(@NonNull final Request<?> request)
+    {
+        final long latency = System.nanoTime() - request.submitTime;
+
+        completedRequests.incrementAndGet();
+        totalLatency.addAndGet(latency);
+        maxLatency.accumulateAndGet(latency, Math::max);
+
+        if (request.failure != null)
+        {
+            failedRequests.incrementAndGet();
+        }
+
+        request.complete();
+    }
+
+    /**
+     * @return True if the calling thread is the thread running the requests.
+     */
+    public boolean isExecutorThread()
+    {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * @return The amount of requests waiting to be run.
+     */
+    public int getQueueDepth()
+    {
+        return queue.size();
+    }
+
+    /**
+     * @return The amount of submitted requests.
+     */
+    public long getSubmittedRequests()
+    {
+        return submittedRequests.get();
+    }
+
+    /**
+     * @return The amount of requests merged in to an identical waiting request.
+     */
+    public long getMergedRequests()
+    {
+        return mergedRequests.get();
+    }
+
+    /**
+     * @return The amount of requests that failed.
+     */
+    public long getFailedRequests()
+    {
+        return failedRequests.get();
+    }
+
+    /**
+     * @return The amount of committed transactions.
+     */
+    public long getTransactions()
+    {
+        return transactions.get();
+    }
+
+    /**
+     * @return The average amount of milliseconds between submitting and completing a request.
+     */
+    public double getAverageLatency()
+    {
+        final long completed = completedRequests.get();
+
+        return (completed == 0) ? 0.0 : totalLatency.get() / 1_000_000.0 / completed;
+    }
+
+    /**
+     * @return The largest amount of milliseconds between submitting and completing a request.
+     */
+    public double getMaxLatency()
+    {
+        return maxLatency.get() / 1_000_000.0;
+    }
+
+    /**
+     * A request waiting to be run and the future completed with its result.
+     */
+    private static final class Request<T>
+    {
+
+        // Request queued to stop the thread running the requests.
+        private static final Request<Object> POISON = new Request<>(RequestType.QUERY, null, null, () -> null);
+
+        private final RequestType type;
+        private final Long discordId;
+        private final Object target;
+        private final Operation<T> operation;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private final long submitTime = System.nanoTime();
+        private T result = null;
+        private Exception failure = null;
+
+        private Request(@NonNull final RequestType type, @Nullable final Long discordId, @Nullable final Object target,
+                        @NonNull final Operation<T> operation)
+        {
+            this.type = type;
+            this.discordId = discordId;
+            this.target = target;
+            this.operation = operation;
+        }
+
+        private void run()
+        {
+            try
+            {
+                result = operation.run();
+            }
+            catch (final Exception exception)
+            {
+                failure = exception;
+            }
+        }
+
+        private void fail(@NonNull final Exception exception)
+        {
+            if (failure == null)
+            {
+                failure = exception;
+            }
+        }
+
+        private void complete()
+        {
+            if (failure == null)
+            {
+                future.complete(result);
+            }
+            else
+            {
+                future.completeExceptionally(failure);
+            }
+        }
+
+    }
+
+}
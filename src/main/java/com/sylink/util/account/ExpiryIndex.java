@@ -0,0 +1,103 @@
+package com.sylink.util.account;
+
+import lombok.NonNull;
+
+import java.util.*;
+
+/**
+ * Class that files accounts into one second buckets by the time they next need to be checked for inactivity.
+ * Polling only visits the buckets that are due, so the cost of a cleanup grows with the amount of expired accounts
+ * rather than the amount of accounts held in memory.
+ */
+final class ExpiryIndex
+{
+
+    // The amount of milliseconds covered by a single bucket.
+    private static final long RESOLUTION = 1000L;
+
+    // Buckets of accounts ordered by the end of the second they are due in.
+    private final TreeMap<Long, Set<Account>> buckets = new TreeMap<>();
+    // The amount of accounts filed in all buckets.
+    private int size = 0;
+
+    /**
+     * Files an account to be returned by pollExpired once the given deadline has passed.
+     * An account that is already filed is moved to the bucket of the new deadline.
+     */
+    synchronized void schedule(@NonNull final Account account, final long deadline)
+    {
+        final long bucket = Math.floorDiv(deadline + RESOLUTION - 1, RESOLUTION);
+
+        if (account.getExpiryBucket() == bucket)
+        {
+            return;
+        }
+
+        remove(account);
+
+        buckets.computeIfAbsent(bucket, key -> new HashSet<>()).add(account);
+        account.setExpiryBucket(bucket);
+        size++;
+    }
+
+    /**
+     * Removes an account from the index if it is filed.
+     */
+    synchronized void remove(@NonNull final Account account)
+    {
+        final long bucket = account.getExpiryBucket();
+
+        if (bucket == Account.NOT_FILED)
+        {
+            return;
+        }
+
+        final Set<Account> accounts = buckets.get(bucket);
+
+        if (accounts != null && accounts.remove(account))
+        {
+            size--;
+
+            if (accounts.isEmpty())
+            {
+                buckets.remove(bucket);
+            }
+        }
+
+        account.setExpiryBucket(Account.NOT_FILED);
+    }
+
+    /**
+     * Removes every account whose deadline has passed from the index.
+     *
+     * @return The accounts that are due, in order of their deadline.
+     */
+    synchronized List<Account> pollExpired(final long currentTime)
+    {
+        final List<Account> expired = new ArrayList<>();
+        final Map<Long, Set<Account>> due = buckets.headMap(Math.floorDiv(currentTime, RESOLUTION), true);
+
+        for (final Set<Account> accounts : due.values())
+        {
+            for (final Account account : accounts)
+            {
+                account.setExpiryBucket(Account.NOT_FILED);
+                expired.add(account);
+            }
+        }
+
+        size -= expired.size();
+        due.clear();
+
+        return expired;
+    }
+
+    /**
+     * @return The amount of accounts filed in the index.
+     */
+    synchronized int size()
+    {
+        return size;
+    }
+
+}
@@ -0,0 +1,133 @@
+package com.sylink.util.account;
+
+/**
+ * Count-min sketch of 4-bit counters that estimates how often a discord id has been accessed.
+ * All counters are halved once enough accesses have been recorded so old popularity fades over time.
+ * This class is not thread safe and has to be guarded by its owner.
+ */
+final class FrequencySketch
+{
+
+    // Seeds used to pick a different counter for each of the four hash functions.
+    private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+            0xcbf29ce484222325L};
+    // Mask that clears the top bit of every counter after shifting all counters right by one.
+    private static final long RESET_MASK = 0x7777777777777777L;
+    // Mask that selects the lowest bit of every counter.
+    private static final long ONE_MASK = 0x1111111111111111L;
+
+    // Table where each long holds sixteen 4-bit counters.
+    private final long[] table;
+    // Mask used to turn a hash into a table index.
+    private final int tableMask;
+    // The amount of recorded accesses after which all counters are halved.
+    private final int sampleSize;
+    // The amount of recorded accesses since the counters were last halved.
+    private int size = 0;
+
+    FrequencySketch(final int maximumSize)
+    {
+        final int tableSize = Integer.highestOneBit(Math.max(16, maximumSize - 1) << 1);
+
+        this.table = new long[tableSize];
+        this.tableMask = tableSize - 1;
+        this.sampleSize = (maximumSize > Integer.MAX_VALUE / 10) ? Integer.MAX_VALUE : 10 * Math.max(1, maximumSize);
+    }
+
+    /**
+     * @return The estimated amount of times the discord id was accessed, capped at 15.
+     */
+    int frequency(final long discordId)
+    {
+        final int start = (spread(discordId) & 3) << 2;
+        int frequency = 15;
+
+        for (int i = 0; i < 4; i++)
+        {
+            final int index = indexOf(discordId, i);
+            final int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xFL);
+
+            frequency = Math.min(frequency, count);
+        }
+
+        return frequency;
+    }
+
+    /**
+     * Records an access of the discord id.
+     */
+    void increment(final long discordId)
+    {
+        final int start = (spread(discordId) & 3) << 2;
+        boolean added = false;
+
+        for (int i = 0; i < 4; i++)
+        {
+            added |= incrementAt(indexOf(discordId, i), start + i);
+        }
+
+        if (added && ++size == sampleSize)
+        {
+            reset();
+        }
+    }
+
+    /**
+     * Increments the counter at the given table index and counter offset unless it is already at its maximum.
+     */
+    private boolean incrementAt(final int index, final int counter)
+    {
+        final int offset = counter << 2;
+        final long mask = 0xFL << offset;
+
+        if ((table[index] & mask) != mask)
+        {
+            table[index] += 1L << offset;
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Halves every counter in the table.
+     */
+    private void reset()
+    {
+        int oddCounters = 0;
+
+        for (int i = 0; i < table.length; i++)
+        {
+            oddCounters += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+
+        size = (size - (oddCounters >>> 2)) >>> 1;
+    }
+
+    /**
+     * @return The table index for the discord id under the given hash function.
+     */
+    private int indexOf(final long discordId, final int function)
+    {
+        long hash = (discordId + SEEDS[function]) * SEEDS[function];
+
+        hash += (hash >>> 32);
+
+        return ((int) hash) & tableMask;
+    }
+
+    /**
+     * @return A well mixed hash of the discord id.
+     */
+    private static int spread(final long discordId)
+    {
+        int hash = Long.hashCode(discordId);
+
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+
+        return (hash >>> 16) ^ hash;
+    }
+
+}
@@ -0,0 +1,130 @@
+package com.sylink.util.account;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Data migration that moves permissions and roles from the comma joined columns of the accounts table in to the
+ * permission and role tables. Accounts are migrated in batches in id order, so old databases are converted while the
+ * bot stays online. Rows are never given column data again once migrated, so a single pass over the table converts it.
+ */
+public final class LegacyDataMigration implements SchemaMigrator.DataMigration
+{
+
+    // The name the progress of the migration is stored under.
+    public static final String NAME = "legacy_permissions_and_roles";
+
+    // The SQL query used to read the next batch of accounts that still have column data.
+    private static final String SQL_BATCH_QUERY = """
+            SELECT
+                id,
+                permissions,
+                roles
+            FROM
+                accounts
+            WHERE
+                id > ? AND (permissions != '' OR roles != '')
+            ORDER BY
+                id
+            LIMIT ?;
+            """;
+    // The SQL query used to clear the column data of a migrated account.
+    private static final String SQL_CLEAR_COLUMNS = "UPDATE accounts SET permissions = '', roles = '' WHERE id = ?";
+
+    // The maximum amount of accounts migrated in a single transaction.
+    @Getter(AccessLevel.PUBLIC)
+    @Setter(AccessLevel.PUBLIC)
+    private int batchSize = 500;
+
+    @Override
+    public String getName()
+    {
+        return NAME;
+    }
+
+    /**
+     * Migrates the next batch of accounts after the cursor.
+     *
+     * @return The largest discord id migrated, or FINISHED if it was the last batch.
+     *
+     * @throws SQLException If the batch could not be migrated.
+     */
+    @Override
+    public long runChunk(@NonNull final StatementCache statements, final long cursor) throws SQLException
+    {
+        final PreparedStatement batchQuery = statements.prepare(SQL_BATCH_QUERY);
+        final PreparedStatement insertPermission = statements.prepare(SQLiteAccountStore.SQL_INSERT_PERMISSION);
+        final PreparedStatement insertRole = statements.prepare(SQLiteAccountStore.SQL_INSERT_ROLE);
+        final PreparedStatement clearColumns = statements.prepare(SQL_CLEAR_COLUMNS);
+        int migrated = 0;
+        long lastId = cursor;
+
+        batchQuery.setLong(1, cursor);
+        batchQuery.setInt(2, batchSize);
+
+        try (final ResultSet resultSet = batchQuery.executeQuery())
+        {
+            while (resultSet.next())
+            {
+                final long discordId = resultSet.getLong("id");
+
+                for (final String permission : resultSet.getString("permissions").split(","))
+                {
+                    if (!permission.isBlank())
+                    {
+                        insertPermission.setLong(1, discordId);
+                        insertPermission.setString(2, permission);
+                        insertPermission.addBatch();
+                    }
+                }
+
+                for (final String role : resultSet.getString("roles").split(","))
+                {
+                    final long roleId;
+
+                    try
+                    {
+                        roleId = Long.parseLong(role.trim());
+                    }
+                    catch (final NumberFormatException exception)
+                    {
+                        // Role ids that are not numbers could never be loaded, so they are dropped.
+                        continue;
+                    }
+
+                    insertRole.setLong(1, discordId);
+                    insertRole.setLong(2, roleId);
+                    insertRole.addBatch();
+                }
+
+                clearColumns.setLong(1, discordId);
+                clearColumns.addBatch();
+
+                lastId = discordId;
+                migrated++;
+            }
+        }
+
+        try
+        {
+            insertPermission.executeBatch();
+            insertRole.executeBatch();
+            clearColumns.executeBatch();
+        }
+        finally
+        {
+            insertPermission.clearBatch();
+            insertRole.clearBatch();
+            clearColumns.clearBatch();
+        }
+
+        return (migrated < batchSize) ? SchemaMigrator.FINISHED : lastId;
+    }
+
+}
@@ -0,0 +1,879 @@
+package com.sylink.util.account;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NonNull;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * Account store that keeps every account in memory mapped files outside the heap, so accounts that are not held in
+ * memory cost no heap and writes reach the page cache without a database transaction.
+ * The index file is an open addressing hash table of fixed size records keyed by discord id, holding the balance and
+ * the location of the permissions and roles in the slab file. Changed permissions and roles are appended to the slab,
+ * which is compacted in to a new generation once most of it is no longer used.
+ * Written data survives the process being killed but only reaches the disk once forced, or when the system writes
+ * back the page cache.
+ */
+public final class MappedAccountStore implements AccountStore
+{
+
+    // The name of the store in the storage.backend setting.
+    public static final String NAME = "mapped";
+
+    // Magic number at the start of the index file, "KKMS".
+    private static final int MAGIC = 0x4B4B4D53;
+    // The version of the file layout.
+    private static final int VERSION = 1;
+    // The name of the index file.
+    private static final String INDEX_FILE = "accounts.index";
+    // The size in bytes of the index file header.
+    private static final int HEADER_SIZE = 64;
+    // The offsets of the header fields.
+    private static final int HEADER_CAPACITY = 8;
+    private static final int HEADER_SIZE_FIELD = 12;
+    private static final int HEADER_TOMBSTONES = 16;
+    private static final int HEADER_GENERATION = 20;
+    private static final int HEADER_SLAB_END = 24;
+    private static final int HEADER_SLAB_GARBAGE = 32;
+
+    // The size in bytes of a record and the offsets of its fields.
+    private static final int RECORD_SIZE = 32;
+    private static final int RECORD_ID = 0;
+    private static final int RECORD_BALANCE = 8;
+    private static final int RECORD_SLAB_OFFSET = 16;
+    private static final int RECORD_SLAB_LENGTH = 24;
+    private static final int RECORD_FLAGS = 28;
+
+    // The flags of a record.
+    private static final int EMPTY = 0;
+    private static final int USED = 1;
+    private static final int DELETED = 2;
+
+    // The amount of records of a new index, always a power of 2.
+    private static final int INITIAL_CAPACITY = 1024;
+    // The largest amount of records that fit in a single mapping.
+    private static final int MAXIMUM_CAPACITY = 1 << 25;
+    // The size in bytes of a new slab.
+    private static final int INITIAL_SLAB_SIZE = 64 * 1024;
+    // Unused slab bytes are only compacted once there are at least this many.
+    private static final long MINIMUM_COMPACTION_GARBAGE = 1024 * 1024;
+    // The amount of accounts a full scan copies under the read lock at a time.
+    private static final int SCAN_CHUNK_SIZE = 1024;
+
+    // Guards the mappings, which are replaced when the index grows or the slab is compacted.
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // The directory holding the files of the store.
+    private Path directory = null;
+    // The mapped index file.
+    private MappedByteBuffer index = null;
+    // The mapped slab file.
+    private MappedByteBuffer slab = null;
+    // The amount of records of the index.
+    private int capacity = 0;
+    // Whether the store is open, read without the lock.
+    private volatile boolean open = false;
+    // The amount of times the index has been rebuilt, so scans can tell their position is no longer valid.
+    @Getter(AccessLevel.PUBLIC)
+    private volatile int rebuilds = 0;
+
+    /**
+     * Opens the store in a directory, creating its files if they do not exist.
+     *
+     * @throws IOException If the files could not be opened or are not a store.
+     */
+    public void open(@NonNull final Path directory) throws IOException
+    {
+        lock.writeLock().lock();
+
+        try
+        {
+            if (isOpen())
+            {
+                throw new IOException("The account store is already open");
+            }
+
+            Files.createDirectories(directory);
+
+            final Path indexFile = directory.resolve(INDEX_FILE);
+
+            if (Files.exists(indexFile))
+            {
+                final MappedByteBuffer openedIndex = map(indexFile, Files.size(indexFile));
+
+                if (openedIndex.limit() < HEADER_SIZE || openedIndex.getInt(0) != MAGIC)
+                {
+                    throw new IOException("Not an account store: " + indexFile);
+                }
+
+                if (openedIndex.getInt(4) != VERSION)
+                {
+                    throw new IOException("Unsupported account store version " + openedIndex.getInt(4));
+                }
+
+                final Path slabFile = slabFile(directory, openedIndex.getInt(HEADER_GENERATION));
+
+                if (!Files.exists(slabFile))
+                {
+                    throw new IOException("The account store slab is missing: " + slabFile);
+                }
+
+                index = openedIndex;
+                capacity = openedIndex.getInt(HEADER_CAPACITY);
+                slab = map(slabFile, Math.max(Files.size(slabFile), INITIAL_SLAB_SIZE));
+            }
+            else
+            {
+                slab = map(slabFile(directory, 0), INITIAL_SLAB_SIZE);
+                index = createIndex(indexFile, INITIAL_CAPACITY, 0, 0L);
+                capacity = INITIAL_CAPACITY;
+            }
+
+            this.directory = directory;
+            open = true;
+            deleteUnusedSlabs();
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public String getName()
+    {
+        return NAME;
+    }
+
+    /**
+     * @return True if the store is open.
+     */
+    @Override
+    public boolean isOpen()
+    {
+        return open;
+    }
+
+    /**
+     * @return The amount of accounts in the store.
+     */
+    @Override
+    public long size()
+    {
+        lock.readLock().lock();
+
+        try
+        {
+            return isOpen() ? index.getInt(HEADER_SIZE_FIELD) : 0;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return The state of an account, or null if it is not in the store.
+     */
+    @Nullable
+    public AccountState get(final long discordId)
+    {
+        lock.readLock().lock();
+
+        try
+        {
+            final int slot = isOpen() ? findSlot(discordId) : -1;
+
+            return (slot < 0) ? null : readState(slot);
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean load(@NonNull final Account account)
+    {
+        final AccountState state = get(account.getDiscordId());
+
+        if (state == null)
+        {
+            return false;
+        }
+
+        account.loadState(state);
+        account.setPersisted(true);
+        return true;
+    }
+
+    @Override
+    public List<Account> loadAll(@NonNull final Collection<Long> discordIds)
+    {
+        final List<Account> accounts = new ArrayList<>();
+
+        for (final long discordId : discordIds)
+        {
+            final Account account = new Account(discordId);
+
+            if (load(account))
+            {
+                accounts.add(account);
+            }
+        }
+
+        return accounts;
+    }
+
+    /**
+     * @return True if the account is in the store.
+     */
+    @Override
+    public boolean exists(final long discordId)
+    {
+        lock.readLock().lock();
+
+        try
+        {
+            return isOpen() && findSlot(discordId) >= 0;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the state of an account, replacing the state already stored.
+     *
+     * @throws IOException If the store is closed or full.
+     */
+    public void put(final long discordId, @NonNull final AccountState state) throws IOException
+    {
+        putAll(new long[]{discordId}, new AccountState[]{state});
+    }
+
+    /**
+     * Writes the states of accounts under the write lock, so the states are supplied while no other write can run.
+     *
+     * @throws IOException If the store is closed or full, the accounts before the failed one are written.
+     */
+    @Override
+    public void upsertAll(@NonNull final List<Account> accounts, @NonNull final Supplier<List<AccountState>> states)
+            throws IOException
+    {
+        lock.writeLock().lock();
+
+        try
+        {
+            if (!isOpen())
+            {
+                throw new IOException("The account store is not open");
+            }
+
+            final List<AccountState> suppliedStates = states.get();
+
+            for (int i = 0; i < accounts.size(); i++)
+            {
+                write(accounts.get(i).getDiscordId(), suppliedStates.get(i));
+            }
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the states of accounts under a single lock.
+     *
+     * @throws IOException If the store is closed or full, the accounts before the failed one are written.
+     */
+    public void putAll(@NonNull final long[] discordIds, @NonNull final AccountState[] states) throws IOException
+    {
+        lock.writeLock().lock();
+
+        try
+        {
+            if (!isOpen())
+            {
+                throw new IOException("The account store is not open");
+            }
+
+            for (int i = 0; i < discordIds.length; i++)
+            {
+                write(discordIds[i], states[i]);
+            }
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes an account from the store.
+     *
+     * @return True if the account was in the store.
+     */
+    @Override
+    public boolean delete(final long discordId)
+    {
+        lock.writeLock().lock();
+
+        try
+        {
+            final int slot = isOpen() ? findSlot(discordId) : -1;
+
+            if (slot < 0)
+            {
+                return false;
+            }
+
+            final int record = recordOffset(slot);
+
+            index.putInt(record + RECORD_FLAGS, DELETED);
+            index.putInt(HEADER_SIZE_FIELD, index.getInt(HEADER_SIZE_FIELD) - 1);
+            index.putInt(HEADER_TOMBSTONES, index.getInt(HEADER_TOMBSTONES) + 1);
+            addGarbage(index.getInt(record + RECORD_SLAB_LENGTH));
+            return true;
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Visits up to a limit of accounts in slot order, holding the read lock so the visitor must not write to the
+     * store. A scan that continues after the index was rebuilt may visit accounts again or miss them, so scans check
+     * {@link #getRebuilds()} and start over when it changed.
+     *
+     * @return The slot to continue the scan from, or -1 if every account was visited.
+     */
+    public int scan(final int fromSlot, final int limit, @NonNull final Visitor visitor)
+    {
+        lock.readLock().lock();
+
+        try
+        {
+            int visited = 0;
+            int slot = fromSlot;
+
+            while (isOpen() && slot < capacity)
+            {
+                if (visited == limit)
+                {
+                    return slot;
+                }
+
+                final int record = recordOffset(slot);
+
+                if (index.getInt(record + RECORD_FLAGS) == USED)
+                {
+                    visitor.visit(index.getLong(record + RECORD_ID), readState(slot));
+                    visited++;
+                }
+
+                slot++;
+            }
+
+            return -1;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Visits every account, copying a chunk of accounts under the read lock at a time and visiting them after it is
+     * released, so the visitor may take its time and write to the store. The scan starts over when the index is
+     * rebuilt, visiting the accounts before the rebuild again.
+     */
+    @Override
+    public long scan(@NonNull final Runnable started, @NonNull final Visitor visitor)
+    {
+        final long[] discordIds = new long[SCAN_CHUNK_SIZE];
+        final AccountState[] states = new AccountState[SCAN_CHUNK_SIZE];
+        final int[] copied = {0};
+        long visited = 0L;
+        int scannedRebuilds = rebuilds;
+        int slot = 0;
+
+        started.run();
+
+        while (slot >= 0)
+        {
+            copied[0] = 0;
+            slot = scan(slot, SCAN_CHUNK_SIZE, (discordId, state) ->
+            {
+                discordIds[copied[0]] = discordId;
+                states[copied[0]++] = state;
+            });
+
+            // A rebuild moved the accounts between slots, so the scan starts over to not miss any.
+            if (rebuilds != scannedRebuilds)
+            {
+                scannedRebuilds = rebuilds;
+                slot = 0;
+                continue;
+            }
+
+            for (int i = 0; i < copied[0]; i++)
+            {
+                visitor.visit(discordIds[i], states[i]);
+            }
+
+            visited += copied[0];
+        }
+
+        return visited;
+    }
+
+    /**
+     * Writes the changes in the page cache to the disk.
+     *
+     * @throws IOException If the changes could not be written.
+     */
+    public void force() throws IOException
+    {
+        lock.readLock().lock();
+
+        try
+        {
+            if (isOpen())
+            {
+                slab.force();
+                index.force();
+            }
+        }
+        catch (final UncheckedIOException exception)
+        {
+            throw exception.getCause();
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Forces the changes to the disk and closes the store.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        lock.writeLock().lock();
+
+        try
+        {
+            if (!isOpen())
+            {
+                return;
+            }
+
+            force();
+            open = false;
+            // The mappings are released once collected, as mapped buffers cannot be unmapped directly.
+            index = null;
+            slab = null;
+            directory = null;
+            capacity = 0;
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the state of an account, growing the index or compacting the slab first if needed.
+     */
+    private void write(final long discordId, @NonNull final AccountState state) throws IOException
+    {
+        final byte[] data = encode(state);
+        int slot = findSlot(discordId);
+
+        if (slot < 0 && (index.getInt(HEADER_SIZE_FIELD) + index.getInt(HEADER_TOMBSTONES) + 1) * 4L > capacity * 3L)
+        {
+            // Tombstones are cleared by rebuilding at the same capacity while the index is at most half full.
+            final boolean grow = (index.getInt(HEADER_SIZE_FIELD) + 1) * 2L > capacity;
+
+            if (grow && capacity == MAXIMUM_CAPACITY)
+            {
+                throw new IOException("The account store is full");
+            }
+
+            rebuild(grow ? capacity * 2 : capacity);
+        }
+
+        if (slot < 0)
+        {
+            slot = claimSlot(discordId);
+        }
+
+        final int record = recordOffset(slot);
+        final int oldLength = index.getInt(record + RECORD_SLAB_LENGTH);
+
+        // Permissions and roles are usually unchanged, so only the balance is written and no slab space is used.
+        if (index.getInt(record + RECORD_FLAGS) != USED || !slabEquals(index.getLong(record + RECORD_SLAB_OFFSET),
+                oldLength, data))
+        {
+            final long offset = appendToSlab(data);
+
+            if (index.getInt(record + RECORD_FLAGS) == USED)
+            {
+                addGarbage(oldLength);
+            }
+
+            index.putLong(record + RECORD_SLAB_OFFSET, offset);
+            index.putInt(record + RECORD_SLAB_LENGTH, data.length);
+        }
+
+        index.putLong(record + RECORD_BALANCE, state.getBalanceUnits());
+
+        if (index.getInt(record + RECORD_FLAGS) != USED)
+        {
+            index.putLong(record + RECORD_ID, discordId);
+            index.putInt(record + RECORD_FLAGS, USED);
+            index.putInt(HEADER_SIZE_FIELD, index.getInt(HEADER_SIZE_FIELD) + 1);
+        }
+
+        if (index.getLong(HEADER_SLAB_GARBAGE) >= Math.max(MINIMUM_COMPACTION_GARBAGE,
+                index.getLong(HEADER_SLAB_END) / 2))
+        {
+            rebuild(capacity);
+        }
+    }
+
+    /**
+     * @return The slot holding the account, or -1 if it is not in the store.
+     */
+    private int findSlot(final long discordId)
+    {
+        for (int slot = hash(discordId) & (capacity - 1); ; slot = (slot + 1) & (capacity - 1))
+        {
+            final int record = recordOffset(slot);
+            final int flags = index.getInt(record + RECORD_FLAGS);
+
+            if (flags == EMPTY)
+            {
+                return -1;
+            }
+
+            if (flags == USED && index.getLong(record + RECORD_ID) == discordId)
+            {
+                return slot;
+            }
+        }
+    }
+
+    /**
+     * @return The first empty or deleted slot for an account that is not in the store.
+     */
+    private int claimSlot(final long discordId)
+    {
+        for (int slot = hash(discordId) & (capacity - 1); ; slot = (slot + 1) & (capacity - 1))
+        {
+            final int flags = index.getInt(recordOffset(slot) + RECORD_FLAGS);
+
+            if (flags == DELETED)
+            {
+                index.putInt(HEADER_TOMBSTONES, index.getInt(HEADER_TOMBSTONES) - 1);
+                index.putInt(recordOffset(slot) + RECORD_SLAB_LENGTH, 0);
+                return slot;
+            }
+
+            if (flags == EMPTY)
+            {
+                return slot;
+            }
+        }
+    }
+
+    /**
+     * @return The state of the account in a used slot.
+     */
+    private AccountState readState(final int slot)
+    {
+        final int record = recordOffset(slot);
+        final int length = index.getInt(record + RECORD_SLAB_LENGTH);
+        final Set<String> permissions = new HashSet<>();
+        final Set<Long> roles = new HashSet<>();
+
+        if (length > 0)
+        {
+            final ByteBuffer data = slab.duplicate();
+
+            data.position((int) index.getLong(record + RECORD_SLAB_OFFSET));
+
+            for (int i = data.getShort() & 0xFFFF; i > 0; i--)
+            {
+                final byte[] bytes = new byte[data.getShort() & 0xFFFF];
+
+                data.get(bytes);
+                permissions.add(new String(bytes, StandardCharsets.UTF_8));
+            }
+
+            for (int i = data.getInt(); i > 0; i--)
+            {
+                roles.add(data.getLong());
+            }
+        }
+
+        return AccountState.EMPTY.withPermissions(permissions).withRoles(roles)
+                .withBalanceUnits(index.getLong(record + RECORD_BALANCE));
+    }
+
+    /**
+     * @return The permissions and roles of a state as they are stored in the slab, empty if it has neither.
+     */
+    private static byte[] encode(@NonNull final AccountState state) throws IOException
+    {
+        if (state.getPermissions().isEmpty() && state.getRoles().isEmpty())
+        {
+            return new byte[0];
+        }
+
+        final byte[][] permissions = new byte[state.getPermissions().size()][];
+        int length = 2 + 4 + state.getRoles().size() * 8;
+        int i = 0;
+
+        for (final String permission : state.getPermissions())
+        {
+            permissions[i] = permission.getBytes(StandardCharsets.UTF_8);
+
+            if (permissions[i].length > 0xFFFF)
+            {
+                throw new IOException("Permission is too long to store: " + permission);
+            }
+
+            length += 2 + permissions[i++].length;
+        }
+
+        if (permissions.length > 0xFFFF)
+        {
+            throw new IOException("Too many permissions to store: " + permissions.length);
+        }
+
+        final ByteBuffer data = ByteBuffer.allocate(length);
+
+        data.putShort((short) permissions.length);
+
+        for (final byte[] permission : permissions)
+        {
+            data.putShort((short) permission.length);
+            data.put(permission);
+        }
+
+        data.putInt(state.getRoles().size());
+
+        for (int role = 0; role < state.getRoles().size(); role++)
+        {
+            data.putLong(state.getRoles().getRoleId(role));
+        }
+
+        return data.array();
+    }
+
+    /**
+     * @return True if the slab holds the data at the offset.
+     */
+    private boolean slabEquals(final long offset, final int length, @NonNull final byte[] data)
+    {
+        if (length != data.length)
+        {
+            return false;
+        }
+
+        return length == 0 || slab.slice((int) offset, length).equals(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Appends data to the slab, growing the slab file if it is full.
+     *
+     * @return The offset of the data.
+     */
+    private long appendToSlab(@NonNull final byte[] data) throws IOException
+    {
+        final long offset = index.getLong(HEADER_SLAB_END);
+
+        if (data.length == 0)
+        {
+            return offset;
+        }
+
+        if (offset + data.length > slab.capacity())
+        {
+            final long size = Math.max(slab.capacity() * 2L, offset + data.length);
+
+            if (size > Integer.MAX_VALUE)
+            {
+                throw new IOException("The account store slab is full");
+            }
+
+            slab = map(slabFile(directory, index.getInt(HEADER_GENERATION)), size);
+        }
+
+        slab.put((int) offset, data);
+        index.putLong(HEADER_SLAB_END, offset + data.length);
+
+        return offset;
+    }
+
+    private void addGarbage(final int length)
+    {
+        index.putLong(HEADER_SLAB_GARBAGE, index.getLong(HEADER_SLAB_GARBAGE) + length);
+    }
+
+    /**
+     * Copies every account in to a new index and a new generation of the slab, dropping deleted records and unused
+     * slab space. The new index replaces the old one with an atomic move, so a crash leaves either one whole.
+     */
+    private void rebuild(final int newCapacity) throws IOException
+    {
+        final int generation = index.getInt(HEADER_GENERATION) + 1;
+        final long liveBytes = index.getLong(HEADER_SLAB_END) - index.getLong(HEADER_SLAB_GARBAGE);
+        final MappedByteBuffer newSlab = map(slabFile(directory, generation), Math.max(INITIAL_SLAB_SIZE,
+                Math.min(Integer.MAX_VALUE, liveBytes * 2L)));
+        final Path temporaryFile = directory.resolve(INDEX_FILE + ".tmp");
+        final MappedByteBuffer newIndex = createIndex(temporaryFile, newCapacity, generation, 0L);
+        long slabEnd = 0L;
+
+        for (int slot = 0; slot < capacity; slot++)
+        {
+            final int record = recordOffset(slot);
+
+            if (index.getInt(record + RECORD_FLAGS) != USED)
+            {
+                continue;
+            }
+
+            final long discordId = index.getLong(record + RECORD_ID);
+            final int length = index.getInt(record + RECORD_SLAB_LENGTH);
+            int newSlot = hash(discordId) & (newCapacity - 1);
+
+            while (newIndex.getInt(HEADER_SIZE + newSlot * RECORD_SIZE + RECORD_FLAGS) != EMPTY)
+            {
+                newSlot = (newSlot + 1) & (newCapacity - 1);
+            }
+
+            final int newRecord = HEADER_SIZE + newSlot * RECORD_SIZE;
+
+            newSlab.put((int) slabEnd, slab, (int) index.getLong(record + RECORD_SLAB_OFFSET), length);
+            newIndex.putLong(newRecord + RECORD_ID, discordId);
+            newIndex.putLong(newRecord + RECORD_BALANCE, index.getLong(record + RECORD_BALANCE));
+            newIndex.putLong(newRecord + RECORD_SLAB_OFFSET, slabEnd);
+            newIndex.putInt(newRecord + RECORD_SLAB_LENGTH, length);
+            newIndex.putInt(newRecord + RECORD_FLAGS, USED);
+            slabEnd += length;
+        }
+
+        newIndex.putInt(HEADER_SIZE_FIELD, index.getInt(HEADER_SIZE_FIELD));
+        newIndex.putLong(HEADER_SLAB_END, slabEnd);
+        // The new slab has to be on the disk before the index that points in to it.
+        newSlab.force();
+        newIndex.force();
+        Files.move(temporaryFile, directory.resolve(INDEX_FILE), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+
+        index = newIndex;
+        slab = newSlab;
+        capacity = newCapacity;
+        rebuilds++;
+        deleteUnusedSlabs();
+    }
+
+    /**
+     * Deletes the slab files of older generations, left by rebuilds.
+     */
+    private void deleteUnusedSlabs() throws IOException
+    {
+        final Path currentSlab = slabFile(directory, index.getInt(HEADER_GENERATION));
+
+        try (final DirectoryStream<Path> files = Files.newDirectoryStream(directory, "accounts-*.slab"))
+        {
+            for (final Path file : files)
+            {
+                if (!file.getFileName().equals(currentSlab.getFileName()))
+                {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return A new index file with its header written and every record empty.
+     */
+    private static MappedByteBuffer createIndex(@NonNull final Path file, final int capacity, final int generation,
+                                                final long slabEnd) throws IOException
+    {
+        Files.deleteIfExists(file);
+
+        final MappedByteBuffer newIndex = map(file, HEADER_SIZE + (long) capacity * RECORD_SIZE);
+
+        newIndex.putInt(0, MAGIC);
+        newIndex.putInt(4, VERSION);
+        newIndex.putInt(HEADER_CAPACITY, capacity);
+        newIndex.putInt(HEADER_GENERATION, generation);
+        newIndex.putLong(HEADER_SLAB_END, slabEnd);
+
+        return newIndex;
+    }
+
+    /**
+     * @return The file mapped read and write, growing it to the size if it is smaller.
+     */
+    private static MappedByteBuffer map(@NonNull final Path file, final long size) throws IOException
+    {
+        try (final RandomAccessFile randomAccessFile = new RandomAccessFile(file.toFile(), "rw");
+             final FileChannel channel = randomAccessFile.getChannel())
+        {
+            // The mapping stays valid after the channel is closed.
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0L, Math.max(size, channel.size()));
+        }
+    }
+
+    private static Path slabFile(@NonNull final Path directory, final int generation)
+    {
+        return directory.resolve(String.format("accounts-%d.slab", generation));
+    }
+
+    private static int recordOffset(final int slot)
+    {
+        return HEADER_SIZE + slot * RECORD_SIZE;
+    }
+
+    /**
+     * @return The hash of a discord id, mixing its bits as ids with the same timestamp share their high bits.
+     */
+    private static int hash(final long discordId)
+    {
+        long hash = discordId * 0x9E3779B97F4A7C15L;
+
+        hash ^= hash >>> 32;
+
+        return (int) hash;
+    }
+
+}
@@ -0,0 +1,153 @@
+package com.sylink.util.account;
+
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Account store that keeps every account state on the heap, so loads and saves never wait on I/O.
+ * Nothing is written to the disk, so the account manager fills the store from the database when it opens and exports
+ * it back when it closes. Suited to tests and benchmarks, and to bots whose accounts fit in memory with periodic
+ * exports.
+ */
+public final class MemoryAccountStore implements AccountStore
+{
+
+    // The name of the store in the storage.backend setting.
+    public static final String NAME = "memory";
+
+    // The state of every account by discord id.
+    private final Map<Long, AccountState> states = new ConcurrentHashMap<>();
+    // Serializes writes, so the states supplied to a write are never replaced by an older write.
+    private final Object writeLock = new Object();
+    // Whether the store is open.
+    private volatile boolean open = true;
+
+    @Override
+    public String getName()
+    {
+        return NAME;
+    }
+
+    @Override
+    public boolean isOpen()
+    {
+        return open;
+    }
+
+    @Override
+    public boolean isPersistent()
+    {
+        return false;
+    }
+
+    @Override
+    public long size()
+    {
+        return states.size();
+    }
+
+    @Override
+    public boolean load(@NonNull final Account account)
+    {
+        final AccountState state = states.get(account.getDiscordId());
+
+        if (state == null)
+        {
+            return false;
+        }
+
+        account.loadState(state);
+        account.setPersisted(true);
+        return true;
+    }
+
+    @Override
+    public List<Account> loadAll(@NonNull final Collection<Long> discordIds)
+    {
+        final List<Account> accounts = new ArrayList<>();
+
+        for (final long discordId : discordIds)
+        {
+            final Account account = new Account(discordId);
+
+            if (load(account))
+            {
+                accounts.add(account);
+            }
+        }
+
+        return accounts;
+    }
+
+    @Override
+    public void upsertAll(@NonNull final List<Account> accounts, @NonNull final Supplier<List<AccountState>> states)
+            throws IOException
+    {
+        synchronized (writeLock)
+        {
+            if (!open)
+            {
+                throw new IOException("The account store is not open");
+            }
+
+            final List<AccountState> suppliedStates = states.get();
+
+            for (int i = 0; i < accounts.size(); i++)
+            {
+                this.states.put(accounts.get(i).getDiscordId(), suppliedStates.get(i));
+            }
+        }
+    }
+
+    @Override
+    public boolean delete(final long discordId)
+    {
+        synchronized (writeLock)
+        {
+            return states.remove(discordId) != null;
+        }
+    }
+
+    @Override
+    public boolean exists(final long discordId)
+    {
+        return states.containsKey(discordId);
+    }
+
+    @Override
+    public long scan(@NonNull final Runnable started, @NonNull final Visitor visitor)
+    {
+        long visited = 0L;
+
+        started.run();
+
+        for (final Map.Entry<Long, AccountState> entry : states.entrySet())
+        {
+            visitor.visit(entry.getKey(), entry.getValue());
+            visited++;
+        }
+
+        return visited;
+    }
+
+    /**
+     * Closes the store and drops every account, which has to be exported first to be kept.
+     */
+    @Override
+    public void close()
+    {
+        synchronized (writeLock)
+        {
+            open = false;
+            states.clear();
+        }
+    }
+
+}
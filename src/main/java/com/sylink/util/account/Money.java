@@ -0,0 +1,86 @@
+package com.sylink.util.account;
+
+import lombok.NonNull;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Conversions between dollar amounts and the whole cents balances are stored in.
+ * Balances are kept as fixed point minor units so repeated changes never drift like floating point amounts.
+ */
+public final class Money
+{
+
+    // The amount of decimal places of a dollar amount.
+    public static final int SCALE = 2;
+    // The amount of minor units in a dollar.
+    public static final long UNITS_PER_DOLLAR = 100L;
+
+    private Money()
+    {
+    }
+
+    /**
+     * @return The dollar amount in minor units, rounded half up to the nearest cent.
+     *
+     * @throws ArithmeticException If the amount does not fit in a balance.
+     */
+    public static long toUnits(final double amount)
+    {
+        if (!Double.isFinite(amount))
+        {
+            throw new ArithmeticException("Amount is not finite: " + amount);
+        }
+
+        return toUnits(BigDecimal.valueOf(amount));
+    }
+
+    /**
+     * @return The dollar amount in minor units, rounded half up to the nearest cent.
+     *
+     * @throws ArithmeticException If the amount does not fit in a balance.
+     */
+    public static long toUnits(@NonNull final BigDecimal amount)
+    {
+        return amount.setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Parses a dollar amount typed by a user, such as "12", "12.5" or "$12.50".
+     *
+     * @return The amount in minor units.
+     *
+     * @throws NumberFormatException If the text is not an amount that fits in a balance.
+     */
+    public static long parse(@NonNull final String amount)
+    {
+        final String digits = amount.strip().startsWith("$") ? amount.strip().substring(1) : amount.strip();
+
+        try
+        {
+            return toUnits(new BigDecimal(digits));
+        }
+        catch (final ArithmeticException exception)
+        {
+            throw new NumberFormatException("Amount out of range: " + amount);
+        }
+    }
+
+    /**
+     * @return The minor units as a dollar amount, only exact for amounts below 2^53 minor units.
+     */
+    public static double toDollars(final long units)
+    {
+        return units / (double) UNITS_PER_DOLLAR;
+    }
+
+    /**
+     * @return The minor units as an exact dollar amount with two decimal places, such as "1234.50".
+     */
+    public static String format(final long units)
+    {
+        return BigDecimal.valueOf(units, SCALE).toPlainString();
+    }
+
+}
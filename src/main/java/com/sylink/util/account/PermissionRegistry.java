@@ -0,0 +1,115 @@
+package com.sylink.util.account;
+
+import lombok.NonNull;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Singleton class that interns every permission name to a small integer id, so accounts store their permissions as
+ * bits and commands check a permission with a single bit test.
+ * Ids only live as long as the process, permissions are still stored and journaled by their names.
+ */
+public final class PermissionRegistry
+{
+
+    // The id of no permission, used by commands anyone can run.
+    public static final int NO_PERMISSION = -1;
+
+    // Created eagerly, as permissions are interned by every thread that loads accounts.
+    private static final PermissionRegistry permissionRegistry = new PermissionRegistry();
+
+    public static PermissionRegistry getInstance()
+    {
+        return permissionRegistry;
+    }
+
+    // The id of every lower case permission name.
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    // The name of every permission by id, replaced by a longer copy whenever a permission is interned.
+    private volatile String[] names = new String[0];
+
+    private PermissionRegistry()
+    {
+    }
+
+    /**
+     * @return The id of the permission, interning its lower case name if it has no id yet.
+     */
+    public int intern(@NonNull final String permission)
+    {
+        final Integer id = ids.get(permission);
+
+        if (id != null)
+        {
+            return id;
+        }
+
+        final String name = permission.toLowerCase(Locale.ROOT);
+
+        synchronized (this)
+        {
+            final Integer internedId = ids.get(name);
+
+            if (internedId != null)
+            {
+                return internedId;
+            }
+
+            final int newId = names.length;
+            final String[] newNames = Arrays.copyOf(names, newId + 1);
+
+            newNames[newId] = name;
+            // Published before the id, so every thread that finds the id finds its name.
+            names = newNames;
+            ids.put(name, newId);
+            return newId;
+        }
+    }
+
+    /**
+     * @return The id of the permission ignoring case, or NO_PERMISSION if no account or command uses it.
+     */
+    public int find(@NonNull final String permission)
+    {
+        final Integer id = ids.get(permission);
+
+        if (id != null)
+        {
+            return id;
+        }
+
+        final Integer lowerCaseId = ids.get(permission.toLowerCase(Locale.ROOT));
+
+        return (lowerCaseId == null) ? NO_PERMISSION : lowerCaseId;
+    }
+
+    /**
+     * @return The id of the exact lower case permission name, or NO_PERMISSION if it has no id.
+     */
+    int findExact(@NonNull final String permission)
+    {
+        final Integer id = ids.get(permission);
+
+        return (id == null) ? NO_PERMISSION : id;
+    }
+
+    /**
+     * @return The lower case name of the permission id.
+     */
+    public String getName(final int id)
+    {
+        return names[id];
+    }
+
+    /**
+     * @return The amount of interned permissions.
+     */
+    public int size()
+    {
+        return names.length;
+    }
+
+}
@@ -0,0 +1,215 @@
+package com.sylink.util.account;
+
+import lombok.NonNull;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable set of permission names stored as a bitset of their ids in the permission registry.
+ * Accounts share the names held by the registry, so a set of a few permissions takes a single long, and checking a
+ * permission id is a single bit test.
+ */
+final class PermissionSet
+        extends AbstractSet<String>
+{
+
+    // The set without permissions.
+    static final PermissionSet EMPTY = new PermissionSet(new long[0], 0);
+
+    // A bit for every permission id, without trailing empty words so equal sets have equal words.
+    private final long[] words;
+    // The amount of permissions in the set.
+    private final int size;
+
+    private PermissionSet(@NonNull final long[] words, final int size)
+    {
+        this.words = words;
+        this.size = size;
+    }
+
+    /**
+     * @return The set of the non blank permissions, interned by their lower case names.
+     */
+    static PermissionSet of(@NonNull final Collection<String> permissions)
+    {
+        if (permissions instanceof PermissionSet)
+        {
+            return (PermissionSet) permissions;
+        }
+
+        long[] words = new long[0];
+
+        for (final String permission : permissions)
+        {
+            if (permission.isBlank())
+            {
+                continue;
+            }
+
+            final int id = PermissionRegistry.getInstance().intern(permission);
+
+            if (id >>> 6 >= words.length)
+            {
+                words = Arrays.copyOf(words, (id >>> 6) + 1);
+            }
+
+            words[id >>> 6] |= 1L << id;
+        }
+
+        return create(words);
+    }
+
+    private static PermissionSet create(@NonNull final long[] words)
+    {
+        int length = words.length;
+        int size = 0;
+
+        while (length > 0 && words[length - 1] == 0L)
+        {
+            length--;
+        }
+
+        for (int i = 0; i < length; i++)
+        {
+            size += Long.bitCount(words[i]);
+        }
+
+        return (size == 0) ? EMPTY : new PermissionSet((length == words.length) ? words : Arrays.copyOf(words, length),
+                size);
+    }
+
+    /**
+     * @return True if the set holds the permission id.
+     */
+    boolean has(final int id)
+    {
+        return id >= 0 && id >>> 6 < words.length && (words[id >>> 6] & (1L << id)) != 0L;
+    }
+
+    /**
+     * @return The set with the permission id added, or this set if it already holds it.
+     */
+    PermissionSet with(final int id)
+    {
+        if (has(id))
+        {
+            return this;
+        }
+
+        final long[] newWords = Arrays.copyOf(words, Math.max(words.length, (id >>> 6) + 1));
+
+        newWords[id >>> 6] |= 1L << id;
+
+        return new PermissionSet(newWords, size + 1);
+    }
+
+    /**
+     * @return The set with the permission id removed, or this set if it does not hold it.
+     */
+    PermissionSet without(final int id)
+    {
+        if (!has(id))
+        {
+            return this;
+        }
+
+        final long[] newWords = words.clone();
+
+        newWords[id >>> 6] &= ~(1L << id);
+
+        return create(newWords);
+    }
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    @Override
+    public boolean contains(final Object permission)
+    {
+        return permission instanceof String && has(PermissionRegistry.getInstance().findExact((String) permission));
+    }
+
+    @Override
+    public Iterator<String> iterator()
+    {
+        return new Iterator<>()
+        {
+
+            // The id of the next permission, or -1 if there is none.
+            private int next = nextId(0);
+
+            @Override
+            public boolean hasNext()
+            {
+                return next >= 0;
+            }
+
+            @Override
+            public String next()
+            {
+                if (next < 0)
+                {
+                    throw new NoSuchElementException();
+                }
+
+                final int id = next;
+
+                next = nextId(id + 1);
+                return PermissionRegistry.getInstance().getName(id);
+            }
+
+        };
+    }
+
+    /**
+     * @return The first permission id of the set from the given id, or -1 if there is none.
+     */
+    private int nextId(final int fromId)
+    {
+        int index = fromId >>> 6;
+
+        if (index >= words.length)
+        {
+            return -1;
+        }
+
+        long word = words[index] & (-1L << fromId);
+
+        while (word == 0L)
+        {
+            if (++index >= words.length)
+            {
+                return -1;
+            }
+
+            word = words[index];
+        }
+
+        return (index << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    @Override
+    public boolean equals(final Object object)
+    {
+        if (object instanceof PermissionSet)
+        {
+            return Arrays.equals(words, ((PermissionSet) object).words);
+        }
+
+        return super.equals(object);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return super.hashCode();
+    }
+
+}
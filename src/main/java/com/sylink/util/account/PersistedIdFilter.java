@@ -0,0 +1,335 @@
+package com.sylink.util.account;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter over every discord id that has a row in the accounts database.
+ * An id the filter does not contain is definitely not in the database, so the database query can be skipped.
+ * Ids are never removed from a Bloom filter, so deleted ids are counted and the filter is rebuilt once too many of
+ * them, or too many new ids, have built up.
+ */
+public final class PersistedIdFilter
+{
+
+    // The SQL query used to count the rows of the accounts table.
+    private static final String SQL_COUNT_QUERY = "SELECT COUNT(*) FROM accounts";
+    // The SQL query used to read every persisted discord id.
+    private static final String SQL_IDS_QUERY = "SELECT id FROM accounts";
+
+    // The amount of ids the filter is sized for when the database holds fewer.
+    @Getter(AccessLevel.PUBLIC)
+    @Setter(AccessLevel.PUBLIC)
+    private int expectedAccounts = 100_000;
+    // The rate of unknown ids the filter lets through to the database.
+    @Getter(AccessLevel.PUBLIC)
+    @Setter(AccessLevel.PUBLIC)
+    private double falsePositiveRate = 0.01;
+
+    // The filter used for lookups, or null if the filter could not be built and every id has to be checked.
+    private volatile Bits bits = null;
+    // The filter being built by a rebuild, which receives new ids so none are missed while reading the table.
+    private volatile Bits building = null;
+
+    // The amount of lookups answered without querying the database.
+    private final AtomicLong skippedLookups = new AtomicLong();
+    // The amount of lookups the filter let through for ids that were not in the database.
+    private final AtomicLong falsePositives = new AtomicLong();
+
+    /**
+     * Rebuilds the filter from every id in the accounts table of the connection.
+     * The filter is disabled if the table cannot be read.
+     *
+     * @return True if the filter was built.
+     */
+    synchronized boolean rebuild(@NonNull final Connection connection)
+    {
+        try (final Statement statement = connection.createStatement())
+        {
+            long rowCount = 0;
+
+            try (final ResultSet resultSet = statement.executeQuery(SQL_COUNT_QUERY))
+            {
+                if (resultSet.next())
+                {
+                    rowCount = resultSet.getLong(1);
+                }
+            }
+
+            // Leaves room for the table to double before the filter has to be rebuilt.
+            final Bits newBits = new Bits(Math.max(expectedAccounts, 2 * rowCount), falsePositiveRate);
+
+            building = newBits;
+
+            try (final ResultSet resultSet = statement.executeQuery(SQL_IDS_QUERY))
+            {
+                while (resultSet.next())
+                {
+                    newBits.add(resultSet.getLong(1));
+                }
+            }
+
+            bits = newBits;
+            return true;
+        }
+        catch (final SQLException sqlException)
+        {
+            bits = null;
+            return false;
+        }
+        finally
+        {
+            building = null;
+        }
+    }
+
+    /**
+     * Disables the filter so every lookup goes to the database.
+     */
+    void clear()
+    {
+        bits = null;
+    }
+
+    /**
+     * @return True if the filter is built and answering lookups.
+     */
+    public boolean isEnabled()
+    {
+        return bits != null;
+    }
+
+    /**
+     * @return False if the discord id is definitely not in the database, true if it might be.
+     */
+    boolean mightContain(final long discordId)
+    {
+        final Bits current = bits;
+
+        if (current == null || current.contains(discordId))
+        {
+            return true;
+        }
+
+        skippedLookups.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Records a discord id that was written to the database.
+     */
+    void add(final long discordId)
+    {
+        final Bits current = bits;
+        final Bits next = building;
+
+        if (current != null)
+        {
+            current.add(discordId);
+        }
+
+        if (next != null)
+        {
+            next.add(discordId);
+        }
+    }
+
+    /**
+     * Records a discord id that was deleted from the database.
+     */
+    void remove(final long discordId)
+    {
+        final Bits current = bits;
+
+        if (current != null)
+        {
+            current.removed.incrementAndGet();
+        }
+    }
+
+    /**
+     * Records a lookup the filter let through for a discord id that was not in the database.
+     */
+    void recordFalsePositive()
+    {
+        falsePositives.incrementAndGet();
+    }
+
+    /**
+     * @return True if the filter holds more ids than it was sized for or too many of its ids were deleted.
+     */
+    boolean needsRebuild()
+    {
+        final Bits current = bits;
+
+        if (current == null)
+        {
+            return false;
+        }
+
+        final long added = current.added.get();
+
+        return added > current.capacity || current.removed.get() > Math.max(1024, added / 4);
+    }
+
+    /**
+     * @return The amount of ids added to the filter, including deleted ids.
+     */
+    public long getSize()
+    {
+        final Bits current = bits;
+
+        return (current == null) ? 0 : current.added.get();
+    }
+
+    /**
+     * @return The amount of memory used by the filter in bytes.
+     */
+    public long getMemoryUsage()
+    {
+        final Bits current = bits;
+
+        return (current == null) ? 0 : 8L * current.words.length();
+    }
+
+    /**
+     * @return The amount of hash functions used by the filter.
+     */
+    public int getHashFunctions()
+    {
+        final Bits current = bits;
+
+        return (current == null) ? 0 : current.hashFunctions;
+    }
+
+    /**
+     * @return The percentage of unknown ids the filter is currently expected to let through.
+     */
+    public double getExpectedFalsePositiveRate()
+    {
+        final Bits current = bits;
+
+        if (current == null)
+        {
+            return 100.0;
+        }
+
+        final double bitCount = 64.0 * current.words.length();
+        final double fillRatio = 1.0 - Math.exp(-current.hashFunctions * current.added.get() / bitCount);
+
+        return 100.0 * Math.pow(fillRatio, current.hashFunctions);
+    }
+
+    /**
+     * @return The amount of lookups answered without querying the database.
+     */
+    public long getSkippedLookups()
+    {
+        return skippedLookups.get();
+    }
+
+    /**
+     * @return The amount of lookups the filter let through for ids that were not in the database.
+     */
+    public long getFalsePositives()
+    {
+        return falsePositives.get();
+    }
+
+    /**
+     * Bit array of a single Bloom filter sized for a capacity and false positive rate.
+     */
+    private static final class Bits
+    {
+
+        // Words holding the bits of the filter.
+        private final AtomicLongArray words;
+        // The amount of bits in the filter minus one, used to turn a hash into a bit index.
+        private final long bitMask;
+        // The amount of bits set for each id.
+        private final int hashFunctions;
+        // The amount of ids the filter is sized for.
+        private final long capacity;
+        // The amount of ids added to the filter.
+        private final AtomicLong added = new AtomicLong();
+        // The amount of added ids that were deleted from the database.
+        private final AtomicLong removed = new AtomicLong();
+
+        private Bits(final long capacity, final double falsePositiveRate)
+        {
+            final double rate = Math.min(0.5, Math.max(1.0E-9, falsePositiveRate));
+            final double optimalBits = -capacity * Math.log(rate) / (Math.log(2) * Math.log(2));
+            // Rounded up to a power of two so bit indexes can be masked instead of divided.
+            final long bitCount = Long.highestOneBit(Math.max(64L, (long) Math.ceil(optimalBits) - 1) << 1);
+
+            this.words = new AtomicLongArray(Math.toIntExact(bitCount >>> 6));
+            this.bitMask = bitCount - 1;
+            this.hashFunctions = Math.max(1, (int) Math.round(optimalBits / capacity * Math.log(2)));
+            this.capacity = capacity;
+        }
+
+        private void add(final long discordId)
+        {
+            final long firstHash = mix(discordId);
+            final long secondHash = mix(firstHash) | 1L;
+
+            for (int i = 0; i < hashFunctions; i++)
+            {
+                final long bit = (firstHash + i * secondHash) & bitMask;
+                final int index = (int) (bit >>> 6);
+                final long mask = 1L << bit;
+
+                // Bits are only ever set, so racing writers cannot lose each other's bits.
+                if ((words.get(index) & mask) == 0)
+                {
+                    words.getAndAccumulate(index, mask, (word, setBit) -> word | setBit);
+                }
+            }
+
+            added.incrementAndGet();
+        }
+
+        private boolean contains(final long discordId)
+        {
+            final long firstHash = mix(discordId);
+            final long secondHash = mix(firstHash) | 1L;
+
+            for (int i = 0; i < hashFunctions; i++)
+            {
+                final long bit = (firstHash + i * secondHash) & bitMask;
+
+                if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0)
+                {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * @return A well mixed 64 bit hash of the value.
+         */
+        private static long mix(long value)
+        {
+            value ^= value >>> 33;
+            value *= 0xff51afd7ed558ccdL;
+            value ^= value >>> 33;
+            value *= 0xc4ceb9fe1a85ec53L;
+            value ^= value >>> 33;
+
+            return value;
+        }
+
+    }
+
+}
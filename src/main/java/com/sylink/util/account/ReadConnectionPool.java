@@ -0,0 +1,348 @@
+package com.sylink.util.account;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of read only connections to the accounts database, used so reads do not wait behind the writer connection.
+ * Readers only see committed data without blocking the writer when the database uses a write ahead log, so the pool
+ * refuses to open for databases in any other journal mode.
+ */
+public final class ReadConnectionPool
+{
+
+    /**
+     * Database work run on a pooled connection.
+     */
+    @FunctionalInterface
+    public interface Read<T>
+    {
+        T run(Connection connection, StatementCache statements) throws SQLException;
+    }
+
+    // The SQLite open flag for read only connections.
+    private static final String READ_ONLY_OPEN_MODE = "1";
+
+    // The amount of connections opened by the pool, 0 disables the pool.
+    @Getter(AccessLevel.PUBLIC)
+    @Setter(AccessLevel.PUBLIC)
+    private int size = 4;
+    // The maximum amount of milliseconds a read waits for a free connection.
+    @Getter(AccessLevel.PUBLIC)
+    @Setter(AccessLevel.PUBLIC)
+    private long timeout = 5000L;
+
+    // The connections of the currently open pool, or null if the pool is closed.
+    private volatile Generation generation = null;
+
+    // The amount of reads run on the pool.
+    private final AtomicLong reads = new AtomicLong();
+    // The amount of reads that had to wait for a free connection.
+    private final AtomicLong waits = new AtomicLong();
+    // The total amount of nanoseconds reads waited for a free connection.
+    private final AtomicLong totalWaitTime = new AtomicLong();
+    // The total amount of nanoseconds connections were in use.
+    private final AtomicLong totalBusyTime = new AtomicLong();
+    // The amount of connections currently in use.
+    private final AtomicInteger activeConnections = new AtomicInteger();
+
+    /**
+     * Opens the pool's connections to the database, closing any connections that were already open.
+     *
+     * @return True if the pool was opened, false if it is disabled or the database does not use a write ahead log.
+     *
+     * @throws SQLException If a connection could not be opened.
+     */
+    synchronized boolean open(@NonNull final String databaseUrl, @NonNull final StorageProfile profile) throws SQLException
+    {
+        close();
+
+        if (size <= 0)
+        {
+            return false;
+        }
+
+        final Properties properties = new Properties();
+
+        properties.setProperty("open_mode", READ_ONLY_OPEN_MODE);
+
+        final Generation newGeneration = new Generation(size);
+
+        try
+        {
+            for (int i = 0; i < size; i++)
+            {
+                final Connection connection = DriverManager.getConnection(databaseUrl, properties);
+                final PooledConnection pooledConnection = new PooledConnection(connection);
+
+                newGeneration.connections.add(pooledConnection);
+                newGeneration.idle.add(pooledConnection);
+
+                if (i == 0 && !usesWriteAheadLog(connection))
+                {
+                    newGeneration.close();
+                    return false;
+                }
+
+                profile.applyReadSettings(connection);
+                pooledConnection.statements.rebuild(connection);
+            }
+        }
+        catch (final SQLException sqlException)
+        {
+            newGeneration.close();
+            throw sqlException;
+        }
+
+        generation = newGeneration;
+        return true;
+    }
+
+    /**
+     * @return True if the connection's database is in write ahead log mode.
+     */
+    private static boolean usesWriteAheadLog(@NonNull final Connection connection) throws SQLException
+    {
+        try (final Statement statement = connection.createStatement();
+             final ResultSet resultSet = statement.executeQuery("PRAGMA journal_mode"))
+        {
+            return resultSet.next() && "wal".equals(resultSet.getString(1).toLowerCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * Closes the pool. Connections in use are closed once their read finishes.
+     */
+    synchronized void close()
+    {
+        final Generation oldGeneration = generation;
+
+        generation = null;
+
+        if (oldGeneration != null)
+        {
+            oldGeneration.close();
+        }
+    }
+
+    /**
+     * @return True if reads can be run on the pool.
+     */
+    public boolean isOpen()
+    {
+        return generation != null;
+    }
+
+    /**
+     * Runs a read on a free connection, waiting for one if they are all in use.
+     *
+     * @return The result of the read.
+     *
+     * @throws SQLException If the pool is closed, no connection became free in time or the read failed.
+     */
+    <T> T read(@NonNull final Read<T> read) throws SQLException
+    {
+        final Generation current = generation;
+
+        if (current == null)
+        {
+            throw new SQLException("The read connection pool is closed");
+        }
+
+        final long waitStart = System.nanoTime();
+        PooledConnection pooledConnection = current.idle.poll();
+
+        if (pooledConnection == null)
+        {
+            waits.incrementAndGet();
+
+            try
+            {
+                pooledConnection = current.idle.poll(timeout, TimeUnit.MILLISECONDS);
+            }
+            catch (final InterruptedException exception)
+            {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a read connection", exception);
+            }
+
+            if (pooledConnection == null)
+            {
+                throw new SQLException("Timed out waiting for a read connection");
+            }
+        }
+
+        final long busyStart = System.nanoTime();
+
+        reads.incrementAndGet();
+        totalWaitTime.addAndGet(busyStart - waitStart);
+        activeConnections.incrementAndGet();
+
+        try
+        {
+            return read.run(pooledConnection.connection, pooledConnection.statements);
+        }
+        finally
+        {
+            activeConnections.decrementAndGet();
+            totalBusyTime.addAndGet(System.nanoTime() - busyStart);
+            current.release(pooledConnection);
+        }
+    }
+
+    /**
+     * @return The amount of connections currently open in the pool.
+     */
+    public int getOpenConnections()
+    {
+        final Generation current = generation;
+
+        return (current == null) ? 0 : current.connections.size();
+    }
+
+    /**
+     * @return The amount of connections currently in use.
+     */
+    public int getActiveConnections()
+    {
+        return activeConnections.get();
+    }
+
+    /**
+     * @return The amount of reads run on the pool.
+     */
+    public long getReads()
+    {
+        return reads.get();
+    }
+
+    /**
+     * @return The amount of reads that had to wait for a free connection.
+     */
+    public long getWaits()
+    {
+        return waits.get();
+    }
+
+    /**
+     * @return The average amount of milliseconds a read waited for a free connection.
+     */
+    public double getAverageWaitTime()
+    {
+        final long readCount = reads.get();
+
+        return (readCount == 0) ? 0.0 : totalWaitTime.get() / 1_000_000.0 / readCount;
+    }
+
+    /**
+     * @return The percentage of time the connections of the open pool have been in use since it was opened.
+     */
+    public double getUtilisation()
+    {
+        final Generation current = generation;
+
+        if (current == null)
+        {
+            return 0.0;
+        }
+
+        final long available = (System.nanoTime() - current.openTime) * current.connections.size();
+
+        if (available <= 0)
+        {
+            return 0.0;
+        }
+
+        return Math.min(100.0, 100.0 * (totalBusyTime.get() - current.busyTimeAtOpen) / available);
+    }
+
+    /**
+     * Connection of the pool with the statements prepared on it.
+     */
+    private static final class PooledConnection
+    {
+
+        private final Connection connection;
+        private final StatementCache statements = new StatementCache();
+
+        private PooledConnection(@NonNull final Connection connection)
+        {
+            this.connection = connection;
+        }
+
+        private void close()
+        {
+            statements.clear();
+
+            try
+            {
+                connection.close();
+            }
+            catch (final SQLException ignored)
+            {
+                // The connection is being discarded either way.
+            }
+        }
+
+    }
+
+    /**
+     * The connections opened by a single call to open, so connections returned after closing are not reused.
+     */
+    private final class Generation
+    {
+
+        private final List<PooledConnection> connections;
+        private final BlockingQueue<PooledConnection> idle = new LinkedBlockingQueue<>();
+        private final long openTime = System.nanoTime();
+        private final long busyTimeAtOpen = totalBusyTime.get();
+        private volatile boolean closed = false;
+
+        private Generation(final int size)
+        {
+            this.connections = new ArrayList<>(size);
+        }
+
+        private void release(@NonNull final PooledConnection pooledConnection)
+        {
+            idle.add(pooledConnection);
+
+            // A connection returned after the pool closed is closed here, as close could not reach it.
+            if (closed && idle.remove(pooledConnection))
+            {
+                pooledConnection.close();
+            }
+        }
+
+        private void close()
+        {
+            closed = true;
+
+            PooledConnection pooledConnection;
+
+            while ((pooledConnection = idle.poll()) != null)
+            {
+                pooledConnection.close();
+            }
+        }
+
+    }
+
+}
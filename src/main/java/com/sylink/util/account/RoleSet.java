@@ -0,0 +1,247 @@
+package com.sylink.util.account;
+
+import lombok.NonNull;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.ToLongFunction;
+
+/**
+ * Immutable set of role ids stored as a sorted array of primitive longs.
+ * Membership is a binary search and the ids are read by index, so checking and listing roles never boxes an id, and
+ * an account with a handful of roles holds a single small array instead of a hash node and a Long for every role.
+ * The set still reads as a {@code Set<Long>} for callers that need one, which boxes the ids it returns.
+ */
+public final class RoleSet
+        extends AbstractSet<Long>
+{
+
+    // The set without roles.
+    static final RoleSet EMPTY = new RoleSet(new long[0]);
+
+    // The distinct role ids in ascending order.
+    private final long[] ids;
+
+    private RoleSet(@NonNull final long[] ids)
+    {
+        this.ids = ids;
+    }
+
+    /**
+     * @return The set of the given role ids.
+     */
+    static RoleSet of(@NonNull final Collection<Long> roleIds)
+    {
+        if (roleIds instanceof RoleSet)
+        {
+            return (RoleSet) roleIds;
+        }
+
+        final long[] ids = new long[roleIds.size()];
+        int count = 0;
+
+        for (final long roleId : roleIds)
+        {
+            ids[count++] = roleId;
+        }
+
+        return create(ids, count);
+    }
+
+    /**
+     * @return The set of the role ids of the given items.
+     */
+    static <T> RoleSet of(@NonNull final List<T> items, @NonNull final ToLongFunction<? super T> roleId)
+    {
+        final long[] ids = new long[items.size()];
+
+        for (int i = 0; i < ids.length; i++)
+        {
+            ids[i] = roleId.applyAsLong(items.get(i));
+        }
+
+        return create(ids, ids.length);
+    }
+
+    /**
+     * @return The set of the first count ids of the array, which is sorted in place.
+     */
+    private static RoleSet create(@NonNull final long[] ids, final int count)
+    {
+        if (count == 0)
+        {
+            return EMPTY;
+        }
+
+        Arrays.sort(ids, 0, count);
+
+        int distinct = 1;
+
+        for (int i = 1; i < count; i++)
+        {
+            if (ids[i] != ids[distinct - 1])
+            {
+                ids[distinct++] = ids[i];
+            }
+        }
+
+        return new RoleSet((distinct == ids.length) ? ids : Arrays.copyOf(ids, distinct));
+    }
+
+    /**
+     * @return True if the set holds the role id.
+     */
+    public boolean contains(final long roleId)
+    {
+        return Arrays.binarySearch(ids, roleId) >= 0;
+    }
+
+    /**
+     * @return The role id at the index, in ascending order of the ids.
+     */
+    public long getRoleId(final int index)
+    {
+        return ids[index];
+    }
+
+    /**
+     * Compares the set to the role ids of the given items without allocating, so a sync can tell that nothing
+     * changed before building a new set. The items must not repeat a role id.
+     *
+     * @return True if the items hold exactly the role ids of this set.
+     */
+    public <T> boolean matches(@NonNull final List<T> items, @NonNull final ToLongFunction<? super T> roleId)
+    {
+        if (items.size() != ids.length)
+        {
+            return false;
+        }
+
+        for (int i = 0; i < ids.length; i++)
+        {
+            if (!contains(roleId.applyAsLong(items.get(i))))
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return The set with the role id added, or this set if it already holds it.
+     */
+    RoleSet with(final long roleId)
+    {
+        final int index = Arrays.binarySearch(ids, roleId);
+
+        if (index >= 0)
+        {
+            return this;
+        }
+
+        final int insertion = -index - 1;
+        final long[] newIds = new long[ids.length + 1];
+
+        System.arraycopy(ids, 0, newIds, 0, insertion);
+        newIds[insertion] = roleId;
+        System.arraycopy(ids, insertion, newIds, insertion + 1, ids.length - insertion);
+
+        return new RoleSet(newIds);
+    }
+
+    /**
+     * @return The set with the role id removed, or this set if it does not hold it.
+     */
+    RoleSet without(final long roleId)
+    {
+        final int index = Arrays.binarySearch(ids, roleId);
+
+        if (index < 0)
+        {
+            return this;
+        }
+
+        if (ids.length == 1)
+        {
+            return EMPTY;
+        }
+
+        final long[] newIds = new long[ids.length - 1];
+
+        System.arraycopy(ids, 0, newIds, 0, index);
+        System.arraycopy(ids, index + 1, newIds, index, newIds.length - index);
+
+        return new RoleSet(newIds);
+    }
+
+    @Override
+    public int size()
+    {
+        return ids.length;
+    }
+
+    @Override
+    public boolean contains(final Object roleId)
+    {
+        return roleId instanceof Long && contains(((Long) roleId).longValue());
+    }
+
+    @Override
+    public Iterator<Long> iterator()
+    {
+        return new Iterator<>()
+        {
+
+            // The index of the next role id.
+            private int next = 0;
+
+            @Override
+            public boolean hasNext()
+            {
+                return next < ids.length;
+            }
+
+            @Override
+            public Long next()
+            {
+                if (next >= ids.length)
+                {
+                    throw new NoSuchElementException();
+                }
+
+                return ids[next++];
+            }
+
+        };
+    }
+
+    @Override
+    public boolean equals(final Object object)
+    {
+        if (object instanceof RoleSet)
+        {
+            return Arrays.equals(ids, ((RoleSet) object).ids);
+        }
+
+        return super.equals(object);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int hashCode = 0;
+
+        for (final long roleId : ids)
+        {
+            hashCode += Long.hashCode(roleId);
+        }
+
+        return hashCode;
+    }
+
+}
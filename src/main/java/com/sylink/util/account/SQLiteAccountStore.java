@@ -0,0 +1,738 @@
+package com.sylink.util.account;
+
+import com.sylink.KodeKitten;
+import com.sylink.util.config.MessageConfig;
+import lombok.NonNull;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Account store backed by the accounts tables of the SQLite database opened by the account manager.
+ * Reads run on the read connection pool when it is open and writes on the database executor, and only the permission
+ * and role rows that changed since an account was last written are written again.
+ */
+public final class SQLiteAccountStore implements AccountStore
+{
+
+    // The name of the store in the storage.backend setting.
+    public static final String NAME = "sqlite";
+
+    // The SQL query used to test whether an account exists in the database.
+    private static final String SQL_EXISTS_QUERY = "SELECT id FROM accounts WHERE id = ?";
+    // The SQL query used to insert account data in to the database, updating the existing row if there is one.
+    private static final String SQL_UPSERT_QUERY = """
+            INSERT INTO accounts
+            (id,permissions,roles,balance,balance_units)
+            VALUES(?,'','',0,?)
+            ON CONFLICT(id) DO UPDATE
+            SET permissions = '',
+                roles = '',
+                balance = 0,
+                balance_units = excluded.balance_units
+            """;
+    // The SQL query used to load account data from the database.
+    private static final String SQL_LOAD_QUERY = "SELECT permissions, roles, " + BalanceUnitsMigration.SQL_BALANCE_UNITS
+            + " FROM accounts WHERE id = ?";
+    // The SQL queries used to load the permission and role rows of an account.
+    private static final String SQL_LOAD_PERMISSIONS = "SELECT permission FROM account_permissions WHERE id = ?";
+    private static final String SQL_LOAD_ROLES = "SELECT role_id FROM account_roles WHERE id = ?";
+    // The SQL queries used to read a batch of accounts, formatted with a parameter for each discord id.
+    private static final String SQL_BATCH_ACCOUNTS = "SELECT id, permissions, roles, "
+            + BalanceUnitsMigration.SQL_BALANCE_UNITS + " FROM accounts WHERE id IN (%s)";
+    private static final String SQL_BATCH_PERMISSIONS = "SELECT id, permission FROM account_permissions WHERE id IN (%s)";
+    private static final String SQL_BATCH_ROLES = "SELECT id, role_id FROM account_roles WHERE id IN (%s)";
+    // The SQL queries used to add a permission or role row, ignoring rows that already exist.
+    static final String SQL_INSERT_PERMISSION = "INSERT OR IGNORE INTO account_permissions (id, permission) VALUES (?, ?)";
+    static final String SQL_INSERT_ROLE = "INSERT OR IGNORE INTO account_roles (id, role_id) VALUES (?, ?)";
+    // The SQL queries used to remove a single permission or role row.
+    private static final String SQL_DELETE_PERMISSION = "DELETE FROM account_permissions WHERE id = ? AND permission = ?";
+    private static final String SQL_DELETE_ROLE = "DELETE FROM account_roles WHERE id = ? AND role_id = ?";
+    // The SQL queries used to remove every permission or role row of an account.
+    private static final String SQL_DELETE_PERMISSIONS = "DELETE FROM account_permissions WHERE id = ?";
+    private static final String SQL_DELETE_ROLES = "DELETE FROM account_roles WHERE id = ?";
+    // The SQL queries used to find the accounts with a permission or role, answered from the covering indexes.
+    private static final String SQL_FIND_BY_PERMISSION = "SELECT id FROM account_permissions WHERE permission = ?";
+    private static final String SQL_FIND_BY_ROLE = "SELECT id FROM account_roles WHERE role_id = ?";
+    // The SQL queries used to find unmigrated accounts with a permission or role in their column data.
+    private static final String SQL_FIND_BY_PERMISSION_DATA =
+            "SELECT id FROM accounts WHERE instr(',' || permissions || ',', ?) > 0";
+    private static final String SQL_FIND_BY_ROLE_DATA = "SELECT id FROM accounts WHERE instr(',' || roles || ',', ?) > 0";
+    // The SQL queries used to read every account, permission and role ordered by discord id.
+    private static final String SQL_SCAN_ACCOUNTS = "SELECT id, permissions, roles, "
+            + BalanceUnitsMigration.SQL_BALANCE_UNITS + " FROM accounts ORDER BY id";
+    private static final String SQL_SCAN_PERMISSIONS = "SELECT id, permission FROM account_permissions ORDER BY id";
+    private static final String SQL_SCAN_ROLES = "SELECT id, role_id FROM account_roles ORDER BY id";
+    // The SQL query used to count the accounts in the database.
+    private static final String SQL_COUNT_QUERY = "SELECT COUNT(*) FROM accounts";
+    // The SQL query used to delete an account from the database.
+    private static final String SQL_DELETE = "DELETE FROM accounts WHERE id = ?";
+
+    // The largest amount of discord ids read by a single batch of queries, below the SQLite parameter limit.
+    static final int MAXIMUM_BATCH_SIZE = 512;
+
+    // The account manager owning the database connection, its executor and read pool.
+    private final AccountManager accountManager;
+    // The amount of queries run by loadAll.
+    private final AtomicLong loadAllQueries = new AtomicLong();
+
+    SQLiteAccountStore(@NonNull final AccountManager accountManager)
+    {
+        this.accountManager = accountManager;
+    }
+
+    @Override
+    public String getName()
+    {
+        return NAME;
+    }
+
+    @Override
+    public boolean isOpen()
+    {
+        return accountManager.getConnection() != null;
+    }
+
+    @Override
+    public long size() throws IOException
+    {
+        if (!isOpen())
+        {
+            return 0L;
+        }
+
+        return read(DatabaseExecutor.RequestType.QUERY, null, null, (connection, statements) ->
+        {
+            try (final ResultSet resultSet = statements.prepare(SQL_COUNT_QUERY).executeQuery())
+            {
+                return resultSet.next() ? resultSet.getLong(1) : 0L;
+            }
+        });
+    }
+
+    @Override
+    public boolean load(@NonNull final Account account) throws IOException
+    {
+        if (!mightExist(account.getDiscordId()))
+        {
+            return false;
+        }
+
+        return read(DatabaseExecutor.RequestType.LOAD, account.getDiscordId(), account, (readConnection, statements) ->
+        {
+            final PreparedStatement statement = statements.prepare(SQL_LOAD_QUERY);
+            final String permissionData;
+            final String roleData;
+            final long balance;
+
+            statement.setLong(1, account.getDiscordId());
+
+            try (final ResultSet resultSet = statement.executeQuery())
+            {
+                if (!resultSet.next())
+                {
+                    recordFalsePositive();
+                    return false;
+                }
+
+                permissionData = resultSet.getString("permissions");
+                roleData = resultSet.getString("roles");
+                balance = resultSet.getLong("balance_units");
+            }
+
+            // The rows are read after the columns, so an account migrated in between is found in the rows.
+            final Set<String> storedPermissions = new HashSet<>();
+            final Set<Long> storedRoles = new HashSet<>();
+
+            try (final ResultSet resultSet = queryById(statements, SQL_LOAD_PERMISSIONS, account.getDiscordId()))
+            {
+                while (resultSet.next())
+                {
+                    storedPermissions.add(resultSet.getString(1));
+                }
+            }
+
+            try (final ResultSet resultSet = queryById(statements, SQL_LOAD_ROLES, account.getDiscordId()))
+            {
+                while (resultSet.next())
+                {
+                    storedRoles.add(resultSet.getLong(1));
+                }
+            }
+
+            account.loadPermissions(storedPermissions, permissionData);
+            account.loadRoles(storedRoles, roleData);
+            account.loadBalanceUnits(balance);
+            account.setPersisted(true);
+            return true;
+        });
+    }
+
+    /**
+     * Reads the accounts with one query for the accounts table and one for each of the permission and role tables per
+     * batch of discord ids. Batches are padded to a power of 2 with their last discord id, so few statements are
+     * prepared.
+     */
+    @Override
+    public List<Account> loadAll(@NonNull final Collection<Long> discordIds) throws IOException
+    {
+        final List<Long> ids = new ArrayList<>(discordIds);
+        final List<Account> accounts = new ArrayList<>();
+
+        if (!isOpen())
+        {
+            return accounts;
+        }
+
+        for (int start = 0; start < ids.size(); start += MAXIMUM_BATCH_SIZE)
+        {
+            final List<Long> batch = ids.subList(start, Math.min(start + MAXIMUM_BATCH_SIZE, ids.size()));
+            final int parameters = Integer.highestOneBit(batch.size() * 2 - 1);
+
+            accounts.addAll(read(DatabaseExecutor.RequestType.QUERY, null, null,
+                    (connection, statements) -> readBatch(statements, batch, parameters)));
+        }
+
+        return accounts;
+    }
+
+    @Override
+    public long getLoadAllQueries()
+    {
+        return loadAllQueries.get();
+    }
+
+    /**
+     * Reads the accounts of a batch of discord ids. Missing parameters are filled with the last discord id of the
+     * batch.
+     *
+     * @return The accounts of the batch that exist in the database.
+     */
+    private Collection<Account> readBatch(@NonNull final StatementCache statements, @NonNull final List<Long> batch,
+                                          final int parameters)
+            throws SQLException
+    {
+        final String placeholders = String.join(",", Collections.nCopies(parameters, "?"));
+        final Map<Long, Account> accounts = new LinkedHashMap<>();
+        final Map<Long, String[]> columnData = new HashMap<>();
+        final Map<Long, Set<String>> storedPermissions = new HashMap<>();
+        final Map<Long, Set<Long>> storedRoles = new HashMap<>();
+
+        // The rows are read after the columns, so an account migrated in between is found in the rows.
+        try (final ResultSet resultSet = queryBatch(statements, SQL_BATCH_ACCOUNTS, placeholders, batch, parameters))
+        {
+            while (resultSet.next())
+            {
+                final Account account = new Account(resultSet.getLong("id"));
+
+                account.loadBalanceUnits(resultSet.getLong("balance_units"));
+                accounts.put(account.getDiscordId(), account);
+                columnData.put(account.getDiscordId(),
+                        new String[]{resultSet.getString("permissions"), resultSet.getString("roles")});
+            }
+        }
+
+        try (final ResultSet resultSet = queryBatch(statements, SQL_BATCH_PERMISSIONS, placeholders, batch, parameters))
+        {
+            while (resultSet.next())
+            {
+                storedPermissions.computeIfAbsent(resultSet.getLong(1), id -> new HashSet<>())
+                        .add(resultSet.getString(2));
+            }
+        }
+
+        try (final ResultSet resultSet = queryBatch(statements, SQL_BATCH_ROLES, placeholders, batch, parameters))
+        {
+            while (resultSet.next())
+            {
+                storedRoles.computeIfAbsent(resultSet.getLong(1), id -> new HashSet<>()).add(resultSet.getLong(2));
+            }
+        }
+
+        for (final Account account : accounts.values())
+        {
+            final long discordId = account.getDiscordId();
+
+            account.loadPermissions(storedPermissions.getOrDefault(discordId, Set.of()), columnData.get(discordId)[0]);
+            account.loadRoles(storedRoles.getOrDefault(discordId, Set.of()), columnData.get(discordId)[1]);
+            account.setPersisted(true);
+        }
+
+        return accounts.values();
+    }
+
+    /**
+     * @return The result of a batch query with the discord ids of the batch as its parameters.
+     */
+    private ResultSet queryBatch(@NonNull final StatementCache statements, @NonNull final String sqlQuery,
+                                 @NonNull final String placeholders, @NonNull final List<Long> batch,
+                                 final int parameters) throws SQLException
+    {
+        final PreparedStatement statement = statements.prepare(String.format(sqlQuery, placeholders));
+
+        for (int i = 0; i < parameters; i++)
+        {
+            statement.setLong(i + 1, batch.get(Math.min(i, batch.size() - 1)));
+        }
+
+        loadAllQueries.incrementAndGet();
+
+        return statement.executeQuery();
+    }
+
+    /**
+     * Writes the accounts in a single transaction, batching the statements of every account together. The rows
+     * written are recorded on each account, and rolled back writes clear the record so every row is written again.
+     */
+    @Override
+    public void upsertAll(@NonNull final List<Account> accounts, @NonNull final Supplier<List<AccountState>> states)
+            throws IOException
+    {
+        if (!isOpen())
+        {
+            throw new IOException("There is no connection to the database");
+        }
+
+        final StatementCache statementCache = accountManager.getStatementCache();
+        final boolean single = accounts.size() == 1;
+
+        try
+        {
+            AccountManager.await(accountManager.getDatabaseExecutor().submit(DatabaseExecutor.RequestType.SAVE,
+                    single ? accounts.get(0).getDiscordId() : null, single ? accounts.get(0) : null,
+                    () -> writeAccounts(statementCache, accounts, states.get())));
+        }
+        catch (final SQLException sqlException)
+        {
+            // The rows written for the accounts were rolled back, so they are all written again on the next save.
+            for (final Account account : accounts)
+            {
+                account.setSavedState(null, null);
+            }
+
+            throw new IOException(sqlException);
+        }
+
+        for (final Account account : accounts)
+        {
+            accountManager.getPersistedIds().add(account.getDiscordId());
+        }
+
+        rebuildFilterIfNeeded();
+    }
+
+    /**
+     * Writes snapshots of accounts, with only the permission and role rows that changed since each account was last
+     * saved, or every row if its saved rows are unknown. Has to run in a transaction on the database executor.
+     *
+     * @return The amount of accounts written.
+     */
+    private static int writeAccounts(@NonNull final StatementCache statementCache,
+                                     @NonNull final List<Account> accounts, @NonNull final List<AccountState> states)
+            throws SQLException
+    {
+        // Every batch is executed in this order, so rows are deleted before the rows that replace them are inserted.
+        final PreparedStatement[] statements = {
+                statementCache.prepare(SQL_UPSERT_QUERY),
+                statementCache.prepare(SQL_DELETE_PERMISSIONS),
+                statementCache.prepare(SQL_DELETE_ROLES),
+                statementCache.prepare(SQL_DELETE_PERMISSION),
+                statementCache.prepare(SQL_DELETE_ROLE),
+                statementCache.prepare(SQL_INSERT_PERMISSION),
+                statementCache.prepare(SQL_INSERT_ROLE)};
+
+        try
+        {
+            for (int i = 0; i < accounts.size(); i++)
+            {
+                final long discordId = accounts.get(i).getDiscordId();
+                final AccountState state = states.get(i);
+
+                statements[0].setLong(1, discordId);
+                statements[0].setLong(2, state.getBalanceUnits());
+                statements[0].addBatch();
+                addRows(statements[1], statements[3], statements[5], discordId,
+                        accounts.get(i).getSavedPermissions(), state.getPermissions());
+                addRows(statements[2], statements[4], statements[6], discordId,
+                        accounts.get(i).getSavedRoles(), state.getRoles());
+            }
+
+            for (final PreparedStatement statement : statements)
+            {
+                statement.executeBatch();
+            }
+        }
+        finally
+        {
+            for (final PreparedStatement statement : statements)
+            {
+                statement.clearBatch();
+            }
+        }
+
+        for (int i = 0; i < accounts.size(); i++)
+        {
+            accounts.get(i).setSavedState(states.get(i).getPermissions(), states.get(i).getRoles());
+        }
+
+        return accounts.size();
+    }
+
+    /**
+     * Adds the writes of the rows of a single table to the batches, deleting the removed values and inserting the
+     * added ones.
+     *
+     * @param savedValues The values already in the table, or null to replace every row of the account.
+     */
+    private static <T> void addRows(@NonNull final PreparedStatement deleteAll, @NonNull final PreparedStatement delete,
+                                    @NonNull final PreparedStatement insert, final long discordId,
+                                    @Nullable final Set<T> savedValues, @NonNull final Set<T> values)
+            throws SQLException
+    {
+        final Set<T> addedValues = new HashSet<>(values);
+
+        if (savedValues == null)
+        {
+            deleteAll.setLong(1, discordId);
+            deleteAll.addBatch();
+        }
+        else
+        {
+            final Set<T> removedValues = new HashSet<>(savedValues);
+
+            removedValues.removeAll(values);
+            addedValues.removeAll(savedValues);
+            addForEach(delete, discordId, removedValues);
+        }
+
+        addForEach(insert, discordId, addedValues);
+    }
+
+    /**
+     * Adds the statement to its batch once for each value with the discord id and value as its parameters.
+     */
+    private static void addForEach(@NonNull final PreparedStatement statement, final long discordId,
+                                   @NonNull final Collection<?> values) throws SQLException
+    {
+        for (final Object value : values)
+        {
+            statement.setLong(1, discordId);
+            statement.setObject(2, value);
+            statement.addBatch();
+        }
+    }
+
+    @Override
+    public boolean delete(final long discordId) throws IOException
+    {
+        if (!exists(discordId))
+        {
+            return false;
+        }
+
+        final StatementCache statementCache = accountManager.getStatementCache();
+
+        try
+        {
+            AccountManager.await(accountManager.getDatabaseExecutor().submit(DatabaseExecutor.RequestType.DELETE,
+                    discordId, null, () ->
+                    {
+                        for (final String sqlQuery : new String[]{SQL_DELETE_PERMISSIONS, SQL_DELETE_ROLES})
+                        {
+                            final PreparedStatement statement = statementCache.prepare(sqlQuery);
+
+                            statement.setLong(1, discordId);
+                            statement.executeUpdate();
+                        }
+
+                        final PreparedStatement statement = statementCache.prepare(SQL_DELETE);
+
+                        statement.setLong(1, discordId);
+
+                        return statement.executeUpdate();
+                    }));
+        }
+        catch (final SQLException sqlException)
+        {
+            throw new IOException(sqlException);
+        }
+
+        accountManager.getPersistedIds().remove(discordId);
+        rebuildFilterIfNeeded();
+        return true;
+    }
+
+    @Override
+    public boolean exists(final long discordId) throws IOException
+    {
+        if (!mightExist(discordId))
+        {
+            return false;
+        }
+
+        return read(DatabaseExecutor.RequestType.EXISTS, discordId, null, (readConnection, statements) ->
+        {
+            try (final ResultSet resultSet = queryById(statements, SQL_EXISTS_QUERY, discordId))
+            {
+                final boolean exists = resultSet.next();
+
+                if (!exists)
+                {
+                    recordFalsePositive();
+                }
+
+                return exists;
+            }
+        });
+    }
+
+    /**
+     * Visits every account in order of discord id, merging the rows of the three account tables.
+     * The tables are read in a single read transaction on the read connection pool, so they are consistent with each
+     * other and writers are not paused. Without the pool the scan holds up writes until it finishes.
+     */
+    @Override
+    public long scan(@NonNull final Runnable started, @NonNull final Visitor visitor) throws IOException
+    {
+        if (!isOpen())
+        {
+            started.run();
+            return 0L;
+        }
+
+        return read(DatabaseExecutor.RequestType.QUERY, null, null,
+                (connection, statements) -> scan(connection, started, visitor));
+    }
+
+    private static long scan(@NonNull final Connection connection, @NonNull final Runnable started,
+                             @NonNull final Visitor visitor) throws SQLException
+    {
+        final boolean autoCommit = connection.getAutoCommit();
+
+        if (autoCommit)
+        {
+            connection.setAutoCommit(false);
+        }
+
+        try (final Statement accountStatement = connection.createStatement();
+             final Statement permissionStatement = connection.createStatement();
+             final Statement roleStatement = connection.createStatement();
+             final ResultSet accountRows = accountStatement.executeQuery(SQL_SCAN_ACCOUNTS);
+             final ResultSet permissionRows = permissionStatement.executeQuery(SQL_SCAN_PERMISSIONS);
+             final ResultSet roleRows = roleStatement.executeQuery(SQL_SCAN_ROLES))
+        {
+            boolean hasAccount = accountRows.next();
+            boolean hasPermission = permissionRows.next();
+            boolean hasRole = roleRows.next();
+            long visited = 0L;
+
+            started.run();
+
+            while (hasAccount)
+            {
+                final long discordId = accountRows.getLong(1);
+                final Set<String> permissions = new HashSet<>();
+                final Set<Long> roles = new HashSet<>();
+
+                // Column data of rows the legacy data migration has not moved yet.
+                Collections.addAll(permissions, accountRows.getString(2).split(","));
+
+                for (final String roleId : accountRows.getString(3).split(","))
+                {
+                    if (!roleId.isBlank())
+                    {
+                        roles.add(Long.parseLong(roleId));
+                    }
+                }
+
+                // Rows without an account row are skipped.
+                while (hasPermission && permissionRows.getLong(1) <= discordId)
+                {
+                    if (permissionRows.getLong(1) == discordId)
+                    {
+                        permissions.add(permissionRows.getString(2));
+                    }
+
+                    hasPermission = permissionRows.next();
+                }
+
+                while (hasRole && roleRows.getLong(1) <= discordId)
+                {
+                    if (roleRows.getLong(1) == discordId)
+                    {
+                        roles.add(roleRows.getLong(2));
+                    }
+
+                    hasRole = roleRows.next();
+                }
+
+                visitor.visit(discordId, AccountState.EMPTY.withPermissions(permissions).withRoles(roles)
+                        .withBalanceUnits(accountRows.getLong(4)));
+                visited++;
+                hasAccount = accountRows.next();
+            }
+
+            return visited;
+        }
+        finally
+        {
+            if (autoCommit)
+            {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Does nothing, as the connection is owned and closed by the account manager.
+     */
+    @Override
+    public void close()
+    {
+    }
+
+    /**
+     * @return The sorted discord ids of the saved accounts with the given lower case permission.
+     */
+    List<Long> findWithPermission(@NonNull final String permission) throws IOException
+    {
+        return find(SQL_FIND_BY_PERMISSION, permission, SQL_FIND_BY_PERMISSION_DATA, "," + permission + ",");
+    }
+
+    /**
+     * @return The sorted discord ids of the saved accounts with the given role.
+     */
+    List<Long> findWithRole(final long roleId) throws IOException
+    {
+        return find(SQL_FIND_BY_ROLE, roleId, SQL_FIND_BY_ROLE_DATA, "," + roleId + ",");
+    }
+
+    /**
+     * Runs a query for the discord ids with a value in its table, and while the migration is running, the discord ids
+     * with the value still in their account columns.
+     *
+     * @return The sorted discord ids.
+     */
+    private List<Long> find(@NonNull final String tableQuery, @NonNull final Object value,
+                            @NonNull final String columnQuery, @NonNull final String columnValue) throws IOException
+    {
+        if (!isOpen())
+        {
+            return new ArrayList<>();
+        }
+
+        final boolean migrating = !accountManager.getSchemaMigrator().isFinished(LegacyDataMigration.NAME);
+
+        return read(DatabaseExecutor.RequestType.QUERY, null, null, (readConnection, statements) ->
+        {
+            final Set<Long> discordIds = new TreeSet<>();
+
+            addIds(statements.prepare(tableQuery), value, discordIds);
+
+            if (migrating)
+            {
+                addIds(statements.prepare(columnQuery), columnValue, discordIds);
+            }
+
+            return new ArrayList<>(discordIds);
+        });
+    }
+
+    /**
+     * Adds the discord ids found by a query with a single parameter.
+     */
+    private static void addIds(@NonNull final PreparedStatement statement, @NonNull final Object value,
+                               @NonNull final Set<Long> discordIds) throws SQLException
+    {
+        statement.setObject(1, value);
+
+        try (final ResultSet resultSet = statement.executeQuery())
+        {
+            while (resultSet.next())
+            {
+                discordIds.add(resultSet.getLong(1));
+            }
+        }
+    }
+
+    /**
+     * @return False if the discord id is definitely not in the database, either as there is no connection or the
+     * persisted id filter rules it out.
+     */
+    private boolean mightExist(final long discordId)
+    {
+        if (!isOpen())
+        {
+            KodeKitten.logWarning(String.format(MessageConfig.getInstance().getInternal("inactive_connection"), discordId));
+            return false;
+        }
+
+        // Ids missing from the filter are definitely not in the database.
+        return accountManager.getPersistedIds().mightContain(discordId);
+    }
+
+    private void recordFalsePositive()
+    {
+        if (accountManager.getPersistedIds().isEnabled())
+        {
+            accountManager.getPersistedIds().recordFalsePositive();
+        }
+    }
+
+    /**
+     * Rebuilds the persisted id filter once it has grown past its capacity or holds too many deleted ids.
+     * The rebuild runs in the background.
+     */
+    private void rebuildFilterIfNeeded()
+    {
+        final PersistedIdFilter persistedIds = accountManager.getPersistedIds();
+
+        if (isOpen() && persistedIds.needsRebuild())
+        {
+            accountManager.getDatabaseExecutor().submit(DatabaseExecutor.RequestType.QUERY, () ->
+            {
+                final Connection connection = accountManager.getConnection();
+
+                return connection != null && persistedIds.rebuild(connection);
+            });
+        }
+    }
+
+    /**
+     * Runs a read on the read connection pool or the database executor.
+     *
+     * @throws IOException If the read failed.
+     */
+    private <T> T read(@NonNull final DatabaseExecutor.RequestType type, @Nullable final Long discordId,
+                       @Nullable final Object target, @NonNull final ReadConnectionPool.Read<T> read)
+            throws IOException
+    {
+        try
+        {
+            return accountManager.read(type, discordId, target, read);
+        }
+        catch (final SQLException sqlException)
+        {
+            throw new IOException(sqlException);
+        }
+    }
+
+    /**
+     * @return The result of a cached query with a single discord id parameter.
+     */
+    private static ResultSet queryById(@NonNull final StatementCache statements, @NonNull final String sqlQuery,
+                                       final long discordId) throws SQLException
+    {
+        final PreparedStatement statement = statements.prepare(sqlQuery);
+
+        statement.setLong(1, discordId);
+
+        return statement.executeQuery();
+    }
+
+}
@@ -0,0 +1,435 @@
+package com.sylink.util.account;
+
+import com.sylink.KodeKitten;
+import com.sylink.util.config.MessageConfig;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Class that brings the accounts database schema up to date.
+ * Schema versions are SQL resources at migrations/V1.sql, migrations/V2.sql and so on, applied in order when the
+ * database is opened, each in its own transaction, and recorded in the schema_version table.
+ * Large data rewrites are data migrations run afterwards in small chunks, with their progress stored in the
+ * data_migrations table so they resume where they stopped after a restart.
+ */
+public final class SchemaMigrator
+{
+
+    /**
+     * A large data rewrite run in chunks while the bot is online.
+     */
+    public interface DataMigration
+    {
+
+        /**
+         * @return The unique name the progress of the migration is stored under.
+         */
+        String getName();
+
+        /**
+         * Migrates the next chunk of rows after the cursor, in the transaction that stores the returned cursor.
+         *
+         * @return The cursor to continue from, or FINISHED if every row has been migrated.
+         */
+        long runChunk(StatementCache statements, long cursor) throws SQLException;
+
+    }
+
+    // The cursor of a data migration with every row migrated.
+    public static final long FINISHED = Long.MAX_VALUE;
+    // The cursor of a data migration that has not started.
+    public static final long NOT_STARTED = Long.MIN_VALUE;
+
+    // The path of the SQL resource of each schema version.
+    private static final String RESOURCE_PATH = "migrations/V%d.sql";
+    // The statements used to create the tables that track the migrations.
+    private static final String SQL_VERSION_TABLE = """
+            CREATE TABLE IF NOT EXISTS schema_version
+            (
+                version INTEGER NOT NULL PRIMARY KEY,
+                description TEXT NOT NULL,
+                applied_at BIGINT NOT NULL,
+                duration_ms BIGINT NOT NULL
+            );
+            """;
+    private static final String SQL_PROGRESS_TABLE = """
+            CREATE TABLE IF NOT EXISTS data_migrations
+            (
+                name TEXT NOT NULL PRIMARY KEY,
+                cursor BIGINT NOT NULL,
+                chunks BIGINT NOT NULL,
+                duration_ms BIGINT NOT NULL
+            );
+            """;
+    private static final String SQL_VERSION_QUERY = "SELECT MAX(version) FROM schema_version";
+    private static final String SQL_INSERT_VERSION = """
+            INSERT INTO schema_version
+            (version,description,applied_at,duration_ms)
+            VALUES(?,?,?,?)
+            """;
+    private static final String SQL_PROGRESS_QUERY = "SELECT name, cursor, chunks, duration_ms FROM data_migrations";
+    private static final String SQL_UPSERT_PROGRESS = """
+            INSERT INTO data_migrations
+            (name,cursor,chunks,duration_ms)
+            VALUES(?,?,?,?)
+            ON CONFLICT(name) DO UPDATE
+            SET cursor = excluded.cursor,
+                chunks = excluded.chunks,
+                duration_ms = excluded.duration_ms
+            """;
+
+    // The data migrations in the order they are run.
+    private final List<DataMigration> dataMigrations;
+    // Map that stores the name of each data migration associated with its committed progress.
+    private final Map<String, Progress> progress = new ConcurrentHashMap<>();
+    // The progress of the chunk waiting for its transaction to be committed.
+    private volatile Progress pendingProgress = null;
+
+    // The schema version of the open database, 0 if no database has been migrated.
+    @Getter(AccessLevel.PUBLIC)
+    private volatile int schemaVersion = 0;
+
+    SchemaMigrator(@NonNull final List<DataMigration> dataMigrations)
+    {
+        this.dataMigrations = List.copyOf(dataMigrations);
+    }
+
+    /**
+     * Applies every schema version newer than the database's and reads the progress of the data migrations.
+     * Has to run on the writer connection outside of a transaction.
+     *
+     * @return The schema version of the database.
+     *
+     * @throws SQLException If a schema version could not be applied, leaving the database at the previous version.
+     */
+    int migrate(@NonNull final Connection connection) throws SQLException
+    {
+        try (final Statement statement = connection.createStatement())
+        {
+            statement.executeUpdate(SQL_VERSION_TABLE);
+            statement.executeUpdate(SQL_PROGRESS_TABLE);
+
+            try (final ResultSet resultSet = statement.executeQuery(SQL_VERSION_QUERY))
+            {
+                schemaVersion = resultSet.next() ? resultSet.getInt(1) : 0;
+            }
+
+            progress.clear();
+            pendingProgress = null;
+
+            try (final ResultSet resultSet = statement.executeQuery(SQL_PROGRESS_QUERY))
+            {
+                while (resultSet.next())
+                {
+                    final String name = resultSet.getString("name");
+
+                    progress.put(name, new Progress(name, resultSet.getLong("cursor"), resultSet.getLong("chunks"),
+                            resultSet.getLong("duration_ms") * 1_000_000L));
+                }
+            }
+        }
+
+        String script;
+
+        while ((script = readScript(schemaVersion + 1)) != null)
+        {
+            applyVersion(connection, schemaVersion + 1, script);
+        }
+
+        return schemaVersion;
+    }
+
+    /**
+     * @return The SQL script of a schema version, or null if there is no such version.
+     */
+    private static String readScript(final int version) throws SQLException
+    {
+        try (final InputStream inputStream = KodeKitten.getResource(String.format(RESOURCE_PATH, version)))
+        {
+            return (inputStream == null) ? null : new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        catch (final IOException exception)
+        {
+            throw new SQLException("Unable to read schema version " + version, exception);
+        }
+    }
+
+    /**
+     * Applies the statements of a schema version and records it in a single transaction.
+     */
+    private void applyVersion(@NonNull final Connection connection, final int version, @NonNull final String script)
+            throws SQLException
+    {
+        final String description = describe(script);
+        final long startTime = System.nanoTime();
+
+        connection.setAutoCommit(false);
+
+        try (final Statement statement = connection.createStatement();
+             final PreparedStatement insertVersion = connection.prepareStatement(SQL_INSERT_VERSION))
+        {
+            for (final String sql : splitStatements(script))
+            {
+                statement.execute(sql);
+            }
+
+            final long duration = (System.nanoTime() - startTime) / 1_000_000L;
+
+            insertVersion.setInt(1, version);
+            insertVersion.setString(2, description);
+            insertVersion.setLong(3, System.currentTimeMillis());
+            insertVersion.setLong(4, duration);
+            insertVersion.executeUpdate();
+            connection.commit();
+
+            schemaVersion = version;
+            KodeKitten.logInfo(String.format(MessageConfig.getInstance().getInternal("applied_schema_version"),
+                    version, description, duration));
+        }
+        catch (final SQLException sqlException)
+        {
+            connection.rollback();
+            throw sqlException;
+        }
+        finally
+        {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * @return The description of a script from its first line comment, or an empty string if it has none.
+     */
+    static String describe(@NonNull final String script)
+    {
+        final String firstLine = script.stripLeading().lines().findFirst().orElse("");
+
+        return firstLine.startsWith("--") ? firstLine.substring(2).strip() : "";
+    }
+
+    /**
+     * Splits a script in to its statements at every semicolon outside of quotes and comments.
+     *
+     * @return The statements of the script without their semicolons.
+     */
+    static List<String> splitStatements(@NonNull final String script)
+    {
+        final List<String> statements = new ArrayList<>();
+        final StringBuilder statement = new StringBuilder();
+        char quote = 0;
+
+        for (int i = 0; i < script.length(); i++)
+        {
+            final char character = script.charAt(i);
+
+            if (quote != 0)
+            {
+                statement.append(character);
+
+                if (character == quote)
+                {
+                    quote = 0;
+                }
+            }
+            else if (character == '-' && i + 1 < script.length() && script.charAt(i + 1) == '-')
+            {
+                // Line comments are skipped up to the end of the line.
+                while (i < script.length() && script.charAt(i) != '\n')
+                {
+                    i++;
+                }
+
+                statement.append('\n');
+            }
+            else if (character == ';')
+            {
+                addStatement(statements, statement);
+            }
+            else
+            {
+                if (character == '\'' || character == '"')
+                {
+                    quote = character;
+                }
+
+                statement.append(character);
+            }
+        }
+
+        addStatement(statements, statement);
+
+        return statements;
+    }
+
+    /**
+     * Adds the statement being built if it is not blank and starts building the next one.
+     */
+    private static void addStatement(@NonNull final List<String> statements, @NonNull final StringBuilder statement)
+    {
+        final String sql = statement.toString().strip();
+
+        if (!sql.isEmpty())
+        {
+            statements.add(sql);
+        }
+
+        statement.setLength(0);
+    }
+
+    /**
+     * @return True if a data migration has rows left to migrate.
+     */
+    public boolean hasPendingDataMigrations()
+    {
+        for (final DataMigration dataMigration : dataMigrations)
+        {
+            if (!isFinished(dataMigration.getName()))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return True if the data migration with the given name has migrated every row.
+     */
+    public boolean isFinished(@NonNull final String name)
+    {
+        final Progress current = progress.get(name);
+
+        return current != null && current.isFinished();
+    }
+
+    /**
+     * Runs the next chunk of the first unfinished data migration and stores its progress. Has to run in a
+     * transaction on the writer connection, followed by completeChunk once the transaction is committed.
+     *
+     * @return True if a chunk was run, false if every data migration is finished.
+     *
+     * @throws SQLException If the chunk failed, in which case it is run again by the next call.
+     */
+    boolean runChunk(@NonNull final StatementCache statements) throws SQLException
+    {
+        for (final DataMigration dataMigration : dataMigrations)
+        {
+            final String name = dataMigration.getName();
+            final Progress current = progress.getOrDefault(name, new Progress(name, NOT_STARTED, 0L, 0L));
+
+            if (current.isFinished())
+            {
+                continue;
+            }
+
+            final long startTime = System.nanoTime();
+            final long cursor = dataMigration.runChunk(statements, current.cursor);
+            final Progress next = new Progress(name, cursor, current.chunks + 1,
+                    current.duration + System.nanoTime() - startTime);
+            final PreparedStatement statement = statements.prepare(SQL_UPSERT_PROGRESS);
+
+            statement.setString(1, name);
+            statement.setLong(2, next.cursor);
+            statement.setLong(3, next.chunks);
+            statement.setLong(4, next.getDurationMillis());
+            statement.executeUpdate();
+
+            pendingProgress = next;
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Moves the data migration past the chunk run by runChunk after its transaction was committed.
+     */
+    void completeChunk()
+    {
+        final Progress next = pendingProgress;
+
+        if (next == null)
+        {
+            return;
+        }
+
+        pendingProgress = null;
+        progress.put(next.name, next);
+
+        if (next.isFinished())
+        {
+            KodeKitten.logInfo(String.format(MessageConfig.getInstance().getInternal("finished_data_migration"),
+                    next.name, next.chunks, next.getDurationMillis()));
+        }
+    }
+
+    /**
+     * @return The committed progress of every data migration, in the order they are run.
+     */
+    public List<Progress> getDataMigrationProgress()
+    {
+        final List<Progress> migrationProgress = new ArrayList<>();
+
+        for (final DataMigration dataMigration : dataMigrations)
+        {
+            final String name = dataMigration.getName();
+
+            migrationProgress.add(progress.getOrDefault(name, new Progress(name, NOT_STARTED, 0L, 0L)));
+        }
+
+        return migrationProgress;
+    }
+
+    /**
+     * Committed progress of a single data migration.
+     */
+    public static final class Progress
+    {
+
+        // The name of the data migration.
+        @Getter(AccessLevel.PUBLIC)
+        private final String name;
+        // The cursor the data migration continues from.
+        @Getter(AccessLevel.PUBLIC)
+        private final long cursor;
+        // The amount of chunks run.
+        @Getter(AccessLevel.PUBLIC)
+        private final long chunks;
+        // The total amount of nanoseconds spent running chunks.
+        private final long duration;
+
+        private Progress(@NonNull final String name, final long cursor, final long chunks, final long duration)
+        {
+            this.name = name;
+            this.cursor = cursor;
+            this.chunks = chunks;
+            this.duration = duration;
+        }
+
+        /**
+         * @return True if every row has been migrated.
+         */
+        public boolean isFinished()
+        {
+            return cursor == FINISHED;
+        }
+
+        /**
+         * @return The total amount of milliseconds spent running chunks.
+         */
+        public long getDurationMillis()
+        {
+            return duration / 1_000_000L;
+        }
+
+    }
+
+}
@@ -0,0 +1,124 @@
+package com.sylink.util.account;
+
+import lombok.NonNull;
+
+import javax.annotation.Nullable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class that keeps one parameterized PreparedStatement per SQL query for the currently open database connection.
+ * Statements are not thread safe, so callers must synchronize on a statement while binding and executing it.
+ */
+public final class StatementCache
+{
+
+    // The connection that all cached statements were prepared against.
+    private Connection connection = null;
+    // Map that stores each SQL query associated with its prepared statement.
+    private final Map<String, PreparedStatement> statements = new ConcurrentHashMap<>();
+    // The amount of times a statement was reused from the cache.
+    private final AtomicLong hits = new AtomicLong();
+    // The amount of times a statement had to be prepared by the database.
+    private final AtomicLong prepares = new AtomicLong();
+
+    /**
+     * Closes all cached statements and starts caching statements for the given connection.
+     */
+    synchronized void rebuild(@Nullable final Connection connection)
+    {
+        clear();
+
+        this.connection = connection;
+    }
+
+    /**
+     * Closes and removes all cached statements.
+     */
+    synchronized void clear()
+    {
+        for (final PreparedStatement statement : statements.values())
+        {
+            try
+            {
+                statement.close();
+            }
+            catch (final SQLException ignored)
+            {
+                // The statement is being discarded either way.
+            }
+        }
+
+        statements.clear();
+        this.connection = null;
+    }
+
+    /**
+     * @return The cached statement for the given SQL query, preparing it if it has not been cached yet.
+     *
+     * @throws SQLException If there is no connection or the statement could not be prepared.
+     */
+    PreparedStatement prepare(@NonNull final String sql) throws SQLException
+    {
+        final PreparedStatement cached = statements.get(sql);
+
+        if (cached != null)
+        {
+            hits.incrementAndGet();
+            return cached;
+        }
+
+        synchronized (this)
+        {
+            // Another thread may have prepared the statement while we waited.
+            final PreparedStatement statement = statements.get(sql);
+
+            if (statement != null)
+            {
+                hits.incrementAndGet();
+                return statement;
+            }
+
+            if (connection == null)
+            {
+                throw new SQLException("No open connection to prepare statement with");
+            }
+
+            final PreparedStatement prepared = connection.prepareStatement(sql);
+
+            statements.put(sql, prepared);
+            prepares.incrementAndGet();
+
+            return prepared;
+        }
+    }
+
+    /**
+     * @return The amount of times a statement was reused from the cache.
+     */
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    /**
+     * @return The amount of times a statement had to be prepared by the database.
+     */
+    public long getPrepares()
+    {
+        return prepares.get();
+    }
+
+    /**
+     * @return The amount of statements currently cached.
+     */
+    public int size()
+    {
+        return statements.size();
+    }
+
+}
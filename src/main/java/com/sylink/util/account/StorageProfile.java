@@ -0,0 +1,203 @@
+package com.sylink.util.account;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Class that holds a named set of SQLite PRAGMA settings applied to every new database connection.
+ */
+public final class StorageProfile
+{
+
+    // Pattern that PRAGMA names and values have to match, as they cannot be bound as statement parameters.
+    private static final Pattern SAFE_TOKEN = Pattern.compile("-?[A-Za-z0-9_]+");
+    // Named values of PRAGMAs that SQLite reports back as numbers.
+    private static final Map<String, List<String>> NUMBERED_VALUES = Map.of(
+            "synchronous", List.of("OFF", "NORMAL", "FULL", "EXTRA"),
+            "temp_store", List.of("DEFAULT", "FILE", "MEMORY"));
+
+    // Rollback journal with a full sync on every commit, the SQLite driver defaults.
+    public static final StorageProfile DURABLE = new StorageProfile("durable", Map.of(
+            "journal_mode", "DELETE",
+            "synchronous", "FULL",
+            "busy_timeout", "5000"));
+    // Write ahead log so readers and the writer do not block each other, only syncing at checkpoints.
+    public static final StorageProfile BALANCED = new StorageProfile("balanced", Map.of(
+            "journal_mode", "WAL",
+            "synchronous", "NORMAL",
+            "busy_timeout", "5000"));
+    // Balanced with a 64 MiB page cache and 256 MiB of memory mapped reads.
+    public static final StorageProfile THROUGHPUT = new StorageProfile("throughput", Map.of(
+            "journal_mode", "WAL",
+            "synchronous", "NORMAL",
+            "busy_timeout", "5000",
+            "cache_size", "-65536",
+            "mmap_size", "268435456",
+            "temp_store", "MEMORY"));
+
+    // The name of the profile.
+    @Getter(AccessLevel.PUBLIC)
+    private final String name;
+    // Map that stores each PRAGMA name associated with its value, in the order they are applied.
+    @Getter(AccessLevel.PUBLIC)
+    private final Map<String, String> pragmas;
+
+    public StorageProfile(@NonNull final String name, @NonNull final Map<String, String> pragmas)
+    {
+        final Map<String, String> orderedPragmas = new TreeMap<>();
+
+        for (final Map.Entry<String, String> pragma : pragmas.entrySet())
+        {
+            final String pragmaName = pragma.getKey().toLowerCase(Locale.ROOT);
+
+            if (!SAFE_TOKEN.matcher(pragmaName).matches() || !SAFE_TOKEN.matcher(pragma.getValue()).matches())
+            {
+                throw new IllegalArgumentException("Invalid PRAGMA " + pragma.getKey() + " = " + pragma.getValue());
+            }
+
+            orderedPragmas.put(pragmaName, pragma.getValue());
+        }
+
+        // The journal mode has to be set first as it decides how the other settings behave.
+        final Map<String, String> applyOrder = new LinkedHashMap<>();
+
+        if (orderedPragmas.containsKey("journal_mode"))
+        {
+            applyOrder.put("journal_mode", orderedPragmas.remove("journal_mode"));
+        }
+
+        applyOrder.putAll(orderedPragmas);
+
+        this.name = name;
+        this.pragmas = Collections.unmodifiableMap(applyOrder);
+    }
+
+    /**
+     * @return The built in profile with the given name, or null if there is none.
+     */
+    public static StorageProfile getDefault(@NonNull final String name)
+    {
+        return switch (name.toLowerCase(Locale.ROOT))
+                {
+                    case "durable" -> DURABLE;
+                    case "balanced" -> BALANCED;
+                    case "throughput" -> THROUGHPUT;
+                    default -> null;
+                };
+    }
+
+    /**
+     * Creates a profile from a config section of PRAGMA names and values.
+     * PRAGMAs missing from the section are taken from the built in profile of the same name.
+     *
+     * @throws IllegalArgumentException If the profile does not exist or has an invalid PRAGMA.
+     */
+    public static StorageProfile fromConfig(@NonNull final String name, @NonNull final Map<String, Object> section)
+    {
+        final StorageProfile defaultProfile = getDefault(name);
+
+        if (defaultProfile == null && section.isEmpty())
+        {
+            throw new IllegalArgumentException("Unknown storage profile " + name);
+        }
+
+        final Map<String, String> pragmas = new HashMap<>();
+
+        if (defaultProfile != null)
+        {
+            pragmas.putAll(defaultProfile.getPragmas());
+        }
+
+        for (final Map.Entry<String, Object> entry : section.entrySet())
+        {
+            pragmas.put(entry.getKey(), String.valueOf(entry.getValue()));
+        }
+
+        return new StorageProfile(name.toLowerCase(Locale.ROOT), pragmas);
+    }
+
+    /**
+     * Applies every PRAGMA of the profile to the connection.
+     */
+    void apply(@NonNull final Connection connection) throws SQLException
+    {
+        try (final Statement statement = connection.createStatement())
+        {
+            for (final Map.Entry<String, String> pragma : pragmas.entrySet())
+            {
+                statement.execute("PRAGMA " + pragma.getKey() + " = " + pragma.getValue());
+            }
+        }
+    }
+
+    /**
+     * Applies every PRAGMA of the profile except the journal mode to a read only connection.
+     * The journal mode is stored in the database file, so it can only be set by the writer connection.
+     */
+    void applyReadSettings(@NonNull final Connection connection) throws SQLException
+    {
+        try (final Statement statement = connection.createStatement())
+        {
+            for (final Map.Entry<String, String> pragma : pragmas.entrySet())
+            {
+                if (!pragma.getKey().equals("journal_mode"))
+                {
+                    statement.execute("PRAGMA " + pragma.getKey() + " = " + pragma.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads back every PRAGMA of the profile from the connection.
+     *
+     * @return Map that stores each PRAGMA that does not have the profile's value associated with its actual value.
+     */
+    Map<String, String> validate(@NonNull final Connection connection) throws SQLException
+    {
+        final Map<String, String> mismatches = new LinkedHashMap<>();
+
+        try (final Statement statement = connection.createStatement())
+        {
+            for (final Map.Entry<String, String> pragma : pragmas.entrySet())
+            {
+                try (final ResultSet resultSet = statement.executeQuery("PRAGMA " + pragma.getKey()))
+                {
+                    final String actual = resultSet.next() ? resultSet.getString(1) : "";
+
+                    if (!normalize(pragma.getKey(), actual).equals(normalize(pragma.getKey(), pragma.getValue())))
+                    {
+                        mismatches.put(pragma.getKey(), actual);
+                    }
+                }
+            }
+        }
+
+        return mismatches;
+    }
+
+    /**
+     * @return A PRAGMA value in the form SQLite reports it, so named and numbered values can be compared.
+     */
+    private static String normalize(@NonNull final String pragma, @NonNull final String value)
+    {
+        final List<String> numberedValues = NUMBERED_VALUES.get(pragma);
+        final String upperValue = value.toUpperCase(Locale.ROOT);
+
+        if (numberedValues != null && numberedValues.contains(upperValue))
+        {
+            return String.valueOf(numberedValues.indexOf(upperValue));
+        }
+
+        return upperValue;
+    }
+
+}
@@ -0,0 +1,64 @@
+package com.sylink.util.account;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+/**
+ * A request to move balance from one account to another.
+ */
+public final class Transfer
+{
+
+    /**
+     * Outcomes of a transfer.
+     */
+    public enum Result
+    {
+        // The balance was moved and both accounts were saved in one transaction.
+        COMPLETED,
+        // The balance was moved but saving failed, the accounts stay queued to be flushed.
+        NOT_SAVED,
+        // The amount was not above 0.
+        INVALID_AMOUNT,
+        // The balance would have been moved to the account it came from.
+        SAME_ACCOUNT,
+        // The account the balance comes from does not exist.
+        UNKNOWN_ACCOUNT,
+        // The account the balance comes from holds less than the amount.
+        INSUFFICIENT_FUNDS,
+        // The balance of the receiving account would overflow.
+        BALANCE_OVERFLOW;
+
+        /**
+         * @return True if the balance was moved.
+         */
+        public boolean isApplied()
+        {
+            return this == COMPLETED || this == NOT_SAVED;
+        }
+    }
+
+    // The discord id of the account the balance is taken from.
+    @Getter(AccessLevel.PUBLIC)
+    private final long fromId;
+    // The discord id of the account the balance is given to.
+    @Getter(AccessLevel.PUBLIC)
+    private final long toId;
+    // The amount of minor units moved.
+    @Getter(AccessLevel.PUBLIC)
+    private final long units;
+
+    public Transfer(final long fromId, final long toId, final long units)
+    {
+        this.fromId = fromId;
+        this.toId = toId;
+        this.units = units;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("Transfer(%d -> %d, %s)", fromId, toId, Money.format(units));
+    }
+
+}
@@ -11,6 +11,7 @@ import lombok.Setter;
 import javax.annotation.Nullable;
 import java.nio.file.Path;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -109,4 +110,47 @@ public class ConfigManager
         return get(key, null);
     }
 
+    /**
+     * @return Every config value stored below the specified config section, keyed without the section prefix.
+     */
+    public Map<String, Object> getSection(@NonNull final String section)
+    {
+        final String prefix = section + ".";
+        final Map<String, Object> values = new TreeMap<>();
+
+        for (final var entry : configMap.entrySet())
+        {
+            if (entry.getKey().startsWith(prefix))
+            {
+                values.put(entry.getKey().substring(prefix.length()), entry.getValue());
+            }
+        }
+
+        return values;
+    }
+
+    /**
+     * @return The integer config value stored at the specified config key.
+     */
+    public int getInt(@NonNull final String key, final int defaultValue)
+    {
+        return (configMap.get(key) instanceof Number number) ? number.intValue() : defaultValue;
+    }
+
+    /**
+     * @return The long config value stored at the specified config key.
+     */
+    public long getLong(@NonNull final String key, final long defaultValue)
+    {
+        return (configMap.get(key) instanceof Number number) ? number.longValue() : defaultValue;
+    }
+
+    /**
+     * @return The double config value stored at the specified config key.
+     */
+    public double getDouble(@NonNull final String key, final double defaultValue)
+    {
+        return (configMap.get(key) instanceof Number number) ? number.doubleValue() : defaultValue;
+    }
+
 }
\ No newline at end of file
@@ -1,12 +1,12 @@
 package com.sylink.util.config;
 
-import com.electronwill.nightconfig.core.file.FileConfig;
 import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NonNull;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 
@@ -44,18 +44,29 @@ public class MainConfig
     @Override
     public void loadFromConfig(@NonNull final String resourcePath, @NonNull final Path projectPath)
     {
-        super.configMap.clear();
+        super.loadFromConfig(resourcePath, projectPath);
 
-        createConfigIfNotExist(resourcePath, projectPath);
+        statusMessages = toStringList(super.configMap.get("status_messages"));
+    }
 
-        try (final FileConfig fileConfig = FileConfig.of(projectPath))
+    /**
+     * @return A copy of the list with every element as a string, or null if the value is not a non empty list.
+     */
+    private static List<String> toStringList(final Object value)
+    {
+        if (!(value instanceof List) || ((List<?>) value).isEmpty())
         {
-            fileConfig.load();
+            return null;
+        }
 
-            statusMessages = fileConfig.get("status_messages");
+        final List<String> strings = new ArrayList<>();
 
-            super.loaded = true;
+        for (final Object element : (List<?>) value)
+        {
+            strings.add(String.valueOf(element));
         }
+
+        return strings;
     }
 
     /**
@@ -0,0 +1,8 @@
+-- Create the accounts table
+CREATE TABLE IF NOT EXISTS accounts
+(
+    id BIGINT NOT NULL UNIQUE,
+    permissions TEXT NOT NULL DEFAULT '',
+    roles TEXT NOT NULL DEFAULT '',
+    balance DOUBLE NOT NULL DEFAULT 0.0
+);
@@ -0,0 +1,18 @@
+-- Create the permission and role tables with their covering indexes
+CREATE TABLE IF NOT EXISTS account_permissions
+(
+    id BIGINT NOT NULL,
+    permission TEXT NOT NULL,
+    PRIMARY KEY (id, permission)
+) WITHOUT ROWID;
+
+CREATE INDEX IF NOT EXISTS account_permissions_by_permission ON account_permissions (permission, id);
+
+CREATE TABLE IF NOT EXISTS account_roles
+(
+    id BIGINT NOT NULL,
+    role_id BIGINT NOT NULL,
+    PRIMARY KEY (id, role_id)
+) WITHOUT ROWID;
+
+CREATE INDEX IF NOT EXISTS account_roles_by_role ON account_roles (role_id, id);
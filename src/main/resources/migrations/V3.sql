@@ -0,0 +1,6 @@
+-- Create the table of hot accounts preloaded at start up
+CREATE TABLE IF NOT EXISTS hot_accounts
+(
+    id BIGINT NOT NULL PRIMARY KEY,
+    accesses BIGINT NOT NULL
+);
@@ -0,0 +1,2 @@
+-- Add a fixed point balance column in whole cents, filled in by the balance_units data migration
+ALTER TABLE accounts ADD COLUMN balance_units BIGINT NOT NULL DEFAULT 0;
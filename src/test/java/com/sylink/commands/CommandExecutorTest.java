@@ -0,0 +1,231 @@
+package com.sylink.commands;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommandExecutorTest
+{
+
+    private final CommandExecutor commandExecutor = new CommandExecutor();
+
+    @AfterEach
+    void tearDown()
+    {
+        commandExecutor.shutdown();
+    }
+
+    /**
+     * @return A command that blocks until the latch is released.
+     */
+    private static Runnable blockingCommand(final CountDownLatch release)
+    {
+        return () ->
+        {
+            try
+            {
+                release.await();
+            }
+            catch (final InterruptedException exception)
+            {
+                Thread.currentThread().interrupt();
+            }
+        };
+    }
+
+    private void awaitRunningCommands(final int runningCommands) throws InterruptedException
+    {
+        for (int i = 0; i < 100 && commandExecutor.getRunningCommands() != runningCommands; i++)
+        {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    void inlineModeRunsOnCallingThread()
+    {
+        final Thread caller = Thread.currentThread();
+        final CompletableFuture<Thread> future = CompletableFuture.supplyAsync(Thread::currentThread, commandExecutor);
+
+        assertEquals(CommandExecutor.Mode.INLINE, commandExecutor.getMode());
+        assertTrue(future.isDone());
+        assertSame(caller, future.join());
+        assertEquals(1L, commandExecutor.getCompletedCommands());
+    }
+
+    @Test
+    void platformModeRunsOffCallingThread()
+    {
+        commandExecutor.configure(CommandExecutor.Mode.PLATFORM, 4, 2);
+
+        final Thread commandThread = CompletableFuture.supplyAsync(Thread::currentThread, commandExecutor).join();
+
+        assertNotSame(Thread.currentThread(), commandThread);
+        assertTrue(commandThread.getName().startsWith("command-"));
+    }
+
+    @Test
+    void virtualModeFallsBackWithoutVirtualThreads()
+    {
+        commandExecutor.configure(CommandExecutor.Mode.VIRTUAL, 4, 2);
+
+        final CommandExecutor.Mode expectedMode = (Runtime.version().feature() >= 21)
+                ? CommandExecutor.Mode.VIRTUAL
+                : CommandExecutor.Mode.PLATFORM;
+
+        assertEquals(expectedMode, commandExecutor.getMode());
+        assertNotSame(Thread.currentThread(), CompletableFuture.supplyAsync(Thread::currentThread, commandExecutor).join());
+    }
+
+    @Test
+    void slowCommandDoesNotDelayOthers()
+    {
+        commandExecutor.configure(CommandExecutor.Mode.PLATFORM, 4, 4);
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final CompletableFuture<Void> slowCommand = CompletableFuture.runAsync(blockingCommand(release), commandExecutor);
+
+        assertEquals("fast", CompletableFuture.supplyAsync(() -> "fast", commandExecutor).join());
+        assertFalse(slowCommand.isDone());
+
+        release.countDown();
+        slowCommand.join();
+    }
+
+    @Test
+    void concurrencyIsLimited() throws InterruptedException
+    {
+        commandExecutor.configure(CommandExecutor.Mode.PLATFORM, 2, 8);
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<CompletableFuture<Void>> commands = new ArrayList<>();
+
+        for (int i = 0; i < 5; i++)
+        {
+            commands.add(CompletableFuture.runAsync(blockingCommand(release), commandExecutor));
+        }
+
+        awaitRunningCommands(2);
+        Thread.sleep(20);
+
+        assertEquals(2, commandExecutor.getRunningCommands());
+        assertEquals(3, commandExecutor.getWaitingCommands());
+
+        release.countDown();
+        CompletableFuture.allOf(commands.toArray(new CompletableFuture[0])).join();
+        // Futures complete inside the command, slightly before its metrics are recorded.
+        awaitRunningCommands(0);
+
+        assertEquals(0, commandExecutor.getRunningCommands());
+        assertEquals(0, commandExecutor.getWaitingCommands());
+        assertEquals(2, commandExecutor.getPeakRunningCommands());
+        assertEquals(5L, commandExecutor.getCompletedCommands());
+        assertTrue(commandExecutor.getAverageRunTime() > 0.0);
+    }
+
+    @Test
+    void commandsWaitingPastTheBusyTimeoutAreTurnedAway() throws InterruptedException
+    {
+        commandExecutor.configure(CommandExecutor.Mode.PLATFORM, 1, 4);
+        commandExecutor.setBusyTimeoutMillis(20L);
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch turnedAway = new CountDownLatch(1);
+        final AtomicBoolean ran = new AtomicBoolean();
+
+        commandExecutor.execute(blockingCommand(release));
+        awaitRunningCommands(1);
+        commandExecutor.execute(() -> ran.set(true), turnedAway::countDown);
+
+        assertTrue(turnedAway.await(5L, TimeUnit.SECONDS));
+        assertFalse(ran.get());
+        assertEquals(1L, commandExecutor.getBusyCommands());
+        assertEquals(0, commandExecutor.getWaitingCommands());
+
+        release.countDown();
+    }
+
+    @Test
+    void commandsQueuedForAThreadAreTurnedAwayWithinTheBusyTimeout() throws InterruptedException
+    {
+        commandExecutor.configure(CommandExecutor.Mode.PLATFORM, 8, 1);
+        commandExecutor.setBusyTimeoutMillis(50L);
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch turnedAway = new CountDownLatch(3);
+        final AtomicBoolean ran = new AtomicBoolean();
+
+        assertEquals(1, commandExecutor.getMaximumConcurrency());
+
+        commandExecutor.execute(blockingCommand(release));
+        awaitRunningCommands(1);
+
+        // The only thread stays blocked, so the commands never leave the queue before their deadline.
+        for (int i = 0; i < 3; i++)
+        {
+            commandExecutor.execute(() -> ran.set(true), turnedAway::countDown);
+        }
+
+        assertTrue(turnedAway.await(1L, TimeUnit.SECONDS));
+        assertEquals(3L, commandExecutor.getBusyCommands());
+        assertEquals(0, commandExecutor.getWaitingCommands());
+        assertEquals(1, commandExecutor.getRunningCommands());
+
+        release.countDown();
+        awaitRunningCommands(0);
+
+        assertFalse(ran.get());
+        assertEquals(1L, commandExecutor.getCompletedCommands());
+    }
+
+    @Test
+    void busyTimeoutCountsFromTheGivenStartTime() throws InterruptedException
+    {
+        commandExecutor.configure(CommandExecutor.Mode.PLATFORM, 2, 2);
+        commandExecutor.setBusyTimeoutMillis(50L);
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch turnedAway = new CountDownLatch(1);
+        final AtomicBoolean ran = new AtomicBoolean();
+
+        commandExecutor.execute(blockingCommand(release));
+        awaitRunningCommands(1);
+        // Received long enough ago that its timeout passed, such as while its account was loaded.
+        commandExecutor.execute(() -> ran.set(true), turnedAway::countDown,
+                System.nanoTime() - TimeUnit.SECONDS.toNanos(1L));
+
+        assertTrue(turnedAway.await(1L, TimeUnit.SECONDS));
+        assertEquals(1L, commandExecutor.getBusyCommands());
+
+        release.countDown();
+        awaitRunningCommands(0);
+
+        assertFalse(ran.get());
+    }
+
+    @Test
+    void shutdownReturnsToInline()
+    {
+        commandExecutor.configure(CommandExecutor.Mode.PLATFORM, 4, 2);
+        commandExecutor.shutdown();
+
+        assertEquals(CommandExecutor.Mode.INLINE, commandExecutor.getMode());
+        assertSame(Thread.currentThread(), CompletableFuture.supplyAsync(Thread::currentThread, commandExecutor).join());
+    }
+
+    @Test
+    void modeNamesIgnoreCase()
+    {
+        assertEquals(CommandExecutor.Mode.VIRTUAL, CommandExecutor.Mode.fromName("Virtual"));
+        assertThrows(IllegalArgumentException.class, () -> CommandExecutor.Mode.fromName("fibers"));
+    }
+
+}
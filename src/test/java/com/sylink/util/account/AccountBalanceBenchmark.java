@@ -0,0 +1,75 @@
+package com.sylink.util.account;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * JMH benchmark of balance changes on a single account under contention.
+ * Every thread adds to the same account and counts its additions, and each iteration fails if the balance does not
+ * match the counted additions, so a lost update is reported instead of hidden in the score.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccountBalanceBenchmark
+{
+
+    private Account account;
+    private LongAdder addedUnits;
+
+    @Setup(Level.Iteration)
+    public void setUp()
+    {
+        account = new Account(0L);
+        addedUnits = new LongAdder();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown()
+    {
+        if (account.getBalanceUnits() != addedUnits.sum())
+        {
+            throw new IllegalStateException(String.format("Lost updates: balance %d, added %d",
+                    account.getBalanceUnits(), addedUnits.sum()));
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long addUncontended()
+    {
+        addedUnits.increment();
+        return account.addBalanceUnits(1L);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public long addContended()
+    {
+        addedUnits.increment();
+        return account.addBalanceUnits(1L);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean addAndRemoveContended()
+    {
+        account.addBalanceUnits(2L);
+        addedUnits.add(1L);
+        return account.tryRemoveBalanceUnits(1L);
+    }
+
+    public static void main(final String[] args) throws RunnerException
+    {
+        new Runner(new OptionsBuilder().include(AccountBalanceBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
@@ -0,0 +1,136 @@
+package com.sylink.util.account;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AccountCacheTest
+{
+
+    @Test
+    void unboundedCacheNeverEvicts()
+    {
+        final AccountCache cache = new AccountCache(0);
+
+        for (long discordId = 0L; discordId < 1000L; discordId++)
+        {
+            assertTrue(cache.put(new Account(discordId)).isEmpty());
+        }
+
+        assertFalse(cache.isBounded());
+        assertEquals(1000, cache.size());
+        assertEquals(0, cache.getEvictions());
+    }
+
+    @Test
+    void boundedCacheStaysUnderMaximumSize()
+    {
+        final AccountCache cache = new AccountCache(100);
+        int evicted = 0;
+
+        for (long discordId = 0L; discordId < 1000L; discordId++)
+        {
+            evicted += cache.put(new Account(discordId)).size();
+        }
+
+        assertEquals(100, cache.size());
+        assertEquals(900, evicted);
+        assertEquals(900, cache.getEvictions());
+    }
+
+    @Test
+    void frequentlyAccessedAccountsSurviveScan()
+    {
+        final AccountCache cache = new AccountCache(100);
+
+        for (long discordId = 0L; discordId < 50L; discordId++)
+        {
+            cache.put(new Account(discordId));
+        }
+
+        for (int i = 0; i < 5; i++)
+        {
+            for (long discordId = 0L; discordId < 50L; discordId++)
+            {
+                assertNotNull(cache.get(discordId));
+            }
+        }
+
+        // A scan of accounts that are only accessed once must not push out the popular accounts.
+        for (long discordId = 1000L; discordId < 1500L; discordId++)
+        {
+            cache.put(new Account(discordId));
+        }
+
+        for (long discordId = 0L; discordId < 50L; discordId++)
+        {
+            assertTrue(cache.containsKey(discordId));
+        }
+    }
+
+    @Test
+    void lookupsCountHitsAndMisses()
+    {
+        final AccountCache cache = new AccountCache(10);
+
+        cache.put(new Account(1L));
+
+        assertNotNull(cache.get(1L));
+        assertNull(cache.get(2L));
+        assertNotNull(cache.peek(1L));
+
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(50.0, cache.getHitRate());
+    }
+
+    @Test
+    void removingOnlyRemovesSameAccount()
+    {
+        final AccountCache cache = new AccountCache(10);
+        final Account account = new Account(1L);
+
+        cache.put(account);
+
+        assertFalse(cache.remove(1L, new Account(1L)));
+        assertTrue(cache.remove(1L, account));
+        assertFalse(cache.containsKey(1L));
+    }
+
+    @Test
+    void replacingAccountDoesNotGrowCache()
+    {
+        final AccountCache cache = new AccountCache(2);
+
+        cache.put(new Account(1L));
+        cache.put(new Account(1L));
+        cache.put(new Account(2L));
+
+        assertEquals(2, cache.size());
+        assertEquals(0, cache.getEvictions());
+    }
+
+    @Test
+    void shrinkingCacheEvictsOverflow()
+    {
+        final AccountCache cache = new AccountCache(0);
+
+        for (long discordId = 0L; discordId < 20L; discordId++)
+        {
+            cache.put(new Account(discordId));
+        }
+
+        final List<Account> evicted = cache.resize(5);
+
+        assertEquals(15, evicted.size());
+        assertEquals(5, cache.size());
+
+        for (final Account account : evicted)
+        {
+            assertFalse(cache.containsKey(account.getDiscordId()));
+        }
+    }
+
+}
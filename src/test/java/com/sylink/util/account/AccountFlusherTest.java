@@ -0,0 +1,186 @@
+package com.sylink.util.account;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AccountFlusherTest
+{
+
+    private File databaseFile;
+    private AccountManager accountManager;
+    private AccountFlusher flusher;
+
+    @BeforeEach
+    void setUp() throws IOException
+    {
+        databaseFile = File.createTempFile("flusher_test", ".db");
+        accountManager = new AccountManager();
+        flusher = accountManager.getFlusher();
+    }
+
+    @AfterEach
+    void tearDown()
+    {
+        accountManager.closeDatabaseConnection();
+        assertTrue(databaseFile.delete());
+    }
+
+    private void openDatabase()
+    {
+        assertTrue(accountManager.openDatabaseConnection("jdbc:sqlite:" + databaseFile.getPath()));
+    }
+
+    @Test
+    void changingAccountQueuesIt()
+    {
+        final Account account = accountManager.getAccount(1L);
+
+        assertEquals(0, flusher.getQueueDepth());
+
+        account.addBalance(5.0);
+
+        assertEquals(1, flusher.getQueueDepth());
+        assertSame(account, flusher.getPending(1L));
+    }
+
+    @Test
+    void queueingSameAccountTwiceQueuesOnce()
+    {
+        final Account account = accountManager.getAccount(1L);
+
+        account.addBalance(5.0);
+        account.addPermission("admin");
+
+        assertEquals(1, flusher.getQueueDepth());
+    }
+
+    @Test
+    void flushingWithoutConnectionKeepsAccountsQueued()
+    {
+        accountManager.getAccount(1L).addBalance(5.0);
+
+        assertFalse(flusher.flushAll());
+        assertEquals(1, flusher.getQueueDepth());
+        assertEquals(1, flusher.getFailedBatches());
+        assertEquals(0, flusher.getFlushedAccounts());
+    }
+
+    @Test
+    void flushingWritesAccountsToDatabase()
+    {
+        openDatabase();
+
+        final Account account = accountManager.getAccount(1L);
+
+        account.addBalance(5.0);
+
+        assertTrue(flusher.flushAll());
+        assertEquals(0, flusher.getQueueDepth());
+        assertFalse(account.needsToSync());
+        assertTrue(accountManager.existsInDatabase(1L));
+
+        accountManager.deleteFromMemory(1L);
+
+        assertEquals(5.0, accountManager.getAccount(1L, false).getBalance());
+    }
+
+    @Test
+    void flushingUpdatesExistingAccounts()
+    {
+        openDatabase();
+
+        final Account account = accountManager.getAccount(1L);
+
+        account.addBalance(5.0);
+        assertTrue(flusher.flushAll());
+
+        account.addBalance(5.0);
+        assertTrue(flusher.flushAll());
+
+        accountManager.deleteFromMemory(1L);
+
+        assertEquals(10.0, accountManager.getAccount(1L, false).getBalance());
+    }
+
+    @Test
+    void flushingSplitsAccountsIntoBatches()
+    {
+        openDatabase();
+        flusher.setBatchSize(2);
+
+        for (long discordId = 1L; discordId <= 5L; discordId++)
+        {
+            accountManager.getAccount(discordId).addBalance(1.0);
+        }
+
+        assertTrue(flusher.flushAll());
+        assertEquals(5, flusher.getFlushedAccounts());
+        assertEquals(3, flusher.getFlushedBatches());
+        assertEquals(1, flusher.getLastBatchSize());
+    }
+
+    @Test
+    void tickFlushesFullBatchBeforeInterval()
+    {
+        openDatabase();
+        flusher.setBatchSize(2);
+        flusher.setFlushInterval(Long.MAX_VALUE);
+
+        accountManager.getAccount(1L).addBalance(1.0);
+        flusher.tick();
+
+        assertEquals(1, flusher.getQueueDepth());
+
+        accountManager.getAccount(2L).addBalance(1.0);
+        flusher.tick();
+
+        assertEquals(0, flusher.getQueueDepth());
+    }
+
+    @Test
+    void deletedAccountIsNotFlushed()
+    {
+        openDatabase();
+
+        accountManager.getAccount(1L).addBalance(1.0);
+        accountManager.delete(1L);
+
+        assertTrue(flusher.flushAll());
+        assertFalse(accountManager.existsInDatabase(1L));
+    }
+
+    @Test
+    void accountWaitingToFlushIsReturnedAfterLeavingMemory()
+    {
+        final Account account = accountManager.getAccount(1L);
+
+        account.addBalance(5.0);
+        accountManager.deleteFromMemory(1L);
+
+        assertSame(account, accountManager.getAccount(1L, false));
+    }
+
+    @Test
+    void evictedAccountIsFlushedAndReturnedAgain()
+    {
+        openDatabase();
+        accountManager.getAccountCache().resize(1);
+
+        final Account account = accountManager.getAccount(1L);
+
+        accountManager.getAccount(2L);
+
+        assertFalse(accountManager.existsInMemory(1L));
+        assertSame(account, accountManager.getAccount(1L, false));
+        assertTrue(flusher.flushAll());
+        assertTrue(accountManager.existsInDatabase(1L));
+        assertTrue(accountManager.existsInDatabase(2L));
+    }
+
+}
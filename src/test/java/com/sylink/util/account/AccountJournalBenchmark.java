@@ -0,0 +1,84 @@
+package com.sylink.util.account;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of the cost the journal adds to a balance change, with and without the journal open.
+ * Changes are synced by the background thread every 100 ms, as with the default config.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccountJournalBenchmark
+{
+
+    @Param({"false", "true"})
+    private boolean journaled;
+
+    private AccountManager accountManager;
+    private Path journalDirectory;
+    private Account account;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException
+    {
+        accountManager = new AccountManager();
+        journalDirectory = Files.createTempDirectory("journal_benchmark");
+        accountManager.setJournalDirectory(journalDirectory);
+
+        if (journaled && !accountManager.openJournal())
+        {
+            throw new IllegalStateException("Unable to open the journal");
+        }
+
+        account = new Account(1L);
+        account.setAccountManager(accountManager);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException
+    {
+        accountManager.closeJournal();
+
+        try (final var files = Files.list(journalDirectory))
+        {
+            for (final Path file : (Iterable<Path>) files::iterator)
+            {
+                Files.delete(file);
+            }
+        }
+
+        Files.delete(journalDirectory);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long addBalance()
+    {
+        return account.addBalanceUnits(1L);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long addBalanceContended()
+    {
+        return account.addBalanceUnits(1L);
+    }
+
+    public static void main(final String[] args) throws RunnerException
+    {
+        new Runner(new OptionsBuilder().include(AccountJournalBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
@@ -0,0 +1,236 @@
+package com.sylink.util.account;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AccountJournalTest
+{
+
+    private File databaseFile;
+    private String databaseUrl;
+    private Path journalDirectory;
+    private AccountManager accountManager;
+
+    @BeforeEach
+    void setUp() throws IOException
+    {
+        databaseFile = File.createTempFile("journal_test", ".db");
+        databaseUrl = "jdbc:sqlite:" + databaseFile.getPath();
+        journalDirectory = Files.createTempDirectory("journal_test");
+        accountManager = openAccountManager(100L);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException
+    {
+        TestAccountManagers.close(accountManager);
+        assertTrue(databaseFile.delete());
+
+        try (final Stream<Path> files = Files.walk(journalDirectory))
+        {
+            for (final Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList()))
+            {
+                Files.delete(file);
+            }
+        }
+    }
+
+    private AccountManager openAccountManager(final long syncInterval)
+    {
+        final AccountManager newAccountManager = TestAccountManagers.open(databaseUrl, (accountManager) ->
+        {
+            accountManager.setJournalDirectory(journalDirectory);
+            accountManager.getJournal().setSyncInterval(syncInterval);
+        });
+
+        assertTrue(newAccountManager.openJournal());
+
+        return newAccountManager;
+    }
+
+    /**
+     * Stops the account manager without flushing, as if the process was killed after the last journal sync.
+     */
+    private void crashAndRestart()
+    {
+        assertTrue(accountManager.getJournal().sync());
+        TestAccountManagers.close(accountManager);
+        accountManager = openAccountManager(100L);
+    }
+
+    private List<Path> segments() throws IOException
+    {
+        try (final Stream<Path> files = Files.list(journalDirectory))
+        {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    void unflushedChangesAreRecovered()
+    {
+        final Account account = accountManager.getAccount(1L);
+
+        account.addBalanceUnits(1_250L);
+        account.addPermission("admin");
+        account.addRole(10L);
+        accountManager.getAccount(2L).addBalanceUnits(500L);
+
+        crashAndRestart();
+
+        final Account recovered = accountManager.getAccount(1L, false);
+
+        assertNotNull(recovered);
+        assertEquals(1_250L, recovered.getBalanceUnits());
+        assertEquals(Set.of("admin"), recovered.getPermissions());
+        assertEquals(Set.of(10L), recovered.getRoles());
+        assertEquals(500L, accountManager.getAccount(2L).getBalanceUnits());
+        assertTrue(accountManager.existsInDatabase(1L));
+    }
+
+    @Test
+    void latestChangeOfEachAccountWins()
+    {
+        final Account account = accountManager.getAccount(1L);
+
+        for (int i = 0; i < 100; i++)
+        {
+            account.addBalanceUnits(1L);
+        }
+
+        account.removePermission("none");
+        account.addPermission("mod");
+        account.removePermission("mod");
+
+        crashAndRestart();
+
+        assertEquals(100L, accountManager.getAccount(1L).getBalanceUnits());
+        assertEquals(Set.of(), accountManager.getAccount(1L).getPermissions());
+    }
+
+    @Test
+    void deletedAccountsStayDeleted()
+    {
+        accountManager.getAccount(1L).addBalanceUnits(100L);
+        assertTrue(accountManager.saveToDatabase(1L));
+        accountManager.delete(1L);
+
+        crashAndRestart();
+
+        assertFalse(accountManager.existsInDatabase(1L));
+    }
+
+    @Test
+    void checkpointDeletesFlushedSegments() throws IOException
+    {
+        accountManager.getAccount(1L).addBalanceUnits(100L);
+        assertTrue(accountManager.getJournal().sync());
+        assertEquals(1, segments().size());
+
+        assertTrue(accountManager.getFlusher().flushAll());
+
+        // Only the new, still empty, segment is left.
+        assertEquals(1, segments().size());
+        assertEquals(0L, Files.size(segments().get(0)));
+        assertEquals(1L, accountManager.getJournal().getDeletedSegments());
+
+        TestAccountManagers.close(accountManager);
+        assertEquals(List.of(), segments());
+        accountManager = openAccountManager(100L);
+    }
+
+    @Test
+    void tornRecordsAreIgnored() throws IOException
+    {
+        accountManager.getAccount(1L).addBalanceUnits(100L);
+        assertTrue(accountManager.getJournal().sync());
+
+        final Path segment = segments().get(segments().size() - 1);
+
+        TestAccountManagers.close(accountManager);
+        // A record cut off by the crash, after the synced one.
+        Files.write(segment, new byte[]{0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+        accountManager = openAccountManager(100L);
+
+        assertEquals(100L, accountManager.getAccount(1L).getBalanceUnits());
+    }
+
+    @Test
+    void recordsOfAFailedSyncAreWrittenToANewSegment() throws IOException, ReflectiveOperationException
+    {
+        // Synced only by the test, so the failing sync is the one it makes.
+        TestAccountManagers.close(accountManager);
+        accountManager = openAccountManager(3_600_000L);
+
+        final AccountJournal journal = accountManager.getJournal();
+        final Field channelField = AccountJournal.class.getDeclaredField("channel");
+
+        accountManager.getAccount(1L).addBalanceUnits(100L);
+        assertTrue(journal.sync());
+
+        final int segmentCount = segments().size();
+
+        // Fails the next write the way a full or unmounted disk does.
+        channelField.setAccessible(true);
+        ((FileChannel) channelField.get(journal)).close();
+        accountManager.getAccount(2L).addBalanceUnits(200L);
+
+        assertFalse(journal.sync());
+
+        accountManager.getAccount(3L).addBalanceUnits(300L);
+
+        assertTrue(journal.sync());
+        assertEquals(segmentCount + 1, segments().size());
+
+        crashAndRestart();
+
+        assertEquals(100L, accountManager.getAccount(1L).getBalanceUnits());
+        assertEquals(200L, accountManager.getAccount(2L).getBalanceUnits());
+        assertEquals(300L, accountManager.getAccount(3L).getBalanceUnits());
+    }
+
+    @Test
+    void withoutSyncIntervalChangesAreWrittenRightAway() throws IOException
+    {
+        TestAccountManagers.close(accountManager);
+        accountManager = openAccountManager(0L);
+
+        final long syncs = accountManager.getJournal().getSyncs();
+
+        accountManager.getAccount(1L).addBalanceUnits(100L);
+
+        assertEquals(syncs + 1L, accountManager.getJournal().getSyncs());
+        assertTrue(Files.size(segments().get(segments().size() - 1)) > 0L);
+    }
+
+    @Test
+    void transfersAreJournaled()
+    {
+        accountManager.getAccount(1L).addBalanceUnits(1_000L);
+        assertTrue(accountManager.saveToDatabase(1L));
+        assertEquals(Transfer.Result.COMPLETED, accountManager.transfer(1L, 2L, 400L));
+        accountManager.getAccount(2L).addBalanceUnits(1L);
+
+        crashAndRestart();
+
+        assertEquals(600L, accountManager.getAccount(1L).getBalanceUnits());
+        assertEquals(401L, accountManager.getAccount(2L).getBalanceUnits());
+    }
+
+}
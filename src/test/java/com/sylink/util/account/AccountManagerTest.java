@@ -6,6 +6,12 @@ import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class AccountManagerTest
@@ -22,18 +28,6 @@ class AccountManagerTest
         accountManager.openDatabaseConnection(DATABASE_URL);
     }
 
-    @Test
-    void setConnectionLastActivity()
-    {
-        assertDoesNotThrow(() -> Thread.sleep(5));
-
-        final long currentTime = System.currentTimeMillis();
-
-        accountManager.setConnectionLastActivity(currentTime);
-
-        assertEquals(currentTime, accountManager.getConnectionLastActivity());
-    }
-
     @Test
     void getAccountFromMemory()
     {
@@ -107,16 +101,6 @@ class AccountManagerTest
         assertEquals(0.0, account.getBalance());
     }
 
-    @Test
-    void getConnectionBumpsLastActivity()
-    {
-        final long activityTime = accountManager.getConnectionLastActivity();
-
-        assertDoesNotThrow(() -> Thread.sleep(5));
-        assertNotNull(accountManager.getConnection());
-        assertNotEquals(activityTime, accountManager.getConnectionLastActivity());
-    }
-
     @Test
     void executingQueryToDatabase()
     {
@@ -398,6 +382,83 @@ class AccountManagerTest
         assertEquals(6.6, account.getBalance());
     }
 
+    @Test
+    void savingAccountTwiceUpdatesSameRow()
+    {
+        accountManager.delete(701L);
+
+        final Account account = accountManager.getAccount(701L);
+
+        account.setBalance(1.0);
+        assertTrue(accountManager.saveToDatabase(account));
+        assertTrue(account.isPersisted());
+
+        account.setBalance(2.0);
+        assertTrue(accountManager.saveToDatabase(account));
+
+        accountManager.deleteFromMemory(701L);
+
+        assertEquals(2.0, accountManager.getAccount(701L, false).getBalance());
+
+        accountManager.delete(701L);
+    }
+
+    @Test
+    void flushingUnchangedPersistedAccountRemovesIt()
+    {
+        final Account account = accountManager.getAccount(10L);
+
+        assertTrue(account.isPersisted());
+        assertFalse(account.needsToSync());
+
+        accountManager.flushFromMemory(account);
+
+        assertFalse(accountManager.existsInMemory(10L));
+    }
+
+    @Test
+    void deletingFromDatabaseClearsPersisted()
+    {
+        final Account account = accountManager.getAccount(702L);
+
+        assertTrue(accountManager.saveToDatabase(account));
+        assertTrue(account.isPersisted());
+
+        accountManager.deleteFromDatabase(702L);
+
+        assertFalse(account.isPersisted());
+        assertTrue(accountManager.saveToDatabase(account));
+        assertTrue(accountManager.existsInDatabase(702L));
+
+        accountManager.delete(702L);
+    }
+
+    @Test
+    void cleanupSavesAllInactiveAccounts()
+    {
+        final long activeTwentyMinutesAgo = System.currentTimeMillis() - (1200 * 1000);
+
+        for (long discordId = 710L; discordId < 715L; discordId++)
+        {
+            accountManager.delete(discordId);
+
+            final Account account = accountManager.getAccount(discordId);
+
+            account.addBalance(1.0);
+            account.setLastActivityTime(activeTwentyMinutesAgo);
+        }
+
+        assertTrue(accountManager.cleanupAccountInactivity());
+
+        for (long discordId = 710L; discordId < 715L; discordId++)
+        {
+            assertFalse(accountManager.existsInMemory(discordId));
+            assertTrue(accountManager.existsInDatabase(discordId));
+
+            accountManager.delete(discordId);
+        }
+    }
+
     @Test
     void flushingRemovesAccountFromMemory()
     {
@@ -542,38 +603,6 @@ class AccountManagerTest
         assertFalse(accountManager.existsInDatabase(300L));
     }
 
-    @Test
-    void cleanupNullConnection()
-    {
-        accountManager.closeDatabaseConnection();
-
-        assertFalse(accountManager.cleanupConnectionInactivity());
-
-        accountManager.openDatabaseConnection(DATABASE_URL);
-    }
-
-    @Test
-    void cleanupActiveConnection()
-    {
-        final long activityOneMinuteAgo = System.currentTimeMillis() - (60 * 1000);
-
-        accountManager.setConnectionLastActivity(activityOneMinuteAgo);
-
-        assertFalse(accountManager.cleanupConnectionInactivity());
-    }
-
-    @Test
-    void cleanupInactiveConnection()
-    {
-        final long activityTenMinutesAgo = System.currentTimeMillis() - (600 * 1000);
-
-        accountManager.setConnectionLastActivity(activityTenMinutesAgo);
-
-        assertTrue(accountManager.cleanupConnectionInactivity());
-
-        accountManager.openDatabaseConnection(DATABASE_URL);
-    }
-
     @Test
     void cleanupZeroInactiveAccounts()
     {
@@ -666,6 +695,297 @@ class AccountManagerTest
         accountManager.openDatabaseConnection(DATABASE_URL);
     }
 
+    @Test
+    void cleanupRefilesAccountAccessedAfterFiling()
+    {
+        final Account account = accountManager.getAccount(408L);
+        final long activeTwentyMinutesAgo = System.currentTimeMillis() - (1200 * 1000);
+
+        account.setLastActivityTime(activeTwentyMinutesAgo);
+        account.bumpLastActivityTime();
+
+        assertFalse(accountManager.cleanupAccountInactivity());
+        assertTrue(accountManager.existsInMemory(408L));
+        assertNotEquals(Account.NOT_FILED, account.getExpiryBucket());
+    }
+
+    @Test
+    void accountLeavingMemoryIsRemovedFromExpiryIndex()
+    {
+        final Account account = accountManager.getAccount(409L);
+
+        assertNotEquals(Account.NOT_FILED, account.getExpiryBucket());
+
+        accountManager.deleteFromMemory(409L);
+
+        assertEquals(Account.NOT_FILED, account.getExpiryBucket());
+    }
+
+    @Test
+    void unknownIdSkipsDatabase()
+    {
+        final long skippedBefore = accountManager.getPersistedIds().getSkippedLookups();
+
+        accountManager.delete(810L);
+
+        // Deleted ids stay in the filter, so the lookup may still reach the database.
+        assertFalse(accountManager.existsInDatabase(987_654_321L));
+        assertTrue(accountManager.getPersistedIds().getSkippedLookups() > skippedBefore);
+    }
+
+    @Test
+    void savedIdIsFoundAfterFilterRebuild()
+    {
+        final Account account = accountManager.getAccount(811L);
+
+        account.addBalance(1.0);
+
+        assertTrue(accountManager.saveToDatabase(account));
+
+        accountManager.executeQuery("SELECT 1");
+
+        assertTrue(accountManager.existsInDatabase(811L));
+
+        accountManager.delete(811L);
+    }
+
+    /**
+     * Runs the task on the given amount of threads at once and returns what each thread returned.
+     */
+    private static <T> List<T> runConcurrently(final int threads, final Callable<T> task) throws Exception
+    {
+        final ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        final List<Future<T>> futures = new ArrayList<>();
+
+        try
+        {
+            for (int i = 0; i < threads; i++)
+            {
+                futures.add(executorService.submit(() ->
+                {
+                    startLatch.await();
+                    return task.call();
+                }));
+            }
+
+            startLatch.countDown();
+
+            final List<T> results = new ArrayList<>();
+
+            for (final Future<T> future : futures)
+            {
+                results.add(future.get(30, TimeUnit.SECONDS));
+            }
+
+            return results;
+        }
+        finally
+        {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    void concurrentMissesReturnOneAccount() throws Exception
+    {
+        for (int round = 0; round < 20; round++)
+        {
+            accountManager.delete(800L);
+
+            final List<Account> accounts = runConcurrently(16, () -> accountManager.getAccount(800L));
+
+            assertEquals(1, Set.copyOf(accounts).size());
+            assertSame(accounts.get(0), accountManager.getAccount(800L));
+        }
+
+        accountManager.delete(800L);
+    }
+
+    @Test
+    void concurrentMissesLoadFromDatabaseOnce() throws Exception
+    {
+        final Account account = accountManager.getAccount(801L);
+
+        account.addBalance(1.0);
+        assertTrue(accountManager.getFlusher().flushAll());
+
+        for (int round = 0; round < 20; round++)
+        {
+            accountManager.deleteFromMemory(801L);
+
+            final long loadsBefore = accountManager.getDatabaseLoads();
+            final List<Account> accounts = runConcurrently(16, () -> accountManager.getAccount(801L, false));
+
+            assertEquals(1, Set.copyOf(accounts).size());
+            assertEquals(1.0, accounts.get(0).getBalance());
+            assertEquals(loadsBefore + 1, accountManager.getDatabaseLoads());
+        }
+
+        accountManager.delete(801L);
+    }
+
+    @Test
+    void concurrentUpdatesAreNotLost() throws Exception
+    {
+        accountManager.delete(802L);
+
+        runConcurrently(16, () ->
+        {
+            for (int i = 0; i < 100; i++)
+            {
+                final Account account = accountManager.getAccount(802L);
+
+                synchronized (account)
+                {
+                    account.addBalance(1.0);
+                }
+            }
+
+            return null;
+        });
+
+        assertEquals(1600.0, accountManager.getAccount(802L).getBalance());
+
+        accountManager.delete(802L);
+    }
+
+    @Test
+    void lookupWithoutCreatingWaitsForCreatingLoad() throws Exception
+    {
+        accountManager.delete(803L);
+
+        final List<Account> accounts = runConcurrently(16, () -> accountManager.getAccount(803L, true));
+        final Account account = accountManager.getAccount(803L, false);
+
+        assertSame(accounts.get(0), account);
+
+        accountManager.delete(803L);
+    }
+
+    @Test
+    void savingWritesChangedRows()
+    {
+        accountManager.delete(820L);
+
+        final Account account = accountManager.getAccount(820L);
+
+        account.addPermission("first");
+        account.addPermission("second");
+        account.addRole(8201L);
+
+        assertTrue(accountManager.saveToDatabase(account));
+        assertEquals(Set.of("first", "second"), account.getSavedPermissions());
+        assertEquals(Set.of(8201L), account.getSavedRoles());
+
+        account.removePermission("first");
+        account.addPermission("third");
+        account.removeRole(8201L);
+
+        assertTrue(accountManager.saveToDatabase(account));
+        assertFalse(accountManager.findAccountsWithPermission("first").contains(820L));
+        assertTrue(accountManager.findAccountsWithPermission("second").contains(820L));
+        assertTrue(accountManager.findAccountsWithPermission("third").contains(820L));
+        assertFalse(accountManager.findAccountsWithRole(8201L).contains(820L));
+
+        accountManager.delete(820L);
+    }
+
+    @Test
+    void deletedAccountRowsAreWrittenAgain()
+    {
+        accountManager.delete(821L);
+
+        final Account account = accountManager.getAccount(821L);
+
+        account.addPermission("kept");
+        assertTrue(accountManager.saveToDatabase(account));
+
+        accountManager.deleteFromDatabase(821L);
+
+        assertNull(account.getSavedPermissions());
+        assertFalse(accountManager.findAccountsWithPermission("kept").contains(821L));
+
+        account.addBalance(1.0);
+
+        assertTrue(accountManager.saveToDatabase(account));
+        assertTrue(accountManager.findAccountsWithPermission("kept").contains(821L));
+
+        accountManager.delete(821L);
+    }
+
+    @Test
+    void getAccountAsyncCompletesCachedAccountImmediately()
+    {
+        final Account account = accountManager.getAccount(830L);
+        final CompletableFuture<Account> future = accountManager.getAccountAsync(830L);
+
+        assertTrue(future.isDone());
+        assertSame(account, future.join());
+
+        accountManager.deleteFromMemory(830L);
+    }
+
+    @Test
+    void getAccountAsyncLoadsFromDatabase()
+    {
+        final Account account = accountManager.getAccount(831L);
+
+        account.addBalance(3.0);
+        assertTrue(accountManager.saveAsync(account).join());
+        accountManager.deleteFromMemory(831L);
+
+        final Account loaded = accountManager.getAccountAsync(831L, false).join();
+
+        assertNotNull(loaded);
+        assertEquals(3.0, loaded.getBalance());
+        assertNull(accountManager.getAccountAsync(832L, false).join());
+
+        accountManager.delete(831L);
+    }
+
+    @Test
+    void getAccountsAsyncLeavesOutMissingAccounts()
+    {
+        accountManager.getAccount(833L);
+
+        final Map<Long, Account> accounts = accountManager.getAccountsAsync(List.of(833L, 834L, 833L), false).join();
+
+        assertEquals(List.of(833L), new ArrayList<>(accounts.keySet()));
+
+        accountManager.deleteFromMemory(833L);
+    }
+
+    @Test
+    void existsAndDeleteAsync()
+    {
+        final Account account = accountManager.getAccount(835L);
+
+        assertTrue(accountManager.saveAsync(List.of(account)).join());
+        accountManager.deleteFromMemory(835L);
+
+        assertEquals(Map.of(835L, true, 836L, false), accountManager.existsAsync(List.of(835L, 836L)).join());
+
+        accountManager.deleteAsync(List.of(835L)).join();
+
+        assertFalse(accountManager.existsAsync(835L).join());
+    }
+
+    @Test
+    void ioThreadsCanBeResized()
+    {
+        accountManager.setIoThreads(8);
+
+        assertEquals(8, accountManager.getIoExecutor().getMaximumPoolSize());
+        assertEquals(8, accountManager.getIoExecutor().getCorePoolSize());
+
+        accountManager.setIoThreads(0);
+
+        assertEquals(1, accountManager.getIoExecutor().getMaximumPoolSize());
+
+        accountManager.setIoThreads(4);
+    }
+
     @AfterAll
     static void afterAll()
     {
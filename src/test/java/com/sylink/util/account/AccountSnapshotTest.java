@@ -0,0 +1,197 @@
+package com.sylink.util.account;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AccountSnapshotTest
+{
+
+    private File databaseFile;
+    private String databaseUrl;
+    private Path snapshotFile;
+    private AccountManager accountManager;
+
+    @BeforeEach
+    void setUp() throws IOException
+    {
+        databaseFile = File.createTempFile("snapshot_test", ".db");
+        databaseUrl = "jdbc:sqlite:" + databaseFile.getPath();
+        snapshotFile = Files.createTempFile("snapshot_test", ".snapshot");
+        accountManager = TestAccountManagers.open(databaseUrl);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException
+    {
+        TestAccountManagers.close(accountManager);
+        assertTrue(databaseFile.delete());
+        Files.deleteIfExists(snapshotFile);
+    }
+
+    /**
+     * Replaces the database with an empty one and opens a new account manager on it.
+     */
+    private void restartWithEmptyDatabase() throws IOException
+    {
+        TestAccountManagers.close(accountManager);
+        assertTrue(databaseFile.delete());
+        assertTrue(databaseFile.createNewFile());
+        accountManager = TestAccountManagers.open(databaseUrl);
+    }
+
+    private void createAccounts(final int accounts)
+    {
+        for (long discordId = 1L; discordId <= accounts; discordId++)
+        {
+            final Account account = accountManager.getAccount(discordId);
+
+            account.setBalanceUnits(discordId * 100L);
+            account.addPermission("perm" + (discordId % 3));
+            account.addRole(discordId * 1_000_000_000_000L);
+            assertTrue(accountManager.saveToDatabase(discordId));
+        }
+    }
+
+    @Test
+    void roundTripKeepsEveryAccount() throws IOException, SQLException
+    {
+        createAccounts(20);
+
+        // Unsaved changes and accounts only in memory are exported too.
+        accountManager.getAccount(5L).addBalanceUnits(1L);
+        accountManager.getAccount(5L).addPermission("unsaved");
+        accountManager.getAccount(-7L).addRole(3L);
+
+        assertEquals(21L, accountManager.getSnapshots().exportTo(snapshotFile));
+
+        restartWithEmptyDatabase();
+
+        assertEquals(21L, accountManager.getSnapshots().importFrom(snapshotFile));
+
+        for (long discordId = 1L; discordId <= 20L; discordId++)
+        {
+            final Account account = accountManager.getAccount(discordId, false);
+
+            assertNotNull(account);
+            assertEquals(Set.of(discordId * 1_000_000_000_000L), account.getRoles());
+        }
+
+        assertEquals(501L, accountManager.getAccount(5L).getBalanceUnits());
+        assertEquals(Set.of("perm2", "unsaved"), accountManager.getAccount(5L).getPermissions());
+        assertEquals(Set.of(3L), accountManager.getAccount(-7L).getRoles());
+        assertTrue(accountManager.existsInDatabase(-7L));
+    }
+
+    @Test
+    void smallBlocksRoundTrip() throws IOException, SQLException
+    {
+        createAccounts(50);
+        accountManager.getSnapshots().setBlockSize(3);
+
+        assertEquals(50L, accountManager.getSnapshots().exportTo(snapshotFile));
+
+        restartWithEmptyDatabase();
+        accountManager.getSnapshots().setBlockSize(3);
+
+        assertEquals(50L, accountManager.getSnapshots().importFrom(snapshotFile));
+        assertEquals(5_000L, accountManager.getAccount(50L).getBalanceUnits());
+        assertEquals(Set.of("perm1"), accountManager.getAccount(49L).getPermissions());
+    }
+
+    @Test
+    void emptyDatabaseExportsEmptySnapshot() throws IOException, SQLException
+    {
+        assertEquals(0L, accountManager.getSnapshots().exportTo(snapshotFile));
+        assertEquals(0L, accountManager.getSnapshots().importFrom(snapshotFile));
+    }
+
+    @Test
+    void corruptBlockIsRejected() throws IOException, SQLException
+    {
+        createAccounts(10);
+        accountManager.getSnapshots().exportTo(snapshotFile);
+
+        final byte[] bytes = Files.readAllBytes(snapshotFile);
+
+        // A byte inside the first block, after the file and block headers.
+        bytes[24] ^= 0x55;
+        Files.write(snapshotFile, bytes);
+
+        assertThrows(IOException.class, () -> accountManager.getSnapshots().importFrom(snapshotFile));
+    }
+
+    @Test
+    void truncatedSnapshotIsRejected() throws IOException, SQLException
+    {
+        createAccounts(10);
+        accountManager.getSnapshots().exportTo(snapshotFile);
+
+        final byte[] bytes = Files.readAllBytes(snapshotFile);
+
+        Files.write(snapshotFile, Arrays.copyOf(bytes, bytes.length - 5));
+
+        restartWithEmptyDatabase();
+
+        assertThrows(IOException.class, () -> accountManager.getSnapshots().importFrom(snapshotFile));
+        assertFalse(accountManager.existsInDatabase(1L));
+    }
+
+    @Test
+    void importReplacesAccountsInMemory() throws IOException, SQLException
+    {
+        createAccounts(3);
+        accountManager.getSnapshots().exportTo(snapshotFile);
+
+        final Account account = accountManager.getAccount(2L);
+
+        account.setBalanceUnits(1L);
+        account.addPermission("later");
+        assertTrue(accountManager.saveToDatabase(2L));
+
+        accountManager.getSnapshots().importFrom(snapshotFile);
+
+        assertEquals(200L, account.getBalanceUnits());
+        assertEquals(Set.of("perm2"), account.getPermissions());
+
+        // The imported rows replaced the saved ones.
+        TestAccountManagers.close(accountManager);
+        accountManager = TestAccountManagers.open(databaseUrl);
+
+        assertEquals(Set.of("perm2"), accountManager.getAccount(2L).getPermissions());
+    }
+
+    @Test
+    void legacyColumnDataIsExported() throws IOException, SQLException
+    {
+        accountManager.getDatabaseExecutor().submit(DatabaseExecutor.RequestType.QUERY, () ->
+        {
+            try (final Statement statement = accountManager.getConnection().createStatement())
+            {
+                return statement.executeUpdate(
+                        "INSERT INTO accounts (id, permissions, roles, balance_units) VALUES (8, 'old', '4,5', 25)");
+            }
+        }).join();
+
+        assertEquals(1L, accountManager.getSnapshots().exportTo(snapshotFile));
+
+        restartWithEmptyDatabase();
+        accountManager.getSnapshots().importFrom(snapshotFile);
+
+        assertEquals(25L, accountManager.getAccount(8L).getBalanceUnits());
+        assertEquals(Set.of("old"), accountManager.getAccount(8L).getPermissions());
+        assertEquals(Set.of(4L, 5L), accountManager.getAccount(8L).getRoles());
+    }
+
+}
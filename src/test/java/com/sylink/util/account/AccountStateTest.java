@@ -0,0 +1,247 @@
+package com.sylink.util.account;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AccountStateTest
+{
+
+    /**
+     * Runs each actor on its own thread for the given amount of rounds, lining the actors up before every round so
+     * they race on the same round, in the way of a jcstress test.
+     */
+    private static void runActors(final int rounds, final IntConsumer... actors) throws InterruptedException
+    {
+        final CyclicBarrier barrier = new CyclicBarrier(actors.length);
+        final List<Thread> threads = new ArrayList<>();
+        final List<Throwable> failures = new ArrayList<>();
+
+        for (final IntConsumer actor : actors)
+        {
+            final Thread thread = new Thread(() ->
+            {
+                try
+                {
+                    for (int round = 0; round < rounds; round++)
+                    {
+                        barrier.await();
+                        actor.accept(round);
+                    }
+                }
+                catch (final InterruptedException | BrokenBarrierException | RuntimeException exception)
+                {
+                    synchronized (failures)
+                    {
+                        failures.add(exception);
+                    }
+
+                    barrier.reset();
+                }
+            });
+
+            threads.add(thread);
+            thread.start();
+        }
+
+        for (final Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        assertEquals(List.of(), failures);
+    }
+
+    @Test
+    void unchangedStatesAreReused()
+    {
+        final AccountState state = AccountState.EMPTY.withPermission("admin").withRole(10L).withBalanceUnits(5L);
+
+        assertSame(state, state.withPermission("ADMIN"));
+        assertSame(state, state.withoutPermission("mod"));
+        assertSame(state, state.withRole(10L));
+        assertSame(state, state.withoutRole(11L));
+        assertSame(state, state.withBalanceUnits(5L));
+        assertSame(state, state.withPermissions(Set.of("Admin")));
+        assertSame(state, state.withRoles(Set.of(10L)));
+    }
+
+    @Test
+    void changesDoNotAffectOlderStates()
+    {
+        final AccountState oldState = AccountState.EMPTY.withPermission("admin").withRole(10L);
+        final AccountState newState = oldState.withoutPermission("admin").withRole(11L).withBalanceUnits(-5L);
+
+        assertEquals(Set.of("admin"), oldState.getPermissions());
+        assertEquals(Set.of(10L), oldState.getRoles());
+        assertEquals(Set.of(), newState.getPermissions());
+        assertEquals(Set.of(10L, 11L), newState.getRoles());
+        assertEquals(0L, newState.getBalanceUnits());
+    }
+
+    @Test
+    void stateSetsAreUnmodifiable()
+    {
+        final AccountState state = AccountState.EMPTY.withPermission("admin").withRole(10L);
+        final Account account = new Account(0L);
+
+        assertThrows(UnsupportedOperationException.class, () -> state.getPermissions().add("mod"));
+        assertThrows(UnsupportedOperationException.class, () -> state.getRoles().clear());
+        assertThrows(UnsupportedOperationException.class, () -> account.getPermissions().add("mod"));
+    }
+
+    @Test
+    void blankPermissionsAreIgnored()
+    {
+        assertSame(AccountState.EMPTY, AccountState.EMPTY.withPermission(" "));
+        assertEquals(Set.of("admin"), AccountState.EMPTY.withPermissions(Set.of("", "ADMIN")).getPermissions());
+    }
+
+    @Test
+    void updateOnlyFlagsRealChanges()
+    {
+        final Account account = new Account(0L);
+
+        account.update((state) -> state);
+        assertFalse(account.needsToSync());
+
+        final AccountState state = account.update((oldState) -> oldState.withRole(1L).withBalanceUnits(5L));
+
+        assertSame(state, account.getState());
+        assertEquals(Set.of(1L), account.getRoles());
+        assertEquals(5L, account.getBalanceUnits());
+        assertTrue(account.needsToSync());
+    }
+
+    @Test
+    void racingChangesAreNeverLost() throws InterruptedException
+    {
+        final int rounds = 5_000;
+        final Account[] accounts = new Account[rounds];
+
+        for (int i = 0; i < rounds; i++)
+        {
+            accounts[i] = new Account(i);
+        }
+
+        runActors(rounds,
+                (round) ->
+                {
+                    accounts[round].addPermission("admin");
+                    accounts[round].addBalanceUnits(1L);
+                },
+                (round) ->
+                {
+                    accounts[round].addRole(10L);
+                    accounts[round].addBalanceUnits(2L);
+                },
+                (round) -> accounts[round].addPermission("mod"));
+
+        for (final Account account : accounts)
+        {
+            assertEquals(Set.of("admin", "mod"), account.getPermissions());
+            assertEquals(Set.of(10L), account.getRoles());
+            assertEquals(3L, account.getBalanceUnits());
+        }
+    }
+
+    @Test
+    void readersNeverSeeHalfAppliedUpdates() throws InterruptedException
+    {
+        final int rounds = 2_000;
+        final Account account = new Account(0L);
+        final AtomicInteger tornReads = new AtomicInteger();
+
+        // Every update adds a permission, a role and a unit of balance together, so each snapshot has as many of each.
+        final IntConsumer writer = (round) -> account.update((state) -> state
+                .withPermission("perm" + round + "-" + Thread.currentThread().getId())
+                .withRole(round * 1_000L + Thread.currentThread().getId())
+                .withBalanceUnits(state.getBalanceUnits() + 1L));
+        final IntConsumer reader = (round) ->
+        {
+            for (int i = 0; i < 10; i++)
+            {
+                final AccountState state = account.getState();
+
+                if (state.getPermissions().size() != state.getBalanceUnits()
+                        || state.getRoles().size() != state.getBalanceUnits())
+                {
+                    tornReads.incrementAndGet();
+                }
+            }
+        };
+
+        runActors(rounds, writer, writer, reader);
+
+        assertEquals(0, tornReads.get());
+        assertEquals(2L * rounds, account.getBalanceUnits());
+        assertEquals(2 * rounds, account.getPermissions().size());
+        assertEquals(2 * rounds, account.getRoles().size());
+    }
+
+    @Test
+    void savesDuringChangesKeepTheLatestState() throws IOException, InterruptedException
+    {
+        final File databaseFile = File.createTempFile("account_state_test", ".db");
+        final String databaseUrl = "jdbc:sqlite:" + databaseFile.getPath();
+        final AccountManager accountManager = new AccountManager();
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final int changes = 500;
+
+        accountManager.getReadPool().setSize(0);
+        assertTrue(accountManager.openDatabaseConnection(databaseUrl));
+
+        final Account account = accountManager.getAccount(1L);
+        final Thread saver = new Thread(() ->
+        {
+            while (writing.get())
+            {
+                accountManager.saveToDatabase(account);
+            }
+        });
+
+        saver.start();
+
+        for (int i = 0; i < changes; i++)
+        {
+            final int change = i;
+
+            account.update((state) -> state.withPermission("perm" + change).withRole(change)
+                    .withBalanceUnits(state.getBalanceUnits() + 1L));
+        }
+
+        writing.set(false);
+        saver.join();
+        accountManager.saveToDatabase(account);
+        accountManager.closeDatabaseConnection();
+        accountManager.getDatabaseExecutor().shutdown();
+
+        final AccountManager reopenedManager = new AccountManager();
+
+        reopenedManager.getReadPool().setSize(0);
+        assertTrue(reopenedManager.openDatabaseConnection(databaseUrl));
+
+        final Account reloaded = reopenedManager.getAccount(1L, false);
+
+        assertNotNull(reloaded);
+        assertEquals(account.getPermissions(), reloaded.getPermissions());
+        assertEquals(account.getRoles(), reloaded.getRoles());
+        assertEquals((long) changes, reloaded.getBalanceUnits());
+
+        reopenedManager.closeDatabaseConnection();
+        reopenedManager.getDatabaseExecutor().shutdown();
+        assertTrue(databaseFile.delete());
+    }
+
+}
@@ -0,0 +1,191 @@
+package com.sylink.util.account;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * JMH benchmark comparing the account stores on the operations the bot runs: cache misses, warm up batches, flusher
+ * batches, existence checks and reads while the flusher writes.
+ * Run with the main method from the test classpath, or pass "-p backend=mapped" to JMH to benchmark one store.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccountStoreBenchmark
+{
+
+    // The amount of accounts stored before benchmarking.
+    private static final int ACCOUNTS = 10_000;
+    // The amount of accounts written per flush, the default flusher batch size.
+    private static final int BATCH_SIZE = 250;
+    // The amount of accounts read per warm up batch.
+    private static final int LOAD_BATCH_SIZE = 100;
+
+    @Param({"sqlite", "memory", "mapped"})
+    public String backend;
+
+    private File databaseFile;
+    private Path storeDirectory;
+    private AccountManager accountManager;
+    private AccountStore store;
+    private List<Account> batch;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException
+    {
+        databaseFile = File.createTempFile("account_store_benchmark", ".db");
+        storeDirectory = Files.createTempDirectory("account_store_benchmark");
+        accountManager = new AccountManager();
+        accountManager.setStorageProfile(StorageProfile.BALANCED);
+        accountManager.setStoreBackend(backend);
+        accountManager.setMappedStoreDirectory(storeDirectory);
+
+        if (!accountManager.openDatabaseConnection("jdbc:sqlite:" + databaseFile.getPath())
+                || !accountManager.openAccountStore())
+        {
+            throw new IllegalStateException("Unable to open the " + backend + " account store");
+        }
+
+        store = accountManager.getStore();
+
+        final List<Account> accounts = new ArrayList<>(ACCOUNTS);
+        final List<AccountState> states = new ArrayList<>(ACCOUNTS);
+
+        for (long discordId = 0L; discordId < ACCOUNTS; discordId++)
+        {
+            accounts.add(new Account(discordId));
+            states.add(AccountState.EMPTY.withPermissions(Set.of("benchmark", "tier" + (discordId % 5)))
+                    .withRoles(Set.of(discordId % 10L)).withBalanceUnits(discordId * 100L));
+        }
+
+        store.upsertAll(accounts, () -> states);
+        batch = accounts.subList(0, BATCH_SIZE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException
+    {
+        accountManager.closeAccountStore();
+        accountManager.closeDatabaseConnection();
+        accountManager.getDatabaseExecutor().shutdown();
+
+        for (final String suffix : new String[]{"", "-wal", "-shm"})
+        {
+            new File(databaseFile.getPath() + suffix).delete();
+        }
+
+        try (final Stream<Path> files = Files.walk(storeDirectory))
+        {
+            for (final Path file : files.sorted(Comparator.reverseOrder()).toList())
+            {
+                Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Loads a random stored account, as a cache miss does.
+     */
+    @Benchmark
+    public Account load() throws IOException
+    {
+        final Account account = new Account(ThreadLocalRandom.current().nextLong(ACCOUNTS));
+
+        store.load(account);
+
+        return account;
+    }
+
+    /**
+     * Loads a batch of random accounts, some of them missing, as the warm up does.
+     */
+    @Benchmark
+    @OperationsPerInvocation(LOAD_BATCH_SIZE)
+    public List<Account> loadAll() throws IOException
+    {
+        final List<Long> discordIds = new ArrayList<>(LOAD_BATCH_SIZE);
+
+        for (int i = 0; i < LOAD_BATCH_SIZE; i++)
+        {
+            discordIds.add(ThreadLocalRandom.current().nextLong(ACCOUNTS + ACCOUNTS / 10));
+        }
+
+        return store.loadAll(discordIds);
+    }
+
+    /**
+     * Checks whether a random account is stored, a tenth of them missing.
+     */
+    @Benchmark
+    public boolean exists() throws IOException
+    {
+        return store.exists(ThreadLocalRandom.current().nextLong(ACCOUNTS + ACCOUNTS / 10));
+    }
+
+    /**
+     * Changes the balance of a batch of accounts and one permission of each, and writes them as the flusher does.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public List<AccountState> upsertAll() throws IOException
+    {
+        final List<AccountState> states = new ArrayList<>(BATCH_SIZE);
+        final long change = ThreadLocalRandom.current().nextLong(1_000L);
+
+        for (final Account account : batch)
+        {
+            states.add(AccountState.EMPTY.withPermissions(Set.of("benchmark", "tier" + (change % 5)))
+                    .withRoles(Set.of(account.getDiscordId() % 10L)).withBalanceUnits(change));
+        }
+
+        store.upsertAll(batch, () -> states);
+
+        return states;
+    }
+
+    /**
+     * Loads random accounts while upsertMixed writes batches.
+     */
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public Account loadMixed() throws IOException
+    {
+        return load();
+    }
+
+    /**
+     * Writes batches while loadMixed reads.
+     */
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    @OperationsPerInvocation(BATCH_SIZE)
+    public List<AccountState> upsertMixed() throws IOException
+    {
+        return upsertAll();
+    }
+
+    public static void main(final String[] args) throws RunnerException
+    {
+        new Runner(new OptionsBuilder().include(AccountStoreBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
@@ -0,0 +1,206 @@
+package com.sylink.util.account;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests every account store has to pass, run against each store by its subclasses.
+ */
+abstract class AccountStoreConformanceTest
+{
+
+    private AccountStore accountStore;
+
+    /**
+     * @return A new empty store, opened for writes.
+     */
+    abstract AccountStore openStore() throws IOException;
+
+    /**
+     * Closes the store and removes everything it wrote.
+     */
+    abstract void closeStore() throws IOException;
+
+    @BeforeEach
+    void setUpStore() throws IOException
+    {
+        accountStore = openStore();
+    }
+
+    @AfterEach
+    void tearDownStore() throws IOException
+    {
+        closeStore();
+    }
+
+    static AccountState state(final long balanceUnits, final Set<String> permissions, final Set<Long> roles)
+    {
+        return AccountState.EMPTY.withPermissions(permissions).withRoles(roles).withBalanceUnits(balanceUnits);
+    }
+
+    private Account load(final long discordId) throws IOException
+    {
+        final Account account = new Account(discordId);
+
+        return accountStore.load(account) ? account : null;
+    }
+
+    @Test
+    void upsertedAccountsAreLoaded() throws IOException
+    {
+        accountStore.upsert(new Account(1L), state(250L, Set.of("admin", "mod"), Set.of(10L, Long.MAX_VALUE)));
+        accountStore.upsert(new Account(-2L), AccountState.EMPTY);
+
+        final Account account = load(1L);
+
+        assertNotNull(account);
+        assertTrue(account.isPersisted());
+        assertEquals(250L, account.getBalanceUnits());
+        assertEquals(Set.of("admin", "mod"), account.getPermissions());
+        assertEquals(Set.of(10L, Long.MAX_VALUE), account.getRoles());
+        assertEquals(Set.of(), load(-2L).getPermissions());
+        assertNull(load(3L));
+        assertEquals(2L, accountStore.size());
+    }
+
+    @Test
+    void upsertReplacesTheStoredState() throws IOException
+    {
+        final Account account = new Account(1L);
+
+        // Written through the same account, so stores that write only the changes get to.
+        accountStore.upsert(account, state(1L, Set.of("a", "b"), Set.of(1L, 2L)));
+        accountStore.upsert(account, state(2L, Set.of("b", "c"), Set.of(2L)));
+
+        assertEquals(2L, load(1L).getBalanceUnits());
+        assertEquals(Set.of("b", "c"), load(1L).getPermissions());
+        assertEquals(Set.of(2L), load(1L).getRoles());
+
+        // An account that never loaded or saved the stored state replaces all of it.
+        accountStore.upsert(new Account(1L), state(3L, Set.of("d"), Set.of()));
+
+        assertEquals(Set.of("d"), load(1L).getPermissions());
+        assertEquals(Set.of(), load(1L).getRoles());
+        assertEquals(1L, accountStore.size());
+    }
+
+    @Test
+    void upsertAllSuppliesTheStatesOnce() throws IOException
+    {
+        final List<Account> accounts = new ArrayList<>();
+        final List<AccountState> states = new ArrayList<>();
+        final AtomicInteger supplied = new AtomicInteger();
+
+        for (long discordId = 1L; discordId <= 100L; discordId++)
+        {
+            accounts.add(new Account(discordId));
+            states.add(state(discordId, Set.of("perm" + (discordId % 3)), Set.of(discordId)));
+        }
+
+        accountStore.upsertAll(accounts, () ->
+        {
+            supplied.incrementAndGet();
+            return states;
+        });
+
+        assertEquals(1, supplied.get());
+        assertEquals(100L, accountStore.size());
+        assertEquals(Set.of("perm2"), load(50L).getPermissions());
+        assertEquals(Set.of(77L), load(77L).getRoles());
+    }
+
+    @Test
+    void loadAllLeavesOutMissingAccounts() throws IOException
+    {
+        for (long discordId = 1L; discordId <= 10L; discordId += 2L)
+        {
+            accountStore.upsert(new Account(discordId), state(discordId * 10L, Set.of(), Set.of()));
+        }
+
+        final Map<Long, Long> balances = new HashMap<>();
+
+        for (final Account account : accountStore.loadAll(List.of(1L, 2L, 3L, 4L, 9L, 11L)))
+        {
+            assertTrue(account.isPersisted());
+            balances.put(account.getDiscordId(), account.getBalanceUnits());
+        }
+
+        assertEquals(Map.of(1L, 10L, 3L, 30L, 9L, 90L), balances);
+        assertTrue(accountStore.loadAll(List.of()).isEmpty());
+    }
+
+    @Test
+    void deletedAccountsAreGone() throws IOException
+    {
+        accountStore.upsert(new Account(1L), state(1L, Set.of("a"), Set.of(1L)));
+        accountStore.upsert(new Account(2L), state(2L, Set.of(), Set.of()));
+
+        assertTrue(accountStore.exists(1L));
+        assertTrue(accountStore.delete(1L));
+        assertFalse(accountStore.delete(1L));
+        assertFalse(accountStore.exists(1L));
+        assertNull(load(1L));
+        assertTrue(accountStore.exists(2L));
+        assertEquals(1L, accountStore.size());
+
+        // A deleted account written again starts from nothing.
+        accountStore.upsert(new Account(1L), state(5L, Set.of(), Set.of()));
+
+        assertEquals(Set.of(), load(1L).getPermissions());
+        assertEquals(5L, load(1L).getBalanceUnits());
+    }
+
+    @Test
+    void scanVisitsEveryAccount() throws IOException
+    {
+        for (long discordId = 1L; discordId <= 3_000L; discordId++)
+        {
+            accountStore.upsert(new Account(discordId), state(discordId, Set.of(), Set.of(discordId)));
+        }
+
+        final Map<Long, AccountState> visited = new HashMap<>();
+        final AtomicInteger started = new AtomicInteger();
+        final long count = accountStore.scan(started::incrementAndGet, (discordId, state) ->
+        {
+            assertEquals(1, started.get());
+            visited.put(discordId, state);
+        });
+
+        assertEquals(3_000L, count);
+        assertEquals(3_000, visited.size());
+        assertEquals(1_234L, visited.get(1_234L).getBalanceUnits());
+        assertEquals(Set.of(42L), visited.get(42L).getRoles());
+    }
+
+    @Test
+    void emptyStoreScansNothing() throws IOException
+    {
+        final AtomicInteger started = new AtomicInteger();
+        final AtomicInteger visited = new AtomicInteger();
+
+        assertEquals(0L, accountStore.scan(started::incrementAndGet, (discordId, state) -> visited.incrementAndGet()));
+        assertEquals(1, started.get());
+        assertEquals(0, visited.get());
+        assertEquals(0L, accountStore.size());
+        assertFalse(accountStore.exists(1L));
+    }
+
+    @Test
+    void storeIsOpenWithAName()
+    {
+        assertTrue(accountStore.isOpen());
+        assertFalse(accountStore.getName().isBlank());
+    }
+
+}
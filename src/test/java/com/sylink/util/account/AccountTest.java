@@ -105,6 +105,17 @@ class AccountTest
         assertTrue(account.isDead());
     }
 
+    @Test
+    void inactivityDependsOnGivenTime()
+    {
+        account.setLastActivityTime(0L);
+
+        assertFalse(account.isInactive(account.getInactiveDeadline() - 1));
+        assertTrue(account.isInactive(account.getInactiveDeadline()));
+        assertFalse(account.isDead(account.getDeadDeadline() - 1));
+        assertTrue(account.isDead(account.getDeadDeadline()));
+    }
+
     @Test
     void accountDoesntNeedsToSyncIfNotUpdated()
     {
@@ -153,7 +164,7 @@ class AccountTest
         account.addPermission("ADMIN");
 
         assertTrue(account.hasPermission("admin"));
-        assertEquals("'admin'", account.getPermissionData());
+        assertEquals("admin", account.getPermissionData());
     }
 
     @Test
@@ -357,7 +368,7 @@ class AccountTest
     @Test
     void gettingEmptyPermissionData()
     {
-        assertEquals("''", account.getPermissionData());
+        assertEquals("", account.getPermissionData());
     }
 
     @Test
@@ -366,7 +377,7 @@ class AccountTest
         account.addPermission("admin");
 
         assertTrue(account.hasPermission("admin"));
-        assertEquals("'admin'", account.getPermissionData());
+        assertEquals("admin", account.getPermissionData());
     }
 
     @Test
@@ -380,7 +391,7 @@ class AccountTest
 
         final String permissionData = account.getPermissionData();
 
-        assertTrue(permissionData.equals("'admin,all'") || permissionData.equals("'all,admin'"));
+        assertTrue(permissionData.equals("admin,all") || permissionData.equals("all,admin"));
     }
 
     @Test
@@ -556,7 +567,7 @@ class AccountTest
     @Test
     void gettingEmptyRoleData()
     {
-        assertEquals("''", account.getRoleData());
+        assertEquals("", account.getRoleData());
     }
 
     @Test
@@ -565,7 +576,7 @@ class AccountTest
         account.addRole(1L);
 
         assertTrue(account.hasRole(1L));
-        assertEquals("'1'", account.getRoleData());
+        assertEquals("1", account.getRoleData());
     }
 
     @Test
@@ -579,7 +590,7 @@ class AccountTest
 
         final String roleData = account.getRoleData();
 
-        assertTrue(roleData.equals("'1,2'") || roleData.equals("'2,1'"));
+        assertTrue(roleData.equals("1,2") || roleData.equals("2,1"));
     }
 
     @Test
@@ -749,6 +760,78 @@ class AccountTest
         assertFalse(account.needsToSync());
     }
 
+    @Test
+    void balanceDoesNotDrift()
+    {
+        for (int i = 0; i < 1000; i++)
+        {
+            account.addBalance(0.1);
+        }
+
+        assertEquals(10_000L, account.getBalanceUnits());
+        assertEquals(100.0, account.getBalance());
+    }
+
+    @Test
+    void addingBalanceUnitsReturnsNewBalance()
+    {
+        assertEquals(250L, account.addBalanceUnits(250L));
+        assertEquals(50L, account.removeBalanceUnits(200L));
+        assertEquals(0L, account.removeBalanceUnits(100L));
+        assertEquals(0L, account.addBalanceUnits(-5L));
+    }
+
+    @Test
+    void balanceOverflowLeavesBalanceUnchanged()
+    {
+        account.setBalanceUnits(Long.MAX_VALUE - 1L);
+
+        assertThrows(ArithmeticException.class, () -> account.addBalanceUnits(2L));
+        assertEquals(Long.MAX_VALUE - 1L, account.getBalanceUnits());
+    }
+
+    @Test
+    void tryRemovingBalanceOnlyRemovesWhatIsThere()
+    {
+        account.setBalanceUnits(100L);
+        account.setNeedsToSync(false);
+
+        assertFalse(account.tryRemoveBalanceUnits(101L));
+        assertEquals(100L, account.getBalanceUnits());
+        assertFalse(account.needsToSync());
+
+        assertTrue(account.tryRemoveBalanceUnits(100L));
+        assertEquals(0L, account.getBalanceUnits());
+        assertTrue(account.needsToSync());
+        assertThrows(IllegalArgumentException.class, () -> account.tryRemoveBalanceUnits(-1L));
+    }
+
+    @Test
+    void concurrentBalanceChangesAreNotLost() throws InterruptedException
+    {
+        final Thread[] threads = new Thread[8];
+
+        for (int i = 0; i < threads.length; i++)
+        {
+            threads[i] = new Thread(() ->
+            {
+                for (int j = 0; j < 10_000; j++)
+                {
+                    account.addBalanceUnits(3L);
+                    account.removeBalanceUnits(1L);
+                }
+            });
+            threads[i].start();
+        }
+
+        for (final Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        assertEquals(8L * 10_000L * 2L, account.getBalanceUnits());
+    }
+
     @Test
     void toStringWithNullUser()
     {
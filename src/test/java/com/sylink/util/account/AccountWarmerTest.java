@@ -0,0 +1,142 @@
+package com.sylink.util.account;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AccountWarmerTest
+{
+
+    private File databaseFile;
+    private String databaseUrl;
+    private AccountManager accountManager;
+
+    @BeforeEach
+    void setUp() throws IOException
+    {
+        databaseFile = File.createTempFile("warm_up_test", ".db");
+        databaseUrl = "jdbc:sqlite:" + databaseFile.getPath();
+        accountManager = TestAccountManagers.open(databaseUrl);
+
+        for (long discordId = 1L; discordId <= 5L; discordId++)
+        {
+            final Account account = accountManager.getAccount(discordId);
+
+            account.addBalance(discordId);
+            account.addPermission("perm" + discordId);
+            account.addRole(100L + discordId);
+            assertTrue(accountManager.saveToDatabase(account));
+
+            // Account n is accessed n more times, so account 5 is the hottest.
+            for (long i = 0; i < discordId; i++)
+            {
+                accountManager.getAccount(discordId, false);
+            }
+        }
+    }
+
+    @AfterEach
+    void tearDown()
+    {
+        TestAccountManagers.close(accountManager);
+        assertTrue(databaseFile.delete());
+    }
+
+    /**
+     * Saves the hot accounts and starts a new account manager on the same database, as a restart would.
+     */
+    private void restart()
+    {
+        assertTrue(accountManager.getWarmer().saveHotAccounts());
+        TestAccountManagers.close(accountManager);
+        accountManager = TestAccountManagers.open(databaseUrl);
+    }
+
+    @Test
+    void preloadsHotAccountsInBatches()
+    {
+        restart();
+        accountManager.getWarmer().setBatchSize(2);
+
+        assertEquals(5, accountManager.getWarmer().warmUp());
+        assertEquals(5, accountManager.getWarmer().getHotAccounts());
+        assertEquals(10, accountManager.getWarmer().getQueries());
+        assertEquals(5, accountManager.getAccountCache().size());
+
+        final Account account = accountManager.getAccount(3L, false);
+
+        assertEquals(3.0, account.getBalance());
+        assertEquals(Set.of("perm3"), account.getPermissions());
+        assertEquals(Set.of(103L), account.getRoles());
+        assertEquals(Set.of("perm3"), account.getSavedPermissions());
+        assertTrue(account.isPersisted());
+        assertFalse(account.needsToSync());
+        assertEquals(0L, accountManager.getDatabaseLoads());
+    }
+
+    @Test
+    void preloadsMostAccessedAccountsFirst()
+    {
+        accountManager.getWarmer().setMaximumAccounts(2);
+        restart();
+
+        assertEquals(2, accountManager.getWarmer().warmUp());
+        assertTrue(accountManager.existsInMemory(5L));
+        assertTrue(accountManager.existsInMemory(4L));
+        assertFalse(accountManager.existsInMemory(3L));
+    }
+
+    @Test
+    void accountsNeverAccessedAreNotSaved()
+    {
+        restart();
+        assertEquals(5, accountManager.getWarmer().warmUp());
+
+        accountManager.getAccount(2L, false);
+        restart();
+
+        assertEquals(1, accountManager.getWarmer().warmUp());
+        assertTrue(accountManager.existsInMemory(2L));
+    }
+
+    @Test
+    void accountsAlreadyInMemoryAreKept()
+    {
+        restart();
+
+        final Account account = accountManager.getAccount(4L, false);
+
+        account.addBalance(10.0);
+
+        assertEquals(4, accountManager.getWarmer().warmUp());
+        assertSame(account, accountManager.getAccount(4L, false));
+        assertEquals(14.0, account.getBalance());
+    }
+
+    @Test
+    void warmUpIsLimitedToCacheSize()
+    {
+        restart();
+        accountManager.getAccountCache().resize(3);
+
+        assertEquals(3, accountManager.getWarmer().warmUp());
+        assertEquals(3, accountManager.getAccountCache().size());
+    }
+
+    @Test
+    void disabledWarmUpLoadsNothing()
+    {
+        restart();
+        accountManager.getWarmer().setMaximumAccounts(0);
+
+        assertEquals(0, accountManager.getWarmer().warmUp());
+        assertEquals(0, accountManager.getAccountCache().size());
+    }
+
+}
@@ -0,0 +1,224 @@
+package com.sylink.util.account;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BalanceLeaderboardTest
+{
+
+    private BalanceLeaderboard leaderboard;
+
+    @BeforeEach
+    void setUp()
+    {
+        leaderboard = new BalanceLeaderboard();
+    }
+
+    private static List<Long> discordIds(final List<BalanceLeaderboard.Entry> entries)
+    {
+        final List<Long> discordIds = new ArrayList<>();
+
+        for (final BalanceLeaderboard.Entry entry : entries)
+        {
+            discordIds.add(entry.getDiscordId());
+        }
+
+        return discordIds;
+    }
+
+    @Test
+    void accountsAreRankedByBalanceThenDiscordId()
+    {
+        leaderboard.put(1L, 100L);
+        leaderboard.put(2L, 300L);
+        leaderboard.put(3L, 100L);
+        leaderboard.put(4L, 0L);
+
+        assertEquals(List.of(2L, 1L, 3L, 4L), discordIds(leaderboard.getTop(10)));
+        assertEquals(1L, leaderboard.getRank(2L));
+        assertEquals(3L, leaderboard.getRank(3L));
+        assertEquals(4L, leaderboard.getRank(4L));
+        assertEquals(0L, leaderboard.getRank(5L));
+        assertNull(leaderboard.getEntry(5L));
+        assertEquals(300L, leaderboard.getEntry(2L).getBalanceUnits());
+    }
+
+    @Test
+    void changedBalancesMoveTheAccount()
+    {
+        leaderboard.put(1L, 100L);
+        leaderboard.put(2L, 200L);
+        leaderboard.put(1L, 300L);
+
+        assertEquals(List.of(1L, 2L), discordIds(leaderboard.getTop(2)));
+        assertEquals(2, leaderboard.size());
+
+        assertTrue(leaderboard.remove(1L));
+        assertFalse(leaderboard.remove(1L));
+        assertEquals(1L, leaderboard.getRank(2L));
+        assertEquals(1, leaderboard.size());
+    }
+
+    @Test
+    void putIfAbsentKeepsNewerBalances()
+    {
+        leaderboard.put(1L, 500L);
+
+        assertFalse(leaderboard.putIfAbsent(1L, 10L));
+        assertTrue(leaderboard.putIfAbsent(2L, 10L));
+        assertEquals(500L, leaderboard.getEntry(1L).getBalanceUnits());
+    }
+
+    @Test
+    void pagesStartAtTheGivenRank()
+    {
+        for (long discordId = 1L; discordId <= 25L; discordId++)
+        {
+            leaderboard.put(discordId, discordId);
+        }
+
+        final List<BalanceLeaderboard.Entry> page = leaderboard.getPage(21L, 10);
+
+        assertEquals(List.of(5L, 4L, 3L, 2L, 1L), discordIds(page));
+        assertEquals(21L, page.get(0).getRank());
+        assertTrue(leaderboard.getPage(26L, 10).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> leaderboard.getPage(0L, 10));
+    }
+
+    @Test
+    void randomChangesMatchASortedList()
+    {
+        final Random random = new Random(42L);
+        final Map<Long, Long> balances = new HashMap<>();
+
+        for (int i = 0; i < 20_000; i++)
+        {
+            final long discordId = random.nextInt(2_000);
+
+            if (random.nextInt(10) == 0)
+            {
+                assertEquals(balances.remove(discordId) != null, leaderboard.remove(discordId));
+            }
+            else
+            {
+                final long balanceUnits = random.nextInt(500);
+
+                balances.put(discordId, balanceUnits);
+                leaderboard.put(discordId, balanceUnits);
+            }
+        }
+
+        final List<Long> sorted = new ArrayList<>(balances.keySet());
+
+        sorted.sort(Comparator.comparing((Long discordId) -> balances.get(discordId)).reversed()
+                .thenComparing(Comparator.naturalOrder()));
+
+        assertEquals(sorted.size(), leaderboard.size());
+        assertEquals(sorted, discordIds(leaderboard.getTop(sorted.size())));
+
+        for (int rank = 1; rank <= sorted.size(); rank += 37)
+        {
+            assertEquals(rank, leaderboard.getRank(sorted.get(rank - 1)));
+        }
+    }
+
+    @Test
+    void balanceChangesOfManagedAccountsAreIndexed()
+    {
+        final AccountManager accountManager = new AccountManager();
+        final Account account = new Account(7L);
+        final Account other = new Account(8L);
+
+        account.setAccountManager(accountManager);
+        other.setAccountManager(accountManager);
+        account.setBalanceUnits(500L);
+        other.addBalanceUnits(800L);
+        account.addPermission("unranked");
+
+        assertEquals(2L, accountManager.getLeaderboard().getRank(7L));
+
+        account.addBalanceUnits(400L);
+        other.removeBalanceUnits(700L);
+
+        assertEquals(1L, accountManager.getLeaderboard().getRank(7L));
+        assertEquals(100L, accountManager.getLeaderboard().getEntry(8L).getBalanceUnits());
+
+        account.restoreState(AccountState.EMPTY);
+
+        assertEquals(2L, accountManager.getLeaderboard().getRank(7L));
+    }
+
+    @Test
+    void concurrentBalanceChangesIndexTheLatestBalance() throws InterruptedException
+    {
+        final AccountManager accountManager = new AccountManager();
+        final List<Account> accounts = new ArrayList<>();
+        final List<Thread> threads = new ArrayList<>();
+
+        for (long discordId = 1L; discordId <= 2000L; discordId++)
+        {
+            final Account account = new Account(discordId);
+
+            account.setAccountManager(accountManager);
+            accounts.add(account);
+        }
+
+        for (int thread = 0; thread < 4; thread++)
+        {
+            threads.add(new Thread(() ->
+            {
+                for (int round = 0; round < 5; round++)
+                {
+                    for (final Account account : accounts)
+                    {
+                        account.addBalanceUnits(account.getDiscordId());
+                    }
+                }
+            }));
+        }
+
+        for (final Thread thread : threads)
+        {
+            thread.start();
+        }
+
+        for (final Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        assertEquals(accounts.size(), accountManager.getLeaderboard().size());
+
+        for (final Account account : accounts)
+        {
+            final BalanceLeaderboard.Entry entry = accountManager.getLeaderboard().getEntry(account.getDiscordId());
+
+            assertEquals(20L * account.getDiscordId(), entry.getBalanceUnits());
+            assertEquals(2001L - account.getDiscordId(), entry.getRank());
+        }
+    }
+
+    @Test
+    void removedAccountsDropTheirUnindexedChanges()
+    {
+        final AccountManager accountManager = new AccountManager();
+        final Account account = new Account(7L);
+
+        account.setAccountManager(accountManager);
+        account.setBalanceUnits(500L);
+        accountManager.getLeaderboard().remove(7L);
+
+        assertEquals(0L, accountManager.getLeaderboard().getRank(7L));
+        assertEquals(0, accountManager.getLeaderboard().size());
+    }
+
+}
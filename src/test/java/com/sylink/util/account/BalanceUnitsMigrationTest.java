@@ -0,0 +1,148 @@
+package com.sylink.util.account;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BalanceUnitsMigrationTest
+{
+
+    private File databaseFile;
+    private String databaseUrl;
+    private AccountManager accountManager;
+
+    @BeforeEach
+    void setUp() throws IOException, SQLException
+    {
+        databaseFile = File.createTempFile("balance_migration_test", ".db");
+        databaseUrl = "jdbc:sqlite:" + databaseFile.getPath();
+
+        // An old database with floating point balances.
+        try (final Connection connection = DriverManager.getConnection(databaseUrl);
+             final Statement statement = connection.createStatement())
+        {
+            statement.executeUpdate("""
+                    CREATE TABLE accounts
+                    (
+                        id BIGINT NOT NULL UNIQUE,
+                        permissions TEXT NOT NULL DEFAULT '',
+                        roles TEXT NOT NULL DEFAULT '',
+                        balance DOUBLE NOT NULL DEFAULT 0.0
+                    );
+                    """);
+            statement.executeUpdate("INSERT INTO accounts (id, balance) VALUES (1, 12.5), (2, 0.07), (3, -4.0), "
+                    + "(4, 0.0), (5, 3.0)");
+        }
+
+        accountManager = TestAccountManagers.open(databaseUrl,
+                (newAccountManager) -> newAccountManager.getBalanceUnitsMigration().setBatchSize(2));
+    }
+
+    @AfterEach
+    void tearDown()
+    {
+        TestAccountManagers.close(accountManager);
+        assertTrue(databaseFile.delete());
+    }
+
+    /**
+     * @return The balance and balance units columns of every account, as balance:balance_units in id order.
+     */
+    private List<String> readColumns() throws SQLException
+    {
+        final List<String> rows = new ArrayList<>();
+
+        try (final Connection connection = DriverManager.getConnection(databaseUrl);
+             final Statement statement = connection.createStatement();
+             final ResultSet resultSet = statement.executeQuery(
+                     "SELECT balance, balance_units FROM accounts ORDER BY id"))
+        {
+            while (resultSet.next())
+            {
+                rows.add(resultSet.getDouble(1) + ":" + resultSet.getLong(2));
+            }
+        }
+
+        return rows;
+    }
+
+    private SchemaMigrator.Progress getProgress()
+    {
+        return accountManager.getSchemaMigrator().getDataMigrationProgress().get(1);
+    }
+
+    private void migrateAll()
+    {
+        while (accountManager.runDataMigrationChunk())
+        {
+            assertTrue(getProgress().getChunks() < 10);
+        }
+    }
+
+    @Test
+    void openingOnlyAddsTheColumn() throws SQLException
+    {
+        assertEquals(List.of("12.5:0", "0.07:0", "-4.0:0", "0.0:0", "3.0:0"), readColumns());
+        assertFalse(getProgress().isFinished());
+    }
+
+    @Test
+    void migratesBalancesInBatches() throws SQLException
+    {
+        migrateAll();
+
+        assertTrue(getProgress().isFinished());
+        // Two full batches of the four accounts with a balance, then an empty one.
+        assertEquals(3, getProgress().getChunks());
+        assertEquals(List.of("0.0:1250", "0.0:7", "0.0:0", "0.0:0", "0.0:300"), readColumns());
+    }
+
+    @Test
+    void unmigratedAccountsLoadTheirBalance() throws IOException
+    {
+        assertEquals(1250L, accountManager.getAccount(1L, false).getBalanceUnits());
+        assertEquals(0L, accountManager.getAccount(3L, false).getBalanceUnits());
+
+        final List<Long> balances = new ArrayList<>();
+
+        for (final Account account : accountManager.getStore().loadAll(List.of(2L, 5L)))
+        {
+            balances.add(account.getBalanceUnits());
+        }
+
+        assertEquals(List.of(7L, 300L), balances);
+    }
+
+    @Test
+    void leaderboardRanksUnmigratedBalances()
+    {
+        assertEquals(5L, accountManager.loadLeaderboard());
+        assertEquals(1L, accountManager.getLeaderboard().getRank(1L));
+        assertEquals(2L, accountManager.getLeaderboard().getRank(5L));
+    }
+
+    @Test
+    void savingUnmigratedAccountMovesItsBalance() throws SQLException
+    {
+        final Account account = accountManager.getAccount(2L, false);
+
+        account.addBalanceUnits(3L);
+
+        assertTrue(accountManager.saveToDatabase(account));
+        assertEquals("0.0:10", readColumns().get(1));
+
+        migrateAll();
+
+        assertEquals("0.0:10", readColumns().get(1));
+        assertEquals(10L, accountManager.getAccount(2L).getBalanceUnits());
+    }
+
+}
@@ -0,0 +1,266 @@
+package com.sylink.util.account;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DatabaseExecutorTest
+{
+
+    private File databaseFile;
+    private Connection connection;
+    private DatabaseExecutor executor;
+
+    @BeforeEach
+    void setUp() throws IOException, SQLException
+    {
+        databaseFile = File.createTempFile("executor_test", ".db");
+        connection = DriverManager.getConnection("jdbc:sqlite:" + databaseFile.getPath());
+
+        try (final Statement statement = connection.createStatement())
+        {
+            statement.executeUpdate("CREATE TABLE entries (id INTEGER PRIMARY KEY)");
+        }
+
+        executor = new DatabaseExecutor("executor-test", () -> connection);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException
+    {
+        executor.shutdown();
+        connection.close();
+        assertTrue(databaseFile.delete());
+    }
+
+    /**
+     * Blocks the executor thread until the returned latch is counted down, so requests wait in the queue.
+     */
+    private CountDownLatch blockExecutor() throws InterruptedException
+    {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        executor.submit(DatabaseExecutor.RequestType.QUERY, () ->
+        {
+            started.countDown();
+
+            try
+            {
+                release.await();
+            }
+            catch (final InterruptedException exception)
+            {
+                Thread.currentThread().interrupt();
+            }
+
+            return null;
+        });
+
+        started.await();
+        return release;
+    }
+
+    private DatabaseExecutor.Operation<Integer> insert(final long id)
+    {
+        return () ->
+        {
+            try (final PreparedStatement statement = connection.prepareStatement("INSERT INTO entries (id) VALUES (?)"))
+            {
+                statement.setLong(1, id);
+                return statement.executeUpdate();
+            }
+        };
+    }
+
+    private List<Long> readEntries() throws SQLException
+    {
+        final List<Long> ids = new ArrayList<>();
+
+        try (final Statement statement = connection.createStatement();
+             final ResultSet resultSet = statement.executeQuery("SELECT id FROM entries ORDER BY id"))
+        {
+            while (resultSet.next())
+            {
+                ids.add(resultSet.getLong(1));
+            }
+        }
+
+        return ids;
+    }
+
+    @Test
+    void requestsRunInSubmissionOrder()
+    {
+        final List<Integer> order = new ArrayList<>();
+        final List<CompletableFuture<Integer>> futures = new ArrayList<>();
+
+        for (int i = 0; i < 50; i++)
+        {
+            final int index = i;
+
+            futures.add(executor.submit(DatabaseExecutor.RequestType.LOAD, (long) i, null, () ->
+            {
+                order.add(index);
+                return index;
+            }));
+        }
+
+        for (int i = 0; i < futures.size(); i++)
+        {
+            assertEquals(i, (int) futures.get(i).join());
+        }
+
+        for (int i = 0; i < order.size(); i++)
+        {
+            assertEquals(i, (int) order.get(i));
+        }
+    }
+
+    @Test
+    void identicalWaitingRequestsAreMerged() throws InterruptedException
+    {
+        final Object account = new Object();
+        final CountDownLatch release = blockExecutor();
+
+        final CompletableFuture<Integer> first = executor.submit(DatabaseExecutor.RequestType.SAVE, 1L, account, insert(1L));
+        final CompletableFuture<Integer> second = executor.submit(DatabaseExecutor.RequestType.SAVE, 1L, account, insert(1L));
+
+        release.countDown();
+
+        assertSame(first, second);
+        assertEquals(1, (int) first.join());
+        assertEquals(1, executor.getMergedRequests());
+    }
+
+    @Test
+    void differentRequestsAreNotMerged() throws InterruptedException
+    {
+        final CountDownLatch release = blockExecutor();
+
+        final CompletableFuture<Integer> save = executor.submit(DatabaseExecutor.RequestType.SAVE, 1L, new Object(), insert(1L));
+        final CompletableFuture<Integer> otherTarget = executor.submit(DatabaseExecutor.RequestType.SAVE, 1L, new Object(), insert(2L));
+        final CompletableFuture<Boolean> load = executor.submit(DatabaseExecutor.RequestType.LOAD, 1L, null, () -> true);
+
+        release.countDown();
+
+        assertNotSame(save, otherTarget);
+        assertEquals(1, (int) save.join());
+        assertEquals(1, (int) otherTarget.join());
+        assertTrue(load.join());
+        assertEquals(0, executor.getMergedRequests());
+    }
+
+    @Test
+    void requestIsNotMergedAcrossUnkeyedRequest() throws InterruptedException
+    {
+        final Object account = new Object();
+        final CountDownLatch release = blockExecutor();
+
+        final CompletableFuture<Integer> first = executor.submit(DatabaseExecutor.RequestType.SAVE, 1L, account, insert(1L));
+        executor.submit(DatabaseExecutor.RequestType.QUERY, () -> null);
+        final CompletableFuture<Integer> second = executor.submit(DatabaseExecutor.RequestType.SAVE, 1L, account, () -> 2);
+
+        release.countDown();
+
+        assertNotSame(first, second);
+        assertEquals(1, (int) first.join());
+        assertEquals(2, (int) second.join());
+    }
+
+    @Test
+    void waitingWritesShareOneTransaction() throws InterruptedException, SQLException
+    {
+        final CountDownLatch release = blockExecutor();
+        final List<CompletableFuture<Integer>> futures = new ArrayList<>();
+
+        for (long id = 1L; id <= 10L; id++)
+        {
+            futures.add(executor.submit(DatabaseExecutor.RequestType.SAVE, id, null, insert(id)));
+        }
+
+        release.countDown();
+        futures.forEach(CompletableFuture::join);
+
+        assertEquals(1, executor.getTransactions());
+        assertEquals(10, readEntries().size());
+        assertTrue(connection.getAutoCommit());
+    }
+
+    @Test
+    void failedWriteIsRolledBackAlone() throws InterruptedException, SQLException
+    {
+        final CountDownLatch release = blockExecutor();
+
+        final CompletableFuture<Integer> first = executor.submit(DatabaseExecutor.RequestType.SAVE, 1L, null, insert(1L));
+        final CompletableFuture<Integer> failed = executor.submit(DatabaseExecutor.RequestType.SAVE, 2L, null, () ->
+        {
+            insert(2L).run();
+            throw new SQLException("Failed after writing");
+        });
+        final CompletableFuture<Integer> last = executor.submit(DatabaseExecutor.RequestType.DELETE, 3L, null, insert(3L));
+
+        release.countDown();
+
+        assertEquals(1, (int) first.join());
+        assertEquals(1, (int) last.join());
+
+        final ExecutionException exception = assertThrows(ExecutionException.class, failed::get);
+
+        assertTrue(exception.getCause() instanceof SQLException);
+        assertEquals(List.of(1L, 3L), readEntries());
+        assertEquals(1, executor.getFailedRequests());
+    }
+
+    @Test
+    void requestFromExecutorThreadRunsInline()
+    {
+        final CompletableFuture<Boolean> outer = executor.submit(DatabaseExecutor.RequestType.QUERY, () ->
+        {
+            assertTrue(executor.isExecutorThread());
+
+            return executor.submit(DatabaseExecutor.RequestType.EXISTS, 1L, null, () -> true).join();
+        });
+
+        assertTrue(outer.join());
+        assertFalse(executor.isExecutorThread());
+    }
+
+    @Test
+    void shutdownRunsWaitingRequests() throws InterruptedException
+    {
+        final CountDownLatch release = blockExecutor();
+        final CompletableFuture<Integer> waiting = executor.submit(DatabaseExecutor.RequestType.SAVE, 1L, null, insert(1L));
+
+        release.countDown();
+        executor.shutdown();
+
+        assertTrue(waiting.isDone());
+        assertEquals(1, (int) waiting.join());
+        assertEquals(0, executor.getQueueDepth());
+        // A new thread is started for requests submitted after shutting down.
+        assertTrue(executor.submit(DatabaseExecutor.RequestType.LOAD, 2L, null, () -> true).join());
+    }
+
+    @Test
+    void latencyIsRecorded()
+    {
+        executor.submit(DatabaseExecutor.RequestType.LOAD, 1L, null, () -> true).join();
+
+        assertEquals(1, executor.getSubmittedRequests());
+        assertTrue(executor.getAverageLatency() >= 0.0);
+        assertTrue(executor.getMaxLatency() >= executor.getAverageLatency());
+    }
+
+}
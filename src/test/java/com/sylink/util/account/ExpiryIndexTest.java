@@ -0,0 +1,97 @@
+package com.sylink.util.account;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExpiryIndexTest
+{
+
+    private ExpiryIndex expiryIndex;
+
+    @BeforeEach
+    void setUp()
+    {
+        expiryIndex = new ExpiryIndex();
+    }
+
+    @Test
+    void accountIsNotPolledBeforeDeadline()
+    {
+        final Account account = new Account(1L);
+
+        expiryIndex.schedule(account, 5000L);
+
+        assertTrue(expiryIndex.pollExpired(4999L).isEmpty());
+        assertEquals(1, expiryIndex.size());
+    }
+
+    @Test
+    void accountIsPolledOnceAfterDeadline()
+    {
+        final Account account = new Account(1L);
+
+        expiryIndex.schedule(account, 5000L);
+
+        assertEquals(List.of(account), expiryIndex.pollExpired(5000L));
+        assertTrue(expiryIndex.pollExpired(10000L).isEmpty());
+        assertEquals(0, expiryIndex.size());
+        assertEquals(Account.NOT_FILED, account.getExpiryBucket());
+    }
+
+    @Test
+    void deadlinesAreRoundedUpToTheNextSecond()
+    {
+        final Account account = new Account(1L);
+
+        expiryIndex.schedule(account, 5001L);
+
+        assertTrue(expiryIndex.pollExpired(5999L).isEmpty());
+        assertEquals(List.of(account), expiryIndex.pollExpired(6000L));
+    }
+
+    @Test
+    void pollingOnlyReturnsDueAccountsInDeadlineOrder()
+    {
+        final Account first = new Account(1L);
+        final Account second = new Account(2L);
+        final Account notDue = new Account(3L);
+
+        expiryIndex.schedule(second, 3000L);
+        expiryIndex.schedule(first, 1000L);
+        expiryIndex.schedule(notDue, 9000L);
+
+        assertEquals(List.of(first, second), expiryIndex.pollExpired(5000L));
+        assertEquals(1, expiryIndex.size());
+    }
+
+    @Test
+    void schedulingAgainMovesAccount()
+    {
+        final Account account = new Account(1L);
+
+        expiryIndex.schedule(account, 1000L);
+        expiryIndex.schedule(account, 9000L);
+
+        assertEquals(1, expiryIndex.size());
+        assertTrue(expiryIndex.pollExpired(5000L).isEmpty());
+        assertEquals(List.of(account), expiryIndex.pollExpired(9000L));
+    }
+
+    @Test
+    void removedAccountIsNotPolled()
+    {
+        final Account account = new Account(1L);
+
+        expiryIndex.schedule(account, 1000L);
+        expiryIndex.remove(account);
+        expiryIndex.remove(account);
+
+        assertEquals(0, expiryIndex.size());
+        assertTrue(expiryIndex.pollExpired(5000L).isEmpty());
+    }
+
+}
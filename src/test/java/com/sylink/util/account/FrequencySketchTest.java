@@ -0,0 +1,61 @@
+package com.sylink.util.account;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrequencySketchTest
+{
+
+    @Test
+    void unseenIdHasNoFrequency()
+    {
+        assertEquals(0, new FrequencySketch(64).frequency(1L));
+    }
+
+    @Test
+    void incrementingRaisesFrequency()
+    {
+        final FrequencySketch sketch = new FrequencySketch(64);
+
+        for (int i = 0; i < 5; i++)
+        {
+            sketch.increment(1L);
+        }
+
+        assertEquals(5, sketch.frequency(1L));
+    }
+
+    @Test
+    void frequencyIsCappedAtFifteen()
+    {
+        final FrequencySketch sketch = new FrequencySketch(64);
+
+        for (int i = 0; i < 100; i++)
+        {
+            sketch.increment(1L);
+        }
+
+        assertEquals(15, sketch.frequency(1L));
+    }
+
+    @Test
+    void countersAreHalvedAfterSampleSize()
+    {
+        final FrequencySketch sketch = new FrequencySketch(16);
+
+        for (int i = 0; i < 8; i++)
+        {
+            sketch.increment(1L);
+        }
+
+        // Every other id is only seen once, pushing the sketch over its sample size of 160 accesses.
+        for (long discordId = 100L; discordId < 260L; discordId++)
+        {
+            sketch.increment(discordId);
+        }
+
+        assertTrue(sketch.frequency(1L) <= 4);
+    }
+
+}
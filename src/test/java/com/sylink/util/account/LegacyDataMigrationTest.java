@@ -0,0 +1,201 @@
+package com.sylink.util.account;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.*;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LegacyDataMigrationTest
+{
+
+    private File databaseFile;
+    private String databaseUrl;
+    private AccountManager accountManager;
+
+    @BeforeEach
+    void setUp() throws IOException, SQLException
+    {
+        databaseFile = File.createTempFile("migration_test", ".db");
+        databaseUrl = "jdbc:sqlite:" + databaseFile.getPath();
+
+        // An old database with permissions and roles in the account columns.
+        try (final Connection connection = DriverManager.getConnection(databaseUrl);
+             final Statement statement = connection.createStatement())
+        {
+            statement.executeUpdate("""
+                    CREATE TABLE accounts
+                    (
+                        id BIGINT NOT NULL UNIQUE,
+                        permissions TEXT NOT NULL DEFAULT '',
+                        roles TEXT NOT NULL DEFAULT '',
+                        balance DOUBLE NOT NULL DEFAULT 0.0
+                    );
+                    """);
+            statement.executeUpdate("INSERT INTO accounts VALUES (1, 'admin,mod', '10,11', 1.0)");
+            statement.executeUpdate("INSERT INTO accounts VALUES (2, 'mod', '', 2.0)");
+            statement.executeUpdate("INSERT INTO accounts VALUES (3, '', '11', 3.0)");
+            statement.executeUpdate("INSERT INTO accounts VALUES (4, '', '', 4.0)");
+            statement.executeUpdate("INSERT INTO accounts VALUES (5, 'admin', '12', 5.0)");
+        }
+
+        accountManager = new AccountManager();
+        accountManager.getLegacyDataMigration().setBatchSize(2);
+        assertTrue(accountManager.openDatabaseConnection(databaseUrl));
+    }
+
+    @AfterEach
+    void tearDown()
+    {
+        accountManager.closeDatabaseConnection();
+        accountManager.getDatabaseExecutor().shutdown();
+        assertTrue(databaseFile.delete());
+    }
+
+    private Set<String> readRows(final String sqlQuery) throws SQLException
+    {
+        final Set<String> rows = new TreeSet<>();
+
+        try (final Connection connection = DriverManager.getConnection(databaseUrl);
+             final Statement statement = connection.createStatement();
+             final ResultSet resultSet = statement.executeQuery(sqlQuery))
+        {
+            while (resultSet.next())
+            {
+                rows.add(resultSet.getString(1) + ":" + resultSet.getString(2));
+            }
+        }
+
+        return rows;
+    }
+
+    private SchemaMigrator.Progress getProgress()
+    {
+        return accountManager.getSchemaMigrator().getDataMigrationProgress().get(0);
+    }
+
+    private void migrateAll()
+    {
+        while (accountManager.runDataMigrationChunk())
+        {
+            assertTrue(getProgress().getChunks() < 10);
+        }
+    }
+
+    @Test
+    void migratesColumnDataInBatches() throws SQLException
+    {
+        assertTrue(accountManager.runDataMigrationChunk());
+        assertFalse(getProgress().isFinished());
+        assertEquals(2L, getProgress().getCursor());
+
+        migrateAll();
+
+        assertTrue(getProgress().isFinished());
+        assertEquals(3, getProgress().getChunks());
+        assertEquals(Set.of("1:admin", "1:mod", "2:mod", "5:admin"),
+                readRows("SELECT id, permission FROM account_permissions"));
+        assertEquals(Set.of("1:10", "1:11", "3:11", "5:12"), readRows("SELECT id, role_id FROM account_roles"));
+        assertEquals(Set.of(), readRows("SELECT id, permissions FROM accounts WHERE permissions != '' OR roles != ''"));
+        assertFalse(accountManager.runDataMigrationChunk());
+    }
+
+    @Test
+    void migrationResumesAfterReopening()
+    {
+        assertTrue(accountManager.runDataMigrationChunk());
+        accountManager.closeDatabaseConnection();
+        assertTrue(accountManager.openDatabaseConnection(databaseUrl));
+
+        assertEquals(2L, getProgress().getCursor());
+        assertEquals(1, getProgress().getChunks());
+
+        migrateAll();
+
+        assertEquals(3, getProgress().getChunks());
+    }
+
+    @Test
+    void unmigratedAccountLoadsColumnData()
+    {
+        final Account account = accountManager.getAccount(1L, false);
+
+        assertNotNull(account);
+        assertEquals(Set.of("admin", "mod"), account.getPermissions());
+        assertEquals(Set.of(10L, 11L), account.getRoles());
+        assertNull(account.getSavedPermissions());
+    }
+
+    @Test
+    void migratedAccountLoadsRows()
+    {
+        migrateAll();
+
+        final Account account = accountManager.getAccount(1L, false);
+
+        assertEquals(Set.of("admin", "mod"), account.getPermissions());
+        assertEquals(Set.of(10L, 11L), account.getRoles());
+        assertEquals(Set.of("admin", "mod"), account.getSavedPermissions());
+        assertEquals(Set.of(10L, 11L), account.getSavedRoles());
+    }
+
+    @Test
+    void accountLoadedBeforeMigrationKeepsRemovals() throws SQLException
+    {
+        final Account account = accountManager.getAccount(1L, false);
+
+        migrateAll();
+        account.removePermission("mod");
+        account.removeRole(10L);
+
+        assertTrue(accountManager.saveToDatabase(account));
+        assertEquals(Set.of("1:admin"), readRows("SELECT id, permission FROM account_permissions WHERE id = 1"));
+        assertEquals(Set.of("1:11"), readRows("SELECT id, role_id FROM account_roles WHERE id = 1"));
+    }
+
+    @Test
+    void savingUnmigratedAccountMovesItsData() throws SQLException
+    {
+        final Account account = accountManager.getAccount(2L, false);
+
+        account.addRole(20L);
+
+        assertTrue(accountManager.saveToDatabase(account));
+        assertEquals(Set.of("2:mod"), readRows("SELECT id, permission FROM account_permissions WHERE id = 2"));
+        assertEquals(Set.of("2:20"), readRows("SELECT id, role_id FROM account_roles WHERE id = 2"));
+        assertEquals(Set.of("2:"), readRows("SELECT id, permissions FROM accounts WHERE id = 2"));
+    }
+
+    @Test
+    void findAccountsIncludesUnmigratedAccounts()
+    {
+        assertTrue(accountManager.runDataMigrationChunk());
+
+        assertEquals(List.of(1L, 5L), accountManager.findAccountsWithPermission("ADMIN"));
+        assertEquals(List.of(1L, 3L), accountManager.findAccountsWithRole(11L));
+
+        migrateAll();
+
+        assertEquals(List.of(1L, 2L), accountManager.findAccountsWithPermission("mod"));
+        assertEquals(List.of(5L), accountManager.findAccountsWithRole(12L));
+        assertEquals(List.of(), accountManager.findAccountsWithRole(99L));
+    }
+
+    @Test
+    void deletingAccountDeletesRows() throws SQLException
+    {
+        migrateAll();
+        accountManager.deleteFromDatabase(1L);
+
+        assertEquals(Set.of(), readRows("SELECT id, permission FROM account_permissions WHERE id = 1"));
+        assertEquals(Set.of(), readRows("SELECT id, role_id FROM account_roles WHERE id = 1"));
+    }
+
+}
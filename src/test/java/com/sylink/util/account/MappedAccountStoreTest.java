@@ -0,0 +1,286 @@
+package com.sylink.util.account;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedAccountStoreTest extends AccountStoreConformanceTest
+{
+
+    private Path directory;
+    private MappedAccountStore store;
+
+    @Override
+    AccountStore openStore() throws IOException
+    {
+        directory = Files.createTempDirectory("mapped_store_test");
+        store = new MappedAccountStore();
+        store.open(directory);
+
+        return store;
+    }
+
+    @Override
+    void closeStore() throws IOException
+    {
+        store.close();
+
+        try (final Stream<Path> files = Files.walk(directory))
+        {
+            for (final Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList()))
+            {
+                Files.delete(file);
+            }
+        }
+    }
+
+    private void reopen() throws IOException
+    {
+        store.close();
+        store = new MappedAccountStore();
+        store.open(directory);
+    }
+
+    @Test
+    void storedStatesAreReadBack() throws IOException
+    {
+        final AccountState state = state(1_250L, Set.of("admin", "\u00fcn\u00efcode"), Set.of(10L, Long.MAX_VALUE));
+
+        store.put(1L, state);
+        store.put(2L, AccountState.EMPTY);
+
+        assertEquals(state.getBalanceUnits(), store.get(1L).getBalanceUnits());
+        assertEquals(state.getPermissions(), store.get(1L).getPermissions());
+        assertEquals(state.getRoles(), store.get(1L).getRoles());
+        assertEquals(Set.of(), store.get(2L).getPermissions());
+        assertNull(store.get(3L));
+        assertTrue(store.exists(2L));
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    void putReplacesTheStoredState() throws IOException
+    {
+        store.put(1L, state(100L, Set.of("a"), Set.of()));
+        store.put(1L, state(200L, Set.of("a"), Set.of()));
+        store.put(1L, state(300L, Set.of("b"), Set.of(5L)));
+
+        assertEquals(300L, store.get(1L).getBalanceUnits());
+        assertEquals(Set.of("b"), store.get(1L).getPermissions());
+        assertEquals(Set.of(5L), store.get(1L).getRoles());
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    void removedAccountsAreGoneAndTheirSlotsReused() throws IOException
+    {
+        for (long discordId = 0L; discordId < 500L; discordId++)
+        {
+            store.put(discordId, state(discordId, Set.of(), Set.of(discordId)));
+        }
+
+        for (long discordId = 0L; discordId < 500L; discordId += 2L)
+        {
+            assertTrue(store.delete(discordId));
+        }
+
+        assertFalse(store.delete(0L));
+        assertNull(store.get(0L));
+        assertEquals(250, store.size());
+
+        store.put(0L, state(7L, Set.of(), Set.of()));
+
+        assertEquals(7L, store.get(0L).getBalanceUnits());
+        assertEquals(Set.of(499L), store.get(499L).getRoles());
+    }
+
+    @Test
+    void indexGrowsPastItsInitialCapacity() throws IOException
+    {
+        // Snowflake like ids, which share their high bits.
+        for (long i = 0L; i < 5_000L; i++)
+        {
+            store.put((1_000_000_000L << 22) + i, state(i, Set.of("p" + (i % 4)), Set.of()));
+        }
+
+        assertEquals(5_000, store.size());
+        assertTrue(store.getRebuilds() > 0);
+
+        for (long i = 0L; i < 5_000L; i++)
+        {
+            final AccountState state = store.get((1_000_000_000L << 22) + i);
+
+            assertEquals(i, state.getBalanceUnits());
+            assertEquals(Set.of("p" + (i % 4)), state.getPermissions());
+        }
+    }
+
+    @Test
+    void accountsSurviveReopening() throws IOException
+    {
+        for (long discordId = 1L; discordId <= 2_000L; discordId++)
+        {
+            store.put(discordId, state(discordId * 10L, Set.of("perm"), Set.of(discordId)));
+        }
+
+        store.delete(5L);
+        reopen();
+
+        assertEquals(1_999, store.size());
+        assertNull(store.get(5L));
+        assertEquals(20_000L, store.get(2_000L).getBalanceUnits());
+        assertEquals(Set.of(2_000L), store.get(2_000L).getRoles());
+
+        // Writes after reopening continue after the existing slab data.
+        store.put(3_000L, state(1L, Set.of("new"), Set.of()));
+
+        assertEquals(Set.of("perm"), store.get(1L).getPermissions());
+        assertEquals(Set.of("new"), store.get(3_000L).getPermissions());
+    }
+
+    @Test
+    void unusedSlabSpaceIsCompacted() throws IOException
+    {
+        store.put(1L, state(0L, Set.of("kept"), Set.of()));
+
+        final int rebuilds = store.getRebuilds();
+
+        for (int i = 0; i < 100_000; i++)
+        {
+            store.put(2L, state(i, Set.of("changing permission " + i), Set.of()));
+        }
+
+        assertTrue(store.getRebuilds() > rebuilds);
+        assertEquals(Set.of("changing permission 99999"), store.get(2L).getPermissions());
+        assertEquals(Set.of("kept"), store.get(1L).getPermissions());
+
+        try (final Stream<Path> files = Files.list(directory))
+        {
+            // The index and a single generation of the slab.
+            assertEquals(2L, files.count());
+        }
+
+        reopen();
+
+        assertEquals(Set.of("changing permission 99999"), store.get(2L).getPermissions());
+    }
+
+    @Test
+    void scanVisitsEveryAccountInChunks() throws IOException
+    {
+        for (long discordId = 1L; discordId <= 100L; discordId++)
+        {
+            store.put(discordId, state(discordId, Set.of(), Set.of()));
+        }
+
+        final Map<Long, Long> visited = new HashMap<>();
+        int slot = 0;
+        int chunks = 0;
+
+        while (slot >= 0)
+        {
+            slot = store.scan(slot, 30, (discordId, state) -> visited.put(discordId, state.getBalanceUnits()));
+            chunks++;
+        }
+
+        assertEquals(100, visited.size());
+        assertEquals(4, chunks);
+        assertEquals(Long.valueOf(42L), visited.get(42L));
+    }
+
+    @Test
+    void closedStoreRejectsWrites() throws IOException
+    {
+        store.close();
+
+        assertFalse(store.isOpen());
+        assertNull(store.get(1L));
+        assertThrows(IOException.class, () -> store.put(1L, AccountState.EMPTY));
+
+        store.open(directory);
+    }
+
+    @Test
+    void accountManagerStoresAccountsInTheMappedStore() throws IOException
+    {
+        final File databaseFile = File.createTempFile("mapped_store_test", ".db");
+        final String databaseUrl = "jdbc:sqlite:" + databaseFile.getPath();
+        final List<AccountManager> accountManagers = new ArrayList<>();
+
+        store.close();
+
+        try
+        {
+            // Accounts saved to the database before the store existed are copied in to it.
+            final AccountManager databaseOnly = openAccountManager(databaseUrl, null, accountManagers);
+
+            databaseOnly.getAccount(1L).addBalanceUnits(100L);
+            assertTrue(databaseOnly.saveToDatabase(1L));
+            TestAccountManagers.close(databaseOnly);
+
+            final AccountManager mapped = openAccountManager(databaseUrl, directory, accountManagers);
+
+            assertEquals(1L, mapped.getStore().size());
+            mapped.getAccount(2L).addPermission("mod");
+            mapped.getAccount(1L).addBalanceUnits(50L);
+            assertTrue(mapped.getFlusher().flushAll());
+            assertTrue(mapped.saveToDatabase(mapped.getAccount(3L)));
+            mapped.delete(3L);
+            assertEquals(List.of(2L), mapped.findAccountsWithPermission("MOD"));
+            TestAccountManagers.close(mapped);
+
+            final AccountManager reopened = openAccountManager(databaseUrl, directory, accountManagers);
+
+            assertEquals(150L, reopened.getAccount(1L).getBalanceUnits());
+            assertEquals(Set.of("mod"), reopened.getAccount(2L).getPermissions());
+            assertFalse(reopened.existsInDatabase(3L));
+            assertEquals(2L, reopened.exportAccountStore());
+            TestAccountManagers.close(reopened);
+
+            // The export wrote the store's accounts to the database.
+            final AccountManager exported = openAccountManager(databaseUrl, null, accountManagers);
+
+            assertEquals(150L, exported.getAccount(1L).getBalanceUnits());
+            assertEquals(Set.of("mod"), exported.getAccount(2L).getPermissions());
+            TestAccountManagers.close(exported);
+        }
+        finally
+        {
+            accountManagers.forEach(TestAccountManagers::close);
+            assertTrue(databaseFile.delete());
+            store = new MappedAccountStore();
+            store.open(directory);
+        }
+    }
+
+    private AccountManager openAccountManager(final String databaseUrl, final Path storeDirectory,
+                                              final List<AccountManager> accountManagers)
+    {
+        final AccountManager newAccountManager = TestAccountManagers.open(databaseUrl, (accountManager) ->
+        {
+            final String storeBackend = (storeDirectory != null) ? MappedAccountStore.NAME : SQLiteAccountStore.NAME;
+
+            accountManagers.add(accountManager);
+            accountManager.setStoreBackend(storeBackend);
+            accountManager.setMappedStoreDirectory(storeDirectory);
+        });
+
+        assertTrue(newAccountManager.openAccountStore());
+
+        return newAccountManager;
+    }
+
+}
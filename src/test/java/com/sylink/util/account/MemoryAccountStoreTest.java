@@ -0,0 +1,40 @@
+package com.sylink.util.account;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MemoryAccountStoreTest extends AccountStoreConformanceTest
+{
+
+    private MemoryAccountStore store;
+
+    @Override
+    AccountStore openStore()
+    {
+        store = new MemoryAccountStore();
+
+        return store;
+    }
+
+    @Override
+    void closeStore()
+    {
+        store.close();
+    }
+
+    @Test
+    void closedStoreDropsItsAccounts() throws IOException
+    {
+        store.upsert(new Account(1L), AccountState.EMPTY);
+        store.close();
+
+        assertFalse(store.isOpen());
+        assertFalse(store.isPersistent());
+        assertFalse(store.exists(1L));
+        assertThrows(IOException.class, () -> store.upsert(new Account(1L), AccountState.EMPTY));
+    }
+
+}
@@ -0,0 +1,48 @@
+package com.sylink.util.account;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MoneyTest
+{
+
+    @Test
+    void dollarsAreRoundedToCents()
+    {
+        assertEquals(1234L, Money.toUnits(12.34));
+        assertEquals(1L, Money.toUnits(0.005));
+        assertEquals(-1L, Money.toUnits(-0.005));
+        assertEquals(10L, Money.toUnits(0.1));
+    }
+
+    @Test
+    void amountsOutOfRangeAreRejected()
+    {
+        assertThrows(ArithmeticException.class, () -> Money.toUnits(Double.NaN));
+        assertThrows(ArithmeticException.class, () -> Money.toUnits(Double.POSITIVE_INFINITY));
+        assertThrows(ArithmeticException.class, () -> Money.toUnits(new BigDecimal("1e30")));
+    }
+
+    @Test
+    void parsesTypedAmounts()
+    {
+        assertEquals(1200L, Money.parse("12"));
+        assertEquals(1250L, Money.parse(" $12.5 "));
+        assertEquals(1L, Money.parse("0.009"));
+        assertThrows(NumberFormatException.class, () -> Money.parse("twelve"));
+        assertThrows(NumberFormatException.class, () -> Money.parse("1e30"));
+    }
+
+    @Test
+    void formatsExactAmounts()
+    {
+        assertEquals("0.00", Money.format(0L));
+        assertEquals("1234.50", Money.format(123_450L));
+        assertEquals("92233720368547758.07", Money.format(Long.MAX_VALUE));
+        assertEquals(12.34, Money.toDollars(1234L));
+    }
+
+}
@@ -0,0 +1,92 @@
+package com.sylink.util.account;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PermissionSetTest
+{
+
+    @Test
+    void permissionsAreInternedByLowerCaseName()
+    {
+        final PermissionRegistry registry = PermissionRegistry.getInstance();
+        final int id = registry.intern("Set.Test.Intern");
+
+        assertEquals(id, registry.intern("set.test.intern"));
+        assertEquals(id, registry.find("SET.TEST.INTERN"));
+        assertEquals("set.test.intern", registry.getName(id));
+        assertEquals(PermissionRegistry.NO_PERMISSION, registry.find("set.test.never.interned"));
+    }
+
+    @Test
+    void setsMatchHashSetsOfTheSameNames()
+    {
+        final PermissionSet permissions = PermissionSet.of(List.of("Set.Test.A", "set.test.b", " "));
+        final Set<String> names = new HashSet<>(List.of("set.test.a", "set.test.b"));
+
+        assertEquals(2, permissions.size());
+        assertEquals(names, permissions);
+        assertEquals(permissions, names);
+        assertEquals(names.hashCode(), permissions.hashCode());
+        assertTrue(permissions.contains("set.test.a"));
+        assertFalse(permissions.contains("Set.Test.A"));
+        assertEquals(names, new HashSet<>(new ArrayList<>(permissions)));
+    }
+
+    @Test
+    void addingAndRemovingIdsKeepsEqualSetsEqual()
+    {
+        final int first = PermissionRegistry.getInstance().intern("set.test.first");
+        final int second = PermissionRegistry.getInstance().intern("set.test.second");
+        final PermissionSet permissions = PermissionSet.EMPTY.with(first).with(second);
+
+        assertSame(permissions, permissions.with(first));
+        assertTrue(permissions.has(second));
+        assertEquals(PermissionSet.EMPTY.with(first), permissions.without(second));
+        assertSame(PermissionSet.EMPTY, permissions.without(first).without(second));
+        assertFalse(PermissionSet.EMPTY.has(PermissionRegistry.NO_PERMISSION));
+    }
+
+    @Test
+    void idsPastTheFirstWordAreStored()
+    {
+        final List<String> names = new ArrayList<>();
+
+        for (int i = 0; i < 150; i++)
+        {
+            names.add("set.test.wide." + i);
+        }
+
+        final PermissionSet permissions = PermissionSet.of(names);
+
+        assertEquals(150, permissions.size());
+        assertEquals(new HashSet<>(names), permissions);
+        assertTrue(permissions.has(PermissionRegistry.getInstance().find("set.test.wide.149")));
+    }
+
+    @Test
+    void accountsCheckPermissionIds()
+    {
+        final Account account = new Account(1L);
+        final int id = PermissionRegistry.getInstance().intern("set.test.account");
+
+        assertFalse(account.hasPermission(id));
+
+        account.addPermission("Set.Test.Account");
+
+        assertTrue(account.hasPermission(id));
+        assertTrue(account.hasPermission("SET.TEST.ACCOUNT"));
+
+        account.removePermission("set.test.ACCOUNT");
+
+        assertFalse(account.hasPermission(id));
+        assertFalse(account.hasPermission(PermissionRegistry.NO_PERMISSION));
+    }
+
+}
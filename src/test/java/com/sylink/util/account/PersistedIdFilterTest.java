@@ -0,0 +1,141 @@
+package com.sylink.util.account;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PersistedIdFilterTest
+{
+
+    private Connection connection;
+    private PersistedIdFilter persistedIds;
+
+    @BeforeEach
+    void setUp() throws SQLException
+    {
+        connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        persistedIds = new PersistedIdFilter();
+        persistedIds.setExpectedAccounts(1000);
+
+        try (final Statement statement = connection.createStatement())
+        {
+            statement.executeUpdate("CREATE TABLE accounts (id BIGINT NOT NULL UNIQUE)");
+            statement.executeUpdate("INSERT INTO accounts (id) VALUES (1), (2), (3)");
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException
+    {
+        connection.close();
+    }
+
+    @Test
+    void unbuiltFilterLetsEveryIdThrough()
+    {
+        assertFalse(persistedIds.isEnabled());
+        assertTrue(persistedIds.mightContain(42L));
+        assertEquals(0, persistedIds.getSkippedLookups());
+    }
+
+    @Test
+    void builtFilterContainsEveryPersistedId()
+    {
+        assertTrue(persistedIds.rebuild(connection));
+
+        for (long discordId = 1L; discordId <= 3L; discordId++)
+        {
+            assertTrue(persistedIds.mightContain(discordId));
+        }
+
+        assertEquals(3, persistedIds.getSize());
+    }
+
+    @Test
+    void addedIdsAreContained()
+    {
+        persistedIds.rebuild(connection);
+
+        for (long discordId = 100L; discordId < 1100L; discordId++)
+        {
+            persistedIds.add(discordId);
+        }
+
+        for (long discordId = 100L; discordId < 1100L; discordId++)
+        {
+            assertTrue(persistedIds.mightContain(discordId));
+        }
+    }
+
+    @Test
+    void unknownIdsAreMostlySkipped()
+    {
+        persistedIds.setFalsePositiveRate(0.01);
+        persistedIds.rebuild(connection);
+
+        for (long discordId = 1L; discordId <= 1000L; discordId++)
+        {
+            persistedIds.add(discordId);
+        }
+
+        int passed = 0;
+
+        for (long discordId = 1_000_000L; discordId < 1_010_000L; discordId++)
+        {
+            if (persistedIds.mightContain(discordId))
+            {
+                passed++;
+            }
+        }
+
+        // Allows for three times the configured rate to keep the test stable.
+        assertTrue(passed < 300, "Too many false positives: " + passed);
+        assertEquals(10_000 - passed, persistedIds.getSkippedLookups());
+    }
+
+    @Test
+    void growingPastCapacityNeedsRebuild()
+    {
+        persistedIds.rebuild(connection);
+
+        for (long discordId = 100L; discordId <= 1100L; discordId++)
+        {
+            persistedIds.add(discordId);
+        }
+
+        assertTrue(persistedIds.needsRebuild());
+    }
+
+    @Test
+    void missingTableDisablesFilter() throws SQLException
+    {
+        persistedIds.rebuild(connection);
+
+        try (final Statement statement = connection.createStatement())
+        {
+            statement.executeUpdate("DROP TABLE accounts");
+        }
+
+        assertFalse(persistedIds.rebuild(connection));
+        assertFalse(persistedIds.isEnabled());
+        assertTrue(persistedIds.mightContain(42L));
+    }
+
+    @Test
+    void clearingDisablesFilter()
+    {
+        persistedIds.rebuild(connection);
+        persistedIds.clear();
+
+        assertFalse(persistedIds.isEnabled());
+        assertEquals(0, persistedIds.getMemoryUsage());
+    }
+
+}
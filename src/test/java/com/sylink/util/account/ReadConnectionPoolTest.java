@@ -0,0 +1,263 @@
+package com.sylink.util.account;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReadConnectionPoolTest
+{
+
+    private File databaseFile;
+    private String databaseUrl;
+    private Connection writer;
+    private ReadConnectionPool pool;
+
+    @BeforeEach
+    void setUp() throws IOException, SQLException
+    {
+        databaseFile = File.createTempFile("read_pool_test", ".db");
+        databaseUrl = "jdbc:sqlite:" + databaseFile.getPath();
+        writer = DriverManager.getConnection(databaseUrl);
+        pool = new ReadConnectionPool();
+
+        try (final Statement statement = writer.createStatement())
+        {
+            statement.executeUpdate("CREATE TABLE entries (id INTEGER PRIMARY KEY)");
+            statement.executeUpdate("INSERT INTO entries (id) VALUES (1)");
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException
+    {
+        pool.close();
+        writer.close();
+
+        for (final String suffix : new String[]{"-wal", "-shm"})
+        {
+            new File(databaseFile.getPath() + suffix).delete();
+        }
+
+        assertTrue(databaseFile.delete());
+    }
+
+    private void useWriteAheadLog() throws SQLException
+    {
+        StorageProfile.BALANCED.apply(writer);
+    }
+
+    private long countEntries() throws SQLException
+    {
+        return pool.read((connection, statements) ->
+        {
+            try (final ResultSet resultSet = statements.prepare("SELECT COUNT(*) FROM entries").executeQuery())
+            {
+                return resultSet.next() ? resultSet.getLong(1) : -1L;
+            }
+        });
+    }
+
+    @Test
+    void opensConnectionsForWriteAheadLog() throws SQLException
+    {
+        useWriteAheadLog();
+        pool.setSize(3);
+
+        assertTrue(pool.open(databaseUrl, StorageProfile.BALANCED));
+        assertTrue(pool.isOpen());
+        assertEquals(3, pool.getOpenConnections());
+        assertEquals(1L, countEntries());
+    }
+
+    @Test
+    void refusesDatabaseWithoutWriteAheadLog() throws SQLException
+    {
+        StorageProfile.DURABLE.apply(writer);
+
+        assertFalse(pool.open(databaseUrl, StorageProfile.DURABLE));
+        assertFalse(pool.isOpen());
+        assertThrows(SQLException.class, this::countEntries);
+    }
+
+    @Test
+    void sizeZeroDisablesPool() throws SQLException
+    {
+        useWriteAheadLog();
+        pool.setSize(0);
+
+        assertFalse(pool.open(databaseUrl, StorageProfile.BALANCED));
+        assertEquals(0, pool.getOpenConnections());
+    }
+
+    @Test
+    void connectionsAreReadOnly() throws SQLException
+    {
+        useWriteAheadLog();
+        assertTrue(pool.open(databaseUrl, StorageProfile.BALANCED));
+
+        assertThrows(SQLException.class, () -> pool.read((connection, statements) ->
+        {
+            try (final Statement statement = connection.createStatement())
+            {
+                return statement.executeUpdate("INSERT INTO entries (id) VALUES (2)");
+            }
+        }));
+    }
+
+    @Test
+    void readsSeeCommittedWrites() throws SQLException
+    {
+        useWriteAheadLog();
+        assertTrue(pool.open(databaseUrl, StorageProfile.BALANCED));
+        assertEquals(1L, countEntries());
+
+        try (final Statement statement = writer.createStatement())
+        {
+            statement.executeUpdate("INSERT INTO entries (id) VALUES (2)");
+        }
+
+        assertEquals(2L, countEntries());
+    }
+
+    @Test
+    void readWaitsForFreeConnection() throws Exception
+    {
+        useWriteAheadLog();
+        pool.setSize(1);
+        assertTrue(pool.open(databaseUrl, StorageProfile.BALANCED));
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CompletableFuture<Long> holder = CompletableFuture.supplyAsync(() ->
+        {
+            try
+            {
+                return pool.read((connection, statements) ->
+                {
+                    started.countDown();
+
+                    try
+                    {
+                        release.await();
+                    }
+                    catch (final InterruptedException exception)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+
+                    return 0L;
+                });
+            }
+            catch (final Exception exception)
+            {
+                throw new IllegalStateException(exception);
+            }
+        });
+
+        started.await();
+        assertEquals(1, pool.getActiveConnections());
+
+        final CompletableFuture<Long> waiter = CompletableFuture.supplyAsync(() ->
+        {
+            try
+            {
+                return countEntries();
+            }
+            catch (final SQLException sqlException)
+            {
+                throw new IllegalStateException(sqlException);
+            }
+        });
+
+        Thread.sleep(50);
+        assertFalse(waiter.isDone());
+
+        release.countDown();
+
+        assertEquals(0L, (long) holder.get());
+        assertEquals(1L, (long) waiter.get());
+        assertEquals(1, pool.getWaits());
+        assertEquals(2, pool.getReads());
+        assertEquals(0, pool.getActiveConnections());
+    }
+
+    @Test
+    void readTimesOutWhenNoConnectionIsFree() throws Exception
+    {
+        useWriteAheadLog();
+        pool.setSize(1);
+        pool.setTimeout(20L);
+        assertTrue(pool.open(databaseUrl, StorageProfile.BALANCED));
+
+        pool.read((connection, statements) -> assertThrows(SQLException.class, this::countEntries));
+    }
+
+    @Test
+    void utilisationIsRecorded() throws SQLException
+    {
+        useWriteAheadLog();
+        assertTrue(pool.open(databaseUrl, StorageProfile.BALANCED));
+
+        pool.read((connection, statements) ->
+        {
+            try
+            {
+                Thread.sleep(10);
+            }
+            catch (final InterruptedException exception)
+            {
+                Thread.currentThread().interrupt();
+            }
+
+            return null;
+        });
+
+        assertTrue(pool.getUtilisation() > 0.0);
+        assertTrue(pool.getAverageWaitTime() >= 0.0);
+
+        pool.close();
+
+        assertEquals(0.0, pool.getUtilisation());
+    }
+
+    @Test
+    void accountManagerReadsOnPool() throws SQLException
+    {
+        writer.close();
+
+        final AccountManager accountManager = new AccountManager();
+
+        accountManager.setStorageProfile(StorageProfile.BALANCED);
+
+        assertTrue(accountManager.openDatabaseConnection(databaseUrl));
+        assertTrue(accountManager.getReadPool().isOpen());
+
+        final Account account = new Account(5L);
+
+        account.addBalance(12.0);
+        assertTrue(accountManager.saveToDatabase(account));
+
+        final Account loaded = new Account(5L);
+
+        assertTrue(accountManager.existsInDatabase(5L));
+        assertTrue(accountManager.loadFromDatabase(loaded));
+        assertEquals(12.0, loaded.getBalance());
+        assertEquals(2, accountManager.getReadPool().getReads());
+
+        accountManager.closeDatabaseConnection();
+        accountManager.getDatabaseExecutor().shutdown();
+
+        assertFalse(accountManager.getReadPool().isOpen());
+
+        writer = DriverManager.getConnection(databaseUrl);
+    }
+
+}
@@ -0,0 +1,163 @@
+package com.sylink.util.account;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark comparing the role storage of an account as a hash set of boxed ids with the primitive role set, at
+ * the amounts of roles members of our guilds hold.
+ * The build benchmarks allocate exactly the set an account keeps, so running them with "-prof gc" reports the memory
+ * of each account's roles as the normalized allocation rate in bytes per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoleSetBenchmark
+{
+
+    /**
+     * A role of a guild member, holding its snowflake id as a Discord role does.
+     */
+    public static final class MemberRole
+    {
+
+        private final long id;
+
+        MemberRole(final long id)
+        {
+            this.id = id;
+        }
+
+        public long getIdLong()
+        {
+            return id;
+        }
+
+    }
+
+    // The first role snowflake, large enough that every boxed id is a new Long.
+    private static final long FIRST_ROLE_ID = 800_000_000_000_000_000L;
+
+    @Param({"3", "10", "40"})
+    public int roles;
+
+    private List<MemberRole> memberRoles;
+    private Set<Long> hashSet;
+    private RoleSet roleSet;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        memberRoles = new ArrayList<>(roles);
+
+        for (int i = 0; i < roles; i++)
+        {
+            memberRoles.add(new MemberRole(FIRST_ROLE_ID + i * 7_919L));
+        }
+
+        hashSet = buildHashSet();
+        roleSet = buildRoleSet();
+    }
+
+    /**
+     * @return A role id held by the account half of the time.
+     */
+    private long randomRoleId()
+    {
+        return FIRST_ROLE_ID + ThreadLocalRandom.current().nextInt(roles * 2) * 7_919L;
+    }
+
+    @Benchmark
+    public Set<Long> buildHashSet()
+    {
+        final Set<Long> newRoles = new HashSet<>();
+
+        for (final MemberRole role : memberRoles)
+        {
+            newRoles.add(role.getIdLong());
+        }
+
+        return newRoles;
+    }
+
+    @Benchmark
+    public RoleSet buildRoleSet()
+    {
+        return RoleSet.of(memberRoles, MemberRole::getIdLong);
+    }
+
+    @Benchmark
+    public boolean hasRoleHashSet()
+    {
+        return hashSet.contains(randomRoleId());
+    }
+
+    @Benchmark
+    public boolean hasRoleRoleSet()
+    {
+        return roleSet.contains(randomRoleId());
+    }
+
+    /**
+     * Syncs roles that did not change the way the account used to, building a set of the member's roles to compare.
+     */
+    @Benchmark
+    public boolean syncUnchangedHashSet()
+    {
+        return buildHashSet().equals(hashSet);
+    }
+
+    /**
+     * Syncs roles that did not change the way the account does now, comparing without building a set.
+     */
+    @Benchmark
+    public boolean syncUnchangedRoleSet()
+    {
+        return roleSet.matches(memberRoles, MemberRole::getIdLong);
+    }
+
+    @Benchmark
+    public long sumHashSet()
+    {
+        long sum = 0L;
+
+        for (final long roleId : hashSet)
+        {
+            sum += roleId;
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public long sumRoleSet()
+    {
+        long sum = 0L;
+
+        for (int i = 0; i < roleSet.size(); i++)
+        {
+            sum += roleSet.getRoleId(i);
+        }
+
+        return sum;
+    }
+
+    public static void main(final String[] args) throws RunnerException
+    {
+        new Runner(new OptionsBuilder().include(RoleSetBenchmark.class.getSimpleName()).addProfiler("gc").build())
+                .run();
+    }
+
+}
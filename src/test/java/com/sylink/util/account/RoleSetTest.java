@@ -0,0 +1,76 @@
+package com.sylink.util.account;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoleSetTest
+{
+
+    @Test
+    void idsAreSortedAndDistinct()
+    {
+        final RoleSet roles = RoleSet.of(List.of(30L, -5L, 30L, Long.MAX_VALUE, 7L));
+
+        assertEquals(4, roles.size());
+        assertEquals(-5L, roles.getRoleId(0));
+        assertEquals(Long.MAX_VALUE, roles.getRoleId(3));
+        assertTrue(roles.contains(7L));
+        assertFalse(roles.contains(8L));
+        assertSame(RoleSet.EMPTY, RoleSet.of(List.of()));
+    }
+
+    @Test
+    void setsMatchHashSetsOfTheSameIds()
+    {
+        final Set<Long> ids = new HashSet<>(List.of(1L, 900_000_000_000_000_000L, 42L));
+        final RoleSet roles = RoleSet.of(ids);
+
+        assertEquals(ids, roles);
+        assertEquals(roles, ids);
+        assertEquals(ids.hashCode(), roles.hashCode());
+        assertTrue(roles.contains(Long.valueOf(42L)));
+        assertFalse(roles.contains("42"));
+        assertEquals(ids, new HashSet<>(new ArrayList<>(roles)));
+    }
+
+    @Test
+    void addingAndRemovingKeepsTheIdsSorted()
+    {
+        final RoleSet roles = RoleSet.EMPTY.with(5L).with(1L).with(9L).with(3L);
+
+        assertSame(roles, roles.with(9L));
+        assertEquals(RoleSet.of(List.of(1L, 3L, 5L, 9L)), roles);
+        assertEquals(RoleSet.of(List.of(1L, 9L)), roles.without(3L).without(5L));
+        assertSame(roles, roles.without(4L));
+        assertSame(RoleSet.EMPTY, RoleSet.EMPTY.with(2L).without(2L));
+    }
+
+    @Test
+    void matchesComparesWithoutBuildingASet()
+    {
+        final RoleSet roles = RoleSet.of(List.of(1L, 2L, 3L));
+
+        assertTrue(roles.matches(List.of(3L, 1L, 2L), Long::longValue));
+        assertFalse(roles.matches(List.of(3L, 1L), Long::longValue));
+        assertFalse(roles.matches(List.of(3L, 1L, 4L), Long::longValue));
+        assertEquals(roles, RoleSet.of(List.of("2", "3", "1"), Long::parseLong));
+    }
+
+    @Test
+    void accountStatesKeepUnchangedRoles()
+    {
+        final AccountState state = AccountState.EMPTY.withRoles(Set.of(4L, 2L));
+
+        assertSame(state, state.withRoles(Set.of(2L, 4L)));
+        assertSame(state, state.withRole(4L));
+        assertSame(state, state.withoutRole(3L));
+        assertTrue(state.withRole(3L).getRoles().contains(3L));
+    }
+
+}
@@ -0,0 +1,81 @@
+package com.sylink.util.account;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SQLiteAccountStoreTest extends AccountStoreConformanceTest
+{
+
+    private File databaseFile;
+    private AccountManager accountManager;
+
+    @Override
+    AccountStore openStore() throws IOException
+    {
+        databaseFile = File.createTempFile("sqlite_store_test", ".db");
+        accountManager = new AccountManager();
+        accountManager.getReadPool().setSize(0);
+        assertTrue(accountManager.openDatabaseConnection("jdbc:sqlite:" + databaseFile.getPath()));
+
+        return accountManager.getSqliteStore();
+    }
+
+    @Override
+    void closeStore()
+    {
+        accountManager.closeDatabaseConnection();
+        accountManager.getDatabaseExecutor().shutdown();
+        assertTrue(databaseFile.delete());
+    }
+
+    @Test
+    void writtenRowsAreRecordedOnTheAccount() throws IOException
+    {
+        final SQLiteAccountStore store = accountManager.getSqliteStore();
+        final Account account = new Account(1L);
+
+        store.upsert(account, AccountState.EMPTY.withPermissions(Set.of("a")).withRoles(Set.of(2L)));
+
+        assertEquals(Set.of("a"), account.getSavedPermissions());
+        assertEquals(Set.of(2L), account.getSavedRoles());
+        assertTrue(accountManager.getPersistedIds().mightContain(1L));
+        assertEquals(List.of(1L), store.findWithPermission("a"));
+        assertEquals(List.of(1L), store.findWithRole(2L));
+        assertEquals(List.of(), store.findWithRole(3L));
+    }
+
+    @Test
+    void loadAllReadsMoreThanABatch() throws IOException
+    {
+        final SQLiteAccountStore store = accountManager.getSqliteStore();
+
+        for (long discordId = 0L; discordId < SQLiteAccountStore.MAXIMUM_BATCH_SIZE + 10L; discordId++)
+        {
+            store.upsert(new Account(discordId), AccountState.EMPTY.withBalanceUnits(discordId));
+        }
+
+        final List<Long> discordIds = LongStream.range(0L, 2_000L).boxed().toList();
+
+        assertEquals(SQLiteAccountStore.MAXIMUM_BATCH_SIZE + 10, store.loadAll(discordIds).size());
+        // Each of the 4 batches queries the accounts, permissions and roles tables.
+        assertEquals(12L, store.getLoadAllQueries());
+    }
+
+    @Test
+    void closedConnectionRejectsWrites()
+    {
+        accountManager.closeDatabaseConnection();
+
+        assertFalse(accountManager.getSqliteStore().isOpen());
+        assertThrows(IOException.class, () -> accountManager.getSqliteStore().upsert(new Account(1L),
+                AccountState.EMPTY));
+    }
+
+}
@@ -0,0 +1,267 @@
+package com.sylink.util.account;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SchemaMigratorTest
+{
+
+    private File databaseFile;
+    private Connection connection;
+    private StatementCache statements;
+
+    @BeforeEach
+    void setUp() throws IOException, SQLException
+    {
+        databaseFile = File.createTempFile("schema_test", ".db");
+        connection = DriverManager.getConnection("jdbc:sqlite:" + databaseFile.getPath());
+        statements = new StatementCache();
+        statements.rebuild(connection);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException
+    {
+        statements.clear();
+        connection.close();
+        assertTrue(databaseFile.delete());
+    }
+
+    private List<Integer> readVersions() throws SQLException
+    {
+        final List<Integer> versions = new ArrayList<>();
+
+        try (final Statement statement = connection.createStatement();
+             final ResultSet resultSet = statement.executeQuery("SELECT version FROM schema_version ORDER BY version"))
+        {
+            while (resultSet.next())
+            {
+                versions.add(resultSet.getInt(1));
+            }
+        }
+
+        return versions;
+    }
+
+    /**
+     * Data migration counting down from a number of chunks, failing its first chunk if asked to.
+     */
+    private static final class CountingMigration implements SchemaMigrator.DataMigration
+    {
+
+        private final int chunks;
+        private boolean fail;
+
+        private CountingMigration(final int chunks, final boolean fail)
+        {
+            this.chunks = chunks;
+            this.fail = fail;
+        }
+
+        @Override
+        public String getName()
+        {
+            return "counting";
+        }
+
+        @Override
+        public long runChunk(final StatementCache statements, final long cursor) throws SQLException
+        {
+            if (fail)
+            {
+                fail = false;
+                throw new SQLException("First chunk fails");
+            }
+
+            final long next = (cursor == SchemaMigrator.NOT_STARTED) ? 1L : cursor + 1L;
+
+            return (next >= chunks) ? SchemaMigrator.FINISHED : next;
+        }
+
+    }
+
+    @Test
+    void appliesEveryVersionInOrder() throws SQLException
+    {
+        final SchemaMigrator migrator = new SchemaMigrator(List.of());
+
+        assertEquals(4, migrator.migrate(connection));
+        assertEquals(List.of(1, 2, 3, 4), readVersions());
+        assertTrue(connection.getAutoCommit());
+
+        try (final Statement statement = connection.createStatement();
+             final ResultSet resultSet = statement.executeQuery(
+                     "SELECT name FROM sqlite_master WHERE name IN ('accounts', 'account_roles_by_role')"))
+        {
+            int tables = 0;
+
+            while (resultSet.next())
+            {
+                tables++;
+            }
+
+            assertEquals(2, tables);
+        }
+    }
+
+    @Test
+    void appliedVersionsAreNotAppliedAgain() throws SQLException
+    {
+        assertEquals(4, new SchemaMigrator(List.of()).migrate(connection));
+
+        final SchemaMigrator migrator = new SchemaMigrator(List.of());
+
+        assertEquals(4, migrator.migrate(connection));
+        assertEquals(4, migrator.getSchemaVersion());
+        assertEquals(List.of(1, 2, 3, 4), readVersions());
+    }
+
+    @Test
+    void balancesAreConvertedToMinorUnits() throws SQLException
+    {
+        try (final Statement statement = connection.createStatement())
+        {
+            statement.executeUpdate("""
+                    CREATE TABLE accounts
+                    (
+                        id BIGINT NOT NULL UNIQUE,
+                        permissions TEXT NOT NULL DEFAULT '',
+                        roles TEXT NOT NULL DEFAULT '',
+                        balance DOUBLE NOT NULL DEFAULT 0.0
+                    );
+                    """);
+            statement.executeUpdate("INSERT INTO accounts (id, balance) VALUES (1, 12.5), (2, 0.07), (3, -4.0)");
+        }
+
+        final BalanceUnitsMigration balanceUnitsMigration = new BalanceUnitsMigration();
+        final SchemaMigrator migrator = new SchemaMigrator(List.of(balanceUnitsMigration));
+
+        balanceUnitsMigration.setBatchSize(2);
+        migrator.migrate(connection);
+
+        // The schema version only adds the column, the balances are converted by the data migration.
+        assertEquals(List.of(0L, 0L, 0L), readBalanceUnits());
+
+        while (migrator.runChunk(statements))
+        {
+            migrator.completeChunk();
+        }
+
+        assertEquals(2, migrator.getDataMigrationProgress().get(0).getChunks());
+        assertEquals(List.of(1250L, 7L, 0L), readBalanceUnits());
+    }
+
+    private List<Long> readBalanceUnits() throws SQLException
+    {
+        final List<Long> balances = new ArrayList<>();
+
+        try (final Statement statement = connection.createStatement();
+             final ResultSet resultSet = statement.executeQuery("SELECT balance_units FROM accounts ORDER BY id"))
+        {
+            while (resultSet.next())
+            {
+                balances.add(resultSet.getLong(1));
+            }
+        }
+
+        return balances;
+    }
+
+    @Test
+    void dataMigrationRunsInChunksUntilFinished() throws SQLException
+    {
+        final SchemaMigrator migrator = new SchemaMigrator(List.of(new CountingMigration(3, false)));
+
+        migrator.migrate(connection);
+
+        assertTrue(migrator.hasPendingDataMigrations());
+
+        while (migrator.runChunk(statements))
+        {
+            migrator.completeChunk();
+        }
+
+        assertFalse(migrator.hasPendingDataMigrations());
+        assertTrue(migrator.isFinished("counting"));
+        assertEquals(3, migrator.getDataMigrationProgress().get(0).getChunks());
+    }
+
+    @Test
+    void failedChunkIsRunAgain() throws SQLException
+    {
+        final SchemaMigrator migrator = new SchemaMigrator(List.of(new CountingMigration(2, true)));
+
+        migrator.migrate(connection);
+
+        assertThrows(SQLException.class, () -> migrator.runChunk(statements));
+        assertEquals(SchemaMigrator.NOT_STARTED, migrator.getDataMigrationProgress().get(0).getCursor());
+
+        assertTrue(migrator.runChunk(statements));
+        migrator.completeChunk();
+
+        assertEquals(1L, migrator.getDataMigrationProgress().get(0).getCursor());
+    }
+
+    @Test
+    void uncommittedChunkIsNotRecorded() throws SQLException
+    {
+        final SchemaMigrator migrator = new SchemaMigrator(List.of(new CountingMigration(5, false)));
+
+        migrator.migrate(connection);
+        assertTrue(migrator.runChunk(statements));
+
+        assertEquals(0, migrator.getDataMigrationProgress().get(0).getChunks());
+
+        migrator.completeChunk();
+
+        assertEquals(1, migrator.getDataMigrationProgress().get(0).getChunks());
+    }
+
+    @Test
+    void progressIsReadWhenMigrating() throws SQLException
+    {
+        final SchemaMigrator migrator = new SchemaMigrator(List.of(new CountingMigration(5, false)));
+
+        migrator.migrate(connection);
+        assertTrue(migrator.runChunk(statements));
+        migrator.completeChunk();
+
+        final SchemaMigrator restarted = new SchemaMigrator(List.of(new CountingMigration(5, false)));
+
+        restarted.migrate(connection);
+
+        assertEquals(1L, restarted.getDataMigrationProgress().get(0).getCursor());
+        assertEquals(1, restarted.getDataMigrationProgress().get(0).getChunks());
+    }
+
+    @Test
+    void splitsStatementsOutsideQuotesAndComments()
+    {
+        final List<String> statements = SchemaMigrator.splitStatements("""
+                -- Description; with a semicolon
+                CREATE TABLE a (b TEXT DEFAULT 'x;y');
+                INSERT INTO a VALUES ('it''s'); -- trailing; comment
+                
+                ;
+                """);
+
+        assertEquals(List.of("CREATE TABLE a (b TEXT DEFAULT 'x;y')", "INSERT INTO a VALUES ('it''s')"), statements);
+    }
+
+    @Test
+    void describesScriptFromFirstComment()
+    {
+        assertEquals("Create things", SchemaMigrator.describe("\n-- Create things\nCREATE TABLE a (b);"));
+        assertEquals("", SchemaMigrator.describe("CREATE TABLE a (b);"));
+    }
+
+}
@@ -0,0 +1,89 @@
+package com.sylink.util.account;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatementCacheTest
+{
+
+    private static final String SQL = "SELECT 1";
+
+    private Connection connection;
+    private StatementCache statementCache;
+
+    @BeforeEach
+    void setUp() throws SQLException
+    {
+        connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        statementCache = new StatementCache();
+        statementCache.rebuild(connection);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException
+    {
+        statementCache.clear();
+        connection.close();
+    }
+
+    @Test
+    void preparingNewStatementCountsPrepare() throws SQLException
+    {
+        assertNotNull(statementCache.prepare(SQL));
+
+        assertEquals(1, statementCache.getPrepares());
+        assertEquals(0, statementCache.getHits());
+        assertEquals(1, statementCache.size());
+    }
+
+    @Test
+    void preparingCachedStatementCountsHit() throws SQLException
+    {
+        final PreparedStatement statement = statementCache.prepare(SQL);
+
+        assertSame(statement, statementCache.prepare(SQL));
+        assertEquals(1, statementCache.getPrepares());
+        assertEquals(1, statementCache.getHits());
+    }
+
+    @Test
+    void rebuildingClosesCachedStatements() throws SQLException
+    {
+        final PreparedStatement statement = statementCache.prepare(SQL);
+
+        statementCache.rebuild(connection);
+
+        assertTrue(statement.isClosed());
+        assertEquals(0, statementCache.size());
+        assertNotSame(statement, statementCache.prepare(SQL));
+    }
+
+    @Test
+    void countersSurviveRebuilding() throws SQLException
+    {
+        statementCache.prepare(SQL);
+        statementCache.prepare(SQL);
+        statementCache.rebuild(connection);
+        statementCache.prepare(SQL);
+
+        assertEquals(2, statementCache.getPrepares());
+        assertEquals(1, statementCache.getHits());
+    }
+
+    @Test
+    void preparingWithoutConnectionThrows()
+    {
+        statementCache.clear();
+
+        assertThrows(SQLException.class, () -> statementCache.prepare(SQL));
+    }
+
+}
@@ -0,0 +1,171 @@
+package com.sylink.util.account;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark comparing the storage profiles on the accounts schema.
+ * Run with the main method from the test classpath, or pass "-p profile=balanced" to JMH to benchmark one profile.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StorageProfileBenchmark
+{
+
+    // The amount of accounts stored before benchmarking.
+    private static final int ACCOUNTS = 10_000;
+    // The amount of accounts written per flush, the default flusher batch size.
+    private static final int BATCH_SIZE = 250;
+    // The SQL query readers use to load an account.
+    private static final String SQL_READ_QUERY = "SELECT permissions, roles, balance_units FROM accounts WHERE id = ?";
+
+    @Param({"durable", "balanced", "throughput"})
+    public String profile;
+
+    private File databaseFile;
+    private String databaseUrl;
+    private AccountManager accountManager;
+    private List<Account> batch;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException
+    {
+        databaseFile = File.createTempFile("storage_profile_benchmark", ".db");
+        databaseUrl = "jdbc:sqlite:" + databaseFile.getPath();
+        accountManager = new AccountManager();
+        accountManager.setStorageProfile(StorageProfile.getDefault(profile));
+
+        if (!accountManager.openDatabaseConnection(databaseUrl))
+        {
+            throw new IllegalStateException("Unable to open benchmark database " + databaseUrl);
+        }
+
+        final List<Account> accounts = new ArrayList<>(ACCOUNTS);
+
+        for (long discordId = 0L; discordId < ACCOUNTS; discordId++)
+        {
+            final Account account = new Account(discordId);
+
+            account.addBalance(discordId);
+            account.addPermission("benchmark");
+            accounts.add(account);
+        }
+
+        accountManager.saveToDatabase(accounts);
+        batch = accounts.subList(0, BATCH_SIZE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        accountManager.closeDatabaseConnection();
+
+        for (final String suffix : new String[]{"", "-wal", "-shm"})
+        {
+            new File(databaseFile.getPath() + suffix).delete();
+        }
+    }
+
+    /**
+     * Reader with its own connection, like a second connection reading while the flusher writes.
+     */
+    @State(Scope.Thread)
+    public static class Reader
+    {
+
+        private Connection connection;
+        private PreparedStatement statement;
+
+        @Setup(Level.Trial)
+        public void setUp(final StorageProfileBenchmark benchmark) throws SQLException
+        {
+            connection = DriverManager.getConnection(benchmark.databaseUrl);
+            StorageProfile.getDefault(benchmark.profile).apply(connection);
+            statement = connection.prepareStatement(SQL_READ_QUERY);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws SQLException
+        {
+            statement.close();
+            connection.close();
+        }
+
+    }
+
+    /**
+     * Changes and writes a batch of accounts in one transaction, as the flusher does.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public boolean flushBatch()
+    {
+        for (final Account account : batch)
+        {
+            account.addBalance(1.0);
+        }
+
+        return accountManager.saveToDatabase(batch);
+    }
+
+    /**
+     * Loads a random stored account, as a cache miss does.
+     */
+    @Benchmark
+    public Account loadAccount()
+    {
+        final Account account = new Account(ThreadLocalRandom.current().nextLong(ACCOUNTS));
+
+        accountManager.loadFromDatabase(account);
+
+        return account;
+    }
+
+    /**
+     * Reads random accounts on separate connections while flushMixed writes batches.
+     */
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public long readMixed(final Reader reader) throws SQLException
+    {
+        reader.statement.setLong(1, ThreadLocalRandom.current().nextLong(ACCOUNTS));
+
+        try (final ResultSet resultSet = reader.statement.executeQuery())
+        {
+            return resultSet.next() ? resultSet.getLong("balance_units") : -1L;
+        }
+    }
+
+    /**
+     * Writes batches while readMixed reads on other connections.
+     */
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    @OperationsPerInvocation(BATCH_SIZE)
+    public boolean flushMixed()
+    {
+        return flushBatch();
+    }
+
+    public static void main(final String[] args) throws RunnerException
+    {
+        new Runner(new OptionsBuilder().include(StorageProfileBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
@@ -0,0 +1,91 @@
+package com.sylink.util.account;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StorageProfileTest
+{
+
+    private File databaseFile;
+    private Connection connection;
+
+    @BeforeEach
+    void setUp() throws IOException, SQLException
+    {
+        databaseFile = File.createTempFile("storage_profile_test", ".db");
+        connection = DriverManager.getConnection("jdbc:sqlite:" + databaseFile.getPath());
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException
+    {
+        connection.close();
+        assertTrue(databaseFile.delete());
+    }
+
+    @Test
+    void everyBuiltInProfileApplies() throws SQLException
+    {
+        for (final StorageProfile profile : new StorageProfile[]{StorageProfile.DURABLE, StorageProfile.BALANCED,
+                StorageProfile.THROUGHPUT})
+        {
+            profile.apply(connection);
+
+            assertTrue(profile.validate(connection).isEmpty(), profile.getName());
+        }
+    }
+
+    @Test
+    void validatingReportsPragmasThatDiffer() throws SQLException
+    {
+        StorageProfile.DURABLE.apply(connection);
+
+        final Map<String, String> mismatches = StorageProfile.BALANCED.validate(connection);
+
+        assertEquals("delete", mismatches.get("journal_mode").toLowerCase());
+        assertEquals("2", mismatches.get("synchronous"));
+        assertFalse(mismatches.containsKey("busy_timeout"));
+    }
+
+    @Test
+    void journalModeIsAppliedFirst()
+    {
+        assertEquals("journal_mode", StorageProfile.THROUGHPUT.getPragmas().keySet().iterator().next());
+    }
+
+    @Test
+    void configOverridesBuiltInPragmas()
+    {
+        final StorageProfile profile = StorageProfile.fromConfig("Throughput", Map.of("cache_size", -2000L));
+
+        assertEquals("throughput", profile.getName());
+        assertEquals("-2000", profile.getPragmas().get("cache_size"));
+        assertEquals("WAL", profile.getPragmas().get("journal_mode"));
+    }
+
+    @Test
+    void customProfileNeedsPragmas()
+    {
+        assertThrows(IllegalArgumentException.class, () -> StorageProfile.fromConfig("custom", Map.of()));
+        assertEquals("OFF", StorageProfile.fromConfig("custom", Map.of("synchronous", "OFF"))
+                .getPragmas().get("synchronous"));
+    }
+
+    @Test
+    void unsafePragmaIsRejected()
+    {
+        assertThrows(IllegalArgumentException.class,
+                () -> new StorageProfile("unsafe", Map.of("synchronous", "OFF; DROP TABLE accounts")));
+    }
+
+}
@@ -0,0 +1,54 @@
+package com.sylink.util.account;
+
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Opens and closes the account managers of tests that run on a database file.
+ */
+final class TestAccountManagers
+{
+
+    private TestAccountManagers()
+    {
+    }
+
+    /**
+     * @return A new account manager connected to the database, loading accounts on the database thread.
+     */
+    static AccountManager open(final String databaseUrl)
+    {
+        return open(databaseUrl, (accountManager) ->
+        {
+        });
+    }
+
+    /**
+     * @param configure Configures the account manager before it connects to the database.
+     * @return A new account manager connected to the database, loading accounts on the database thread.
+     */
+    static AccountManager open(final String databaseUrl, final Consumer<AccountManager> configure)
+    {
+        final AccountManager accountManager = new AccountManager();
+
+        accountManager.getReadPool().setSize(0);
+        configure.accept(accountManager);
+        assertTrue(accountManager.openDatabaseConnection(databaseUrl));
+
+        return accountManager;
+    }
+
+    /**
+     * Closes the journal, the account store and the database connection of the account manager, and stops its
+     * database thread.
+     */
+    static void close(final AccountManager accountManager)
+    {
+        accountManager.closeJournal();
+        accountManager.closeAccountStore();
+        accountManager.closeDatabaseConnection();
+        accountManager.getDatabaseExecutor().shutdown();
+    }
+
+}
@@ -0,0 +1,165 @@
+package com.sylink.util.account;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransferTest
+{
+
+    private File databaseFile;
+    private String databaseUrl;
+    private AccountManager accountManager;
+
+    @BeforeEach
+    void setUp() throws IOException
+    {
+        databaseFile = File.createTempFile("transfer_test", ".db");
+        databaseUrl = "jdbc:sqlite:" + databaseFile.getPath();
+        accountManager = TestAccountManagers.open(databaseUrl);
+
+        for (long discordId = 1L; discordId <= 4L; discordId++)
+        {
+            accountManager.getAccount(discordId).setBalanceUnits(10_000L);
+            assertTrue(accountManager.saveToDatabase(discordId));
+        }
+    }
+
+    @AfterEach
+    void tearDown()
+    {
+        TestAccountManagers.close(accountManager);
+        assertTrue(databaseFile.delete());
+    }
+
+    private long balanceOf(final long discordId)
+    {
+        return accountManager.getAccount(discordId).getBalanceUnits();
+    }
+
+    @Test
+    void transferMovesBalanceAndSavesBothAccounts()
+    {
+        assertEquals(Transfer.Result.COMPLETED, accountManager.transfer(1L, 2L, 2_500L));
+        assertEquals(7_500L, balanceOf(1L));
+        assertEquals(12_500L, balanceOf(2L));
+
+        // A new manager only sees what was saved to the database.
+        TestAccountManagers.close(accountManager);
+        accountManager = TestAccountManagers.open(databaseUrl);
+
+        assertEquals(7_500L, balanceOf(1L));
+        assertEquals(12_500L, balanceOf(2L));
+    }
+
+    @Test
+    void transferCreatesReceivingAccount()
+    {
+        assertEquals(Transfer.Result.COMPLETED, accountManager.transfer(1L, 9L, 100L));
+        assertEquals(100L, balanceOf(9L));
+        assertTrue(accountManager.existsInDatabase(9L));
+    }
+
+    @Test
+    void rejectedTransfersChangeNothing()
+    {
+        assertEquals(Transfer.Result.INSUFFICIENT_FUNDS, accountManager.transfer(1L, 2L, 10_001L));
+        assertEquals(Transfer.Result.INVALID_AMOUNT, accountManager.transfer(1L, 2L, 0L));
+        assertEquals(Transfer.Result.INVALID_AMOUNT, accountManager.transfer(1L, 2L, -5L));
+        assertEquals(Transfer.Result.SAME_ACCOUNT, accountManager.transfer(1L, 1L, 5L));
+        assertEquals(Transfer.Result.UNKNOWN_ACCOUNT, accountManager.transfer(99L, 1L, 5L));
+        assertFalse(accountManager.existsInMemory(99L));
+
+        assertEquals(10_000L, balanceOf(1L));
+        assertEquals(10_000L, balanceOf(2L));
+        assertEquals(0L, accountManager.getAppliedTransfers());
+        assertEquals(5L, accountManager.getRejectedTransfers());
+    }
+
+    @Test
+    void overflowingTransferIsRolledBack()
+    {
+        accountManager.getAccount(2L).setBalanceUnits(Long.MAX_VALUE);
+
+        assertEquals(Transfer.Result.BALANCE_OVERFLOW, accountManager.transfer(1L, 2L, 1L));
+        assertEquals(10_000L, balanceOf(1L));
+        assertEquals(Long.MAX_VALUE, balanceOf(2L));
+    }
+
+    @Test
+    void batchAppliesTransfersInOrder()
+    {
+        final List<Transfer.Result> results = accountManager.transfer(List.of(
+                new Transfer(1L, 2L, 10_000L),
+                new Transfer(1L, 3L, 1L),
+                new Transfer(2L, 3L, 20_000L),
+                new Transfer(3L, 4L, 5_000L)));
+
+        assertEquals(List.of(Transfer.Result.COMPLETED, Transfer.Result.INSUFFICIENT_FUNDS,
+                Transfer.Result.COMPLETED, Transfer.Result.COMPLETED), results);
+        assertEquals(0L, balanceOf(1L));
+        assertEquals(0L, balanceOf(2L));
+        assertEquals(25_000L, balanceOf(3L));
+        assertEquals(15_000L, balanceOf(4L));
+    }
+
+    @Test
+    void opposingTransfersDoNotDeadlockOrLoseBalance()
+    {
+        final List<Thread> threads = new ArrayList<>();
+
+        for (int i = 0; i < 8; i++)
+        {
+            final Random random = new Random(i);
+
+            threads.add(new Thread(() ->
+            {
+                for (int j = 0; j < 250; j++)
+                {
+                    final List<Transfer> transfers = new ArrayList<>();
+
+                    for (int k = 0; k < 4; k++)
+                    {
+                        final long fromId = 1L + random.nextInt(4);
+                        final long toId = 1L + (fromId + random.nextInt(3)) % 4;
+
+                        transfers.add(new Transfer(fromId, toId, 1L + random.nextInt(500)));
+                    }
+
+                    accountManager.transfer(transfers);
+                }
+            }));
+        }
+
+        assertTimeoutPreemptively(Duration.ofSeconds(60), () ->
+        {
+            threads.forEach(Thread::start);
+
+            for (final Thread thread : threads)
+            {
+                thread.join();
+            }
+        });
+
+        long total = 0L;
+
+        for (long discordId = 1L; discordId <= 4L; discordId++)
+        {
+            assertTrue(balanceOf(discordId) >= 0L);
+            total += balanceOf(discordId);
+        }
+
+        assertEquals(40_000L, total);
+        assertEquals(8L * 250L * 4L, accountManager.getAppliedTransfers() + accountManager.getRejectedTransfers());
+    }
+
+}
@@ -5,6 +5,7 @@ import org.junit.jupiter.api.*;
 import java.io.File;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -105,4 +106,44 @@ class ConfigManagerTest
         assertEquals(100, value);
     }
 
+    @Test
+    void gettingIntValue()
+    {
+        configManager.loadFromConfig(PATH, Paths.get(PATH));
+
+        assertEquals(2, configManager.getInt("second.third", 100));
+        assertEquals(100, configManager.getInt("does.not.exist", 100));
+    }
+
+    @Test
+    void gettingLongValue()
+    {
+        configManager.loadFromConfig(PATH, Paths.get(PATH));
+
+        assertEquals(3L, configManager.getLong("second.fourth.fifth", 100L));
+        assertEquals(100L, configManager.getLong("does.not.exist", 100L));
+    }
+
+    @Test
+    void gettingSection()
+    {
+        configManager.loadFromConfig(PATH, Paths.get(PATH));
+
+        final Map<String, Object> section = configManager.getSection("second");
+
+        assertEquals(2, section.size());
+        assertEquals(2, ((Number) section.get("third")).intValue());
+        assertEquals(3, ((Number) section.get("fourth.fifth")).intValue());
+        assertTrue(configManager.getSection("does.not.exist").isEmpty());
+    }
+
+    @Test
+    void gettingDoubleValue()
+    {
+        configManager.loadFromConfig(PATH, Paths.get(PATH));
+
+        assertEquals(2.0, configManager.getDouble("second.third", 100.0));
+        assertEquals(100.0, configManager.getDouble("does.not.exist", 100.0));
+    }
+
 }
\ No newline at end of file